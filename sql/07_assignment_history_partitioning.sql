@@ -0,0 +1,156 @@
+-- ==================================================
+-- 派单历史与派单通知 - 按月分区改造
+-- assignment_history 按 assignment_time、service_assignment_notification 按 sent_time 做 RANGE 分区，
+-- 每月一个分区，另设默认分区兜底。带时间条件的查询只扫描命中的月份分区。
+-- 后续月份的分区由应用（MonthlyPartitionManager）提前创建，超过保留期的分区由应用归档为压缩文件后删除。
+-- 脚本可重复执行：表已是分区表时跳过改造。需要 PostgreSQL 11 及以上。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 派单历史
+DO $$
+DECLARE
+    month_start DATE;
+    last_month DATE := (date_trunc('month', CURRENT_DATE) + INTERVAL '2 months')::DATE;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid
+               WHERE c.relname = 'assignment_history') THEN
+        RAISE NOTICE 'assignment_history 已是分区表，跳过';
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'assignment_history' AND relkind = 'r') THEN
+        ALTER TABLE assignment_history RENAME TO assignment_history_legacy;
+        ALTER SEQUENCE IF EXISTS assignment_history_id_seq RENAME TO assignment_history_legacy_id_seq;
+    END IF;
+
+    CREATE TABLE assignment_history (
+        id BIGSERIAL,
+        assignment_time TIMESTAMP NOT NULL,
+        order_id VARCHAR(50) NOT NULL,
+        order_no VARCHAR(100),
+        assignment_type VARCHAR(20) NOT NULL,
+        operator_name VARCHAR(100),
+        service_code VARCHAR(50),
+        service_name VARCHAR(200),
+        assigned_operator_id VARCHAR(50),
+        assigned_operator_name VARCHAR(100),
+        protocol_id VARCHAR(50),
+        protocol_name VARCHAR(200),
+        protocol_commission DECIMAL(5,2),
+        status VARCHAR(20),
+        reason VARCHAR(500),
+        assignment_notes VARCHAR(1000),
+        success_count INTEGER,
+        failed_count INTEGER,
+        created_time TIMESTAMP NOT NULL,
+        updated_time TIMESTAMP,
+        PRIMARY KEY (id, assignment_time)  -- 分区表主键须包含分区键
+    ) PARTITION BY RANGE (assignment_time);
+
+    CREATE INDEX idx_assignment_history_order ON assignment_history (order_id, assignment_time DESC);
+    CREATE INDEX idx_assignment_history_operator ON assignment_history (assigned_operator_id, assignment_time DESC);
+    CREATE INDEX idx_assignment_history_time ON assignment_history (assignment_time DESC);
+
+    -- 从已有数据的最早月份建到两个月后
+    month_start := date_trunc('month', CURRENT_DATE)::DATE;
+    IF to_regclass('assignment_history_legacy') IS NOT NULL THEN
+        EXECUTE 'SELECT LEAST($1, COALESCE(date_trunc(''month'', MIN(assignment_time))::DATE, $1)) FROM assignment_history_legacy'
+            INTO month_start USING month_start;
+    END IF;
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE assignment_history_p%s PARTITION OF assignment_history FOR VALUES FROM (%L) TO (%L)',
+            to_char(month_start, 'YYYYMM'), month_start, (month_start + INTERVAL '1 month')::DATE);
+        month_start := (month_start + INTERVAL '1 month')::DATE;
+    END LOOP;
+    CREATE TABLE assignment_history_default PARTITION OF assignment_history DEFAULT;
+
+    IF to_regclass('assignment_history_legacy') IS NOT NULL THEN
+        INSERT INTO assignment_history (id, assignment_time, order_id, order_no, assignment_type, operator_name,
+            service_code, service_name, assigned_operator_id, assigned_operator_name, protocol_id, protocol_name,
+            protocol_commission, status, reason, assignment_notes, success_count, failed_count, created_time, updated_time)
+        SELECT id, assignment_time, order_id, order_no, assignment_type, operator_name,
+            service_code, service_name, assigned_operator_id, assigned_operator_name, protocol_id, protocol_name,
+            protocol_commission, status, reason, assignment_notes, success_count, failed_count, created_time, updated_time
+        FROM assignment_history_legacy;
+        PERFORM setval('assignment_history_id_seq', COALESCE((SELECT MAX(id) FROM assignment_history), 0) + 1, false);
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 2. 派单通知
+DO $$
+DECLARE
+    month_start DATE;
+    last_month DATE := (date_trunc('month', CURRENT_DATE) + INTERVAL '2 months')::DATE;
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid
+               WHERE c.relname = 'service_assignment_notification') THEN
+        RAISE NOTICE 'service_assignment_notification 已是分区表，跳过';
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = 'service_assignment_notification' AND relkind = 'r') THEN
+        ALTER TABLE service_assignment_notification RENAME TO service_assignment_notification_legacy;
+        ALTER SEQUENCE IF EXISTS service_assignment_notification_notification_id_seq
+            RENAME TO service_assignment_notification_legacy_notification_id_seq;
+    END IF;
+
+    CREATE TABLE service_assignment_notification (
+        notification_id BIGSERIAL,
+        order_id VARCHAR(50) NOT NULL,
+        service_id BIGINT NOT NULL,
+        from_staff_id VARCHAR(20) NOT NULL,
+        to_staff_id VARCHAR(20) NOT NULL,
+        protocol_id VARCHAR(50) NOT NULL,
+        message VARCHAR(1000),
+        status VARCHAR(255) NOT NULL,
+        sent_time TIMESTAMP NOT NULL,
+        read_time TIMESTAMP,
+        confirmed_time TIMESTAMP,
+        notification_type VARCHAR(255) NOT NULL,
+        priority VARCHAR(255),
+        created_time TIMESTAMP NOT NULL,
+        updated_time TIMESTAMP,
+        created_by VARCHAR(50),
+        updated_by VARCHAR(50),
+        version BIGINT,
+        PRIMARY KEY (notification_id, sent_time)
+    ) PARTITION BY RANGE (sent_time);
+
+    CREATE INDEX idx_assignment_notification_to_staff ON service_assignment_notification (to_staff_id, sent_time DESC);
+    CREATE INDEX idx_assignment_notification_order ON service_assignment_notification (order_id, sent_time DESC);
+    CREATE INDEX idx_assignment_notification_status ON service_assignment_notification (status, sent_time);
+
+    month_start := date_trunc('month', CURRENT_DATE)::DATE;
+    IF to_regclass('service_assignment_notification_legacy') IS NOT NULL THEN
+        EXECUTE 'SELECT LEAST($1, COALESCE(date_trunc(''month'', MIN(sent_time))::DATE, $1)) FROM service_assignment_notification_legacy'
+            INTO month_start USING month_start;
+    END IF;
+    WHILE month_start <= last_month LOOP
+        EXECUTE format('CREATE TABLE service_assignment_notification_p%s PARTITION OF service_assignment_notification FOR VALUES FROM (%L) TO (%L)',
+            to_char(month_start, 'YYYYMM'), month_start, (month_start + INTERVAL '1 month')::DATE);
+        month_start := (month_start + INTERVAL '1 month')::DATE;
+    END LOOP;
+    CREATE TABLE service_assignment_notification_default PARTITION OF service_assignment_notification DEFAULT;
+
+    IF to_regclass('service_assignment_notification_legacy') IS NOT NULL THEN
+        INSERT INTO service_assignment_notification (notification_id, order_id, service_id, from_staff_id, to_staff_id,
+            protocol_id, message, status, sent_time, read_time, confirmed_time, notification_type, priority,
+            created_time, updated_time, created_by, updated_by, version)
+        SELECT notification_id, order_id, service_id, from_staff_id, to_staff_id,
+            protocol_id, message, status, sent_time, read_time, confirmed_time, notification_type, priority,
+            created_time, updated_time, created_by, updated_by, version
+        FROM service_assignment_notification_legacy;
+        PERFORM setval('service_assignment_notification_notification_id_seq',
+            COALESCE((SELECT MAX(notification_id) FROM service_assignment_notification), 0) + 1, false);
+    END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMIT;
+
+-- 核对行数无误后删除旧表：
+-- DROP TABLE assignment_history_legacy;
+-- DROP TABLE service_assignment_notification_legacy;
@@ -0,0 +1,28 @@
+-- ==================================================
+-- 清分处理 - 指令存储补充
+-- 清分指令、明细、批次改为由应用持久化到 04_clearing_processing_tables.sql 定义的表，
+-- 本脚本补齐应用写入所需的约束和索引。可重复执行。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 部分明细失败的指令/批次状态为 PARTIALLY_COMPLETED
+ALTER TABLE clearing_instructions DROP CONSTRAINT IF EXISTS chk_instruction_status;
+ALTER TABLE clearing_instructions ADD CONSTRAINT chk_instruction_status
+    CHECK (instruction_status IN ('PENDING', 'PROCESSING', 'COMPLETED', 'PARTIALLY_COMPLETED', 'FAILED', 'CANCELLED'));
+
+ALTER TABLE clearing_batches DROP CONSTRAINT IF EXISTS chk_batch_status;
+ALTER TABLE clearing_batches ADD CONSTRAINT chk_batch_status
+    CHECK (batch_status IN ('PREPARING', 'READY', 'PROCESSING', 'COMPLETED', 'PARTIALLY_COMPLETED', 'FAILED'));
+
+-- 2. 同一订单的同一分润计算批次只能生成一条清分指令，并发生成时由唯一索引兜底
+CREATE UNIQUE INDEX IF NOT EXISTS uk_clearing_instructions_order_calculation
+    ON clearing_instructions (order_id, calculation_id);
+
+-- 3. 按批次取待执行指令（按优先级）、按订单取最早指令
+CREATE INDEX IF NOT EXISTS idx_clearing_instructions_batch_status
+    ON clearing_instructions (clearing_batch_id, instruction_status, execution_priority DESC);
+CREATE INDEX IF NOT EXISTS idx_clearing_instructions_order_created
+    ON clearing_instructions (order_id, created_time);
+
+COMMIT;
@@ -0,0 +1,18 @@
+-- ==================================================
+-- 清分处理 - 小批次调度
+-- 新生成的清分指令归入按数量/时间窗口关闭的小批次（MICRO），批次关闭后自动执行。
+-- 可重复执行。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 批次类型增加 MICRO
+ALTER TABLE clearing_batches DROP CONSTRAINT IF EXISTS chk_batch_type;
+ALTER TABLE clearing_batches ADD CONSTRAINT chk_batch_type
+    CHECK (batch_type IN ('DAILY', 'WEEKLY', 'MANUAL', 'URGENT', 'MICRO'));
+
+-- 2. 启动时按类型和状态取未执行完的批次
+CREATE INDEX IF NOT EXISTS idx_clearing_batches_type_status
+    ON clearing_batches (batch_type, batch_status, created_time DESC);
+
+COMMIT;
@@ -0,0 +1,39 @@
+-- ==================================================
+-- 执行日志持久化
+-- 清分/过账执行日志由应用异步批量写入。清分日志写入 04_clearing_processing_tables.sql 中的 clearing_execution_logs；
+-- 过账指令目前只在应用内存中，05_passthrough_processing_tables.sql 的日志表依赖过账指令表且为 MySQL 语法，
+-- 这里按 PostgreSQL 建一张不带外键的过账日志表。可重复执行。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 过账执行日志表
+CREATE TABLE IF NOT EXISTS passthrough_execution_logs (
+    id BIGSERIAL PRIMARY KEY,
+    log_id VARCHAR(50) NOT NULL,                 -- 日志ID
+    instruction_id VARCHAR(50) NOT NULL,         -- 过账指令ID
+    detail_id VARCHAR(50),                       -- 关联明细ID(可选)
+
+    -- 日志信息
+    log_level VARCHAR(10) NOT NULL,              -- 日志级别: DEBUG/INFO/WARN/ERROR/FATAL
+    log_type VARCHAR(30) NOT NULL,               -- 日志类型: GENERATION/EXECUTION/DIFFERENTIAL/ROUTING/NETTING...
+    log_message TEXT NOT NULL,                   -- 日志消息
+    log_details JSONB,                           -- 日志详细数据
+
+    -- 执行上下文
+    execution_phase VARCHAR(30),                 -- 执行阶段
+    processing_component VARCHAR(100),           -- 处理组件
+    execution_time_ms BIGINT,                    -- 执行耗时(毫秒)
+
+    created_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- 2. 按指令/批次取日志（时间倒序）
+CREATE INDEX IF NOT EXISTS idx_passthrough_execution_logs_instruction_time
+    ON passthrough_execution_logs (instruction_id, created_time DESC);
+CREATE INDEX IF NOT EXISTS idx_clearing_execution_logs_instruction_time
+    ON clearing_execution_logs (instruction_id, created_time DESC);
+CREATE INDEX IF NOT EXISTS idx_clearing_execution_logs_batch_time
+    ON clearing_execution_logs (batch_id, created_time DESC);
+
+COMMIT;
@@ -0,0 +1,87 @@
+-- ==================================================
+-- 过账路由规则
+-- 过账路由规则改为由应用从数据库加载（PassthroughRoutingTable），规则变更后应用按版本指纹自动重建路由表。
+-- 05_passthrough_processing_tables.sql 为 MySQL 语法，这里按 PostgreSQL 建表，并写入原先内置的三条规则。
+-- 付款法人、收款法人、币种可填 '*' 表示任意，精确匹配优先于通配。可重复执行。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 过账路由规则表
+CREATE TABLE IF NOT EXISTS passthrough_routing_rules (
+    rule_id VARCHAR(50) PRIMARY KEY,
+    rule_name VARCHAR(200) NOT NULL,             -- 规则名称
+    rule_description TEXT,                       -- 规则描述
+
+    -- 匹配条件（'*' 表示任意）
+    payer_legal_entity_id VARCHAR(50) NOT NULL,  -- 付款法人ID
+    payer_legal_entity_name VARCHAR(200) NOT NULL,
+    payee_legal_entity_id VARCHAR(50) NOT NULL,  -- 收款法人ID
+    payee_legal_entity_name VARCHAR(200) NOT NULL,
+    currency_code VARCHAR(10) NOT NULL,          -- 币种
+
+    -- 路由配置
+    routing_entity_1_id VARCHAR(50) NOT NULL,    -- 路由公司1ID
+    routing_entity_1_name VARCHAR(200) NOT NULL,
+    routing_entity_2_id VARCHAR(50),             -- 路由公司2ID(可选)
+    routing_entity_2_name VARCHAR(200),
+
+    -- 留存规则
+    retention_mode VARCHAR(20) DEFAULT 'PERCENTAGE', -- 留存模式: PERCENTAGE/FIXED_AMOUNT
+    routing_1_retention_rate DECIMAL(10, 6) DEFAULT 0.000000,
+    routing_1_retention_amount DECIMAL(15, 2) DEFAULT 0.00,
+    routing_2_retention_rate DECIMAL(10, 6) DEFAULT 0.000000,
+    routing_2_retention_amount DECIMAL(15, 2) DEFAULT 0.00,
+    allow_business_entity_exemption BOOLEAN DEFAULT TRUE,
+
+    -- 规则状态和优先级
+    rule_priority INTEGER DEFAULT 100,           -- 数字越小优先级越高
+    rule_status VARCHAR(20) DEFAULT 'ACTIVE',    -- ACTIVE/INACTIVE/DRAFT
+    effective_date DATE NOT NULL,
+    expiry_date DATE,
+
+    -- 审计字段
+    created_by VARCHAR(50) NOT NULL,
+    created_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_by VARCHAR(50),
+    updated_time TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    version INTEGER DEFAULT 1,
+
+    CONSTRAINT chk_routing_retention_mode CHECK (retention_mode IN ('PERCENTAGE', 'FIXED_AMOUNT')),
+    CONSTRAINT chk_routing_rule_status CHECK (rule_status IN ('ACTIVE', 'INACTIVE', 'DRAFT'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_passthrough_routing_rules_match
+    ON passthrough_routing_rules (payer_legal_entity_id, payee_legal_entity_id, currency_code, rule_priority);
+
+-- 2. 更新时维护 updated_time 和 version，应用据此发现规则变更
+CREATE OR REPLACE FUNCTION touch_passthrough_routing_rule() RETURNS TRIGGER AS $$
+BEGIN
+    NEW.updated_time := CURRENT_TIMESTAMP;
+    NEW.version := COALESCE(OLD.version, 0) + 1;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_passthrough_routing_rules_touch ON passthrough_routing_rules;
+CREATE TRIGGER trg_passthrough_routing_rules_touch
+    BEFORE UPDATE ON passthrough_routing_rules
+    FOR EACH ROW EXECUTE FUNCTION touch_passthrough_routing_rule();
+
+-- 3. 初始规则（原先内置在过账处理控制器中）
+INSERT INTO passthrough_routing_rules (rule_id, rule_name, rule_description, payer_legal_entity_id, payer_legal_entity_name,
+    payee_legal_entity_id, payee_legal_entity_name, currency_code, routing_entity_1_id, routing_entity_1_name,
+    routing_entity_2_id, routing_entity_2_name, retention_mode, routing_1_retention_rate, routing_1_retention_amount,
+    routing_2_retention_rate, rule_priority, rule_status, effective_date, created_by) VALUES
+('ROUTE_001', 'A公司到B公司USD过账规则', 'A公司付B公司USD时通过C公司过账，C公司留存1%', 'ENTITY_A', 'A公司',
+    'ENTITY_B', 'B公司', 'USD', 'ENTITY_C', 'C公司', NULL, NULL, 'PERCENTAGE', 0.010000, 0.00, 0.000000, 100, 'ACTIVE',
+    '2025-01-01', 'system'),
+('ROUTE_002', 'A公司到B公司CNY双路由规则', 'A公司付B公司CNY时通过C公司和D公司过账', 'ENTITY_A', 'A公司',
+    'ENTITY_B', 'B公司', 'CNY', 'ENTITY_C', 'C公司', 'ENTITY_D', 'D公司', 'PERCENTAGE', 0.010000, 0.00, 0.005000, 200, 'ACTIVE',
+    '2025-01-01', 'system'),
+('ROUTE_003', 'E公司到F公司EUR固定金额规则', 'E公司付F公司EUR时通过G公司过账，固定留存50EUR', 'ENTITY_E', 'E公司',
+    'ENTITY_F', 'F公司', 'EUR', 'ENTITY_G', 'G公司', NULL, NULL, 'FIXED_AMOUNT', 0.000000, 50.00, 0.000000, 150, 'ACTIVE',
+    '2025-01-01', 'system')
+ON CONFLICT (rule_id) DO NOTHING;
+
+COMMIT;
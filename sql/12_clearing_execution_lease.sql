@@ -0,0 +1,23 @@
+-- ==================================================
+-- 清分处理 - 执行租约
+-- 执行中的指令、未执行完的批次记录所属节点和租约到期时间，节点存活期间定期续约。
+-- 节点启动时只恢复自己名下或租约已过期的执行，不影响其他节点正在进行的执行。
+-- 可重复执行。
+-- ==================================================
+
+BEGIN;
+
+-- 1. 指令/批次所属节点和租约到期时间
+ALTER TABLE clearing_instructions ADD COLUMN IF NOT EXISTS owner_node VARCHAR(100);
+ALTER TABLE clearing_instructions ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP;
+
+ALTER TABLE clearing_batches ADD COLUMN IF NOT EXISTS owner_node VARCHAR(100);
+ALTER TABLE clearing_batches ADD COLUMN IF NOT EXISTS lease_expires_at TIMESTAMP;
+
+-- 2. 续约和恢复按节点、状态取行
+CREATE INDEX IF NOT EXISTS idx_clearing_instructions_owner_status
+    ON clearing_instructions (owner_node, instruction_status);
+CREATE INDEX IF NOT EXISTS idx_clearing_batches_owner_status
+    ON clearing_batches (owner_node, batch_status);
+
+COMMIT;
@@ -99,6 +99,19 @@ CREATE TABLE IF NOT EXISTS expense_entry_status (
 -- 录费状态管理表唯一索引
 CREATE UNIQUE INDEX IF NOT EXISTS uk_expense_entry_status_order ON expense_entry_status(order_id);
 
+-- 4.1 订单分币种费用汇总表(expense_entry_currency_totals)，与录费状态表由应用在明细变更的同一事务内增量维护
+CREATE TABLE IF NOT EXISTS expense_entry_currency_totals (
+    id BIGSERIAL PRIMARY KEY,
+    order_id VARCHAR(50) NOT NULL,
+    currency VARCHAR(10) NOT NULL,
+    receivable_count INTEGER NOT NULL DEFAULT 0, -- 收款明细数量
+    payable_count INTEGER NOT NULL DEFAULT 0,    -- 付款明细数量
+    total_receivable DECIMAL(15,2) NOT NULL DEFAULT 0, -- 收款总额
+    total_payable DECIMAL(15,2) NOT NULL DEFAULT 0     -- 付款总额
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_expense_entry_currency_totals ON expense_entry_currency_totals(order_id, currency);
+
 -- 5. 费用明细变更历史表(expense_entry_history)
 CREATE TABLE IF NOT EXISTS expense_entry_history (
     id BIGSERIAL PRIMARY KEY,
@@ -349,6 +362,7 @@ COMMENT ON TABLE expense_entries IS '费用明细表：记录所有外部收付
 COMMENT ON TABLE fee_service_constraints IS '费用科目服务约束表：定义费用科目的适用服务范围';
 COMMENT ON TABLE fee_supplier_constraints IS '费用科目供应商约束表：定义费用科目的适用供应商类型';
 COMMENT ON TABLE expense_entry_status IS '录费状态管理表：跟踪订单的录费进度和状态';
+COMMENT ON TABLE expense_entry_currency_totals IS '订单分币种费用汇总表：按币种维护收付款笔数与金额';
 COMMENT ON TABLE expense_entry_history IS '费用明细变更历史表：记录所有费用明细的变更历史';
 COMMENT ON TABLE suppliers IS '供应商主数据表：管理供应商基础信息';
 COMMENT ON TABLE fee_codes_extended IS '费用科目主数据扩展表：扩展费用科目的详细信息';
@@ -377,12 +391,9 @@ BEGIN
 END;
 $$ LANGUAGE plpgsql;
 
--- 创建触发器
+-- 录费汇总改由应用层增量维护（ExpenseEntrySummaryService），不再挂触发器逐行全量重算，
+-- 否则与应用层的增量累加叠加后会重复计数
 DROP TRIGGER IF EXISTS tr_expense_entries_status_update ON expense_entries;
-CREATE TRIGGER tr_expense_entries_status_update
-    AFTER INSERT OR UPDATE OR DELETE ON expense_entries
-    FOR EACH ROW
-    EXECUTE FUNCTION update_expense_entry_status();
 
 -- 完成表结构创建
 COMMIT;
\ No newline at end of file
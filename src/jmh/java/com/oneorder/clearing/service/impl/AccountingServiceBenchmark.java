@@ -0,0 +1,57 @@
+package com.oneorder.clearing.service.impl;
+
+import com.oneorder.clearing.entity.AccountingEntry;
+import com.oneorder.clearing.entity.ClearingResult;
+import com.oneorder.clearing.repository.AccountingEntryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 财务核算基准：会计分录生成与借贷平衡校验
+ *
+ * size 为清分结果/分录条数，用于对比现有基于 List 的实现与流式、原始数组等改写方案。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccountingServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private AccountingServiceImpl accountingService;
+    private List<ClearingResult> clearingResults;
+    private List<AccountingEntry> entries;
+
+    @Setup
+    public void setUp() {
+        accountingService = new AccountingServiceImpl(BenchmarkFixtures.repository(AccountingEntryRepository.class));
+        clearingResults = BenchmarkFixtures.balancedClearingResults(size, 11L);
+        entries = BenchmarkFixtures.managementEntries(size, 11L);
+    }
+
+    @Benchmark
+    public List<AccountingEntry> generateAccountingEntries() {
+        return accountingService.generateAccountingEntries(clearingResults);
+    }
+
+    @Benchmark
+    public boolean validateBalance() {
+        return accountingService.validateBalance(entries);
+    }
+}
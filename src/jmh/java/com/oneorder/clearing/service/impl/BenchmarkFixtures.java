@@ -0,0 +1,209 @@
+package com.oneorder.clearing.service.impl;
+
+import com.oneorder.clearing.entity.AccountingEntry;
+import com.oneorder.clearing.entity.ClearingResult;
+import com.oneorder.clearing.entity.ClearingRule;
+import com.oneorder.clearing.entity.Order;
+import com.oneorder.clearing.repository.AccountingEntryRepository;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * 基准测试数据夹具
+ *
+ * 订单字段分布参照生产数据：多币种、销售/交付/收款法人组合、毛利率 5%~45%。
+ * 仓库接口用动态代理替代，只响应被测方法实际调用的查询，避免引入数据库开销。
+ */
+final class BenchmarkFixtures {
+
+    static final String[] CURRENCIES = {"CNY", "CNY", "CNY", "USD", "USD", "EUR", "HKD"};
+    private static final String[] BUSINESS_TYPES = {"OCEAN", "OCEAN", "AIR", "TRUCK", "RAIL", "CUSTOMS"};
+    private static final String[] SALES_ENTITIES = {"ENTITY_CN_SALES", "ENTITY_HK_001", "ENTITY_SG_001"};
+    private static final String[] DELIVERY_ENTITIES = {"ENTITY_CN_OPERATION", "ENTITY_CN_NINGBO", "ENTITY_CN_SHENZHEN", "ENTITY_US_001"};
+    private static final String[] TRANSIT_ENTITIES = {"ENTITY_HK_TRANSIT", "ENTITY_SG_TRANSIT"};
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 生成指定清分模式的订单，同一 seed 生成结果一致
+     */
+    static List<Order> orders(int count, Order.ClearingMode clearingMode, long seed) {
+        Random random = new Random(seed);
+        List<Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Order order = new Order();
+            order.setOrderId(String.format("BENCH-%08d", i));
+            order.setOrderNo(String.format("BENCH-NO-%08d", i));
+            order.setCustomerId("CUSTOMER_" + (random.nextInt(5_000) + 1));
+            order.setSalesEntityId(pick(random, SALES_ENTITIES));
+            // 约 30% 订单无交付法人，20% 订单指定独立收款法人
+            order.setDeliveryEntityId(random.nextInt(10) < 7 ? pick(random, DELIVERY_ENTITIES) : null);
+            order.setPaymentEntityId(random.nextInt(10) < 2 ? pick(random, TRANSIT_ENTITIES) : null);
+
+            BigDecimal totalAmount = BigDecimal.valueOf(500 + random.nextInt(200_000), 0)
+                .add(BigDecimal.valueOf(random.nextInt(100), 2));
+            BigDecimal marginRate = BigDecimal.valueOf(5 + random.nextInt(41), 2);
+            order.setTotalAmount(totalAmount);
+            order.setTotalCost(totalAmount.subtract(totalAmount.multiply(marginRate)).setScale(2, RoundingMode.HALF_UP));
+            order.setCurrency(pick(random, CURRENCIES));
+            order.setOrderStatus(Order.OrderStatus.CONFIRMED);
+            order.setClearingStatus(Order.ClearingStatus.PENDING);
+            order.setClearingMode(clearingMode);
+            order.setOrderDate(LocalDateTime.of(2025, 1, 1, 0, 0).plusMinutes(random.nextInt(525_600)));
+            order.setBusinessType(pick(random, BUSINESS_TYPES));
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    /**
+     * 生成借贷平衡的清分结果：每单外收、外支、销售留利，以及一对内部分润往来，共 5 条；
+     * 数量按整单向上取整，保证任意前缀订单集合都借贷平衡
+     */
+    static List<ClearingResult> balancedClearingResults(int count, long seed) {
+        int orderCount = (count + 4) / 5;
+        List<ClearingResult> results = new ArrayList<>(orderCount * 5);
+        Random random = new Random(seed);
+        for (Order order : orders(orderCount, Order.ClearingMode.STAR, seed)) {
+            String deliveryEntity = order.getDeliveryEntityId() != null ? order.getDeliveryEntityId() : order.getSalesEntityId();
+            BigDecimal profit = order.getTotalAmount().subtract(order.getTotalCost());
+            BigDecimal share = profit.multiply(BigDecimal.valueOf(20 + random.nextInt(61), 2)).setScale(2, RoundingMode.HALF_UP);
+
+            results.add(clearingResult(order, order.getSalesEntityId(), order.getTotalAmount(),
+                ClearingResult.TransactionType.RECEIVABLE, ClearingResult.AccountType.EXTERNAL_RECEIVABLE));
+            results.add(clearingResult(order, deliveryEntity, order.getTotalCost(),
+                ClearingResult.TransactionType.PAYABLE, ClearingResult.AccountType.EXTERNAL_PAYABLE));
+            results.add(clearingResult(order, order.getSalesEntityId(), profit,
+                ClearingResult.TransactionType.PAYABLE, ClearingResult.AccountType.INTERNAL_PAYABLE));
+            results.add(clearingResult(order, deliveryEntity, share,
+                ClearingResult.TransactionType.RECEIVABLE, ClearingResult.AccountType.INTERNAL_RECEIVABLE));
+            results.add(clearingResult(order, order.getSalesEntityId(), share,
+                ClearingResult.TransactionType.PAYABLE, ClearingResult.AccountType.INTERNAL_PAYABLE));
+        }
+        return results;
+    }
+
+    /**
+     * 由平衡的清分结果生成管理口径分录
+     */
+    static List<AccountingEntry> managementEntries(int count, long seed) {
+        AccountingServiceImpl accountingService = new AccountingServiceImpl(repository(AccountingEntryRepository.class));
+        return accountingService.generateManagementEntries(balancedClearingResults(count, seed));
+    }
+
+    private static ClearingResult clearingResult(Order order, String entityId, BigDecimal amount,
+                                                 ClearingResult.TransactionType transactionType,
+                                                 ClearingResult.AccountType accountType) {
+        ClearingResult result = new ClearingResult();
+        result.setResultId(order.getOrderId() + "-" + accountType.name() + "-" + entityId);
+        result.setOrder(order);
+        result.setEntityId(entityId);
+        result.setAmount(amount);
+        result.setCurrency(order.getCurrency());
+        result.setTransactionType(transactionType);
+        result.setAccountType(accountType);
+        result.setClearingMode(order.getClearingMode());
+        result.setIsTransitRetention(false);
+        result.setManagementAmount(amount);
+        result.setLegalAmount(amount);
+        return result;
+    }
+
+    /**
+     * 生成指定数量的启用规则，均匀分布在借抬头/过账/净额/留存四类，条件按币种筛选
+     */
+    static List<ClearingRule> rules(int count, long seed) {
+        Random random = new Random(seed);
+        ClearingRule.RuleType[] types = {
+            ClearingRule.RuleType.TRANSIT_ENTITY, ClearingRule.RuleType.CROSS_BORDER,
+            ClearingRule.RuleType.NETTING, ClearingRule.RuleType.RETENTION
+        };
+        List<ClearingRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ClearingRule.RuleType type = types[i % types.length];
+            ClearingRule rule = new ClearingRule();
+            rule.setRuleId(String.format("RULE_%s_%04d", type.name(), i));
+            rule.setRuleName("基准规则" + i);
+            rule.setRuleType(type);
+            rule.setPriority(random.nextInt(100));
+            rule.setIsActive(true);
+            rule.setConditionExpression("order.currency == '" + pick(random, CURRENCIES) + "'");
+            rule.setRuleConfig(ruleConfig(type, i, random));
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static String ruleConfig(ClearingRule.RuleType type, int index, Random random) {
+        String transitEntity = pick(random, TRANSIT_ENTITIES);
+        switch (type) {
+            case TRANSIT_ENTITY:
+                return String.format("{\"transitEntityId\":\"%s\",\"retentionRate\":\"0.0%d\",\"applicableType\":\"%s\"}",
+                    transitEntity, 1 + random.nextInt(5), random.nextBoolean() ? "RECEIVABLE" : "PAYABLE");
+            case CROSS_BORDER:
+                // 手续费规则会为每条结果追加记录，只保留少量以贴近实际配置
+                return String.format("{\"transitEntityId\":\"%s\",\"enableNetting\":%s,\"handlingFee\":\"%s\"}",
+                    transitEntity, random.nextBoolean(), index % 50 == 1 ? "50.00" : "0");
+            case NETTING:
+                return String.format("{\"threshold\":\"%d\"}", 1_000 * (1 + random.nextInt(10)));
+            default:
+                return String.format("{\"targetEntityId\":\"%s\",\"managementRate\":\"1.00\",\"legalRate\":\"0.9%d\"}",
+                    pick(random, DELIVERY_ENTITIES), random.nextInt(10));
+        }
+    }
+
+    /**
+     * 按规则类型分组，模拟 findByRuleTypeAndIsActiveTrue 的查询结果
+     */
+    static Map<ClearingRule.RuleType, List<ClearingRule>> groupByType(List<ClearingRule> rules) {
+        Map<ClearingRule.RuleType, List<ClearingRule>> grouped = new EnumMap<>(ClearingRule.RuleType.class);
+        for (ClearingRule.RuleType type : ClearingRule.RuleType.values()) {
+            grouped.put(type, new ArrayList<>());
+        }
+        rules.forEach(rule -> grouped.get(rule.getRuleType()).add(rule));
+        grouped.replaceAll((type, list) -> Collections.unmodifiableList(list));
+        return grouped;
+    }
+
+    /**
+     * 创建仓库接口的桩实现，未声明的方法直接抛出异常，防止基准悄悄走到意外路径
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T repository(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer == null) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+                    }
+                    return answer.apply(args);
+            }
+        });
+    }
+
+    static <T> T repository(Class<T> type) {
+        return repository(type, Collections.emptyMap());
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,89 @@
+package com.oneorder.clearing.service.impl;
+
+import com.oneorder.clearing.entity.ClearingResult;
+import com.oneorder.clearing.entity.Order;
+import com.oneorder.clearing.repository.ClearingResultRepository;
+import com.oneorder.clearing.repository.LegalEntityRepository;
+import com.oneorder.clearing.service.RuleEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 清分引擎基准：星式/链式清分计算与清分结果校验
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ClearingEngineBenchmark {
+
+    private static final int ORDER_POOL_SIZE = 1024;
+
+    private ClearingEngineImpl clearingEngine;
+    private List<Order> starOrders;
+    private List<Order> chainOrders;
+    private List<List<ClearingResult>> starResults;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        clearingEngine = new ClearingEngineImpl(
+            BenchmarkFixtures.repository(RuleEngine.class),
+            BenchmarkFixtures.repository(LegalEntityRepository.class),
+            BenchmarkFixtures.repository(ClearingResultRepository.class));
+
+        starOrders = BenchmarkFixtures.orders(ORDER_POOL_SIZE, Order.ClearingMode.STAR, 42L);
+        chainOrders = BenchmarkFixtures.orders(ORDER_POOL_SIZE, Order.ClearingMode.CHAIN, 42L);
+
+        // 星式清分的原始输出借贷并不平衡，补一条净额记录使校验走完整路径而不是提前返回
+        starResults = new ArrayList<>(ORDER_POOL_SIZE);
+        for (Order order : starOrders) {
+            List<ClearingResult> results = clearingEngine.starModeClearing(order);
+            BigDecimal net = results.stream().map(ClearingResult::getAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+            ClearingResult balancing = new ClearingResult();
+            balancing.setOrder(order);
+            balancing.setEntityId(order.getSalesEntityId());
+            balancing.setAmount(net.negate());
+            balancing.setCurrency(order.getCurrency());
+            balancing.setTransactionType(ClearingResult.TransactionType.NETTING);
+            balancing.setAccountType(ClearingResult.AccountType.NETTING);
+            results.add(balancing);
+            starResults.add(results);
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (ORDER_POOL_SIZE - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public List<ClearingResult> starModeClearing() {
+        return clearingEngine.starModeClearing(starOrders.get(next()));
+    }
+
+    @Benchmark
+    public List<ClearingResult> chainModeClearing() {
+        return clearingEngine.chainModeClearing(chainOrders.get(next()));
+    }
+
+    @Benchmark
+    public boolean validateClearingResults() {
+        return clearingEngine.validateClearingResults(starResults.get(next()));
+    }
+}
@@ -0,0 +1,64 @@
+package com.oneorder.clearing.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oneorder.clearing.dto.ManagementReportDTO;
+import com.oneorder.clearing.entity.AccountingEntry;
+import com.oneorder.clearing.repository.AccountingEntryRepository;
+import com.oneorder.clearing.repository.ClearingResultRepository;
+import com.oneorder.clearing.repository.LegalEntityRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 管理报表内存聚合基准：汇总与统计两段聚合逻辑，不含分录查询
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ReportServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private ReportServiceImpl reportService;
+    private List<AccountingEntry> entries;
+
+    @Setup
+    public void setUp() {
+        reportService = new ReportServiceImpl(
+            BenchmarkFixtures.repository(AccountingEntryRepository.class),
+            BenchmarkFixtures.repository(ClearingResultRepository.class),
+            BenchmarkFixtures.repository(LegalEntityRepository.class),
+            new ObjectMapper());
+        entries = BenchmarkFixtures.managementEntries(size, 13L);
+    }
+
+    @Benchmark
+    public ManagementReportDTO generateManagementSummary() {
+        ManagementReportDTO report = new ManagementReportDTO();
+        reportService.generateManagementSummary(report, entries);
+        return report;
+    }
+
+    @Benchmark
+    public ManagementReportDTO generateManagementStatistics() {
+        ManagementReportDTO report = new ManagementReportDTO();
+        reportService.generateManagementStatistics(report, entries);
+        return report;
+    }
+}
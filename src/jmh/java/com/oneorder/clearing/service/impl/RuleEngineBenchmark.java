@@ -0,0 +1,74 @@
+package com.oneorder.clearing.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oneorder.clearing.entity.ClearingResult;
+import com.oneorder.clearing.entity.ClearingRule;
+import com.oneorder.clearing.entity.Order;
+import com.oneorder.clearing.repository.ClearingResultRepository;
+import com.oneorder.clearing.repository.ClearingRuleRepository;
+import com.oneorder.clearing.repository.LegalEntityRepository;
+import com.oneorder.clearing.service.RuleEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 规则引擎基准：不同启用规则数量下的 applyRules
+ *
+ * applyRules 会原地修改传入的清分结果（借抬头留存、管法口径），
+ * 因此每次调用都先用星式清分生成新的输入，单独的星式清分耗时见 {@link ClearingEngineBenchmark}。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RuleEngineBenchmark {
+
+    private static final int ORDER_POOL_SIZE = 1024;
+
+    @Param({"0", "10", "500"})
+    public int ruleCount;
+
+    private RuleEngineImpl ruleEngine;
+    private ClearingEngineImpl clearingEngine;
+    private List<Order> orders;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        Map<ClearingRule.RuleType, List<ClearingRule>> rulesByType =
+            BenchmarkFixtures.groupByType(BenchmarkFixtures.rules(ruleCount, 7L));
+
+        ClearingRuleRepository ruleRepository = BenchmarkFixtures.repository(ClearingRuleRepository.class,
+            Map.of("findByRuleTypeAndIsActiveTrue", args -> rulesByType.get((ClearingRule.RuleType) args[0])));
+
+        ruleEngine = new RuleEngineImpl(ruleRepository,
+            BenchmarkFixtures.repository(LegalEntityRepository.class), new ObjectMapper());
+        clearingEngine = new ClearingEngineImpl(
+            BenchmarkFixtures.repository(RuleEngine.class),
+            BenchmarkFixtures.repository(LegalEntityRepository.class),
+            BenchmarkFixtures.repository(ClearingResultRepository.class));
+        orders = BenchmarkFixtures.orders(ORDER_POOL_SIZE, Order.ClearingMode.STAR, 42L);
+    }
+
+    @Benchmark
+    public List<ClearingResult> applyRules() {
+        cursor = (cursor + 1) & (ORDER_POOL_SIZE - 1);
+        Order order = orders.get(cursor);
+        return ruleEngine.applyRules(order, clearingEngine.starModeClearing(order));
+    }
+}
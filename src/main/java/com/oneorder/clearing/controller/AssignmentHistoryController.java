@@ -1,7 +1,13 @@
 package com.oneorder.clearing.controller;
 
 import com.oneorder.clearing.entity.AssignmentHistory;
+import com.oneorder.clearing.entity.ServiceAssignmentNotification;
 import com.oneorder.clearing.repository.AssignmentHistoryRepository;
+import com.oneorder.clearing.repository.ServiceAssignmentNotificationRepository;
+import com.oneorder.clearing.service.AssignmentHistoryStatistics;
+import com.oneorder.clearing.service.MonthlyPartitionManager;
+import com.oneorder.clearing.service.PartitionArchiveStore;
+import com.oneorder.clearing.service.ServiceAssignmentBatchService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -11,10 +17,15 @@ import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * 派单历史Controller
@@ -27,6 +38,21 @@ public class AssignmentHistoryController {
     @Autowired
     private AssignmentHistoryRepository assignmentHistoryRepository;
     
+    @Autowired
+    private ServiceAssignmentBatchService assignmentBatchService;
+    
+    @Autowired
+    private AssignmentHistoryStatistics assignmentHistoryStatistics;
+    
+    @Autowired
+    private ServiceAssignmentNotificationRepository notificationRepository;
+    
+    @Autowired
+    private MonthlyPartitionManager partitionManager;
+    
+    @Autowired
+    private PartitionArchiveStore archiveStore;
+    
     /**
      * 保存派单历史记录
      */
@@ -99,6 +125,7 @@ public class AssignmentHistoryController {
             
             // 保存到数据库
             AssignmentHistory savedHistory = assignmentHistoryRepository.save(history);
+            assignmentHistoryStatistics.record(Collections.singletonList(savedHistory));
             
             response.put("success", true);
             response.put("message", "派单历史保存成功");
@@ -133,6 +160,18 @@ public class AssignmentHistoryController {
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> results = (List<Map<String, Object>>) request.get("results");
             
+            // 派单时间整批相同，只解析一次
+            LocalDateTime assignmentTime = LocalDateTime.now();
+            String assignmentTimeStr = (String) request.get("assignmentTime");
+            if (assignmentTimeStr != null && !assignmentTimeStr.isEmpty()) {
+                try {
+                    assignmentTime = LocalDateTime.parse(assignmentTimeStr, DateTimeFormatter.ISO_DATE_TIME);
+                } catch (Exception e) {
+                    // 格式不合法时使用当前时间
+                }
+            }
+            
+            List<AssignmentHistory> histories = new ArrayList<>();
             if (results != null && !results.isEmpty()) {
                 for (Map<String, Object> result : results) {
                     AssignmentHistory history = new AssignmentHistory();
@@ -167,26 +206,17 @@ public class AssignmentHistoryController {
                     history.setStatus((String) result.get("status"));
                     history.setReason((String) result.get("reason"));
                     
-                    // 设置派单时间
-                    String assignmentTimeStr = (String) request.get("assignmentTime");
-                    if (assignmentTimeStr != null && !assignmentTimeStr.isEmpty()) {
-                        try {
-                            history.setAssignmentTime(LocalDateTime.parse(assignmentTimeStr, DateTimeFormatter.ISO_DATE_TIME));
-                        } catch (Exception e) {
-                            history.setAssignmentTime(LocalDateTime.now());
-                        }
-                    } else {
-                        history.setAssignmentTime(LocalDateTime.now());
-                    }
-                    
-                    // 保存单条记录
-                    assignmentHistoryRepository.save(history);
+                    history.setAssignmentTime(assignmentTime);
+                    histories.add(history);
                 }
             }
             
+            // 整批一次 JDBC 批量插入
+            int savedCount = assignmentBatchService.saveHistories(histories);
+            
             response.put("success", true);
             response.put("message", "批量派单历史保存成功");
-            response.put("savedCount", results != null ? results.size() : 0);
+            response.put("savedCount", savedCount);
             
             return ResponseEntity.ok(response);
             
@@ -198,7 +228,7 @@ public class AssignmentHistoryController {
     }
     
     /**
-     * 查询最近的派单历史记录
+     * 查询最近的派单历史记录（只查最近几个月的分区）
      */
     @GetMapping("/recent")
     public ResponseEntity<Map<String, Object>> getRecentAssignments(
@@ -209,9 +239,11 @@ public class AssignmentHistoryController {
         
         try {
             Pageable pageable = PageRequest.of(page, size);
-            Page<AssignmentHistory> historyPage = assignmentHistoryRepository.findRecentAssignments(pageable);
+            LocalDateTime since = partitionManager.getRecentSince();
+            Page<AssignmentHistory> historyPage = assignmentHistoryRepository.findRecentAssignmentsSince(since, pageable);
             
             response.put("success", true);
+            response.put("since", since.toString());
             response.put("data", historyPage.getContent());
             response.put("totalElements", historyPage.getTotalElements());
             response.put("totalPages", historyPage.getTotalPages());
@@ -228,16 +260,23 @@ public class AssignmentHistoryController {
     }
     
     /**
-     * 根据订单ID查询派单历史
+     * 根据订单ID查询派单历史：默认查保留期内的热数据，可用 months 只查最近几个月；已归档的记录走 /archive 审计查询
      */
     @GetMapping("/by-order/{orderId}")
-    public ResponseEntity<Map<String, Object>> getAssignmentsByOrderId(@PathVariable String orderId) {
+    public ResponseEntity<Map<String, Object>> getAssignmentsByOrderId(
+            @PathVariable String orderId,
+            @RequestParam(required = false) Integer months) {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            List<AssignmentHistory> histories = assignmentHistoryRepository.findByOrderIdOrderByAssignmentTimeDesc(orderId);
+            LocalDateTime since = months != null && months > 0
+                    ? LocalDateTime.now().minusMonths(months)
+                    : partitionManager.getHotSince();
+            List<AssignmentHistory> histories = assignmentHistoryRepository
+                    .findByOrderIdAndAssignmentTimeGreaterThanEqualOrderByAssignmentTimeDesc(orderId, since);
             
             response.put("success", true);
+            response.put("since", since.toString());
             response.put("data", histories);
             response.put("count", histories.size());
             
@@ -281,42 +320,117 @@ public class AssignmentHistoryController {
     }
     
     /**
-     * 获取派单统计信息
+     * 获取派单统计信息（内存计数，写入时累加并定期校准）
      */
     @GetMapping("/statistics")
     public ResponseEntity<Map<String, Object>> getAssignmentStatistics() {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            // 统计派单类型分布
-            List<Object[]> typeStats = assignmentHistoryRepository.countByAssignmentType();
-            Map<String, Long> typeDistribution = new HashMap<>();
-            for (Object[] stat : typeStats) {
-                typeDistribution.put((String) stat[0], (Long) stat[1]);
-            }
+            response.put("success", true);
+            response.put("typeDistribution", assignmentHistoryStatistics.getTypeDistribution());
+            response.put("statusDistribution", assignmentHistoryStatistics.getStatusDistribution());
+            response.put("todayAssignmentsCount", assignmentHistoryStatistics.getTodayCount());
+            response.put("totalAssignments", assignmentHistoryStatistics.getTotal());
+            response.put("dailyCounts", assignmentHistoryStatistics.getDailyCounts(7));
+            response.put("reconciledTime", assignmentHistoryStatistics.getReconciledTime());
             
-            // 统计成功失败分布
-            List<Object[]> statusStats = assignmentHistoryRepository.countByStatus();
-            Map<String, Long> statusDistribution = new HashMap<>();
-            for (Object[] stat : statusStats) {
-                statusDistribution.put((String) stat[0], (Long) stat[1]);
-            }
+            return ResponseEntity.ok(response);
             
-            // 获取今日派单记录
-            List<AssignmentHistory> todayAssignments = assignmentHistoryRepository.findTodayAssignments();
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "获取派单统计失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+    
+    /**
+     * 用数据库分组统计校准内存计数
+     */
+    @PostMapping("/statistics/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileAssignmentStatistics() {
+        assignmentHistoryStatistics.reconcile();
+        return getAssignmentStatistics();
+    }
+    
+    /**
+     * 订单派单审计：合并数据库中的派单历史、派单通知和已归档月份的记录。
+     * 归档部分逐个解压扫描月份文件，较慢；fromMonth/toMonth（yyyy-MM）缺省时扫描全部已归档月份
+     */
+    @GetMapping("/audit/by-order/{orderId}")
+    public ResponseEntity<Map<String, Object>> auditAssignmentsByOrderId(
+            @PathVariable String orderId,
+            @RequestParam(required = false) String fromMonth,
+            @RequestParam(required = false) String toMonth) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            YearMonth from = fromMonth != null ? YearMonth.parse(fromMonth) : null;
+            YearMonth to = toMonth != null ? YearMonth.parse(toMonth) : partitionManager.getArchiveCutoff().minusMonths(1);
+            
+            List<AssignmentHistory> histories = assignmentHistoryRepository.findByOrderIdOrderByAssignmentTimeDesc(orderId);
+            Set<Object> historyIds = histories.stream().map(AssignmentHistory::getId).collect(Collectors.toSet());
+            List<Map<String, Object>> archivedHistories = scanArchive(
+                    MonthlyPartitionManager.ASSIGNMENT_HISTORY, from, to, orderId, "id", historyIds);
+            
+            List<ServiceAssignmentNotification> notifications = notificationRepository.findByOrderIdOrderBySentTimeDesc(orderId);
+            Set<Object> notificationIds = notifications.stream()
+                    .map(ServiceAssignmentNotification::getNotificationId).collect(Collectors.toSet());
+            List<Map<String, Object>> archivedNotifications = scanArchive(
+                    MonthlyPartitionManager.ASSIGNMENT_NOTIFICATION, from, to, orderId, "notification_id", notificationIds);
             
             response.put("success", true);
-            response.put("typeDistribution", typeDistribution);
-            response.put("statusDistribution", statusDistribution);
-            response.put("todayAssignmentsCount", todayAssignments.size());
-            response.put("totalAssignments", assignmentHistoryRepository.count());
+            response.put("data", histories);
+            response.put("archived", archivedHistories);
+            response.put("notifications", notifications);
+            response.put("archivedNotifications", archivedNotifications);
+            response.put("count", histories.size() + archivedHistories.size());
             
             return ResponseEntity.ok(response);
             
         } catch (Exception e) {
             response.put("success", false);
-            response.put("message", "获取派单统计失败: " + e.getMessage());
+            response.put("message", "审计查询订单派单记录失败: " + e.getMessage());
             return ResponseEntity.badRequest().body(response);
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * 分区与归档状态
+     */
+    @GetMapping("/archive/stats")
+    public ResponseEntity<Map<String, Object>> getArchiveStats() {
+        Map<String, Object> response = new HashMap<>(partitionManager.getStats());
+        response.put("success", true);
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 立即预建分区并归档过期分区
+     */
+    @PostMapping("/archive/maintain")
+    public ResponseEntity<Map<String, Object>> maintainPartitions() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("results", partitionManager.maintain());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 扫描归档文件中该订单的记录，跳过数据库中仍存在的同ID记录（归档与删除分区之间中断时两边都有）
+     */
+    private List<Map<String, Object>> scanArchive(String table, YearMonth from, YearMonth to, String orderId,
+                                                  String idColumn, Set<Object> hotIds) {
+        if (from == null) {
+            List<Map<String, Object>> manifests = archiveStore.manifests(table);
+            if (manifests.isEmpty()) {
+                return new ArrayList<>();
+            }
+            from = YearMonth.parse(String.valueOf(manifests.get(0).get("month")));
+        }
+        Set<String> ids = hotIds.stream().map(String::valueOf).collect(Collectors.toSet());
+        return archiveStore.scan(table, from, to, "order_id", orderId).stream()
+                .filter(row -> !ids.contains(String.valueOf(row.get(idColumn))))
+                .collect(Collectors.toList());
+    }
+}
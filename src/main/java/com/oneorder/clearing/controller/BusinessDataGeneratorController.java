@@ -1,5 +1,6 @@
 package com.oneorder.clearing.controller;
 
+import com.oneorder.clearing.service.ScaleDataGeneratorService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -22,6 +23,9 @@ public class BusinessDataGeneratorController {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ScaleDataGeneratorService scaleDataGeneratorService;
+
     @PostMapping("/generate-complete-business-data")
     public ResponseEntity<Map<String, Object>> generateCompleteBusinessData() {
         try {
@@ -66,6 +70,52 @@ public class BusinessDataGeneratorController {
         }
     }
     
+    /**
+     * 按参数批量生成压测数据（订单、派单、费用明细、清分结果、会计分录、派单历史）
+     */
+    @PostMapping("/generate-scale-data")
+    public ResponseEntity<Map<String, Object>> generateScaleData(
+            @RequestBody(required = false) ScaleDataGeneratorService.GenerationSpec spec) {
+        try {
+            ScaleDataGeneratorService.GenerationReport report = scaleDataGeneratorService.generate(
+                spec != null ? spec : new ScaleDataGeneratorService.GenerationSpec());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", "压测数据生成成功");
+            response.put("data", report);
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("code", 500);
+            errorResponse.put("message", "压测数据生成失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
+    /**
+     * 清除指定批次标识的压测数据
+     */
+    @DeleteMapping("/scale-data/{runTag}")
+    public ResponseEntity<Map<String, Object>> purgeScaleData(@PathVariable String runTag) {
+        try {
+            int deleted = scaleDataGeneratorService.purge(runTag);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("message", "压测数据清除成功");
+            response.put("data", Map.of("runTag", runTag, "deletedRows", deleted));
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("code", 500);
+            errorResponse.put("message", "压测数据清除失败: " + e.getMessage());
+            return ResponseEntity.status(500).body(errorResponse);
+        }
+    }
+
     private int generateOrders() {
         // 生成10个不同类型的货运订单，添加sales_entity_id
         String[] orderSqls = {
@@ -6,6 +6,10 @@ import com.oneorder.clearing.entity.ClearingResult;
 import com.oneorder.clearing.entity.Order;
 import com.oneorder.clearing.service.ClearingEngine;
 import com.oneorder.clearing.service.AccountingService;
+import com.oneorder.clearing.service.InternalProtocolIndex;
+import com.oneorder.clearing.service.OperatorLoadScheduler;
+import com.oneorder.clearing.service.OperatorTaskInbox;
+import com.oneorder.clearing.service.SlaTimerWheel;
 import com.oneorder.clearing.dto.VoucherRequest;
 import com.oneorder.clearing.dto.VoucherResponse;
 import com.oneorder.clearing.entity.TransitEntity;
@@ -53,7 +57,11 @@ public class ClearingController {
     private final StaffRepository staffRepository;
     private final DepartmentRepository departmentRepository;
     private final InternalProtocolRepository internalProtocolRepository;
+    private final InternalProtocolIndex internalProtocolIndex;
     private final OrderServiceRepository orderServiceRepository;
+    private final OperatorLoadScheduler operatorLoadScheduler;
+    private final OperatorTaskInbox operatorTaskInbox;
+    private final SlaTimerWheel slaTimerWheel;
     
     @Operation(summary = "执行清分", description = "对指定订单执行清分计算")
     @PostMapping("/execute")
@@ -268,7 +276,7 @@ public class ClearingController {
                 salesDepartmentId, operationDepartmentId, serviceCode, businessType);
         
         try {
-            List<InternalProtocol> protocols = internalProtocolRepository
+            List<InternalProtocol> protocols = internalProtocolIndex
                 .findApplicableProtocols(salesDepartmentId, operationDepartmentId, serviceCode, businessType);
             
             List<InternalProtocolDTO> result = protocols.stream()
@@ -323,6 +331,9 @@ public class ClearingController {
             orderService.setUpdatedBy("SYSTEM");
             
             OrderService saved = orderServiceRepository.save(orderService);
+            operatorLoadScheduler.onTaskChanged(serviceCode, null, null, operationStaffId, saved.getStatus());
+            operatorTaskInbox.onTaskChanged(saved);
+            slaTimerWheel.onTaskChanged(saved);
             
             result.put("success", true);
             result.put("message", "服务派单成功");
@@ -371,6 +382,8 @@ public class ClearingController {
             orderService.confirmProtocol();
             orderService.setUpdatedBy(operationStaffId);
             OrderService saved = orderServiceRepository.save(orderService);
+            operatorTaskInbox.onTaskChanged(saved);
+            slaTimerWheel.onTaskChanged(saved);
             
             result.put("success", true);
             result.put("message", "协议确认成功");
@@ -394,7 +407,7 @@ public class ClearingController {
         log.info("查询任务列表 - 操作员: {}", operationStaffId);
         
         try {
-            List<OrderService> services = orderServiceRepository.findByOperationStaffId(operationStaffId);
+            List<OrderService> services = operatorTaskInbox.tasks(operationStaffId, null);
             
             List<OrderServiceDTO> result = services.stream()
                 .map(this::convertToOrderServiceDTO)
@@ -413,7 +426,7 @@ public class ClearingController {
         log.info("查询所有有效协议");
         
         try {
-            List<InternalProtocol> protocols = internalProtocolRepository.findAllActive();
+            List<InternalProtocol> protocols = internalProtocolIndex.findAllEffectiveProtocols();
             
             List<InternalProtocolDTO> result = protocols.stream()
                 .map(this::convertToDTO)
@@ -505,6 +518,8 @@ public class ClearingController {
                 .filter(os -> serviceCode.equals(os.getServiceCode()))
                 .findFirst()
                 .orElse(new OrderService());
+            String previousStaffId = orderService.getOperationStaffId();
+            OrderService.ServiceStatus previousStatus = orderService.getStatus();
                 
             orderService.setOrderId(orderId);
             orderService.setServiceCode(serviceCode);
@@ -514,6 +529,10 @@ public class ClearingController {
             orderService.setAssignedTime(LocalDateTime.now());
             
             orderServiceRepository.save(orderService);
+            operatorLoadScheduler.onTaskChanged(serviceCode, previousStaffId, previousStatus,
+                assignedStaffId, orderService.getStatus());
+            operatorTaskInbox.onTaskChanged(orderService);
+            slaTimerWheel.onTaskChanged(orderService);
             
             result.put("success", true);
             result.put("message", "派单成功");
@@ -546,7 +565,9 @@ public class ClearingController {
                     
                     service.setStatus(OrderService.ServiceStatus.PROTOCOL_CONFIRMED);
                     service.setProtocolConfirmedTime(LocalDateTime.now());
-                    orderServiceRepository.save(service);
+                    OrderService saved = orderServiceRepository.save(service);
+                    operatorTaskInbox.onTaskChanged(saved);
+                    slaTimerWheel.onTaskChanged(saved);
                 }
             }
             
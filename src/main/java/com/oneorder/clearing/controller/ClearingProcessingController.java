@@ -1,5 +1,11 @@
 package com.oneorder.clearing.controller;
 
+import com.oneorder.clearing.service.ClearingBatchScheduler;
+import com.oneorder.clearing.service.ClearingDetailExecutor;
+import com.oneorder.clearing.service.ClearingExecutionService;
+import com.oneorder.clearing.service.ClearingInstructionStore;
+import com.oneorder.clearing.service.ExecutionLogService;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
@@ -7,10 +13,10 @@ import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 清分处理控制器
@@ -26,18 +32,29 @@ public class ClearingProcessingController {
     
     private static final Logger logger = LoggerFactory.getLogger(ClearingProcessingController.class);
     
-    // 模拟数据存储
-    private static final Map<String, Map<String, Object>> clearingInstructions = new HashMap<>();
-    private static final Map<String, List<Map<String, Object>>> clearingDetails = new HashMap<>();
-    private static final Map<String, Map<String, Object>> clearingBatches = new HashMap<>();
-    private static final List<Map<String, Object>> clearingRules = new ArrayList<>();
-    private static final List<Map<String, Object>> executionLogs = new ArrayList<>();
+    // 清分规则为只读配置
+    private static final List<Map<String, Object>> clearingRules = initializeClearingRules();
     
-    static {
-        // 初始化清分规则数据
-        initializeClearingRules();
-        // 初始化批次数据
-        initializeClearingBatches();
+    private final ClearingInstructionStore instructionStore;
+    
+    private final ClearingDetailExecutor detailExecutor;
+    
+    private final ClearingExecutionService executionService;
+    
+    private final ClearingBatchScheduler batchScheduler;
+    
+    private final ExecutionLogService executionLogService;
+    
+    public ClearingProcessingController(ClearingInstructionStore instructionStore,
+                                        ClearingDetailExecutor detailExecutor,
+                                        ClearingExecutionService executionService,
+                                        ClearingBatchScheduler batchScheduler,
+                                        ExecutionLogService executionLogService) {
+        this.instructionStore = instructionStore;
+        this.detailExecutor = detailExecutor;
+        this.executionService = executionService;
+        this.batchScheduler = batchScheduler;
+        this.executionLogService = executionLogService;
     }
     
     /**
@@ -54,19 +71,17 @@ public class ClearingProcessingController {
             logger.info("生成清分指令: orderId={}, calculationId={}, clearingMode={}", orderId, calculationId, clearingMode);
             
             // 检查是否已存在清分指令
-            boolean exists = clearingInstructions.values().stream()
-                .anyMatch(instruction -> orderId.equals(instruction.get("orderId")) && 
-                         calculationId.equals(instruction.get("calculationId")));
-            
-            if (exists) {
-                Map<String, Object> response = new HashMap<>();
-                response.put("code", 400);
-                response.put("message", "该订单的分润计算批次已存在清分指令");
-                return ResponseEntity.ok(response);
+            if (instructionStore.exists(orderId, calculationId)) {
+                return duplicateInstructionResponse();
             }
             
-            // 生成清分指令
-            Map<String, Object> result = performInstructionGeneration(orderId, calculationId, clearingMode, createdBy);
+            // 生成清分指令，并发重复生成时由唯一索引拦截
+            Map<String, Object> result;
+            try {
+                result = performInstructionGeneration(orderId, calculationId, clearingMode, createdBy);
+            } catch (DuplicateKeyException e) {
+                return duplicateInstructionResponse();
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -93,10 +108,7 @@ public class ClearingProcessingController {
         try {
             logger.info("查询清分指令: {}", orderId);
             
-            Map<String, Object> instruction = clearingInstructions.values().stream()
-                .filter(inst -> orderId.equals(inst.get("orderId")))
-                .findFirst()
-                .orElse(null);
+            Map<String, Object> instruction = instructionStore.findByOrder(orderId).orElse(null);
             
             if (instruction == null) {
                 Map<String, Object> response = new HashMap<>();
@@ -107,11 +119,11 @@ public class ClearingProcessingController {
             
             // 获取清分明细
             String instructionId = (String) instruction.get("instructionId");
-            List<Map<String, Object>> details = clearingDetails.get(instructionId);
+            List<Map<String, Object>> details = instructionStore.findDetails(instructionId);
             
             Map<String, Object> data = new HashMap<>();
             data.put("instruction", instruction);
-            data.put("details", details != null ? details : new ArrayList<>());
+            data.put("details", details);
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -138,7 +150,7 @@ public class ClearingProcessingController {
         try {
             logger.info("执行清分指令: instructionId={}, dryRun={}", instructionId, dryRun);
             
-            Map<String, Object> instruction = clearingInstructions.get(instructionId);
+            Map<String, Object> instruction = instructionStore.findInstruction(instructionId).orElse(null);
             if (instruction == null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("code", 404);
@@ -155,7 +167,13 @@ public class ClearingProcessingController {
             }
             
             // 执行清分指令
-            Map<String, Object> result = performInstructionExecution(instructionId, dryRun);
+            Map<String, Object> result = executionService.performInstructionExecution(instruction, dryRun);
+            if (result == null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("code", 400);
+                response.put("message", "清分指令正在执行或已执行完成");
+                return ResponseEntity.ok(response);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -185,12 +203,7 @@ public class ClearingProcessingController {
         try {
             logger.info("查询清分批次: batchType={}, batchStatus={}, limit={}", batchType, batchStatus, limit);
             
-            List<Map<String, Object>> batches = clearingBatches.values().stream()
-                .filter(batch -> batchType == null || batchType.equals(batch.get("batchType")))
-                .filter(batch -> batchStatus == null || batchStatus.equals(batch.get("batchStatus")))
-                .sorted((a, b) -> ((LocalDateTime) b.get("createdTime")).compareTo((LocalDateTime) a.get("createdTime")))
-                .limit(limit)
-                .collect(Collectors.toList());
+            List<Map<String, Object>> batches = instructionStore.listBatches(batchType, batchStatus, limit);
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -217,7 +230,7 @@ public class ClearingProcessingController {
         try {
             logger.info("执行批次清分: batchId={}, dryRun={}", batchId, dryRun);
             
-            Map<String, Object> batch = clearingBatches.get(batchId);
+            Map<String, Object> batch = instructionStore.findBatch(batchId).orElse(null);
             if (batch == null) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("code", 404);
@@ -226,7 +239,13 @@ public class ClearingProcessingController {
             }
             
             // 执行批次清分
-            Map<String, Object> result = performBatchExecution(batchId, dryRun);
+            Map<String, Object> result = executionService.performBatchExecution(batch, dryRun);
+            if (result == null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("code", 400);
+                response.put("message", "清分批次正在执行");
+                return ResponseEntity.ok(response);
+            }
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -300,10 +319,7 @@ public class ClearingProcessingController {
     @GetMapping("/logs/{instructionId}")
     public ResponseEntity<Map<String, Object>> getExecutionLogs(@PathVariable String instructionId) {
         try {
-            List<Map<String, Object>> logs = executionLogs.stream()
-                .filter(log -> instructionId.equals(log.get("instructionId")))
-                .sorted((a, b) -> ((LocalDateTime) b.get("createdTime")).compareTo((LocalDateTime) a.get("createdTime")))
-                .collect(Collectors.toList());
+            List<Map<String, Object>> logs = executionLogService.findClearingByInstruction(instructionId);
             
             Map<String, Object> response = new HashMap<>();
             response.put("code", 200);
@@ -320,8 +336,55 @@ public class ClearingProcessingController {
         }
     }
     
+    /**
+     * 获取批次执行日志
+     */
+    @GetMapping("/logs/batch/{batchId}")
+    public ResponseEntity<Map<String, Object>> getBatchExecutionLogs(@PathVariable String batchId) {
+        try {
+            List<Map<String, Object>> logs = executionLogService.findClearingByBatch(batchId);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("data", logs);
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            logger.error("获取批次执行日志失败", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("message", "获取批次执行日志失败: " + e.getMessage());
+            return ResponseEntity.ok(response);
+        }
+    }
+    
+    /**
+     * 指令存储和明细执行器的运行状态
+     */
+    @GetMapping("/runtime-stats")
+    public ResponseEntity<Map<String, Object>> getRuntimeStats() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("instructionStore", instructionStore.getStats());
+        data.put("detailExecutor", detailExecutor.getStats());
+        data.put("batchScheduler", batchScheduler.getStats());
+        data.put("executionLog", executionLogService.getStats());
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("data", data);
+        return ResponseEntity.ok(response);
+    }
+    
     // ===== 私有方法 =====
     
+    private ResponseEntity<Map<String, Object>> duplicateInstructionResponse() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 400);
+        response.put("message", "该订单的分润计算批次已存在清分指令");
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * 执行清分指令生成
      */
@@ -331,8 +394,17 @@ public class ClearingProcessingController {
         // 生成指令ID
         String instructionId = "CLEARING_" + orderId + "_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
         
-        // 获取或创建批次
-        String batchId = getOrCreateDailyBatch(createdBy);
+        // 归入当前开放的批次，生成结束后释放，批次关闭后由调度自动执行
+        String batchId = batchScheduler.acquire(createdBy);
+        try {
+            return generateInstruction(instructionId, batchId, orderId, calculationId, clearingMode, createdBy);
+        } finally {
+            batchScheduler.release(batchId);
+        }
+    }
+    
+    private Map<String, Object> generateInstruction(String instructionId, String batchId, String orderId,
+            String calculationId, String clearingMode, String createdBy) {
         
         // 模拟获取分润计算结果（实际应从profit_sharing表查询）
         List<Map<String, Object>> profitSharingResults = getMockProfitSharingResults(orderId, calculationId);
@@ -357,14 +429,12 @@ public class ClearingProcessingController {
         instruction.put("createdBy", createdBy);
         instruction.put("createdTime", LocalDateTime.now());
         
-        clearingInstructions.put(instructionId, instruction);
-        
-        // 生成清分明细
+        // 生成清分明细，与指令一起写入
         List<Map<String, Object>> details = generateClearingDetails(instructionId, profitSharingResults, clearingMode);
-        clearingDetails.put(instructionId, details);
+        instructionStore.create(instruction, details);
         
         // 记录日志
-        addExecutionLog(instructionId, batchId, "INFO", "GENERATION", "清分指令生成完成，明细数量: " + details.size());
+        executionService.addExecutionLog(instructionId, batchId, "INFO", "GENERATION", "清分指令生成完成，明细数量: " + details.size());
         
         return Map.of(
             "instructionId", instructionId,
@@ -468,238 +538,19 @@ public class ClearingProcessingController {
         return details;
     }
     
-    /**
-     * 执行清分指令
-     */
-    private Map<String, Object> performInstructionExecution(String instructionId, boolean dryRun) {
-        Map<String, Object> instruction = clearingInstructions.get(instructionId);
-        List<Map<String, Object>> details = clearingDetails.get(instructionId);
-        
-        if (!dryRun) {
-            // 更新指令状态为执行中
-            instruction.put("instructionStatus", "PROCESSING");
-            instruction.put("executedBy", "system");
-            instruction.put("executedTime", LocalDateTime.now());
-        }
-        
-        String batchId = (String) instruction.get("clearingBatchId");
-        addExecutionLog(instructionId, batchId, "INFO", "EXECUTION", 
-            dryRun ? "开始清分试算" : "开始执行清分指令");
-        
-        List<Map<String, Object>> executionResults = new ArrayList<>();
-        int successCount = 0;
-        int failureCount = 0;
-        BigDecimal totalExecutedAmount = BigDecimal.ZERO;
-        
-        // 按执行顺序排序明细
-        details.sort(Comparator.comparing(d -> (Integer) d.get("executionOrder")));
-        
-        for (Map<String, Object> detail : details) {
-            try {
-                // 模拟执行清分明细
-                Map<String, Object> result = executeClearingDetail(detail, dryRun);
-                executionResults.add(result);
-                
-                if ("SUCCESS".equals(result.get("status"))) {
-                    successCount++;
-                    BigDecimal amount = (BigDecimal) detail.get("detailAmount");
-                    totalExecutedAmount = totalExecutedAmount.add(amount);
-                    
-                    if (!dryRun) {
-                        detail.put("detailStatus", "COMPLETED");
-                        detail.put("executedTime", LocalDateTime.now());
-                    }
-                } else {
-                    failureCount++;
-                    if (!dryRun) {
-                        detail.put("detailStatus", "FAILED");
-                    }
-                }
-                
-            } catch (Exception e) {
-                failureCount++;
-                addExecutionLog(instructionId, batchId, "ERROR", "EXECUTION", 
-                    "明细执行失败: " + e.getMessage());
-            }
-        }
-        
-        // 更新指令状态
-        if (!dryRun) {
-            String finalStatus = (failureCount == 0) ? "COMPLETED" : 
-                                (successCount > 0) ? "PARTIALLY_COMPLETED" : "FAILED";
-            instruction.put("instructionStatus", finalStatus);
-        }
-        
-        BigDecimal successRate = BigDecimal.valueOf(successCount)
-            .divide(BigDecimal.valueOf(details.size()), 4, RoundingMode.HALF_UP)
-            .multiply(BigDecimal.valueOf(100));
-        
-        addExecutionLog(instructionId, batchId, "INFO", "EXECUTION", 
-            String.format("%s完成，成功%d笔，失败%d笔，成功率%.2f%%", 
-                dryRun ? "试算" : "执行", successCount, failureCount, successRate));
-        
-        return Map.of(
-            "instructionId", instructionId,
-            "executionMode", dryRun ? "DRY_RUN" : "ACTUAL",
-            "totalDetails", details.size(),
-            "successCount", successCount,
-            "failureCount", failureCount,
-            "successRate", successRate,
-            "totalExecutedAmount", totalExecutedAmount,
-            "executionResults", executionResults,
-            "executedTime", LocalDateTime.now()
-        );
-    }
-    
-    /**
-     * 执行单个清分明细
-     */
-    private Map<String, Object> executeClearingDetail(Map<String, Object> detail, boolean dryRun) {
-        String detailType = (String) detail.get("detailType");
-        BigDecimal amount = (BigDecimal) detail.get("detailAmount");
-        String fromEntity = (String) detail.get("fromEntityId");
-        String toEntity = (String) detail.get("toEntityId");
-        
-        // 模拟清分执行逻辑
-        boolean success = true;
-        String message = "";
-        
-        try {
-            switch (detailType) {
-                case "RECEIVABLE":
-                    message = String.format("%s从%s收款 ¥%.2f", 
-                        dryRun ? "模拟" : "实际", detail.get("fromEntityName"), amount);
-                    break;
-                case "PAYABLE":
-                    message = String.format("%s向%s付款 ¥%.2f", 
-                        dryRun ? "模拟" : "实际", detail.get("toEntityName"), amount);
-                    break;
-                case "INTERNAL_TRANSFER":
-                    message = String.format("%s内部流转 ¥%.2f", 
-                        dryRun ? "模拟" : "实际", amount);
-                    break;
-                default:
-                    message = "未知明细类型: " + detailType;
-                    success = false;
-            }
-            
-            // 模拟一些随机失败
-            if (Math.random() < 0.05) { // 5%失败率
-                success = false;
-                message += " - 执行失败：网络超时";
-            }
-            
-        } catch (Exception e) {
-            success = false;
-            message = "执行异常: " + e.getMessage();
-        }
-        
-        return Map.of(
-            "detailSequence", detail.get("detailSequence"),
-            "detailType", detailType,
-            "amount", amount,
-            "status", success ? "SUCCESS" : "FAILURE",
-            "message", message,
-            "executedTime", LocalDateTime.now()
-        );
-    }
-    
-    /**
-     * 执行批次清分
-     */
-    private Map<String, Object> performBatchExecution(String batchId, boolean dryRun) {
-        Map<String, Object> batch = clearingBatches.get(batchId);
-        
-        if (!dryRun) {
-            batch.put("batchStatus", "PROCESSING");
-            batch.put("actualStartTime", LocalDateTime.now());
-        }
-        
-        // 获取批次下的所有清分指令
-        List<Map<String, Object>> batchInstructions = clearingInstructions.values().stream()
-            .filter(inst -> batchId.equals(inst.get("clearingBatchId")))
-            .filter(inst -> "PENDING".equals(inst.get("instructionStatus")))
-            .sorted(Comparator.comparing(inst -> (Integer) inst.get("executionPriority"), Comparator.reverseOrder()))
-            .collect(Collectors.toList());
-        
-        List<Map<String, Object>> instructionResults = new ArrayList<>();
-        int totalSuccessCount = 0;
-        int totalFailureCount = 0;
-        BigDecimal totalBatchAmount = BigDecimal.ZERO;
-        
-        for (Map<String, Object> instruction : batchInstructions) {
-            String instructionId = (String) instruction.get("instructionId");
-            try {
-                Map<String, Object> result = performInstructionExecution(instructionId, dryRun);
-                instructionResults.add(result);
-                
-                totalSuccessCount += (Integer) result.get("successCount");
-                totalFailureCount += (Integer) result.get("failureCount");
-                totalBatchAmount = totalBatchAmount.add((BigDecimal) result.get("totalExecutedAmount"));
-                
-            } catch (Exception e) {
-                logger.error("批次指令执行失败: instructionId={}", instructionId, e);
-                totalFailureCount++;
-            }
-        }
-        
-        // 更新批次状态
-        if (!dryRun) {
-            String finalStatus = (totalFailureCount == 0) ? "COMPLETED" : 
-                                (totalSuccessCount > 0) ? "PARTIALLY_COMPLETED" : "FAILED";
-            batch.put("batchStatus", finalStatus);
-            batch.put("actualEndTime", LocalDateTime.now());
-            batch.put("completedInstructionsCount", 
-                (int) instructionResults.stream().filter(r -> (Integer) r.get("failureCount") == 0).count());
-            batch.put("totalClearingAmount", totalBatchAmount);
-        }
-        
-        BigDecimal batchSuccessRate = batchInstructions.isEmpty() ? BigDecimal.ZERO :
-            BigDecimal.valueOf(instructionResults.size())
-                .divide(BigDecimal.valueOf(batchInstructions.size()), 4, RoundingMode.HALF_UP)
-                .multiply(BigDecimal.valueOf(100));
-        
-        return Map.of(
-            "batchId", batchId,
-            "executionMode", dryRun ? "DRY_RUN" : "ACTUAL",
-            "totalInstructions", batchInstructions.size(),
-            "completedInstructions", instructionResults.size(),
-            "batchSuccessRate", batchSuccessRate,
-            "totalBatchAmount", totalBatchAmount,
-            "totalSuccessDetails", totalSuccessCount,
-            "totalFailureDetails", totalFailureCount,
-            "instructionResults", instructionResults,
-            "executedTime", LocalDateTime.now()
-        );
-    }
-    
     /**
      * 计算清分统计
      */
     private Map<String, Object> calculateClearingStatistics(String dateFrom, String dateTo) {
-        long totalInstructions = clearingInstructions.size();
-        long pendingInstructions = clearingInstructions.values().stream()
-            .filter(inst -> "PENDING".equals(inst.get("instructionStatus")))
-            .count();
-        long completedInstructions = clearingInstructions.values().stream()
-            .filter(inst -> "COMPLETED".equals(inst.get("instructionStatus")))
-            .count();
+        Map<String, Object> stats = instructionStore.statistics(
+            dateFrom != null && !dateFrom.isEmpty() ? LocalDate.parse(dateFrom) : null,
+            dateTo != null && !dateTo.isEmpty() ? LocalDate.parse(dateTo) : null);
         
-        BigDecimal totalClearingAmount = clearingInstructions.values().stream()
-            .map(inst -> (BigDecimal) inst.get("clearingAmount"))
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        long totalBatches = clearingBatches.size();
-        long activeBatches = clearingBatches.values().stream()
-            .filter(batch -> !"COMPLETED".equals(batch.get("batchStatus")))
-            .count();
-        
-        // 按清分模式统计
-        Map<String, Long> modeStats = clearingInstructions.values().stream()
-            .collect(Collectors.groupingBy(
-                inst -> (String) inst.get("clearingMode"),
-                Collectors.counting()
-            ));
+        @SuppressWarnings("unchecked")
+        Map<String, Long> statusCounts = (Map<String, Long>) stats.get("statusCounts");
+        long totalInstructions = statusCounts.values().stream().mapToLong(Long::longValue).sum();
+        long pendingInstructions = statusCounts.getOrDefault("PENDING", 0L);
+        long completedInstructions = statusCounts.getOrDefault("COMPLETED", 0L);
         
         return Map.of(
             "totalInstructions", totalInstructions,
@@ -707,10 +558,10 @@ public class ClearingProcessingController {
             "completedInstructions", completedInstructions,
             "completionRate", totalInstructions > 0 ? 
                 BigDecimal.valueOf(completedInstructions * 100.0 / totalInstructions).setScale(2, RoundingMode.HALF_UP) : BigDecimal.ZERO,
-            "totalClearingAmount", totalClearingAmount,
-            "totalBatches", totalBatches,
-            "activeBatches", activeBatches,
-            "clearingModeStats", modeStats,
+            "totalClearingAmount", stats.get("totalClearingAmount"),
+            "totalBatches", stats.get("totalBatches"),
+            "activeBatches", stats.get("activeBatches"),
+            "clearingModeStats", stats.get("modeCounts"),
             "statisticsTime", LocalDateTime.now()
         );
     }
@@ -738,35 +589,6 @@ public class ClearingProcessingController {
         }
     }
     
-    /**
-     * 获取或创建日批次
-     */
-    private String getOrCreateDailyBatch(String createdBy) {
-        String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String batchId = "BATCH_" + today + "_001";
-        
-        if (!clearingBatches.containsKey(batchId)) {
-            Map<String, Object> batch = new HashMap<>();
-            batch.put("batchId", batchId);
-            batch.put("batchName", today + " 日常清分批次");
-            batch.put("batchType", "DAILY");
-            batch.put("batchDate", today);
-            batch.put("batchStatus", "PREPARING");
-            batch.put("totalInstructionsCount", 0);
-            batch.put("completedInstructionsCount", 0);
-            batch.put("totalClearingAmount", BigDecimal.ZERO);
-            batch.put("riskLevel", "LOW");
-            batch.put("requiresApproval", false);
-            batch.put("autoExecution", true);
-            batch.put("createdBy", createdBy);
-            batch.put("createdTime", LocalDateTime.now());
-            
-            clearingBatches.put(batchId, batch);
-        }
-        
-        return batchId;
-    }
-    
     /**
      * 模拟获取分润计算结果
      */
@@ -790,27 +612,10 @@ public class ClearingProcessingController {
         );
     }
     
-    /**
-     * 添加执行日志
-     */
-    private void addExecutionLog(String instructionId, String batchId, String level, String type, String message) {
-        Map<String, Object> log = new HashMap<>();
-        log.put("logId", "LOG_" + System.currentTimeMillis());
-        log.put("instructionId", instructionId);
-        log.put("batchId", batchId);
-        log.put("logLevel", level);
-        log.put("logType", type);
-        log.put("logMessage", message);
-        log.put("createdTime", LocalDateTime.now());
-        
-        executionLogs.add(log);
-        logger.info("[{}] [{}] {}: {}", level, type, instructionId, message);
-    }
-    
     // ===== 静态初始化方法 =====
     
-    private static void initializeClearingRules() {
-        clearingRules.addAll(Arrays.asList(
+    private static List<Map<String, Object>> initializeClearingRules() {
+        return List.of(
             Map.of("ruleId", "RULE_001", "ruleCode", "STAR_STANDARD", "ruleName", "标准星式清分规则",
                    "ruleCategory", "CLEARING_MODE", "applicableClearingMode", "STAR",
                    "ruleParameters", Map.of("centralEntity", "HCBD_SHANGHAI", "retentionRate", 0.00),
@@ -827,30 +632,6 @@ public class ClearingProcessingController {
                    "ruleCategory", "NETTING", "applicableClearingMode", "",
                    "ruleParameters", Map.of("nettingThreshold", 10000, "sameEntityOnly", false, "priorityThreshold", 7),
                    "rulePriority", 6, "ruleStatus", "ACTIVE")
-        ));
-    }
-    
-    private static void initializeClearingBatches() {
-        String today = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String batchId = "BATCH_" + today + "_001";
-        
-        Map<String, Object> batch = new HashMap<>();
-        batch.put("batchId", batchId);
-        batch.put("batchName", today + " 日常清分批次");
-        batch.put("batchType", "DAILY");
-        batch.put("batchDate", today);
-        batch.put("plannedExecutionTime", LocalDateTime.now().withHour(18).withMinute(0));
-        batch.put("batchStatus", "PREPARING");
-        batch.put("totalInstructionsCount", 0);
-        batch.put("completedInstructionsCount", 0);
-        batch.put("totalClearingAmount", BigDecimal.ZERO);
-        batch.put("successRate", BigDecimal.ZERO);
-        batch.put("riskLevel", "LOW");
-        batch.put("requiresApproval", false);
-        batch.put("autoExecution", true);
-        batch.put("createdBy", "system");
-        batch.put("createdTime", LocalDateTime.now());
-        
-        clearingBatches.put(batchId, batch);
+        );
     }
-}
\ No newline at end of file
+}
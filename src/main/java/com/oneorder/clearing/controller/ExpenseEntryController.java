@@ -3,14 +3,20 @@ package com.oneorder.clearing.controller;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.oneorder.clearing.service.ExpenseEntryImportService;
 import com.oneorder.clearing.service.ExpenseEntryService;
+import com.oneorder.clearing.service.FeeServiceCooccurrenceIndex;
+import com.oneorder.clearing.service.FeeValidationService;
+import com.oneorder.clearing.service.SmartServiceSuggestionService;
 import com.oneorder.clearing.entity.ExpenseEntry;
 import com.oneorder.clearing.dto.ExpenseEntryRequest;
 import com.oneorder.clearing.dto.ExpenseEntryResponse;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -33,6 +39,18 @@ public class ExpenseEntryController {
     @Autowired
     private ExpenseEntryService expenseEntryService;
     
+    @Autowired
+    private ExpenseEntryImportService expenseEntryImportService;
+    
+    @Autowired
+    private FeeValidationService feeValidationService;
+    
+    @Autowired
+    private SmartServiceSuggestionService smartServiceSuggestionService;
+    
+    @Autowired
+    private FeeServiceCooccurrenceIndex cooccurrenceIndex;
+    
     /**
      * 添加费用明细
      */
@@ -94,6 +112,7 @@ public class ExpenseEntryController {
             orderInfo.put("payableCount", summary.getPayableCount());
             orderInfo.put("totalReceivable", summary.getTotalReceivable());
             orderInfo.put("totalPayable", summary.getTotalPayable());
+            orderInfo.put("currencyTotals", summary.getCurrencyTotals());
             
             Map<String, Object> result = new HashMap<>();
             result.put("code", 200);
@@ -426,6 +445,173 @@ public class ExpenseEntryController {
         }
     }
     
+    /**
+     * 批量变更明细状态（确认/锁定/解锁）
+     * 范围四选一：versions（ID到版本号，带版本校验）、ids、orderId、startTime+endTime（账期）
+     */
+    @PostMapping("/batch-transition")
+    public ResponseEntity<Map<String, Object>> batchTransition(@RequestBody Map<String, Object> request) {
+        try {
+            ExpenseEntryService.StatusTransition transition =
+                ExpenseEntryService.StatusTransition.valueOf(((String) request.get("action")).toUpperCase());
+            String operator = (String) request.getOrDefault("operator", "SYSTEM");
+            logger.info("批量{}费用明细: {}", transition.getDescription(), request.keySet());
+            
+            ExpenseEntryService.BulkTransitionResult transitionResult;
+            if (request.get("versions") instanceof Map) {
+                Map<Long, Long> versions = new LinkedHashMap<>();
+                ((Map<?, ?>) request.get("versions")).forEach((id, version) ->
+                    versions.put(Long.valueOf(id.toString()), version != null ? Long.valueOf(version.toString()) : null));
+                transitionResult = expenseEntryService.transitionWithVersions(versions, transition, operator);
+            } else if (request.get("ids") instanceof List) {
+                List<Long> ids = ((List<?>) request.get("ids")).stream()
+                    .map(id -> Long.valueOf(id.toString()))
+                    .collect(Collectors.toList());
+                transitionResult = expenseEntryService.transitionByIds(ids, transition, operator);
+            } else if (request.get("orderId") != null) {
+                transitionResult = expenseEntryService.transitionByOrder((String) request.get("orderId"), transition, operator);
+            } else if (request.get("startTime") != null && request.get("endTime") != null) {
+                transitionResult = expenseEntryService.transitionByPeriod(
+                    LocalDateTime.parse((String) request.get("startTime")),
+                    LocalDateTime.parse((String) request.get("endTime")), transition, operator);
+            } else {
+                return ResponseEntity.ok(Map.of(
+                    "code", 400,
+                    "message", "请指定 versions、ids、orderId 或 startTime/endTime"
+                ));
+            }
+            
+            Map<String, Object> result = new HashMap<>();
+            result.put("code", 200);
+            result.put("message", "批量" + transition.getDescription() + "完成");
+            result.put("data", transitionResult);
+            
+            return ResponseEntity.ok(result);
+            
+        } catch (Exception e) {
+            logger.error("批量变更费用明细状态失败", e);
+            return ResponseEntity.ok(Map.of(
+                "code", 500,
+                "message", "批量变更费用明细状态失败: " + e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * 批量导入费用明细（CSV / NDJSON）
+     * 未指定 format 时按文件扩展名识别，返回逐行错误报告
+     */
+    @PostMapping("/import")
+    public ResponseEntity<Map<String, Object>> importExpenseEntries(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) String format,
+            @RequestParam(defaultValue = "SYSTEM") String createdBy,
+            @RequestParam(defaultValue = "" + ExpenseEntryImportService.DEFAULT_BATCH_SIZE) int batchSize) {
+        try {
+            ExpenseEntryImportService.Format importFormat = format != null
+                ? ExpenseEntryImportService.Format.valueOf(format.toUpperCase())
+                : ExpenseEntryImportService.Format.fromFileName(file.getOriginalFilename());
+            logger.info("导入费用明细: 文件={}, 大小={}, 格式={}", file.getOriginalFilename(), file.getSize(), importFormat);
+
+            ExpenseEntryImportService.ImportReport report;
+            try (InputStream input = file.getInputStream()) {
+                report = expenseEntryImportService.importEntries(input, importFormat, createdBy, batchSize);
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("code", 200);
+            result.put("message", String.format("导入完成: 成功%d条, 重复%d条, 无效%d条, 失败%d条",
+                report.getImported(), report.getDuplicates(), report.getInvalid(), report.getFailed()));
+            result.put("data", report);
+
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            logger.error("导入费用明细失败", e);
+            return ResponseEntity.ok(Map.of(
+                "code", 500,
+                "message", "导入费用明细失败: " + e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * 重新加载费用约束矩阵（约束表维护后调用，立即生效）
+     */
+    @PostMapping("/fee-constraints/reload")
+    public ResponseEntity<Map<String, Object>> reloadFeeConstraints() {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("code", 200);
+            result.put("message", "费用约束已重新加载");
+            result.put("data", feeValidationService.reloadConstraints());
+            
+            return ResponseEntity.ok(result);
+            
+        } catch (Exception e) {
+            logger.error("重新加载费用约束失败", e);
+            return ResponseEntity.ok(Map.of(
+                "code", 500,
+                "message", "重新加载费用约束失败: " + e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * 查看当前费用约束矩阵状态
+     */
+    @GetMapping("/fee-constraints/stats")
+    public ResponseEntity<Map<String, Object>> getFeeConstraintStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("code", 200);
+        result.put("data", feeValidationService.getConstraintMatrix().getStats());
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 推荐服务项目适用的费用科目（按历史使用热度排序）
+     */
+    @GetMapping("/suggest-fees")
+    public ResponseEntity<Map<String, Object>> suggestFees(@RequestParam String serviceCode) {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("code", 200);
+            result.put("data", smartServiceSuggestionService.suggestFeesForService(serviceCode));
+            return ResponseEntity.ok(result);
+            
+        } catch (Exception e) {
+            logger.error("推荐费用科目失败", e);
+            return ResponseEntity.ok(Map.of(
+                "code", 500,
+                "message", "推荐费用科目失败: " + e.getMessage()
+            ));
+        }
+    }
+    
+    /**
+     * 重建费用科目服务共现索引
+     */
+    @PostMapping("/suggestion-index/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSuggestionIndex() {
+        cooccurrenceIndex.rebuild();
+        Map<String, Object> result = new HashMap<>();
+        result.put("code", 200);
+        result.put("message", "共现索引已重建");
+        result.put("data", cooccurrenceIndex.getStats());
+        return ResponseEntity.ok(result);
+    }
+    
+    /**
+     * 查看费用科目服务共现索引状态
+     */
+    @GetMapping("/suggestion-index/stats")
+    public ResponseEntity<Map<String, Object>> getSuggestionIndexStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("code", 200);
+        result.put("data", cooccurrenceIndex.getStats());
+        return ResponseEntity.ok(result);
+    }
+    
     // ===== 私有方法 =====
     
     /**
@@ -4,6 +4,10 @@ import com.oneorder.clearing.dto.*;
 import com.oneorder.clearing.entity.*;
 import com.oneorder.clearing.repository.*;
 import com.oneorder.clearing.service.FreightOrderService;
+import com.oneorder.clearing.service.InternalProtocolIndex;
+import com.oneorder.clearing.service.OperatorLoadScheduler;
+import com.oneorder.clearing.service.OperatorTaskInbox;
+import com.oneorder.clearing.service.SlaTimerWheel;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
@@ -30,7 +34,11 @@ public class FreightOrderController {
     private final FreightOrderService freightOrderService;
     private final ServiceConfigRepository serviceConfigRepository;
     private final InternalProtocolRepository internalProtocolRepository;
+    private final InternalProtocolIndex internalProtocolIndex;
     private final OrderServiceRepository orderServiceRepository;
+    private final OperatorLoadScheduler operatorLoadScheduler;
+    private final OperatorTaskInbox operatorTaskInbox;
+    private final SlaTimerWheel slaTimerWheel;
     private final StaffRepository staffRepository;
     private final DepartmentRepository departmentRepository;
 
@@ -269,7 +277,7 @@ public class FreightOrderController {
                     request.getSalesDepartmentId(), request.getOperationDepartmentId(), 
                     request.getServiceCode(), request.getBusinessType());
                     
-            List<InternalProtocol> protocols = internalProtocolRepository.findAvailableProtocols(
+            List<InternalProtocol> protocols = internalProtocolIndex.findAvailableProtocols(
                     request.getSalesDepartmentId(),
                     request.getOperationDepartmentId(),
                     request.getServiceCode(),
@@ -353,12 +361,16 @@ public class FreightOrderController {
                 try {
                     service.assignToOperation();  // 更新状态和时间
                     orderServiceRepository.save(service);
+                    operatorLoadScheduler.onTaskChanged(service.getServiceCode(), null, null,
+                        service.getOperationStaffId(), service.getStatus());
                     
                     // 如果设置了自动确认协议
                     if (request.isAutoConfirmProtocol()) {
                         service.confirmProtocol();
                         orderServiceRepository.save(service);
                     }
+                    operatorTaskInbox.onTaskChanged(service);
+                    slaTimerWheel.onTaskChanged(service);
                     
                     results.add(Map.of(
                         "serviceId", serviceId,
@@ -443,6 +455,8 @@ public class FreightOrderController {
                     }
                     
                     orderServiceRepository.save(service);
+                    operatorTaskInbox.onTaskChanged(service);
+                    slaTimerWheel.onTaskChanged(service);
                     
                     results.add(Map.of(
                         "serviceId", serviceId,
@@ -487,7 +501,7 @@ public class FreightOrderController {
                 serviceStatus = OrderService.ServiceStatus.valueOf(status.toUpperCase());
             }
             
-            List<OrderService> services = orderServiceRepository.findMyTasks(operationStaffId, serviceStatus);
+            List<OrderService> services = operatorTaskInbox.tasks(operationStaffId, serviceStatus);
             
             List<OrderServiceDTO> serviceDTOs = services.stream()
                     .map(this::convertToOrderServiceDTO)
@@ -529,10 +543,10 @@ public class FreightOrderController {
             List<InternalProtocol> protocols;
             
             if (salesDepartmentId != null && operationDepartmentId != null) {
-                protocols = internalProtocolRepository.findAvailableProtocols(
+                protocols = internalProtocolIndex.findAvailableProtocols(
                         salesDepartmentId, operationDepartmentId, serviceCode, businessType, LocalDate.now());
             } else {
-                protocols = internalProtocolRepository.findAllEffectiveProtocols();
+                protocols = internalProtocolIndex.findAllEffectiveProtocols();
             }
             
             List<InternalProtocolDTO> protocolDTOs = protocols.stream()
@@ -1,7 +1,8 @@
 package com.oneorder.clearing.controller;
 
 import com.oneorder.clearing.entity.InternalProtocol;
-import com.oneorder.clearing.repository.InternalProtocolRepository;
+import com.oneorder.clearing.service.InternalProtocolIndex;
+import com.oneorder.clearing.service.ProtocolOverlapDetector;
 import com.oneorder.clearing.dto.ProtocolMatchRequest;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -26,7 +27,8 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InternalProtocolController {
     
-    private final InternalProtocolRepository protocolRepository;
+    private final InternalProtocolIndex protocolIndex;
+    private final ProtocolOverlapDetector overlapDetector;
     
     /**
      * 获取所有有效协议
@@ -34,7 +36,7 @@ public class InternalProtocolController {
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAllProtocols() {
         try {
-            List<InternalProtocol> protocols = protocolRepository.findAllActive();
+            List<InternalProtocol> protocols = protocolIndex.findAllEffectiveProtocols();
             List<ProtocolDTO> protocolDTOs = protocols.stream()
                 .map(this::convertToDTO)
                 .collect(Collectors.toList());
@@ -64,7 +66,7 @@ public class InternalProtocolController {
     @PostMapping("/match")
     public ResponseEntity<Map<String, Object>> matchProtocols(@RequestBody ProtocolMatchRequest request) {
         try {
-            List<InternalProtocol> protocols = protocolRepository.findAvailableProtocols(
+            List<InternalProtocol> protocols = protocolIndex.findAvailableProtocols(
                 request.getSalesDepartmentId(),
                 request.getOperationDepartmentId(),
                 request.getServiceCode(),
@@ -101,26 +103,25 @@ public class InternalProtocolController {
     @PostMapping
     public ResponseEntity<Map<String, Object>> createProtocol(@RequestBody CreateProtocolRequest request) {
         try {
-            InternalProtocol protocol = new InternalProtocol();
+            InternalProtocol protocol = buildProtocol(request);
             protocol.setProtocolId(generateProtocolId());
-            protocol.setProtocolName(request.getProtocolName());
-            protocol.setSalesDepartmentId(request.getSalesDepartmentId());
-            protocol.setOperationDepartmentId(request.getOperationDepartmentId());
-            protocol.setServiceCode(request.getServiceCode());
-            protocol.setBusinessType(request.getBusinessType());
-            protocol.setBaseCommissionRate(request.getBaseCommissionRate());
-            protocol.setPerformanceBonusRate(request.getPerformanceBonusRate());
-            protocol.setActive(true);
-            protocol.setEffectiveDate(request.getEffectiveDate());
-            protocol.setExpiryDate(request.getExpiryDate());
             protocol.setCreatedBy("SYSTEM"); // TODO: 获取当前用户
             
-            InternalProtocol saved = protocolRepository.save(protocol);
-            log.info("创建协议成功: {}", saved.getProtocolId());
+            // 同范围有效期重叠的协议直接拒绝
+            List<ProtocolOverlapDetector.ProtocolOverlap> conflicts = overlapDetector.saveIfNoConflict(protocol);
+            if (!conflicts.isEmpty()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("data", conflicts);
+                response.put("message", "协议有效期与同范围的已有协议重叠");
+                return ResponseEntity.status(409).body(response);
+            }
+            
+            log.info("创建协议成功: {}", protocol.getProtocolId());
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("data", convertToDTO(saved));
+            response.put("data", convertToDTO(protocol));
             response.put("message", "创建协议成功");
             
             return ResponseEntity.ok(response);
@@ -135,6 +136,77 @@ public class InternalProtocolController {
         }
     }
     
+    /**
+     * 校验协议有效期是否与同范围的已有协议重叠（保存前预检）
+     */
+    @PostMapping("/validate")
+    public ResponseEntity<Map<String, Object>> validateProtocol(@RequestBody CreateProtocolRequest request) {
+        try {
+            List<ProtocolOverlapDetector.ProtocolOverlap> conflicts = overlapDetector.findConflicts(buildProtocol(request));
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", Map.of("valid", conflicts.isEmpty(), "conflicts", conflicts));
+            response.put("message", conflicts.isEmpty() ? "协议校验通过" : "协议有效期与同范围的已有协议重叠");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("协议校验失败", e);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "协议校验失败: " + e.getMessage());
+            
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+    
+    /**
+     * 检查全部激活协议的有效期重叠情况
+     */
+    @GetMapping("/overlaps")
+    public ResponseEntity<Map<String, Object>> findOverlaps() {
+        try {
+            List<ProtocolOverlapDetector.ProtocolOverlap> overlaps = overlapDetector.detectAll();
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("data", overlaps);
+            response.put("message", "发现 " + overlaps.size() + " 对重叠协议");
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("协议重叠检测失败", e);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "协议重叠检测失败: " + e.getMessage());
+            
+            return ResponseEntity.status(500).body(response);
+        }
+    }
+    
+    /**
+     * 重新加载协议匹配索引（直接维护协议表后调用，立即生效）
+     */
+    @PostMapping("/index/reload")
+    public ResponseEntity<Map<String, Object>> reloadIndex() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", protocolIndex.reload());
+        response.put("message", "协议索引已重新加载");
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * 查看协议匹配索引状态
+     */
+    @GetMapping("/index/stats")
+    public ResponseEntity<Map<String, Object>> getIndexStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", protocolIndex.getStats());
+        return ResponseEntity.ok(response);
+    }
+    
     // ==================== 辅助方法 ====================
     
     /**
@@ -161,6 +233,24 @@ public class InternalProtocolController {
         return dto;
     }
     
+    /**
+     * 根据请求构建协议实体（不含ID和创建人）
+     */
+    private InternalProtocol buildProtocol(CreateProtocolRequest request) {
+        InternalProtocol protocol = new InternalProtocol();
+        protocol.setProtocolName(request.getProtocolName());
+        protocol.setSalesDepartmentId(request.getSalesDepartmentId());
+        protocol.setOperationDepartmentId(request.getOperationDepartmentId());
+        protocol.setServiceCode(request.getServiceCode());
+        protocol.setBusinessType(request.getBusinessType());
+        protocol.setBaseCommissionRate(request.getBaseCommissionRate());
+        protocol.setPerformanceBonusRate(request.getPerformanceBonusRate());
+        protocol.setActive(true);
+        protocol.setEffectiveDate(request.getEffectiveDate());
+        protocol.setExpiryDate(request.getExpiryDate());
+        return protocol;
+    }
+    
     /**
      * 生成协议ID
      */
@@ -1,6 +1,8 @@
 package com.oneorder.clearing.controller;
 
 import com.oneorder.clearing.dto.ResponseDTO;
+import com.oneorder.clearing.service.NotificationDispatcher;
+import com.oneorder.clearing.service.StaffDirectoryCache;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +24,12 @@ public class NotificationController {
     @Autowired
     private NotificationWebSocketController webSocketController;
 
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+
+    @Autowired
+    private StaffDirectoryCache staffDirectoryCache;
+
     // 简单的内存存储，实际项目应该使用数据库
     private final Map<String, List<Map<String, Object>>> userNotifications = new ConcurrentHashMap<>();
     
@@ -223,6 +231,8 @@ public class NotificationController {
                 .mapToInt(List::size)
                 .sum();
             stats.put("totalNotifications", totalNotifications);
+            stats.put("dispatcher", notificationDispatcher.getMetrics());
+            stats.put("staffDirectory", staffDirectoryCache.getStats());
             
             return ResponseDTO.success(stats);
             
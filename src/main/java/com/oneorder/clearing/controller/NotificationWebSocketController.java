@@ -1,42 +1,96 @@
 package com.oneorder.clearing.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oneorder.clearing.entity.Staff;
+import com.oneorder.clearing.service.OperatorLoadScheduler;
+import com.oneorder.clearing.service.OperatorTaskInbox;
+import com.oneorder.clearing.service.SlaTimerWheel;
+import com.oneorder.clearing.service.StaffDirectoryCache;
+import com.oneorder.clearing.service.WebSocketBackplane;
+import com.oneorder.clearing.service.WebSocketOutboundSender;
+import com.oneorder.clearing.service.WebSocketSubscriptionIndex;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.*;
 
-import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PostConstruct;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Optional;
 import java.util.Set;
+import java.util.Arrays;
+import java.util.HashSet;
 
 /**
  * 实时通知WebSocket控制器
  * 处理派单通知的实时推送和消息确认
+ * 所有出站消息经 {@link WebSocketOutboundSender} 的会话队列异步发送，推送方不等待客户端
+ * 定向推送按 {@link WebSocketSubscriptionIndex} 的主题订阅扇出，同一用户的多个会话都能收到
+ * 配置了 {@link WebSocketBackplane} 时，主题消息同时路由到其他节点上的订阅者
+ * 操作员任务列表由 {@link OperatorTaskInbox} 以快照加增量的方式推送到用户主题
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class NotificationWebSocketController implements WebSocketHandler {
 
+    private static final String USER_ID_ATTRIBUTE = "userId";
+
+    // 同一订单同一类型的状态消息只需推送最新一条，未发出前合并
+    private static final Set<String> COALESCING_TYPES = new HashSet<>(Arrays.asList("order_status", "dashboard"));
+
     private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final WebSocketOutboundSender outboundSender;
+
+    private final WebSocketSubscriptionIndex subscriptionIndex;
+
+    private final StaffDirectoryCache staffDirectoryCache;
+
+    private final OperatorLoadScheduler operatorLoadScheduler;
+
+    private final OperatorTaskInbox operatorTaskInbox;
+
+    private final SlaTimerWheel slaTimerWheel;
+
+    // 单节点部署时未配置背板
+    private final Optional<WebSocketBackplane> backplane;
     
     // 存储所有活跃的WebSocket连接
     private final Set<WebSocketSession> activeSessions = new CopyOnWriteArraySet<>();
-    
-    // 存储用户ID与WebSocket会话的映射
-    private final Map<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void bindPublishers() {
+        operatorTaskInbox.bindPublisher(this::publishToTopic);
+        slaTimerWheel.bindNotifier(this::sendUrgentNotification);
+        backplane.ifPresent(b -> {
+            // 每个节点都登记收件箱失效主题，其余主题按本地订阅登记
+            b.bind(this::deliverFromBackplane,
+                topic -> OperatorTaskInbox.INVALIDATION_TOPIC.equals(topic) || subscriptionIndex.hasSubscribers(topic));
+            b.refreshPresence(OperatorTaskInbox.INVALIDATION_TOPIC);
+            operatorTaskInbox.bindInvalidator(message -> publishToNodes(OperatorTaskInbox.INVALIDATION_TOPIC, message));
+            log.info("WebSocket背板已绑定，节点: {}", b.getNodeId());
+        });
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         log.info("WebSocket连接建立: {}", session.getId());
+        outboundSender.register(session);
         activeSessions.add(session);
         
         // 从会话中获取用户ID (这里简化处理，实际应该从JWT或会话中获取)
         String userId = extractUserIdFromSession(session);
         if (userId != null) {
-            userSessions.put(userId, session);
+            session.getAttributes().put(USER_ID_ATTRIBUTE, userId);
+            // 自动订阅本人主题和所在部门主题
+            subscribe(session, WebSocketSubscriptionIndex.userTopic(userId));
+            staffDirectoryCache.find(userId)
+                .map(Staff::getDepartmentId)
+                .ifPresent(departmentId -> subscribe(session, WebSocketSubscriptionIndex.departmentTopic(departmentId)));
+            operatorLoadScheduler.updatePresence(userId, true);
             log.info("用户 {} 的WebSocket会话已建立", userId);
         }
         
@@ -66,6 +120,12 @@ public class NotificationWebSocketController implements WebSocketHandler {
                     case "subscribe":
                         handleSubscription(session, messageData);
                         break;
+                    case "unsubscribe":
+                        handleUnsubscription(session, messageData);
+                        break;
+                    case "task_inbox_sync":
+                        handleTaskInboxSync(session);
+                        break;
                     default:
                         log.warn("未知的消息类型: {}", messageType);
                 }
@@ -80,14 +140,18 @@ public class NotificationWebSocketController implements WebSocketHandler {
     public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
         log.error("WebSocket传输错误: {}", session.getId(), exception);
         activeSessions.remove(session);
-        removeUserSession(session);
+        outboundSender.unregister(session);
+        subscriptionIndex.removeSession(session).forEach(this::refreshPresence);
+        updateOperatorPresence(session);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
         log.info("WebSocket连接关闭: {}, 状态: {}", session.getId(), closeStatus);
         activeSessions.remove(session);
-        removeUserSession(session);
+        outboundSender.unregister(session);
+        subscriptionIndex.removeSession(session).forEach(this::refreshPresence);
+        updateOperatorPresence(session);
     }
 
     @Override
@@ -99,19 +163,88 @@ public class NotificationWebSocketController implements WebSocketHandler {
      * 向指定用户发送通知
      */
     public void sendNotificationToUser(String userId, Object notification) {
-        WebSocketSession session = userSessions.get(userId);
-        if (session != null && session.isOpen()) {
+        int delivered = publishToTopic(WebSocketSubscriptionIndex.userTopic(userId), notification);
+        if (delivered > 0) {
+            log.info("向用户 {} 的 {} 个会话发送通知: {}", userId, delivered, notification);
+        } else if (!backplane.isPresent()) {
+            log.warn("用户 {} 的WebSocket会话不存在或已关闭", userId);
+        }
+    }
+
+    /**
+     * 向部门主题推送通知
+     */
+    public void sendDepartmentNotification(String departmentId, Object notification) {
+        publishToTopic(WebSocketSubscriptionIndex.departmentTopic(departmentId), notification);
+    }
+
+    /**
+     * 向看板主题推送统计数据，未发出的旧数据会被新数据覆盖
+     */
+    public void sendDashboardUpdate(Map<String, Object> dashboard) {
+        Map<String, Object> notification = new HashMap<>(dashboard);
+        notification.put("type", "dashboard");
+        notification.put("timestamp", java.time.Instant.now().toString());
+        publishToTopic(WebSocketSubscriptionIndex.DASHBOARD, notification);
+    }
+
+    /**
+     * 推送给订阅了主题的全部会话，消息只序列化一次；本节点会话直接入队，其他节点经背板转发
+     *
+     * @return 本节点成功入队的会话数
+     */
+    public int publishToTopic(String topic, Object notification) {
+        if (!backplane.isPresent() && !subscriptionIndex.hasSubscribers(topic)) {
+            return 0;
+        }
+        String message;
+        try {
+            message = objectMapper.writeValueAsString(notification);
+        } catch (Exception e) {
+            log.error("序列化通知消息失败", e);
+            return 0;
+        }
+        String coalesceKey = coalesceKey(notification);
+        backplane.ifPresent(b -> b.publish(topic, message, coalesceKey));
+        return deliverLocal(topic, message, coalesceKey);
+    }
+
+    /**
+     * 只发往其他节点，不投递本节点会话
+     */
+    private void publishToNodes(String topic, Object message) {
+        backplane.ifPresent(b -> {
             try {
-                String message = objectMapper.writeValueAsString(notification);
-                session.sendMessage(new TextMessage(message));
-                log.info("向用户 {} 发送通知: {}", userId, notification);
-            } catch (IOException e) {
-                log.error("发送通知失败", e);
-                userSessions.remove(userId);
+                b.publish(topic, objectMapper.writeValueAsString(message), null);
+            } catch (Exception e) {
+                log.error("序列化背板消息失败: {}", topic, e);
             }
-        } else {
-            log.warn("用户 {} 的WebSocket会话不存在或已关闭", userId);
+        });
+    }
+
+    private void deliverFromBackplane(String topic, String message, String coalesceKey) {
+        if (!OperatorTaskInbox.INVALIDATION_TOPIC.equals(topic)) {
+            deliverLocal(topic, message, coalesceKey);
+            return;
         }
+        try {
+            Map<String, Object> invalidation = objectMapper.readValue(message, Map.class);
+            Number serviceId = (Number) invalidation.get("serviceId");
+            operatorTaskInbox.onRemoteChange(serviceId != null ? serviceId.longValue() : null,
+                (String) invalidation.get("operationStaffId"));
+        } catch (Exception e) {
+            log.warn("处理任务收件箱失效通知失败: {}", message, e);
+        }
+    }
+
+    private int deliverLocal(String topic, String message, String coalesceKey) {
+        int delivered = 0;
+        for (WebSocketSession session : subscriptionIndex.sessions(topic)) {
+            if (outboundSender.enqueue(session, message, coalesceKey)) {
+                delivered++;
+            }
+        }
+        return delivered;
     }
 
     /**
@@ -126,19 +259,8 @@ public class NotificationWebSocketController implements WebSocketHandler {
             return;
         }
 
-        activeSessions.removeIf(session -> {
-            try {
-                if (session.isOpen()) {
-                    session.sendMessage(new TextMessage(message));
-                    return false;
-                } else {
-                    return true;
-                }
-            } catch (IOException e) {
-                log.error("广播通知失败: {}", session.getId(), e);
-                return true;
-            }
-        });
+        String coalesceKey = coalesceKey(notification);
+        activeSessions.removeIf(session -> !outboundSender.enqueue(session, message, coalesceKey));
         
         log.info("广播通知给 {} 个活跃连接", activeSessions.size());
     }
@@ -163,6 +285,19 @@ public class NotificationWebSocketController implements WebSocketHandler {
         sendNotificationToUser(operatorId, notification);
     }
 
+    /**
+     * 向订单主题推送状态变化，同一订单未发出的旧状态会被新状态覆盖
+     */
+    public void sendOrderStatusUpdate(String orderNo, String status) {
+        Map<String, Object> notification = new HashMap<>();
+        notification.put("type", "order_status");
+        notification.put("orderNo", orderNo);
+        notification.put("status", status);
+        notification.put("timestamp", java.time.Instant.now().toString());
+        
+        publishToTopic(WebSocketSubscriptionIndex.orderTopic(orderNo), notification);
+    }
+
     /**
      * 发送紧急通知
      */
@@ -208,9 +343,8 @@ public class NotificationWebSocketController implements WebSocketHandler {
             welcome.put("priority", "normal");
             welcome.put("isRead", false);
             
-            String message = objectMapper.writeValueAsString(welcome);
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
+            sendToSession(session, welcome);
+        } catch (Exception e) {
             log.error("发送欢迎消息失败", e);
         }
     }
@@ -221,9 +355,8 @@ public class NotificationWebSocketController implements WebSocketHandler {
             pong.put("type", "pong");
             pong.put("timestamp", java.time.Instant.now().toString());
             
-            String message = objectMapper.writeValueAsString(pong);
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
+            sendToSession(session, pong);
+        } catch (Exception e) {
             log.error("发送pong消息失败", e);
         }
     }
@@ -242,21 +375,90 @@ public class NotificationWebSocketController implements WebSocketHandler {
             confirmation.put("notificationId", notificationId);
             confirmation.put("timestamp", java.time.Instant.now().toString());
             
-            String message = objectMapper.writeValueAsString(confirmation);
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
+            sendToSession(session, confirmation);
+        } catch (Exception e) {
             log.error("发送已读确认失败", e);
         }
     }
 
+    /**
+     * 客户端连接或重连后请求任务列表快照，之后的变化以增量推送到本人主题
+     */
+    private void handleTaskInboxSync(WebSocketSession session) {
+        String userId = (String) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        if (userId == null) {
+            sendErrorMessage(session, "未识别的用户，无法同步任务列表");
+            return;
+        }
+        try {
+            sendToSession(session, operatorTaskInbox.snapshot(userId));
+        } catch (Exception e) {
+            log.error("发送任务列表快照失败: {}", userId, e);
+            sendErrorMessage(session, "同步任务列表失败");
+        }
+    }
+
     private void handleSubscription(WebSocketSession session, Map<String, Object> messageData) {
-        String userId = (String) messageData.get("userId");
+        String userId = (String) session.getAttributes().get(USER_ID_ATTRIBUTE);
         String topic = (String) messageData.get("topic");
         
+        if (!WebSocketSubscriptionIndex.isValidTopic(topic)) {
+            sendErrorMessage(session, "无效的订阅主题: " + topic);
+            return;
+        }
+        // 用户主题只能订阅自己的，避免收到他人的派单通知
+        if (topic.startsWith("user:") && !topic.equals(WebSocketSubscriptionIndex.userTopic(userId))) {
+            sendErrorMessage(session, "不能订阅其他用户的主题: " + topic);
+            return;
+        }
+        
         log.info("用户 {} 订阅主题: {}", userId, topic);
+        subscribe(session, topic);
+        sendSubscriptionConfirmation(session, "subscribed", topic);
+    }
+
+    private void handleUnsubscription(WebSocketSession session, Map<String, Object> messageData) {
+        String topic = (String) messageData.get("topic");
         
-        // 这里可以实现主题订阅逻辑
-        // subscriptionService.subscribe(userId, topic);
+        log.info("会话 {} 取消订阅主题: {}", session.getId(), topic);
+        subscriptionIndex.unsubscribe(session, topic);
+        refreshPresence(topic);
+        sendSubscriptionConfirmation(session, "unsubscribed", topic);
+    }
+
+    private void subscribe(WebSocketSession session, String topic) {
+        subscriptionIndex.subscribe(session, topic);
+        refreshPresence(topic);
+    }
+
+    /**
+     * 用户的最后一个会话关闭后视为离线
+     */
+    private void updateOperatorPresence(WebSocketSession session) {
+        String userId = (String) session.getAttributes().get(USER_ID_ATTRIBUTE);
+        if (userId != null) {
+            operatorLoadScheduler.updatePresence(userId,
+                subscriptionIndex.hasSubscribers(WebSocketSubscriptionIndex.userTopic(userId)));
+        }
+    }
+
+    private void refreshPresence(String topic) {
+        backplane.ifPresent(b -> b.refreshPresence(topic));
+    }
+
+    private void sendSubscriptionConfirmation(WebSocketSession session, String action, String topic) {
+        try {
+            Map<String, Object> confirmation = new HashMap<>();
+            confirmation.put("type", "subscription_confirmation");
+            confirmation.put("action", action);
+            confirmation.put("topic", topic);
+            confirmation.put("topics", subscriptionIndex.topics(session));
+            confirmation.put("timestamp", java.time.Instant.now().toString());
+            
+            sendToSession(session, confirmation);
+        } catch (Exception e) {
+            log.error("发送订阅确认失败", e);
+        }
     }
 
     private String extractUserIdFromSession(WebSocketSession session) {
@@ -275,8 +477,18 @@ public class NotificationWebSocketController implements WebSocketHandler {
         return "OP001";
     }
 
-    private void removeUserSession(WebSocketSession session) {
-        userSessions.entrySet().removeIf(entry -> entry.getValue() == session);
+    private void sendToSession(WebSocketSession session, Object payload) throws Exception {
+        outboundSender.enqueue(session, objectMapper.writeValueAsString(payload), null);
+    }
+
+    private String coalesceKey(Object notification) {
+        if (notification instanceof Map) {
+            Object type = ((Map<?, ?>) notification).get("type");
+            if (type != null && COALESCING_TYPES.contains(type.toString())) {
+                return type + ":" + ((Map<?, ?>) notification).get("orderNo");
+            }
+        }
+        return null;
     }
 
     private void sendErrorMessage(WebSocketSession session, String errorMessage) {
@@ -286,9 +498,8 @@ public class NotificationWebSocketController implements WebSocketHandler {
             error.put("message", errorMessage);
             error.put("timestamp", java.time.Instant.now().toString());
             
-            String message = objectMapper.writeValueAsString(error);
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
+            sendToSession(session, error);
+        } catch (Exception e) {
             log.error("发送错误消息失败", e);
         }
     }
@@ -299,7 +510,10 @@ public class NotificationWebSocketController implements WebSocketHandler {
     public Map<String, Object> getConnectionStats() {
         Map<String, Object> stats = new HashMap<>();
         stats.put("activeConnections", activeSessions.size());
-        stats.put("userSessions", userSessions.size());
+        stats.put("subscriptions", subscriptionIndex.getStats());
+        backplane.ifPresent(b -> stats.put("backplane", b.getStats()));
+        stats.put("outbound", outboundSender.getMetrics());
+        stats.put("taskInbox", operatorTaskInbox.getStats());
         stats.put("timestamp", java.time.Instant.now().toString());
         return stats;
     }
@@ -1,5 +1,7 @@
 package com.oneorder.clearing.controller;
 
+import com.oneorder.clearing.service.ExecutionLogService;
+import com.oneorder.clearing.service.PassthroughRoutingTable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
@@ -36,18 +38,23 @@ public class PassthroughProcessingController {
     // 模拟数据存储
     private static final Map<String, Map<String, Object>> passthroughInstructions = new HashMap<>();
     private static final Map<String, List<Map<String, Object>>> passthroughDetails = new HashMap<>();
-    private static final List<Map<String, Object>> routingRules = new ArrayList<>();
     private static final List<Map<String, Object>> nettingRules = new ArrayList<>();
     private static final Map<String, List<Map<String, Object>>> nettingResults = new HashMap<>();
-    private static final List<Map<String, Object>> executionLogs = new ArrayList<>();
+    
+    private final ExecutionLogService executionLogService;
+    
+    private final PassthroughRoutingTable routingTable;
     
     static {
-        // 初始化过账路由规则
-        initializeRoutingRules();
         // 初始化轧差规则
         initializeNettingRules();
     }
     
+    public PassthroughProcessingController(ExecutionLogService executionLogService, PassthroughRoutingTable routingTable) {
+        this.executionLogService = executionLogService;
+        this.routingTable = routingTable;
+    }
+    
     /**
      * 生成过账处理指令
      */
@@ -73,7 +80,7 @@ public class PassthroughProcessingController {
             }
             
             // 应用过账路由规则
-            PassthroughProcessor processor = new PassthroughProcessor();
+            PassthroughProcessor processor = new PassthroughProcessor(routingTable);
             List<Map<String, Object>> passthroughDetailsList = processor.processRoutingRules(clearingDetails, instructionId);
             
             // 计算过账统计
@@ -316,7 +323,7 @@ public class PassthroughProcessingController {
             statistics.put("totalRetentionAmount", totalRetentionAmount);
             statistics.put("totalNettingSavedAmount", totalNettingSavedAmount);
             statistics.put("modeStats", modeStats);
-            statistics.put("routingRulesCount", routingRules.size());
+            statistics.put("routingRulesCount", routingTable.getRules().size());
             statistics.put("nettingRulesCount", nettingRules.size());
             statistics.put("statisticsTime", LocalDateTime.now());
             
@@ -334,13 +341,26 @@ public class PassthroughProcessingController {
     @GetMapping("/routing-rules")
     public ResponseEntity<Map<String, Object>> getRoutingRules() {
         try {
-            return ResponseEntity.ok(createSuccessResponse(routingRules, "查询成功"));
+            return ResponseEntity.ok(createSuccessResponse(routingTable.getRules(), "查询成功"));
         } catch (Exception e) {
             logger.error("获取过账路由规则失败", e);
             return ResponseEntity.ok(createErrorResponse(500, "获取过账路由规则失败: " + e.getMessage()));
         }
     }
     
+    /**
+     * 从数据库重新加载过账路由规则
+     */
+    @PostMapping("/routing-rules/reload")
+    public ResponseEntity<Map<String, Object>> reloadRoutingRules() {
+        try {
+            return ResponseEntity.ok(createSuccessResponse(routingTable.reload(), "重新加载完成"));
+        } catch (Exception e) {
+            logger.error("重新加载过账路由规则失败", e);
+            return ResponseEntity.ok(createErrorResponse(500, "重新加载过账路由规则失败: " + e.getMessage()));
+        }
+    }
+    
     /**
      * 获取轧差规则
      */
@@ -360,11 +380,7 @@ public class PassthroughProcessingController {
     @GetMapping("/logs/{instructionId}")
     public ResponseEntity<Map<String, Object>> getExecutionLogs(@PathVariable String instructionId) {
         try {
-            List<Map<String, Object>> logs = executionLogs.stream()
-                .filter(log -> instructionId.equals(log.get("instructionId")))
-                .sorted((a, b) -> ((LocalDateTime) b.get("createdTime"))
-                    .compareTo((LocalDateTime) a.get("createdTime")))
-                .collect(Collectors.toList());
+            List<Map<String, Object>> logs = executionLogService.findPassthroughByInstruction(instructionId);
             
             return ResponseEntity.ok(createSuccessResponse(logs, "查询成功"));
         } catch (Exception e) {
@@ -590,6 +606,12 @@ public class PassthroughProcessingController {
      */
     private static class PassthroughProcessor {
         
+        private final PassthroughRoutingTable routingTable;
+        
+        private PassthroughProcessor(PassthroughRoutingTable routingTable) {
+            this.routingTable = routingTable;
+        }
+        
         public List<Map<String, Object>> processRoutingRules(List<Map<String, Object>> clearingDetails, String instructionId) {
             List<Map<String, Object>> passthroughDetailsList = new ArrayList<>();
             
@@ -619,13 +641,7 @@ public class PassthroughProcessingController {
         }
         
         private Map<String, Object> findMatchingRoutingRule(String payerId, String payeeId, String currency) {
-            return routingRules.stream()
-                .filter(rule -> "ACTIVE".equals(rule.get("ruleStatus")))
-                .filter(rule -> payerId.equals(rule.get("payerLegalEntityId")))
-                .filter(rule -> payeeId.equals(rule.get("payeeLegalEntityId")))
-                .filter(rule -> currency.equals(rule.get("currencyCode")))
-                .min(Comparator.comparingInt(rule -> (Integer) rule.get("rulePriority")))
-                .orElse(null);
+            return routingTable.findMatchingRule(payerId, payeeId, currency);
         }
         
         private List<Map<String, Object>> generateRoutingTransactions(
@@ -1151,91 +1167,7 @@ public class PassthroughProcessingController {
     }
     
     private void addExecutionLog(String instructionId, String level, String type, String message) {
-        Map<String, Object> log = new HashMap<>();
-        log.put("logId", "LOG_" + System.currentTimeMillis());
-        log.put("instructionId", instructionId);
-        log.put("logLevel", level);
-        log.put("logType", type);
-        log.put("logMessage", message);
-        log.put("executionPhase", type);
-        log.put("createdTime", LocalDateTime.now());
-        
-        executionLogs.add(log);
-    }
-    
-    private static void initializeRoutingRules() {
-        // 过账路由规则1: A公司到B公司USD通过C公司过账，1%留存
-        Map<String, Object> rule1 = new HashMap<>();
-        rule1.put("ruleId", "ROUTE_001");
-        rule1.put("ruleName", "A公司到B公司USD过账规则");
-        rule1.put("ruleDescription", "A公司付B公司USD时通过C公司过账，C公司留存1%");
-        rule1.put("payerLegalEntityId", "ENTITY_A");
-        rule1.put("payerLegalEntityName", "A公司");
-        rule1.put("payeeLegalEntityId", "ENTITY_B");
-        rule1.put("payeeLegalEntityName", "B公司");
-        rule1.put("currencyCode", "USD");
-        rule1.put("routingEntity1Id", "ENTITY_C");
-        rule1.put("routingEntity1Name", "C公司");
-        rule1.put("routingEntity2Id", null);
-        rule1.put("routingEntity2Name", null);
-        rule1.put("retentionMode", "PERCENTAGE");
-        rule1.put("routing1RetentionRate", new BigDecimal("0.010000"));
-        rule1.put("routing2RetentionRate", new BigDecimal("0.000000"));
-        rule1.put("rulePriority", 100);
-        rule1.put("ruleStatus", "ACTIVE");
-        rule1.put("effectiveDate", "2025-01-01");
-        rule1.put("createdBy", "system");
-        rule1.put("createdTime", LocalDateTime.now());
-        routingRules.add(rule1);
-        
-        // 过账路由规则2: A公司到B公司CNY双路由过账
-        Map<String, Object> rule2 = new HashMap<>();
-        rule2.put("ruleId", "ROUTE_002");
-        rule2.put("ruleName", "A公司到B公司CNY双路由规则");
-        rule2.put("ruleDescription", "A公司付B公司CNY时通过C公司和D公司过账");
-        rule2.put("payerLegalEntityId", "ENTITY_A");
-        rule2.put("payerLegalEntityName", "A公司");
-        rule2.put("payeeLegalEntityId", "ENTITY_B");
-        rule2.put("payeeLegalEntityName", "B公司");
-        rule2.put("currencyCode", "CNY");
-        rule2.put("routingEntity1Id", "ENTITY_C");
-        rule2.put("routingEntity1Name", "C公司");
-        rule2.put("routingEntity2Id", "ENTITY_D");
-        rule2.put("routingEntity2Name", "D公司");
-        rule2.put("retentionMode", "PERCENTAGE");
-        rule2.put("routing1RetentionRate", new BigDecimal("0.010000"));
-        rule2.put("routing2RetentionRate", new BigDecimal("0.005000"));
-        rule2.put("rulePriority", 200);
-        rule2.put("ruleStatus", "ACTIVE");
-        rule2.put("effectiveDate", "2025-01-01");
-        rule2.put("createdBy", "system");
-        rule2.put("createdTime", LocalDateTime.now());
-        routingRules.add(rule2);
-        
-        // 过账路由规则3: E公司到F公司EUR固定金额规则
-        Map<String, Object> rule3 = new HashMap<>();
-        rule3.put("ruleId", "ROUTE_003");
-        rule3.put("ruleName", "E公司到F公司EUR固定金额规则");
-        rule3.put("ruleDescription", "E公司付F公司EUR时通过G公司过账，固定留存50EUR");
-        rule3.put("payerLegalEntityId", "ENTITY_E");
-        rule3.put("payerLegalEntityName", "E公司");
-        rule3.put("payeeLegalEntityId", "ENTITY_F");
-        rule3.put("payeeLegalEntityName", "F公司");
-        rule3.put("currencyCode", "EUR");
-        rule3.put("routingEntity1Id", "ENTITY_G");
-        rule3.put("routingEntity1Name", "G公司");
-        rule3.put("routingEntity2Id", null);
-        rule3.put("routingEntity2Name", null);
-        rule3.put("retentionMode", "FIXED_AMOUNT");
-        rule3.put("routing1RetentionRate", new BigDecimal("0.000000"));
-        rule3.put("routing1RetentionAmount", new BigDecimal("50.00"));
-        rule3.put("routing2RetentionRate", new BigDecimal("0.000000"));
-        rule3.put("rulePriority", 150);
-        rule3.put("ruleStatus", "ACTIVE");
-        rule3.put("effectiveDate", "2025-01-01");
-        rule3.put("createdBy", "system");
-        rule3.put("createdTime", LocalDateTime.now());
-        routingRules.add(rule3);
+        executionLogService.appendPassthrough(instructionId, level, type, message);
     }
     
     private static void initializeNettingRules() {
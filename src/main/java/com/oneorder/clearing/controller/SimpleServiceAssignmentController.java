@@ -1,5 +1,9 @@
 package com.oneorder.clearing.controller;
 
+import com.oneorder.clearing.entity.OrderService;
+import com.oneorder.clearing.service.OperatorLoadScheduler;
+import com.oneorder.clearing.service.ServiceAssignmentBatchService;
+import com.oneorder.clearing.service.SlaTimerWheel;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
@@ -21,6 +25,20 @@ public class SimpleServiceAssignmentController {
 
     private static final Logger logger = LoggerFactory.getLogger(SimpleServiceAssignmentController.class);
 
+    private final ServiceAssignmentBatchService batchService;
+
+    private final OperatorLoadScheduler loadScheduler;
+
+    private final SlaTimerWheel slaTimerWheel;
+
+    public SimpleServiceAssignmentController(ServiceAssignmentBatchService batchService,
+                                             OperatorLoadScheduler loadScheduler,
+                                             SlaTimerWheel slaTimerWheel) {
+        this.batchService = batchService;
+        this.loadScheduler = loadScheduler;
+        this.slaTimerWheel = slaTimerWheel;
+    }
+
     /**
      * 获取订单的服务项目列表
      */
@@ -57,29 +75,21 @@ public class SimpleServiceAssignmentController {
     }
 
     /**
-     * 获取可用的操作人员列表
+     * 获取可用的操作人员列表，按负载从低到高排序（在线优先）
      */
     @GetMapping("/available-operators")
     public ResponseEntity<Map<String, Object>> getAvailableOperators(
             @RequestParam(required = false) String businessType,
-            @RequestParam(required = false) String serviceCode) {
+            @RequestParam(required = false) String serviceCode,
+            @RequestParam(defaultValue = "50") int limit) {
         
         logger.info("获取可用操作人员: businessType={}, serviceCode={}", businessType, serviceCode);
         
         Map<String, Object> response = new HashMap<>();
         try {
-            List<Map<String, Object>> operators = Arrays.asList(
-                createOperatorInfo("OP001", "张三", "海运操作部", "MBL_PROCESSING,BOOKING", 4, 5, "AVAILABLE"),
-                createOperatorInfo("OP002", "李四", "海运操作部", "MBL_PROCESSING,CONTAINER_LOADING", 3, 8, "AVAILABLE"),
-                createOperatorInfo("OP003", "王五", "内装操作部", "CONTAINER_LOADING,WAREHOUSE", 5, 3, "AVAILABLE"),
-                createOperatorInfo("OP004", "赵六", "报关部", "CUSTOMS_DECLARATION", 4, 10, "BUSY")
-            );
-            
-            // 根据serviceCode过滤操作人员
-            if (serviceCode != null && !serviceCode.isEmpty()) {
-                operators = operators.stream()
-                    .filter(op -> op.get("serviceCodes").toString().contains(serviceCode))
-                    .collect(java.util.stream.Collectors.toList());
+            List<Map<String, Object>> operators = new ArrayList<>();
+            for (OperatorLoadScheduler.OperatorLoad load : loadScheduler.suggest(serviceCode, limit)) {
+                operators.add(createOperatorInfo(load));
             }
             
             response.put("code", 200);
@@ -99,6 +109,56 @@ public class SimpleServiceAssignmentController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * 操作员负载调度统计
+     */
+    @GetMapping("/scheduler/stats")
+    public ResponseEntity<Map<String, Object>> getSchedulerStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "获取成功");
+        response.put("data", loadScheduler.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 从订单服务表重建操作员负载
+     */
+    @PostMapping("/scheduler/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildScheduler() {
+        loadScheduler.rebuild();
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "操作员负载已重建");
+        response.put("data", loadScheduler.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * SLA计时轮统计
+     */
+    @GetMapping("/sla/stats")
+    public ResponseEntity<Map<String, Object>> getSlaStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "获取成功");
+        response.put("data", slaTimerWheel.getStats());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 从订单服务表重建SLA时限
+     */
+    @PostMapping("/sla/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildSla() {
+        slaTimerWheel.rebuild();
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 200);
+        response.put("message", "SLA时限已重建");
+        response.put("data", slaTimerWheel.getStats());
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * 执行服务派单
      */
@@ -160,66 +220,40 @@ public class SimpleServiceAssignmentController {
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> assignments = (List<Map<String, Object>>) request.get("assignments");
             
-            List<Map<String, Object>> results = new ArrayList<>();
-            int successCount = 0;
-            int failedCount = 0;
-            
-            for (Map<String, Object> assignment : assignments) {
-                try {
-                    String serviceCode = (String) assignment.get("serviceCode");
-                    String operatorId = (String) assignment.get("operatorId");
-                    String notes = (String) assignment.get("notes");
-                    
-                    // 单个派单处理
-                    Map<String, Object> singleRequest = Map.of(
-                        "orderId", orderId,
-                        "serviceCode", serviceCode,
-                        "operatorId", operatorId,
-                        "notes", notes != null ? notes : ""
-                    );
-                    
-                    ResponseEntity<Map<String, Object>> singleResult = assignService(singleRequest);
-                    
-                    if (singleResult.getBody() != null && singleResult.getBody().get("code").equals(200)) {
-                        results.add(Map.of(
-                            "serviceCode", serviceCode,
-                            "operatorId", operatorId,
-                            "status", "SUCCESS",
-                            "assignmentId", ((Map<String, Object>) singleResult.getBody().get("data")).get("assignmentId")
-                        ));
-                        successCount++;
-                    } else {
-                        results.add(Map.of(
-                            "serviceCode", serviceCode,
-                            "operatorId", operatorId,
-                            "status", "FAILED",
-                            "error", singleResult.getBody() != null ? singleResult.getBody().get("message") : "未知错误"
-                        ));
-                        failedCount++;
-                    }
-                    
-                } catch (Exception e) {
-                    results.add(Map.of(
-                        "serviceCode", assignment.get("serviceCode"),
-                        "operatorId", assignment.get("operatorId"),
-                        "status", "FAILED",
-                        "error", e.getMessage()
-                    ));
-                    failedCount++;
-                }
+            ServiceAssignmentBatchService.BatchAssignRequest batchRequest = new ServiceAssignmentBatchService.BatchAssignRequest();
+            batchRequest.setOrderId(orderId);
+            batchRequest.setAssignedBy((String) request.get("assignedBy"));
+            batchRequest.setOperatorName((String) request.get("operatorName"));
+            batchRequest.setItems(new ArrayList<>());
+            for (Map<String, Object> assignment : assignments != null ? assignments : List.<Map<String, Object>>of()) {
+                ServiceAssignmentBatchService.AssignItem item = new ServiceAssignmentBatchService.AssignItem();
+                item.setOrderId((String) assignment.get("orderId"));
+                item.setServiceId(assignment.get("serviceId") != null
+                    ? Long.valueOf(assignment.get("serviceId").toString()) : null);
+                item.setServiceCode((String) assignment.get("serviceCode"));
+                item.setOperatorId((String) assignment.get("operatorId"));
+                item.setProtocolId((String) assignment.get("protocolId"));
+                item.setPriority(assignment.get("priority") != null
+                    ? OrderService.Priority.valueOf(assignment.get("priority").toString()) : null);
+                item.setNotes((String) assignment.get("notes"));
+                batchRequest.getItems().add(item);
             }
             
+            ServiceAssignmentBatchService.BatchAssignResult result = batchService.assign(batchRequest);
+            
             response.put("code", 200);
-            response.put("message", String.format("批量派单完成: 成功%d个, 失败%d个", successCount, failedCount));
-            response.put("data", Map.of(
-                "orderId", orderId,
-                "results", results,
-                "summary", Map.of(
-                    "total", assignments.size(),
-                    "success", successCount,
-                    "failed", failedCount
-                )
+            response.put("message", String.format("批量派单完成: 成功%d个, 失败%d个", result.getSuccess(), result.getFailed()));
+            Map<String, Object> data = new HashMap<>();
+            data.put("orderId", orderId);
+            data.put("results", result.getResults());
+            data.put("summary", Map.of(
+                "total", result.getTotal(),
+                "success", result.getSuccess(),
+                "failed", result.getFailed(),
+                "notifiedOperators", result.getNotifiedOperators(),
+                "elapsedMillis", result.getElapsedMillis()
             ));
+            response.put("data", data);
             
         } catch (Exception e) {
             logger.error("批量服务派单失败: {}", e.getMessage());
@@ -364,18 +398,17 @@ public class SimpleServiceAssignmentController {
         return service;
     }
 
-    private Map<String, Object> createOperatorInfo(String id, String name, String dept, 
-                                                  String serviceCodes, int skillLevel, int currentLoad, String status) {
+    private Map<String, Object> createOperatorInfo(OperatorLoadScheduler.OperatorLoad load) {
         Map<String, Object> operator = new HashMap<>();
-        operator.put("operatorId", id);
-        operator.put("operatorName", name);
-        operator.put("department", dept);
-        operator.put("serviceCodes", serviceCodes);
-        operator.put("skillLevel", skillLevel);
-        operator.put("currentOrderCount", currentLoad);
-        operator.put("maxConcurrentOrders", 15);
-        operator.put("status", status);
-        operator.put("workloadPercentage", Math.round((currentLoad * 100.0) / 15));
+        operator.put("operatorId", load.getStaffId());
+        operator.put("operatorName", load.getStaffName());
+        operator.put("department", load.getDepartmentId());
+        operator.put("serviceCodes", String.join(",", load.getServiceCodes()));
+        operator.put("currentOrderCount", load.getOpenTasks());
+        operator.put("maxConcurrentOrders", load.getMaxOpenTasks());
+        operator.put("online", load.isOnline());
+        operator.put("status", load.getStatus());
+        operator.put("workloadPercentage", load.getWorkloadPercentage());
         return operator;
     }
 
@@ -0,0 +1,42 @@
+package com.oneorder.clearing.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+/**
+ * 订单分币种费用汇总实体
+ * 
+ * 订单 × 币种一行，与 expense_entry_status 在同一事务内增量维护。
+ */
+@Entity
+@Table(name = "expense_entry_currency_totals",
+    uniqueConstraints = @UniqueConstraint(name = "uk_expense_entry_currency_totals", columnNames = {"order_id", "currency"}))
+@Data
+@NoArgsConstructor
+public class ExpenseEntryCurrencyTotal {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "order_id", nullable = false, length = 50)
+    private String orderId;
+    
+    @Column(name = "currency", nullable = false, length = 10)
+    private String currency;
+    
+    @Column(name = "receivable_count", nullable = false)
+    private Integer receivableCount = 0;
+    
+    @Column(name = "payable_count", nullable = false)
+    private Integer payableCount = 0;
+    
+    @Column(name = "total_receivable", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalReceivable = BigDecimal.ZERO;
+    
+    @Column(name = "total_payable", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalPayable = BigDecimal.ZERO;
+}
@@ -0,0 +1,55 @@
+package com.oneorder.clearing.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单录费状态实体
+ * 
+ * 每个订单一行，收付款笔数与金额随明细增删改增量维护，汇总查询直接读取本行，
+ * 由 ExpenseEntrySummaryService 通过 JDBC 原子累加写入。
+ */
+@Entity
+@Table(name = "expense_entry_status")
+@Data
+@NoArgsConstructor
+public class ExpenseEntryStatus {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "order_id", nullable = false, unique = true, length = 50)
+    private String orderId;
+    
+    /**
+     * 录费状态: IN_PROGRESS/COMPLETED/LOCKED
+     */
+    @Column(name = "entry_status", nullable = false, length = 20)
+    private String entryStatus = "IN_PROGRESS";
+    
+    @Column(name = "receivable_count", nullable = false)
+    private Integer receivableCount = 0;
+    
+    @Column(name = "payable_count", nullable = false)
+    private Integer payableCount = 0;
+    
+    /**
+     * 收款总额（各币种直接相加，分币种金额见 ExpenseEntryCurrencyTotal）
+     */
+    @Column(name = "total_receivable", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalReceivable = BigDecimal.ZERO;
+    
+    @Column(name = "total_payable", nullable = false, precision = 15, scale = 2)
+    private BigDecimal totalPayable = BigDecimal.ZERO;
+    
+    @Column(name = "last_modified_by", length = 50)
+    private String lastModifiedBy;
+    
+    @Column(name = "last_modified_time")
+    private LocalDateTime lastModifiedTime;
+}
@@ -156,7 +156,7 @@ public class OrderService extends BaseEntity {
      * 服务配置
      */
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "service_code", insertable = false, updatable = false)
+    @JoinColumn(name = "service_code", referencedColumnName = "fee_code", insertable = false, updatable = false)
     private ServiceConfig serviceConfig;
     
     /**
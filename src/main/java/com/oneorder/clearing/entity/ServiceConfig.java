@@ -1,6 +1,7 @@
 package com.oneorder.clearing.entity;
 
 import javax.persistence.*;
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
@@ -10,7 +11,7 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "service_config")
-public class ServiceConfig {
+public class ServiceConfig implements Serializable {
     
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
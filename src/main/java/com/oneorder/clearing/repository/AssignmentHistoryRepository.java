@@ -22,6 +22,12 @@ public interface AssignmentHistoryRepository extends JpaRepository<AssignmentHis
      */
     List<AssignmentHistory> findByOrderIdOrderByAssignmentTimeDesc(String orderId);
     
+    /**
+     * 根据订单ID查询指定时间之后的派单历史（按月分区后只扫描命中的分区）
+     */
+    List<AssignmentHistory> findByOrderIdAndAssignmentTimeGreaterThanEqualOrderByAssignmentTimeDesc(
+            String orderId, LocalDateTime since);
+    
     /**
      * 根据被分配操作员ID查询派单历史
      */
@@ -48,6 +54,12 @@ public interface AssignmentHistoryRepository extends JpaRepository<AssignmentHis
     @Query("SELECT ah FROM AssignmentHistory ah ORDER BY ah.assignmentTime DESC")
     Page<AssignmentHistory> findRecentAssignments(Pageable pageable);
     
+    /**
+     * 查询指定时间之后的最近派单历史记录，分页计数也只扫描该时间之后的分区
+     */
+    @Query("SELECT ah FROM AssignmentHistory ah WHERE ah.assignmentTime >= :since ORDER BY ah.assignmentTime DESC")
+    Page<AssignmentHistory> findRecentAssignmentsSince(@Param("since") LocalDateTime since, Pageable pageable);
+    
     /**
      * 根据操作员姓名查询派单历史（执行派单的操作员）
      */
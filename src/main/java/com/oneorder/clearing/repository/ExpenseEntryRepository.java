@@ -4,11 +4,13 @@ import com.oneorder.clearing.entity.ExpenseEntry;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -173,4 +175,90 @@ public interface ExpenseEntryRepository extends JpaRepository<ExpenseEntry, Long
         @Param("ourDepartmentId") String ourDepartmentId,
         Pageable pageable
     );
-}
\ No newline at end of file
+    
+    /**
+     * 按ID批量变更明细状态：仅更新处于源状态（需要时还须校验通过）的明细，同时递增乐观锁版本
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ExpenseEntry e SET e.entryStatus = :toStatus, e.version = COALESCE(e.version, 0) + 1, " +
+           "e.updatedBy = :operator, e.updatedTime = :now " +
+           "WHERE e.id IN :ids AND e.entryStatus = :fromStatus " +
+           "AND (:requireValid = false OR e.validationStatus = 'VALID')")
+    int transitionStatusByIds(@Param("ids") Collection<Long> ids,
+                              @Param("fromStatus") ExpenseEntry.EntryStatus fromStatus,
+                              @Param("toStatus") ExpenseEntry.EntryStatus toStatus,
+                              @Param("requireValid") boolean requireValid,
+                              @Param("operator") String operator,
+                              @Param("now") LocalDateTime now);
+    
+    /**
+     * 按订单批量变更明细状态
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ExpenseEntry e SET e.entryStatus = :toStatus, e.version = COALESCE(e.version, 0) + 1, " +
+           "e.updatedBy = :operator, e.updatedTime = :now " +
+           "WHERE e.orderId = :orderId AND e.entryStatus = :fromStatus " +
+           "AND (:requireValid = false OR e.validationStatus = 'VALID')")
+    int transitionStatusByOrderId(@Param("orderId") String orderId,
+                                  @Param("fromStatus") ExpenseEntry.EntryStatus fromStatus,
+                                  @Param("toStatus") ExpenseEntry.EntryStatus toStatus,
+                                  @Param("requireValid") boolean requireValid,
+                                  @Param("operator") String operator,
+                                  @Param("now") LocalDateTime now);
+    
+    /**
+     * 按录入时间区间（账期）批量变更明细状态
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE ExpenseEntry e SET e.entryStatus = :toStatus, e.version = COALESCE(e.version, 0) + 1, " +
+           "e.updatedBy = :operator, e.updatedTime = :now " +
+           "WHERE e.createdTime >= :startTime AND e.createdTime < :endTime AND e.entryStatus = :fromStatus " +
+           "AND (:requireValid = false OR e.validationStatus = 'VALID')")
+    int transitionStatusByCreatedTime(@Param("startTime") LocalDateTime startTime,
+                                      @Param("endTime") LocalDateTime endTime,
+                                      @Param("fromStatus") ExpenseEntry.EntryStatus fromStatus,
+                                      @Param("toStatus") ExpenseEntry.EntryStatus toStatus,
+                                      @Param("requireValid") boolean requireValid,
+                                      @Param("operator") String operator,
+                                      @Param("now") LocalDateTime now);
+    
+    /**
+     * 查询明细的当前状态（只取ID与状态列，不加载实体）
+     */
+    @Query("SELECT e.id, e.entryStatus FROM ExpenseEntry e WHERE e.id IN :ids")
+    List<Object[]> findStatusByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 查询订单中未处于目标状态的明细，按ID取前若干条
+     */
+    @Query("SELECT e.id, e.entryStatus FROM ExpenseEntry e WHERE e.orderId = :orderId AND e.entryStatus <> :status " +
+           "ORDER BY e.id")
+    List<Object[]> findStatusByOrderIdAndEntryStatusNot(@Param("orderId") String orderId,
+                                                        @Param("status") ExpenseEntry.EntryStatus status,
+                                                        Pageable pageable);
+    
+    /**
+     * 统计订单中未处于目标状态的明细
+     */
+    long countByOrderIdAndEntryStatusNot(String orderId, ExpenseEntry.EntryStatus status);
+    
+    /**
+     * 查询录入时间区间内未处于目标状态的明细，按ID取前若干条
+     */
+    @Query("SELECT e.id, e.entryStatus FROM ExpenseEntry e " +
+           "WHERE e.createdTime >= :startTime AND e.createdTime < :endTime AND e.entryStatus <> :status " +
+           "ORDER BY e.id")
+    List<Object[]> findStatusByCreatedTimeAndEntryStatusNot(@Param("startTime") LocalDateTime startTime,
+                                                            @Param("endTime") LocalDateTime endTime,
+                                                            @Param("status") ExpenseEntry.EntryStatus status,
+                                                            Pageable pageable);
+    
+    /**
+     * 统计录入时间区间内未处于目标状态的明细
+     */
+    @Query("SELECT COUNT(e) FROM ExpenseEntry e " +
+           "WHERE e.createdTime >= :startTime AND e.createdTime < :endTime AND e.entryStatus <> :status")
+    long countByCreatedTimeAndEntryStatusNot(@Param("startTime") LocalDateTime startTime,
+                                             @Param("endTime") LocalDateTime endTime,
+                                             @Param("status") ExpenseEntry.EntryStatus status);
+}
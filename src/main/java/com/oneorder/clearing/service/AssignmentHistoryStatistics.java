@@ -0,0 +1,201 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.AssignmentHistory;
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 派单历史统计
+ *
+ * 按派单类型、派单状态、派单日期维护计数，派单历史写入并提交后增量累加，统计接口直接读内存，
+ * 不再每次执行三次分组/计数查询并加载今日全部记录。
+ * 启动时和每隔一段时间用分组查询校准一次，直接改表（压测数据、手工修数）造成的偏差和校准期间丢失的增量在下次校准时纠正。
+ * 按日计数只保留最近若干天。
+ */
+@Slf4j
+@Service
+public class AssignmentHistoryStatistics {
+
+    // 类型或状态为空的记录归入该键，JSON 不允许空键
+    private static final String NULL_KEY = "UNKNOWN";
+
+    private static final String COUNT_BY_TYPE =
+        "SELECT assignment_type, COUNT(*) AS cnt FROM assignment_history GROUP BY assignment_type";
+
+    private static final String COUNT_BY_STATUS =
+        "SELECT status, COUNT(*) AS cnt FROM assignment_history GROUP BY status";
+
+    private static final String COUNT_BY_DAY =
+        "SELECT CAST(assignment_time AS DATE) AS day, COUNT(*) AS cnt FROM assignment_history " +
+        "WHERE assignment_time >= ? GROUP BY CAST(assignment_time AS DATE)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long reconcileMinutes;
+    private final int retainedDays;
+
+    private volatile Counters counters = new Counters();
+    private volatile LocalDateTime reconciledTime;
+    private ScheduledExecutorService reconciler;
+
+    public AssignmentHistoryStatistics(JdbcTemplate jdbcTemplate,
+                                       @Value("${clearing.assignment-history.reconcile-minutes:15}") long reconcileMinutes,
+                                       @Value("${clearing.assignment-history.retained-days:31}") int retainedDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reconcileMinutes = reconcileMinutes;
+        this.retainedDays = Math.max(1, retainedDays);
+    }
+
+    @PostConstruct
+    public void start() {
+        reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "assignment-history-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.execute(this::reconcile);
+        if (reconcileMinutes > 0) {
+            reconciler.scheduleWithFixedDelay(this::reconcile, reconcileMinutes, reconcileMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+    }
+
+    /**
+     * 派单历史写入后累加，在事务中调用时等提交后再计入
+     */
+    public void record(Collection<AssignmentHistory> histories) {
+        if (histories.isEmpty()) {
+            return;
+        }
+        List<AssignmentHistory> recorded = new ArrayList<>(histories);
+        TransactionCallbacks.afterCommit(() -> {
+            Counters current = counters;
+            LocalDate oldest = LocalDate.now().minusDays(retainedDays - 1);
+            for (AssignmentHistory history : recorded) {
+                current.add(history, oldest);
+            }
+            // 跨天后淘汰超出保留期的日期
+            if (current.byDay.size() > retainedDays) {
+                current.byDay.keySet().removeIf(day -> day.isBefore(oldest));
+            }
+        });
+    }
+
+    /**
+     * 用分组查询整体替换内存计数
+     */
+    public synchronized void reconcile() {
+        long startNanos = System.nanoTime();
+        try {
+            Counters rebuilt = new Counters();
+            jdbcTemplate.query(COUNT_BY_TYPE, rs -> {
+                rebuilt.byType.computeIfAbsent(key(rs.getString("assignment_type")), k -> new LongAdder()).add(rs.getLong("cnt"));
+            });
+            jdbcTemplate.query(COUNT_BY_STATUS, rs -> {
+                long count = rs.getLong("cnt");
+                rebuilt.byStatus.computeIfAbsent(key(rs.getString("status")), k -> new LongAdder()).add(count);
+                rebuilt.total.add(count);
+            });
+            LocalDate oldest = LocalDate.now().minusDays(retainedDays - 1);
+            jdbcTemplate.query(COUNT_BY_DAY, rs -> {
+                rebuilt.byDay.computeIfAbsent(rs.getDate("day").toLocalDate(), d -> new LongAdder()).add(rs.getLong("cnt"));
+            }, Timestamp.valueOf(oldest.atStartOfDay()));
+
+            long drift = Math.abs(rebuilt.total.sum() - counters.total.sum());
+            counters = rebuilt;
+            reconciledTime = LocalDateTime.now();
+            log.info("派单历史统计已校准: 共{}条, 偏差{}条, 耗时{}ms", rebuilt.total.sum(), drift,
+                (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (Exception e) {
+            log.error("校准派单历史统计失败，继续使用当前计数", e);
+        }
+    }
+
+    public Map<String, Long> getTypeDistribution() {
+        return snapshot(counters.byType);
+    }
+
+    public Map<String, Long> getStatusDistribution() {
+        return snapshot(counters.byStatus);
+    }
+
+    public long getTodayCount() {
+        LongAdder today = counters.byDay.get(LocalDate.now());
+        return today != null ? today.sum() : 0;
+    }
+
+    public long getTotal() {
+        return counters.total.sum();
+    }
+
+    /**
+     * 最近若干天的按日计数，没有派单的日期为0
+     */
+    public Map<LocalDate, Long> getDailyCounts(int days) {
+        Counters current = counters;
+        Map<LocalDate, Long> daily = new TreeMap<>();
+        LocalDate today = LocalDate.now();
+        for (int i = Math.min(days, retainedDays) - 1; i >= 0; i--) {
+            LocalDate day = today.minusDays(i);
+            LongAdder count = current.byDay.get(day);
+            daily.put(day, count != null ? count.sum() : 0);
+        }
+        return daily;
+    }
+
+    public LocalDateTime getReconciledTime() {
+        return reconciledTime;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counts) {
+        Map<String, Long> result = new HashMap<>();
+        counts.forEach((key, count) -> result.put(key, count.sum()));
+        return result;
+    }
+
+    private static String key(String value) {
+        return value != null ? value : NULL_KEY;
+    }
+
+    private static final class Counters {
+        private final Map<String, LongAdder> byType = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> byStatus = new ConcurrentHashMap<>();
+        private final Map<LocalDate, LongAdder> byDay = new ConcurrentHashMap<>();
+        private final LongAdder total = new LongAdder();
+
+        private void add(AssignmentHistory history, LocalDate oldest) {
+            byType.computeIfAbsent(key(history.getAssignmentType()), k -> new LongAdder()).increment();
+            byStatus.computeIfAbsent(key(history.getStatus()), k -> new LongAdder()).increment();
+            total.increment();
+            LocalDate day = history.getAssignmentTime() != null ? history.getAssignmentTime().toLocalDate() : LocalDate.now();
+            if (!day.isBefore(oldest)) {
+                byDay.computeIfAbsent(day, d -> new LongAdder()).increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 清分批次调度
+ *
+ * 新生成的清分指令归入当前开放的小批次（MICRO），批次在指令数达到上限或开放时间超过窗口时关闭。
+ * 关闭后等正在写入该批次的指令生成全部结束，批次置为 READY 并提交到有界的执行线程池自动执行。
+ * 执行队列满时批次留在待提交队列，下一次检查时重试，生成侧不受执行速度影响。
+ * 启动时把本节点上次停机前未执行完、或所属节点租约已过期的小批次接管并重新排入执行，其他存活节点的批次不动。
+ * 关闭调度（clearing.batch.enabled=false）时退回到按日批次、人工执行。
+ */
+@Slf4j
+@Service
+public class ClearingBatchScheduler {
+
+    public static final String BATCH_TYPE = "MICRO";
+
+    private static final DateTimeFormatter BATCH_TIME = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmssSSS");
+
+    private final ClearingInstructionStore instructionStore;
+    private final ClearingExecutionService executionService;
+    private final boolean enabled;
+    private final int maxSize;
+    private final long windowMillis;
+    private final int executorCount;
+    private final int queueCapacity;
+    private final long tickMillis;
+
+    // 开放批次、已关闭但仍有写入的批次和待提交队列；均由 this 保护，锁内只做内存记账，读写库和提交执行都在锁外
+    private OpenBatch current;
+    private final Map<String, OpenBatch> closing = new HashMap<>();
+    private final Deque<OpenBatch> backlog = new ArrayDeque<>();
+
+    // 批次ID后缀，同一毫秒内开出的批次不重复
+    private final AtomicInteger batchSequence = new AtomicInteger();
+    private final AtomicLong closedBySize = new AtomicLong();
+    private final AtomicLong closedByWindow = new AtomicLong();
+    private final AtomicLong executedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Latency fillLatency = new Latency();
+    private final Latency queueLatency = new Latency();
+    private final Latency executionLatency = new Latency();
+
+    private ThreadPoolExecutor executors;
+    private ScheduledExecutorService ticker;
+
+    public ClearingBatchScheduler(ClearingInstructionStore instructionStore,
+                                  ClearingExecutionService executionService,
+                                  @Value("${clearing.batch.enabled:true}") boolean enabled,
+                                  @Value("${clearing.batch.max-size:200}") int maxSize,
+                                  @Value("${clearing.batch.window-seconds:60}") long windowSeconds,
+                                  @Value("${clearing.batch.executors:2}") int executorCount,
+                                  @Value("${clearing.batch.queue-capacity:16}") int queueCapacity,
+                                  @Value("${clearing.batch.tick-millis:1000}") long tickMillis) {
+        this.instructionStore = instructionStore;
+        this.executionService = executionService;
+        this.enabled = enabled;
+        this.maxSize = Math.max(1, maxSize);
+        this.windowMillis = Math.max(1, windowSeconds) * 1000;
+        this.executorCount = Math.max(1, executorCount);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.tickMillis = Math.max(100, tickMillis);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("清分批次调度未启用，指令归入日常批次");
+            return;
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        executors = new ThreadPoolExecutor(executorCount, executorCount, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "clearing-batch-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clearing-batch-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.execute(this::recover);
+        ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (executors != null) {
+            executors.shutdownNow();
+        }
+    }
+
+    /**
+     * 为一条待生成的指令分配批次，生成结束（无论成功与否）后必须调用 {@link #release}
+     */
+    public String acquire(String createdBy) {
+        if (!enabled) {
+            return (String) instructionStore.getOrCreateDailyBatch(createdBy).get("batchId");
+        }
+        OpenBatch batch;
+        boolean opened = false;
+        synchronized (this) {
+            if (current == null) {
+                current = new OpenBatch(String.format("BATCH_%s_%04d", LocalDateTime.now().format(BATCH_TIME),
+                    Math.floorMod(batchSequence.getAndIncrement(), 10_000)));
+                opened = true;
+            }
+            batch = current;
+            batch.reserved++;
+            batch.writers++;
+            if (batch.reserved >= maxSize) {
+                closedBySize.incrementAndGet();
+                // 当前线程仍在写入，批次只会进入关闭中
+                close(batch);
+            }
+        }
+        // 批次记录在锁外创建，同一批次的其他写入方等待创建完成
+        if (opened) {
+            persist(batch, createdBy);
+        }
+        try {
+            batch.created.join();
+        } catch (CompletionException e) {
+            abandon(batch);
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return batch.batchId;
+    }
+
+    public void release(String batchId) {
+        if (!enabled) {
+            return;
+        }
+        OpenBatch ready = null;
+        synchronized (this) {
+            OpenBatch batch = current != null && current.batchId.equals(batchId) ? current : closing.get(batchId);
+            if (batch == null) {
+                return;
+            }
+            batch.writers--;
+            if (batch != current && batch.writers == 0) {
+                closing.remove(batchId);
+                ready = batch;
+            }
+        }
+        if (ready != null) {
+            markReady(ready);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxSize", maxSize);
+        stats.put("windowSeconds", windowMillis / 1000);
+        stats.put("executors", executorCount);
+        synchronized (this) {
+            stats.put("openBatch", current != null ? current.batchId : null);
+            stats.put("openBatchSize", current != null ? current.reserved : 0);
+            stats.put("closingBatches", closing.size());
+            stats.put("backlogBatches", backlog.size());
+            stats.put("queueDepth", backlog.size() + (executors != null ? executors.getQueue().size() : 0));
+        }
+        stats.put("runningBatches", running.get());
+        stats.put("closedBySize", closedBySize.get());
+        stats.put("closedByWindow", closedByWindow.get());
+        stats.put("executedBatches", executedBatches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("fillLatency", fillLatency.toMap());
+        stats.put("queueLatency", queueLatency.toMap());
+        stats.put("executionLatency", executionLatency.toMap());
+        return stats;
+    }
+
+    /**
+     * 关闭超过窗口的开放批次，重试提交积压的批次
+     */
+    private void tick() {
+        try {
+            OpenBatch ready = null;
+            synchronized (this) {
+                if (current != null && System.currentTimeMillis() - current.openedAt >= windowMillis) {
+                    closedByWindow.incrementAndGet();
+                    OpenBatch batch = current;
+                    ready = close(batch) ? batch : null;
+                }
+            }
+            if (ready != null) {
+                markReady(ready);
+            }
+            dispatch();
+        } catch (Exception e) {
+            log.error("清分批次调度检查失败", e);
+        }
+    }
+
+    /**
+     * 关闭开放批次，仍有写入时转入关闭中；返回批次是否已可执行。须持有 this
+     */
+    private boolean close(OpenBatch batch) {
+        current = null;
+        batch.closedAt = System.currentTimeMillis();
+        fillLatency.record(batch.closedAt - batch.openedAt);
+        if (batch.writers > 0) {
+            closing.put(batch.batchId, batch);
+            return false;
+        }
+        return true;
+    }
+
+    private void persist(OpenBatch batch, String createdBy) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            instructionStore.createBatch(batch.batchId, "小批次 " + now.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
+                BATCH_TYPE, now.plusNanos(windowMillis * 1_000_000), createdBy);
+            batch.created.complete(null);
+        } catch (RuntimeException e) {
+            batch.created.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 批次记录创建失败时撤销本次占用，批次不再接收写入也不执行
+     */
+    private synchronized void abandon(OpenBatch batch) {
+        batch.reserved--;
+        batch.writers--;
+        if (current == batch) {
+            current = null;
+        }
+        if (batch.writers == 0) {
+            closing.remove(batch.batchId);
+        }
+    }
+
+    private void markReady(OpenBatch batch) {
+        try {
+            instructionStore.updateBatchStatus(batch.batchId, "READY");
+        } catch (DataAccessException e) {
+            log.warn("更新批次状态失败: {}, {}", batch.batchId, e.getMessage());
+        }
+        synchronized (this) {
+            backlog.addLast(batch);
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            OpenBatch batch;
+            synchronized (this) {
+                batch = backlog.pollFirst();
+            }
+            if (batch == null) {
+                return;
+            }
+            try {
+                executors.execute(() -> execute(batch));
+            } catch (RejectedExecutionException e) {
+                // 执行队列已满，放回队首等下一次检查
+                synchronized (this) {
+                    backlog.addFirst(batch);
+                }
+                return;
+            }
+        }
+    }
+
+    private void execute(OpenBatch batch) {
+        long startedAt = System.currentTimeMillis();
+        queueLatency.record(startedAt - batch.closedAt);
+        running.incrementAndGet();
+        try {
+            Map<String, Object> found = instructionStore.findBatch(batch.batchId).orElse(null);
+            if (found == null) {
+                log.warn("清分批次不存在，跳过: {}", batch.batchId);
+                return;
+            }
+            Map<String, Object> result = executionService.performBatchExecution(found, false);
+            if (result == null) {
+                // 批次正被人工执行
+                log.info("清分批次正在执行中，跳过调度: {}", batch.batchId);
+                return;
+            }
+            executedBatches.incrementAndGet();
+            log.info("清分批次自动执行完成: {}, 状态{}, 指令{}条, 成功明细{}, 失败明细{}", batch.batchId,
+                found.get("batchStatus"), result.get("totalInstructions"), result.get("totalSuccessDetails"),
+                result.get("totalFailureDetails"));
+        } catch (Exception e) {
+            failedBatches.incrementAndGet();
+            log.error("清分批次自动执行失败: {}", batch.batchId, e);
+        } finally {
+            running.decrementAndGet();
+            executionLatency.record(System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    /**
+     * 重新排入上次停机前已生成但未执行完的小批次；只接管本节点名下或租约已过期的批次
+     */
+    private void recover() {
+        try {
+            int recovered = 0;
+            for (String status : Arrays.asList("PREPARING", "READY", "PROCESSING")) {
+                for (Map<String, Object> batch : instructionStore.listBatches(BATCH_TYPE, status, 1000)) {
+                    String batchId = (String) batch.get("batchId");
+                    synchronized (this) {
+                        // 启动后新开的批次由正常流程关闭
+                        if ((current != null && current.batchId.equals(batchId)) || closing.containsKey(batchId)) {
+                            continue;
+                        }
+                    }
+                    if (!instructionStore.claimBatch(batchId)) {
+                        // 其他节点仍在续约，由该节点关闭和执行
+                        continue;
+                    }
+                    synchronized (this) {
+                        OpenBatch pending = new OpenBatch(batchId);
+                        pending.created.complete(null);
+                        pending.closedAt = pending.openedAt;
+                        backlog.addLast(pending);
+                    }
+                    recovered++;
+                }
+            }
+            if (recovered > 0) {
+                log.info("恢复未执行完的清分批次{}个", recovered);
+            }
+            tick();
+        } catch (Exception e) {
+            log.error("恢复清分批次失败", e);
+        }
+    }
+
+    private static final class OpenBatch {
+        private final String batchId;
+        private final CompletableFuture<Void> created = new CompletableFuture<>();
+        private final long openedAt = System.currentTimeMillis();
+        private long closedAt;
+        private int reserved;
+        private int writers;
+
+        private OpenBatch(String batchId) {
+            this.batchId = batchId;
+        }
+    }
+
+    /**
+     * 延迟统计：次数、平均和最大毫秒数
+     */
+    private static final class Latency {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final AtomicLong maxMillis = new AtomicLong();
+
+        private void record(long millis) {
+            count.incrementAndGet();
+            totalMillis.addAndGet(millis);
+            maxMillis.accumulateAndGet(millis, Math::max);
+        }
+
+        private Map<String, Object> toMap() {
+            long samples = count.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", samples);
+            map.put("avgMillis", samples > 0 ? totalMillis.get() / samples : 0);
+            map.put("maxMillis", maxMillis.get());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * 清分执行
+ *
+ * 执行单条清分指令和整个清分批次：占用指令、按执行顺序并行执行明细、汇总结果并写回状态。
+ * 由清分处理接口和批次调度共用。
+ */
+@Slf4j
+@Service
+public class ClearingExecutionService {
+
+    private final ClearingInstructionStore instructionStore;
+
+    private final ClearingDetailExecutor detailExecutor;
+
+    private final ExecutionLogService executionLogService;
+
+    public ClearingExecutionService(ClearingInstructionStore instructionStore, ClearingDetailExecutor detailExecutor,
+                                    ExecutionLogService executionLogService) {
+        this.instructionStore = instructionStore;
+        this.detailExecutor = detailExecutor;
+        this.executionLogService = executionLogService;
+    }
+
+    /**
+     * 执行清分指令；实际执行时先占用指令，指令正在执行或已完成时返回 null
+     */
+    public Map<String, Object> performInstructionExecution(Map<String, Object> instruction, boolean dryRun) {
+        String instructionId = (String) instruction.get("instructionId");
+        
+        if (!dryRun && !instructionStore.startExecution(instructionId, "system")) {
+            return null;
+        }
+        try {
+            return executeInstructionAsync(instruction, dryRun).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+    
+    /**
+     * 按执行顺序提交明细并行执行，结束后写回明细和指令状态；实际执行时调用方须已占用指令
+     */
+    private CompletableFuture<Map<String, Object>> executeInstructionAsync(Map<String, Object> instruction, boolean dryRun) {
+        String instructionId = (String) instruction.get("instructionId");
+        String batchId = (String) instruction.get("clearingBatchId");
+        
+        CompletableFuture<Map<String, Object>> execution;
+        try {
+            // 按执行顺序排序明细，同序明细并行
+            List<Map<String, Object>> details = new ArrayList<>(instructionStore.findDetails(instructionId));
+            details.sort(Comparator.comparing(d -> (Integer) d.get("executionOrder")));
+            
+            addExecutionLog(instructionId, batchId, "INFO", "EXECUTION", 
+                dryRun ? "开始清分试算" : "开始执行清分指令");
+            
+            execution = detailExecutor
+                .submit(details, d -> (Integer) d.get("executionOrder"), d -> executeDetailSafely(instruction, d, dryRun))
+                .thenApply(results -> {
+                    Map<String, Object> result = summarizeExecution(instruction, details, results, dryRun);
+                    if (!dryRun) {
+                        instructionStore.finishExecution(instructionId, (String) result.get("finalStatus"), details);
+                    }
+                    return result;
+                });
+        } catch (RuntimeException e) {
+            execution = CompletableFuture.failedFuture(e);
+        }
+        return execution.whenComplete((result, e) -> {
+            if (e != null && !dryRun) {
+                instructionStore.abortExecution(instructionId, "FAILED");
+            }
+        });
+    }
+    
+    /**
+     * 执行单个明细并更新明细状态，异常记日志后返回 null
+     */
+    private Map<String, Object> executeDetailSafely(Map<String, Object> instruction, Map<String, Object> detail, boolean dryRun) {
+        try {
+            // 模拟执行清分明细
+            Map<String, Object> result = executeClearingDetail(detail, dryRun);
+            if (!dryRun) {
+                if ("SUCCESS".equals(result.get("status"))) {
+                    detail.put("detailStatus", "COMPLETED");
+                    detail.put("executedTime", LocalDateTime.now());
+                } else {
+                    detail.put("detailStatus", "FAILED");
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            addExecutionLog((String) instruction.get("instructionId"), (String) instruction.get("clearingBatchId"),
+                "ERROR", "EXECUTION", "明细执行失败: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 按执行顺序汇总明细结果
+     */
+    private Map<String, Object> summarizeExecution(Map<String, Object> instruction, List<Map<String, Object>> details,
+            List<Map<String, Object>> results, boolean dryRun) {
+        String instructionId = (String) instruction.get("instructionId");
+        String batchId = (String) instruction.get("clearingBatchId");
+        
+        List<Map<String, Object>> executionResults = new ArrayList<>();
+        int successCount = 0;
+        int failureCount = 0;
+        BigDecimal totalExecutedAmount = BigDecimal.ZERO;
+        
+        for (int i = 0; i < details.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (result == null) {
+                failureCount++;
+                continue;
+            }
+            executionResults.add(result);
+            
+            if ("SUCCESS".equals(result.get("status"))) {
+                successCount++;
+                BigDecimal amount = (BigDecimal) details.get(i).get("detailAmount");
+                totalExecutedAmount = totalExecutedAmount.add(amount);
+            } else {
+                failureCount++;
+            }
+        }
+        
+        // 指令最终状态，由调用方随明细状态一起写回
+        String finalStatus = (failureCount == 0) ? "COMPLETED" : 
+                            (successCount > 0) ? "PARTIALLY_COMPLETED" : "FAILED";
+        
+        BigDecimal successRate = details.isEmpty() ? BigDecimal.ZERO : BigDecimal.valueOf(successCount)
+            .divide(BigDecimal.valueOf(details.size()), 4, RoundingMode.HALF_UP)
+            .multiply(BigDecimal.valueOf(100));
+        
+        addExecutionLog(instructionId, batchId, "INFO", "EXECUTION", 
+            String.format("%s完成，成功%d笔，失败%d笔，成功率%.2f%%", 
+                dryRun ? "试算" : "执行", successCount, failureCount, successRate));
+        
+        return Map.of(
+            "instructionId", instructionId,
+            "executionMode", dryRun ? "DRY_RUN" : "ACTUAL",
+            "totalDetails", details.size(),
+            "successCount", successCount,
+            "failureCount", failureCount,
+            "successRate", successRate,
+            "totalExecutedAmount", totalExecutedAmount,
+            "executionResults", executionResults,
+            "finalStatus", dryRun ? (String) instruction.get("instructionStatus") : finalStatus,
+            "executedTime", LocalDateTime.now()
+        );
+    }
+    
+    /**
+     * 执行单个清分明细
+     */
+    private Map<String, Object> executeClearingDetail(Map<String, Object> detail, boolean dryRun) {
+        String detailType = (String) detail.get("detailType");
+        BigDecimal amount = (BigDecimal) detail.get("detailAmount");
+        String fromEntity = (String) detail.get("fromEntityId");
+        String toEntity = (String) detail.get("toEntityId");
+        
+        // 模拟清分执行逻辑
+        boolean success = true;
+        String message = "";
+        
+        try {
+            switch (detailType) {
+                case "RECEIVABLE":
+                    message = String.format("%s从%s收款 ¥%.2f", 
+                        dryRun ? "模拟" : "实际", detail.get("fromEntityName"), amount);
+                    break;
+                case "PAYABLE":
+                    message = String.format("%s向%s付款 ¥%.2f", 
+                        dryRun ? "模拟" : "实际", detail.get("toEntityName"), amount);
+                    break;
+                case "INTERNAL_TRANSFER":
+                    message = String.format("%s内部流转 ¥%.2f", 
+                        dryRun ? "模拟" : "实际", amount);
+                    break;
+                default:
+                    message = "未知明细类型: " + detailType;
+                    success = false;
+            }
+            
+            // 模拟一些随机失败
+            if (Math.random() < 0.05) { // 5%失败率
+                success = false;
+                message += " - 执行失败：网络超时";
+            }
+            
+        } catch (Exception e) {
+            success = false;
+            message = "执行异常: " + e.getMessage();
+        }
+        
+        return Map.of(
+            "detailSequence", detail.get("detailSequence"),
+            "detailType", detailType,
+            "amount", amount,
+            "status", success ? "SUCCESS" : "FAILURE",
+            "message", message,
+            "executedTime", LocalDateTime.now()
+        );
+    }
+    
+    /**
+     * 执行批次清分；实际执行时先占用批次，批次正在执行时返回 null
+     */
+    public Map<String, Object> performBatchExecution(Map<String, Object> batch, boolean dryRun) {
+        String batchId = (String) batch.get("batchId");
+        
+        if (!dryRun) {
+            if (!instructionStore.startBatch(batchId)) {
+                return null;
+            }
+            batch.put("batchStatus", "PROCESSING");
+            batch.put("actualStartTime", LocalDateTime.now());
+        }
+        
+        try {
+            return executeBatchInstructions(batch, dryRun);
+        } finally {
+            if (!dryRun) {
+                instructionStore.finishBatch(batch);
+            }
+        }
+    }
+    
+    private Map<String, Object> executeBatchInstructions(Map<String, Object> batch, boolean dryRun) {
+        String batchId = (String) batch.get("batchId");
+        
+        // 获取批次下待执行的清分指令（按优先级）
+        List<Map<String, Object>> batchInstructions = instructionStore.findPendingByBatch(batchId);
+        
+        List<Map<String, Object>> instructionResults = new ArrayList<>();
+        int totalSuccessCount = 0;
+        int totalFailureCount = 0;
+        BigDecimal totalBatchAmount = BigDecimal.ZERO;
+        
+        // 各指令并行执行，结果按优先级顺序汇总
+        List<CompletableFuture<Map<String, Object>>> executions = new ArrayList<>();
+        for (Map<String, Object> instruction : batchInstructions) {
+            String instructionId = (String) instruction.get("instructionId");
+            try {
+                if (!dryRun && !instructionStore.startExecution(instructionId, "system")) {
+                    // 已被单独执行的指令跳过
+                    continue;
+                }
+                executions.add(executeInstructionAsync(instruction, dryRun).exceptionally(e -> {
+                    log.error("批次指令执行失败: instructionId={}", instructionId, e);
+                    return null;
+                }));
+            } catch (Exception e) {
+                log.error("批次指令执行失败: instructionId={}", instructionId, e);
+                executions.add(CompletableFuture.completedFuture(null));
+            }
+        }
+        
+        for (CompletableFuture<Map<String, Object>> execution : executions) {
+            Map<String, Object> result = execution.join();
+            if (result == null) {
+                totalFailureCount++;
+                continue;
+            }
+            instructionResults.add(result);
+            
+            totalSuccessCount += (Integer) result.get("successCount");
+            totalFailureCount += (Integer) result.get("failureCount");
+            totalBatchAmount = totalBatchAmount.add((BigDecimal) result.get("totalExecutedAmount"));
+        }
+        
+        // 更新批次状态
+        if (!dryRun) {
+            String finalStatus = (totalFailureCount == 0) ? "COMPLETED" : 
+                                (totalSuccessCount > 0) ? "PARTIALLY_COMPLETED" : "FAILED";
+            batch.put("batchStatus", finalStatus);
+            batch.put("actualEndTime", LocalDateTime.now());
+            batch.put("completedInstructionsCount", 
+                (int) instructionResults.stream().filter(r -> (Integer) r.get("failureCount") == 0).count());
+            batch.put("totalClearingAmount", totalBatchAmount);
+        }
+        
+        BigDecimal batchSuccessRate = batchInstructions.isEmpty() ? BigDecimal.ZERO :
+            BigDecimal.valueOf(instructionResults.size())
+                .divide(BigDecimal.valueOf(batchInstructions.size()), 4, RoundingMode.HALF_UP)
+                .multiply(BigDecimal.valueOf(100));
+        
+        return Map.of(
+            "batchId", batchId,
+            "executionMode", dryRun ? "DRY_RUN" : "ACTUAL",
+            "totalInstructions", batchInstructions.size(),
+            "completedInstructions", instructionResults.size(),
+            "batchSuccessRate", batchSuccessRate,
+            "totalBatchAmount", totalBatchAmount,
+            "totalSuccessDetails", totalSuccessCount,
+            "totalFailureDetails", totalFailureCount,
+            "instructionResults", instructionResults,
+            "executedTime", LocalDateTime.now()
+        );
+    }
+    
+    /**
+     * 添加执行日志
+     */
+    public void addExecutionLog(String instructionId, String batchId, String level, String type, String message) {
+        executionLogService.appendClearing(instructionId, batchId, level, type, message);
+        log.info("[{}] [{}] {}: {}", level, type, instructionId, message);
+    }
+}
@@ -0,0 +1,647 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 清分指令存储
+ *
+ * 清分指令、明细和批次持久化到 clearing_instructions / clearing_details / clearing_batches（sql/04、sql/08）。
+ * 指令和明细在一个事务内批量写入，执行结束时明细状态整批更新。
+ * 未完成的指令（待执行、执行中、失败、部分完成）连同明细常驻内存，按批次建索引，执行和批次取数不查库；
+ * 指令完成后移出内存，之后的查询走数据库索引。
+ * 执行中的指令和新建的批次记录所属节点和租约到期时间（sql/12），节点存活期间定期续约。
+ * 启动时从数据库加载未完成的指令；本节点上次停机时仍在执行中、或所属节点租约已过期的指令恢复为待执行，
+ * 其他存活节点正在执行的指令不受影响。明细状态只在执行结束时写入，中断的执行不会留下部分结果。
+ * 内存中的指令只反映本节点的操作：占用指令或接管批次失败时说明已被其他节点执行或接管，
+ * 相应指令和批次移出内存，之后的查询走数据库。
+ * 多节点部署时各节点须配置不同的 clearing.execution.node-id，重启后沿用同一标识。
+ * 内存中的指令和明细为线程安全的 Map，值不含 null。
+ */
+@Slf4j
+@Service
+public class ClearingInstructionStore {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private static final DateTimeFormatter BATCH_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private static final String INSERT_INSTRUCTION =
+        "INSERT INTO clearing_instructions (instruction_id, order_id, calculation_id, clearing_batch_id, clearing_mode, " +
+        "clearing_strategy, clearing_amount, primary_entity_id, instruction_status, execution_priority, created_by, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_DETAIL =
+        "INSERT INTO clearing_details (instruction_id, detail_sequence, detail_type, from_entity_id, from_entity_name, " +
+        "to_entity_id, to_entity_name, detail_amount, currency_code, service_code, service_name, department_id, " +
+        "department_name, detail_status, execution_order, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_BATCH =
+        "INSERT INTO clearing_batches (batch_id, batch_name, batch_type, batch_date, planned_execution_time, batch_status, " +
+        "created_by, created_time, owner_node, lease_expires_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, LOCALTIMESTAMP + ? * INTERVAL '1 second') ON CONFLICT (batch_id) DO NOTHING";
+
+    private static final String COUNT_BATCH_INSTRUCTION =
+        "UPDATE clearing_batches SET total_instructions_count = COALESCE(total_instructions_count, 0) + 1 WHERE batch_id = ?";
+
+    // 只有不在执行中、未完成的指令可以开始执行，多个节点并发执行同一指令时只有一个能更新成功
+    private static final String START_EXECUTION =
+        "UPDATE clearing_instructions SET instruction_status = 'PROCESSING', executed_by = ?, executed_time = ?, " +
+        "owner_node = ?, lease_expires_at = LOCALTIMESTAMP + ? * INTERVAL '1 second' " +
+        "WHERE instruction_id = ? AND instruction_status NOT IN ('PROCESSING', 'COMPLETED', 'CANCELLED')";
+
+    private static final String UPDATE_INSTRUCTION_STATUS =
+        "UPDATE clearing_instructions SET instruction_status = ? WHERE instruction_id = ?";
+
+    private static final String UPDATE_DETAIL_STATUS =
+        "UPDATE clearing_details SET detail_status = ?, executed_time = ? WHERE instruction_id = ? AND detail_sequence = ?";
+
+    private static final String UPDATE_BATCH =
+        "UPDATE clearing_batches SET batch_status = ?, actual_start_time = ?, actual_end_time = ?, " +
+        "completed_instructions_count = ?, total_clearing_amount = ? WHERE batch_id = ?";
+
+    // 租约时间取数据库时钟，节点间时钟偏差不影响判断
+    private static final String RESET_INTERRUPTED =
+        "UPDATE clearing_instructions SET instruction_status = 'PENDING', owner_node = NULL, lease_expires_at = NULL " +
+        "WHERE instruction_status = 'PROCESSING' " +
+        "AND (owner_node = ? OR lease_expires_at IS NULL OR lease_expires_at < LOCALTIMESTAMP)";
+
+    private static final String RENEW_INSTRUCTION_LEASES =
+        "UPDATE clearing_instructions SET lease_expires_at = LOCALTIMESTAMP + ? * INTERVAL '1 second' " +
+        "WHERE owner_node = ? AND instruction_status = 'PROCESSING' AND instruction_id IN (%s)";
+
+    private static final String RENEW_BATCH_LEASES =
+        "UPDATE clearing_batches SET lease_expires_at = LOCALTIMESTAMP + ? * INTERVAL '1 second' " +
+        "WHERE owner_node = ? AND batch_status IN ('PREPARING', 'READY', 'PROCESSING')";
+
+    // 本节点名下、无主或租约已过期的批次才能接管
+    private static final String CLAIM_BATCH =
+        "UPDATE clearing_batches SET owner_node = ?, lease_expires_at = LOCALTIMESTAMP + ? * INTERVAL '1 second' " +
+        "WHERE batch_id = ? AND (owner_node = ? OR owner_node IS NULL OR lease_expires_at IS NULL " +
+        "OR lease_expires_at < LOCALTIMESTAMP)";
+
+    private static final String SELECT_OPEN_INSTRUCTIONS =
+        "SELECT * FROM clearing_instructions WHERE instruction_status NOT IN ('COMPLETED', 'CANCELLED')";
+
+    private static final String SELECT_OPEN_DETAILS =
+        "SELECT d.* FROM clearing_details d JOIN clearing_instructions i ON i.instruction_id = d.instruction_id " +
+        "WHERE i.instruction_status NOT IN ('COMPLETED', 'CANCELLED') ORDER BY d.instruction_id, d.detail_sequence";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final String nodeId;
+    private final long leaseSeconds;
+
+    private final Map<String, OpenInstruction> openInstructions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> openByBatch = new ConcurrentHashMap<>();
+    private final Set<String> executing = ConcurrentHashMap.newKeySet();
+    private final Set<String> executingBatches = ConcurrentHashMap.newKeySet();
+    private final Map<String, Map<String, Object>> batches = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService heartbeat;
+
+    public ClearingInstructionStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                    @Value("${clearing.execution.node-id:}") String nodeId,
+                                    @Value("${clearing.execution.lease-seconds:120}") long leaseSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.nodeId = resolveNodeId(nodeId);
+        this.leaseSeconds = Math.max(10, leaseSeconds);
+    }
+
+    @PostConstruct
+    public void load() {
+        try {
+            int interrupted = jdbcTemplate.update(RESET_INTERRUPTED, nodeId);
+            if (interrupted > 0) {
+                log.warn("{}条清分指令在上次停机时仍在执行或所属节点租约已过期，已恢复为待执行", interrupted);
+            }
+            Map<String, List<Map<String, Object>>> details = new HashMap<>();
+            jdbcTemplate.query(SELECT_OPEN_DETAILS, rs -> {
+                Map<String, Object> detail = toMap(rs);
+                details.computeIfAbsent((String) detail.get("instructionId"), id -> new ArrayList<>()).add(detail);
+            });
+            jdbcTemplate.query(SELECT_OPEN_INSTRUCTIONS, rs -> {
+                Map<String, Object> instruction = toMap(rs);
+                String instructionId = (String) instruction.get("instructionId");
+                index(instruction, details.getOrDefault(instructionId, Collections.emptyList()));
+            });
+            log.info("清分指令存储已加载: 未完成指令{}条", openInstructions.size());
+        } catch (DataAccessException e) {
+            log.error("加载清分指令失败，请确认已执行 sql/04_clearing_processing_tables.sql、sql/08_clearing_processing_store.sql " +
+                "和 sql/12_clearing_execution_lease.sql", e);
+        }
+        long renewSeconds = Math.max(1, leaseSeconds / 3);
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clearing-lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renewLeases, renewSeconds, renewSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 同一订单的同一分润计算批次是否已生成清分指令
+     */
+    public boolean exists(String orderId, String calculationId) {
+        Long count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM clearing_instructions WHERE order_id = ? AND calculation_id = ?",
+            Long.class, orderId, calculationId);
+        return count != null && count > 0;
+    }
+
+    /**
+     * 一个事务内写入指令、全部明细并累加批次指令数；并发重复生成时由唯一索引抛出 DuplicateKeyException
+     */
+    public void create(Map<String, Object> instruction, List<Map<String, Object>> details) {
+        String instructionId = (String) instruction.get("instructionId");
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update(INSERT_INSTRUCTION,
+                instructionId,
+                instruction.get("orderId"),
+                instruction.get("calculationId"),
+                instruction.get("clearingBatchId"),
+                instruction.get("clearingMode"),
+                instruction.get("clearingStrategy"),
+                instruction.get("clearingAmount"),
+                instruction.get("primaryEntityId"),
+                instruction.get("instructionStatus"),
+                instruction.get("executionPriority"),
+                instruction.get("createdBy"),
+                timestamp(instruction.get("createdTime")));
+            jdbcTemplate.batchUpdate(INSERT_DETAIL, details.stream()
+                .map(detail -> new Object[] {
+                    instructionId,
+                    detail.get("detailSequence"),
+                    detail.get("detailType"),
+                    detail.get("fromEntityId"),
+                    detail.get("fromEntityName"),
+                    detail.get("toEntityId"),
+                    detail.get("toEntityName"),
+                    detail.get("detailAmount"),
+                    detail.get("currencyCode"),
+                    detail.get("serviceCode"),
+                    detail.get("serviceName"),
+                    detail.get("departmentId"),
+                    detail.get("departmentName"),
+                    detail.get("detailStatus"),
+                    detail.get("executionOrder"),
+                    timestamp(detail.get("createdTime"))})
+                .collect(Collectors.toList()));
+            jdbcTemplate.update(COUNT_BATCH_INSTRUCTION, instruction.get("clearingBatchId"));
+        });
+        index(instruction, details);
+        Map<String, Object> batch = batches.get(instruction.get("clearingBatchId"));
+        if (batch != null) {
+            batch.merge("totalInstructionsCount", 1, (a, b) -> ((Number) a).intValue() + 1);
+        }
+    }
+
+    public Optional<Map<String, Object>> findInstruction(String instructionId) {
+        OpenInstruction open = openInstructions.get(instructionId);
+        if (open != null) {
+            return Optional.of(open.instruction);
+        }
+        List<Map<String, Object>> rows = jdbcTemplate.query(
+            "SELECT * FROM clearing_instructions WHERE instruction_id = ?", (rs, rowNum) -> toMap(rs), instructionId);
+        return rows.stream().findFirst();
+    }
+
+    /**
+     * 订单最早生成的清分指令
+     */
+    public Optional<Map<String, Object>> findByOrder(String orderId) {
+        List<String> ids = jdbcTemplate.queryForList(
+            "SELECT instruction_id FROM clearing_instructions WHERE order_id = ? ORDER BY created_time LIMIT 1",
+            String.class, orderId);
+        return ids.isEmpty() ? Optional.empty() : findInstruction(ids.get(0));
+    }
+
+    /**
+     * 指令明细，按明细序号排序
+     */
+    public List<Map<String, Object>> findDetails(String instructionId) {
+        OpenInstruction open = openInstructions.get(instructionId);
+        if (open != null) {
+            return open.details;
+        }
+        return jdbcTemplate.query("SELECT * FROM clearing_details WHERE instruction_id = ? ORDER BY detail_sequence",
+            (rs, rowNum) -> toMap(rs), instructionId);
+    }
+
+    /**
+     * 批次下的待执行指令，按执行优先级从高到低
+     */
+    public List<Map<String, Object>> findPendingByBatch(String batchId) {
+        return openByBatch.getOrDefault(batchId, Collections.emptySet()).stream()
+            .map(openInstructions::get)
+            .filter(open -> open != null && PENDING.equals(open.instruction.get("instructionStatus")))
+            .map(open -> open.instruction)
+            .sorted(Comparator.comparing((Map<String, Object> inst) -> (Integer) inst.get("executionPriority"),
+                Comparator.reverseOrder()))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 占用指令开始执行并置为执行中；指令已在执行或已完成时返回 false，已被其他节点占用或完成的指令移出内存
+     */
+    public boolean startExecution(String instructionId, String executedBy) {
+        if (!executing.add(instructionId)) {
+            return false;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (jdbcTemplate.update(START_EXECUTION, executedBy, Timestamp.valueOf(now), nodeId, leaseSeconds,
+                    instructionId) == 0) {
+                executing.remove(instructionId);
+                forget(instructionId);
+                return false;
+            }
+            OpenInstruction open = openInstructions.get(instructionId);
+            if (open != null) {
+                open.instruction.put("instructionStatus", PROCESSING);
+                open.instruction.put("executedBy", executedBy);
+                open.instruction.put("executedTime", now);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            executing.remove(instructionId);
+            throw e;
+        }
+    }
+
+    /**
+     * 一个事务内写入全部明细状态和指令最终状态并释放指令；已完成的指令移出内存
+     */
+    public void finishExecution(String instructionId, String finalStatus, List<Map<String, Object>> details) {
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(UPDATE_DETAIL_STATUS, details.stream()
+                    .map(detail -> new Object[] {
+                        detail.get("detailStatus"),
+                        timestamp(detail.get("executedTime")),
+                        instructionId,
+                        detail.get("detailSequence")})
+                    .collect(Collectors.toList()));
+                jdbcTemplate.update(UPDATE_INSTRUCTION_STATUS, finalStatus, instructionId);
+            });
+            OpenInstruction open = openInstructions.get(instructionId);
+            if (open != null) {
+                open.instruction.put("instructionStatus", finalStatus);
+                if (COMPLETED.equals(finalStatus) || CANCELLED.equals(finalStatus)) {
+                    unindex(open.instruction);
+                }
+            }
+        } finally {
+            executing.remove(instructionId);
+        }
+    }
+
+    /**
+     * 执行异常中止时把指令状态写回
+     */
+    public void abortExecution(String instructionId, String status) {
+        try {
+            jdbcTemplate.update(UPDATE_INSTRUCTION_STATUS, status, instructionId);
+            OpenInstruction open = openInstructions.get(instructionId);
+            if (open != null) {
+                open.instruction.put("instructionStatus", status);
+            }
+        } finally {
+            executing.remove(instructionId);
+        }
+    }
+
+    // ===== 批次 =====
+
+    /**
+     * 当日日常批次，不存在时创建
+     */
+    public Map<String, Object> getOrCreateDailyBatch(String createdBy) {
+        LocalDate today = LocalDate.now();
+        String batchId = "BATCH_" + today.format(BATCH_DATE) + "_001";
+        return createBatch(batchId, today.format(BATCH_DATE) + " 日常清分批次", "DAILY", today.atTime(18, 0), createdBy);
+    }
+
+    /**
+     * 创建批次，已存在时返回现有批次
+     */
+    public Map<String, Object> createBatch(String batchId, String batchName, String batchType,
+                                           LocalDateTime plannedExecutionTime, String createdBy) {
+        return batches.computeIfAbsent(batchId, id -> {
+            LocalDateTime now = LocalDateTime.now();
+            jdbcTemplate.update(INSERT_BATCH, id, batchName, batchType, Date.valueOf(now.toLocalDate()),
+                Timestamp.valueOf(plannedExecutionTime), "PREPARING", createdBy, Timestamp.valueOf(now),
+                nodeId, leaseSeconds);
+            return loadBatch(id).orElseThrow(() -> new IllegalStateException("创建清分批次失败: " + id));
+        });
+    }
+
+    public void updateBatchStatus(String batchId, String batchStatus) {
+        jdbcTemplate.update("UPDATE clearing_batches SET batch_status = ? WHERE batch_id = ?", batchStatus, batchId);
+        Map<String, Object> cached = batches.get(batchId);
+        if (cached != null) {
+            cached.put("batchStatus", batchStatus);
+        }
+    }
+
+    public Optional<Map<String, Object>> findBatch(String batchId) {
+        Map<String, Object> cached = batches.get(batchId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        return loadBatch(batchId).map(batch -> batches.computeIfAbsent(batchId, id -> batch));
+    }
+
+    /**
+     * 按类型和状态筛选批次，按创建时间倒序
+     */
+    public List<Map<String, Object>> listBatches(String batchType, String batchStatus, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM clearing_batches WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (batchType != null) {
+            sql.append(" AND batch_type = ?");
+            args.add(batchType);
+        }
+        if (batchStatus != null) {
+            sql.append(" AND batch_status = ?");
+            args.add(batchStatus);
+        }
+        sql.append(" ORDER BY created_time DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            Map<String, Object> batch = toMap(rs);
+            Map<String, Object> cached = batches.get(batch.get("batchId"));
+            return cached != null ? cached : batch;
+        }, args.toArray());
+    }
+
+    /**
+     * 接管批次：批次属于本节点、无主或所属节点租约已过期时记为本节点所有；
+     * 其他节点仍在续约的批次返回 false，并把该批次及其未在本节点执行的指令移出内存
+     */
+    public boolean claimBatch(String batchId) {
+        if (jdbcTemplate.update(CLAIM_BATCH, nodeId, leaseSeconds, batchId, nodeId) == 0) {
+            batches.remove(batchId);
+            new ArrayList<>(openByBatch.getOrDefault(batchId, Collections.emptySet())).forEach(this::forget);
+            return false;
+        }
+        Map<String, Object> cached = batches.get(batchId);
+        if (cached != null) {
+            cached.put("ownerNode", nodeId);
+        }
+        return true;
+    }
+
+    public boolean startBatch(String batchId) {
+        return executingBatches.add(batchId);
+    }
+
+    /**
+     * 写回批次状态、起止时间、完成指令数和清分金额并释放批次
+     */
+    public void finishBatch(Map<String, Object> batch) {
+        String batchId = (String) batch.get("batchId");
+        try {
+            jdbcTemplate.update(UPDATE_BATCH,
+                batch.get("batchStatus"),
+                timestamp(batch.get("actualStartTime")),
+                timestamp(batch.get("actualEndTime")),
+                batch.get("completedInstructionsCount"),
+                batch.get("totalClearingAmount"),
+                batchId);
+        } finally {
+            executingBatches.remove(batchId);
+        }
+    }
+
+    public void releaseBatch(String batchId) {
+        executingBatches.remove(batchId);
+    }
+
+    // ===== 统计 =====
+
+    /**
+     * 按创建日期范围（含两端，可为空）统计指令和批次
+     */
+    public Map<String, Object> statistics(LocalDate dateFrom, LocalDate dateTo) {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (dateFrom != null) {
+            where.append(" AND created_time >= ?");
+            args.add(Timestamp.valueOf(dateFrom.atStartOfDay()));
+        }
+        if (dateTo != null) {
+            where.append(" AND created_time < ?");
+            args.add(Timestamp.valueOf(dateTo.plusDays(1).atStartOfDay()));
+        }
+
+        Map<String, Long> statusCounts = new HashMap<>();
+        Map<String, Long> modeCounts = new HashMap<>();
+        BigDecimal[] totalAmount = {BigDecimal.ZERO};
+        jdbcTemplate.query("SELECT instruction_status, clearing_mode, COUNT(*) AS cnt, COALESCE(SUM(clearing_amount), 0) AS amount " +
+            "FROM clearing_instructions" + where + " GROUP BY instruction_status, clearing_mode", rs -> {
+            long count = rs.getLong("cnt");
+            statusCounts.merge(rs.getString("instruction_status"), count, Long::sum);
+            modeCounts.merge(rs.getString("clearing_mode"), count, Long::sum);
+            totalAmount[0] = totalAmount[0].add(rs.getBigDecimal("amount"));
+        }, args.toArray());
+
+        Map<String, Object> batchCounts = jdbcTemplate.queryForMap("SELECT COUNT(*) AS total, " +
+            "COALESCE(SUM(CASE WHEN batch_status <> 'COMPLETED' THEN 1 ELSE 0 END), 0) AS active FROM clearing_batches" +
+            where, args.toArray());
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("statusCounts", statusCounts);
+        statistics.put("modeCounts", modeCounts);
+        statistics.put("totalClearingAmount", totalAmount[0]);
+        statistics.put("totalBatches", ((Number) batchCounts.get("total")).longValue());
+        statistics.put("activeBatches", ((Number) batchCounts.get("active")).longValue());
+        return statistics;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("openInstructions", openInstructions.size());
+        stats.put("openBatches", openByBatch.size());
+        stats.put("executingInstructions", executing.size());
+        stats.put("executingBatches", executingBatches.size());
+        stats.put("cachedBatches", batches.size());
+        return stats;
+    }
+
+    /**
+     * 为本节点正在执行的指令和未执行完的批次续约
+     */
+    private void renewLeases() {
+        try {
+            List<Object> args = new ArrayList<>(executing);
+            if (!args.isEmpty()) {
+                args.add(0, leaseSeconds);
+                args.add(1, nodeId);
+                jdbcTemplate.update(String.format(RENEW_INSTRUCTION_LEASES,
+                    String.join(",", Collections.nCopies(args.size() - 2, "?"))), args.toArray());
+            }
+            jdbcTemplate.update(RENEW_BATCH_LEASES, leaseSeconds, nodeId);
+        } catch (Exception e) {
+            log.warn("清分执行续约失败: {}", e.getMessage());
+        }
+    }
+
+    private Optional<Map<String, Object>> loadBatch(String batchId) {
+        return jdbcTemplate.query("SELECT * FROM clearing_batches WHERE batch_id = ?", (rs, rowNum) -> toMap(rs), batchId)
+            .stream().findFirst();
+    }
+
+    private void index(Map<String, Object> instruction, List<Map<String, Object>> details) {
+        String instructionId = (String) instruction.get("instructionId");
+        List<Map<String, Object>> sorted = details.stream()
+            .map(ClearingInstructionStore::copyOf)
+            .sorted(Comparator.comparing(detail -> (Integer) detail.get("detailSequence")))
+            .collect(Collectors.toList());
+        openInstructions.put(instructionId, new OpenInstruction(copyOf(instruction),
+            Collections.unmodifiableList(sorted)));
+        openByBatch.computeIfAbsent((String) instruction.get("clearingBatchId"), id -> ConcurrentHashMap.newKeySet())
+            .add(instructionId);
+    }
+
+    private void unindex(Map<String, Object> instruction) {
+        String instructionId = (String) instruction.get("instructionId");
+        openInstructions.remove(instructionId);
+        openByBatch.computeIfPresent((String) instruction.get("clearingBatchId"), (id, ids) -> {
+            ids.remove(instructionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    /**
+     * 指令由其他节点执行，移出内存；本节点正在执行的指令保留
+     */
+    private void forget(String instructionId) {
+        OpenInstruction open = openInstructions.get(instructionId);
+        if (open != null && !executing.contains(instructionId)) {
+            unindex(open.instruction);
+        }
+    }
+
+    /**
+     * 未配置时使用主机名，同一主机重启后仍能认领自己中断的执行
+     */
+    private static String resolveNodeId(String configured) {
+        if (configured != null && !configured.trim().isEmpty()) {
+            return configured.trim();
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "node";
+        }
+    }
+
+    /**
+     * 列名转驼峰作为键，时间转 LocalDateTime，批次日期转 yyyyMMdd，跳过 null
+     */
+    private static Map<String, Object> toMap(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        Map<String, Object> row = new ConcurrentHashMap<>();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            Object value = rs.getObject(i);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Timestamp) {
+                value = ((Timestamp) value).toLocalDateTime();
+            } else if (value instanceof Date) {
+                value = ((Date) value).toLocalDate().format(BATCH_DATE);
+            }
+            row.put(camelCase(meta.getColumnLabel(i)), value);
+        }
+        return row;
+    }
+
+    private static String camelCase(String column) {
+        StringBuilder name = new StringBuilder(column.length());
+        boolean upper = false;
+        for (char c : column.toLowerCase().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private static Map<String, Object> copyOf(Map<String, Object> source) {
+        Map<String, Object> copy = new ConcurrentHashMap<>();
+        source.forEach((key, value) -> {
+            if (value != null) {
+                copy.put(key, value);
+            }
+        });
+        return copy;
+    }
+
+    private static Timestamp timestamp(Object value) {
+        return value instanceof LocalDateTime ? Timestamp.valueOf((LocalDateTime) value) : null;
+    }
+
+    private static final class OpenInstruction {
+        private final Map<String, Object> instruction;
+        private final List<Map<String, Object>> details;
+
+        private OpenInstruction(Map<String, Object> instruction, List<Map<String, Object>> details) {
+            this.instruction = instruction;
+            this.details = details;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.oneorder.clearing.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 执行日志环形缓冲
+ *
+ * 最近的日志保存在固定容量的环形数组中，写满后覆盖最旧的条目；写入只做一次序号自增和一次槽位替换，没有全局锁，
+ * 索引通过 ConcurrentHashMap.compute 更新，只锁该指令/批次所在的桶。
+ * 按指令ID、批次ID各维护一个索引，查询只访问该指令/批次自己的条目；条目被覆盖时同时从索引中摘除，
+ * 并标记该指令/批次在缓冲中已不完整，查询方据此合并数据库中的日志。
+ * 缓冲只含本节点写入的日志，"完整"仅相对本节点而言；其他节点为同一指令写入的日志（如租约到期后接管执行）不在其中。
+ * 每条日志同时放入有界的待持久化队列，由 {@link ExecutionLogService} 异步批量写库；队列满时丢弃并计数，写日志不阻塞业务。
+ * 日志条目写入后不再修改。
+ */
+public final class ExecutionLogJournal {
+
+    private final String name;
+    private final AtomicReferenceArray<Slot> ring;
+    private final int mask;
+    private final int pendingCapacity;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final KeyIndex byInstruction;
+    private final KeyIndex byBatch;
+
+    private final ConcurrentLinkedQueue<Map<String, Object>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong persisted = new AtomicLong();
+    private final AtomicLong persistFailed = new AtomicLong();
+
+    /**
+     * @param capacity 环形缓冲容量，向上取整为 2 的幂
+     * @param pendingCapacity 待持久化队列上限
+     */
+    public ExecutionLogJournal(String name, int capacity, int pendingCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.name = name;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.pendingCapacity = Math.max(1, pendingCapacity);
+        this.byInstruction = new KeyIndex(size);
+        this.byBatch = new KeyIndex(size);
+    }
+
+    /**
+     * 追加一条日志，补充日志ID后返回；创建时间由调用方填写
+     */
+    public Map<String, Object> append(Map<String, Object> entry) {
+        long seq = sequence.getAndIncrement();
+        entry.putIfAbsent("logId", "LOG_" + System.currentTimeMillis() + "_" + seq);
+        Map<String, Object> log = Collections.unmodifiableMap(entry);
+        Slot slot = new Slot(seq, log);
+
+        byInstruction.add((String) log.get("instructionId"), slot);
+        byBatch.add((String) log.get("batchId"), slot);
+        Slot evicted = ring.getAndSet((int) (seq & mask), slot);
+        if (evicted != null) {
+            byInstruction.remove((String) evicted.log.get("instructionId"), evicted);
+            byBatch.remove((String) evicted.log.get("batchId"), evicted);
+        }
+
+        if (pendingSize.incrementAndGet() <= pendingCapacity) {
+            pending.offer(log);
+        } else {
+            pendingSize.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+        return log;
+    }
+
+    /**
+     * 缓冲中该指令的日志，按时间倒序
+     */
+    public Lookup byInstruction(String instructionId) {
+        return lookup(byInstruction.get(instructionId));
+    }
+
+    /**
+     * 缓冲中该批次的日志，按时间倒序
+     */
+    public Lookup byBatch(String batchId) {
+        return lookup(byBatch.get(batchId));
+    }
+
+    /**
+     * 取出最多 max 条待持久化日志
+     */
+    public List<Map<String, Object>> drain(int max) {
+        List<Map<String, Object>> batch = new ArrayList<>(Math.min(max, Math.max(pendingSize.get(), 0)));
+        Map<String, Object> log;
+        while (batch.size() < max && (log = pending.poll()) != null) {
+            pendingSize.decrementAndGet();
+            batch.add(log);
+        }
+        return batch;
+    }
+
+    public void markPersisted(int count) {
+        persisted.addAndGet(count);
+    }
+
+    public void markPersistFailed(int count) {
+        persistFailed.addAndGet(count);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getStats() {
+        long appended = sequence.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("capacity", ring.length());
+        stats.put("appended", appended);
+        stats.put("buffered", Math.min(appended, ring.length()));
+        stats.put("indexedInstructions", byInstruction.byKey.size());
+        stats.put("indexedBatches", byBatch.byKey.size());
+        stats.put("pending", pendingSize.get());
+        stats.put("persisted", persisted.get());
+        stats.put("persistFailed", persistFailed.get());
+        stats.put("dropped", dropped.get());
+        return stats;
+    }
+
+    private Lookup lookup(KeyedSlots keyed) {
+        if (keyed == null) {
+            return new Lookup(new ArrayList<>(), false);
+        }
+        List<Map<String, Object>> logs = new ArrayList<>();
+        Iterator<Slot> newestFirst = keyed.slots.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Slot slot = newestFirst.next();
+            // 已被覆盖、尚未摘除索引的条目跳过
+            if (ring.get((int) (slot.seq & mask)) == slot) {
+                logs.add(slot.log);
+            }
+        }
+        return new Lookup(logs, !keyed.truncated && logs.size() == keyed.slots.size());
+    }
+
+    /**
+     * 缓冲中某个指令/批次的日志；complete 为 false 表示缓冲中没有或只有部分日志，其余需查库
+     */
+    public static final class Lookup {
+        private final List<Map<String, Object>> logs;
+        private final boolean complete;
+
+        private Lookup(List<Map<String, Object>> logs, boolean complete) {
+            this.logs = logs;
+            this.complete = complete;
+        }
+
+        public List<Map<String, Object>> getLogs() {
+            return logs;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * 按指令ID或批次ID的索引
+     * 条目全部被覆盖的键从索引中移除，另记入有界的已覆盖集合，同一键再次写入时仍标记为不完整。
+     */
+    private static final class KeyIndex {
+        private final Map<String, KeyedSlots> byKey = new ConcurrentHashMap<>();
+        private final Set<String> evictedKeys = ConcurrentHashMap.newKeySet();
+        private final ConcurrentLinkedQueue<String> evictedOrder = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger evictedCount = new AtomicInteger();
+        private final int evictedCapacity;
+
+        private KeyIndex(int evictedCapacity) {
+            this.evictedCapacity = evictedCapacity;
+        }
+
+        private KeyedSlots get(String key) {
+            return key != null ? byKey.get(key) : null;
+        }
+
+        private void add(String key, Slot slot) {
+            if (key == null) {
+                return;
+            }
+            byKey.compute(key, (k, keyed) -> {
+                KeyedSlots target = keyed;
+                if (target == null) {
+                    target = new KeyedSlots();
+                    target.truncated = evictedKeys.remove(k);
+                }
+                target.slots.addLast(slot);
+                return target;
+            });
+        }
+
+        private void remove(String key, Slot slot) {
+            if (key == null) {
+                return;
+            }
+            // 覆盖按写入顺序进行，被摘除的通常就是队首
+            byKey.computeIfPresent(key, (k, keyed) -> {
+                keyed.slots.removeFirstOccurrence(slot);
+                keyed.truncated = true;
+                if (!keyed.slots.isEmpty()) {
+                    return keyed;
+                }
+                markEvicted(k);
+                return null;
+            });
+        }
+
+        private void markEvicted(String key) {
+            if (!evictedKeys.add(key)) {
+                return;
+            }
+            evictedOrder.offer(key);
+            // 超出容量时淘汰最早的记录，只影响很久以前已全部覆盖的键
+            if (evictedCount.incrementAndGet() > evictedCapacity) {
+                String oldest = evictedOrder.poll();
+                if (oldest != null) {
+                    evictedCount.decrementAndGet();
+                    evictedKeys.remove(oldest);
+                }
+            }
+        }
+    }
+
+    private static final class KeyedSlots {
+        private final Deque<Slot> slots = new ConcurrentLinkedDeque<>();
+        // 已有条目被覆盖，缓冲中不是该键的全部日志
+        private volatile boolean truncated;
+    }
+
+    private static final class Slot {
+        private final long seq;
+        private final Map<String, Object> log;
+
+        private Slot(long seq, Map<String, Object> log) {
+            this.seq = seq;
+            this.log = log;
+        }
+    }
+}
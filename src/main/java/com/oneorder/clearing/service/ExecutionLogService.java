@@ -0,0 +1,230 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * 清分/过账执行日志
+ *
+ * 最近的日志保存在 {@link ExecutionLogJournal} 环形缓冲中，按指令和批次索引；
+ * 后台线程定期把新日志批量写入 clearing_execution_logs / passthrough_execution_logs（sql/04、sql/10）。
+ * 查询先查缓冲；缓冲中没有该指令/批次的日志，或其中较早的日志已被覆盖时，与库中的日志按日志ID合并。
+ * 缓冲只含本节点的日志，多节点部署时同一指令可能由不同节点执行，须开启 merge-stored 使查询始终合并库中日志。
+ * 写库失败的日志只计数不重试，避免外键等永久性错误反复占用写库线程。
+ */
+@Slf4j
+@Service
+public class ExecutionLogService {
+
+    private static final String INSERT_CLEARING_LOG =
+        "INSERT INTO clearing_execution_logs (log_id, instruction_id, batch_id, log_level, log_type, log_message, created_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PASSTHROUGH_LOG =
+        "INSERT INTO passthrough_execution_logs (log_id, instruction_id, log_level, log_type, log_message, execution_phase, " +
+        "created_time) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_CLEARING_LOGS =
+        "SELECT log_id, instruction_id, batch_id, log_level, log_type, log_message, created_time FROM clearing_execution_logs " +
+        "WHERE %s = ? ORDER BY created_time DESC LIMIT ?";
+
+    private static final String SELECT_PASSTHROUGH_LOGS =
+        "SELECT log_id, instruction_id, log_level, log_type, log_message, execution_phase, created_time " +
+        "FROM passthrough_execution_logs WHERE instruction_id = ? ORDER BY created_time DESC LIMIT ?";
+
+    private static final Comparator<Map<String, Object>> NEWEST_FIRST = Comparator.comparing(
+        (Map<String, Object> entry) -> (LocalDateTime) entry.get("createdTime"),
+        Comparator.nullsLast(Comparator.reverseOrder()));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExecutionLogJournal clearingLog;
+    private final ExecutionLogJournal passthroughLog;
+    private final long flushMillis;
+    private final int flushBatchSize;
+    private final int queryLimit;
+    private final boolean mergeStored;
+
+    private ScheduledExecutorService flusher;
+
+    public ExecutionLogService(JdbcTemplate jdbcTemplate,
+                               @Value("${clearing.execution-log.capacity:8192}") int capacity,
+                               @Value("${clearing.execution-log.pending-capacity:50000}") int pendingCapacity,
+                               @Value("${clearing.execution-log.flush-millis:500}") long flushMillis,
+                               @Value("${clearing.execution-log.flush-batch-size:500}") int flushBatchSize,
+                               @Value("${clearing.execution-log.query-limit:500}") int queryLimit,
+                               @Value("${clearing.execution-log.merge-stored:false}") boolean mergeStored) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clearingLog = new ExecutionLogJournal("clearing", capacity, pendingCapacity);
+        this.passthroughLog = new ExecutionLogJournal("passthrough", capacity, pendingCapacity);
+        this.flushMillis = Math.max(50, flushMillis);
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+        this.queryLimit = Math.max(1, queryLimit);
+        this.mergeStored = mergeStored;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "execution-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    public Map<String, Object> appendClearing(String instructionId, String batchId, String level, String type, String message) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("instructionId", instructionId);
+        if (batchId != null) {
+            entry.put("batchId", batchId);
+        }
+        entry.put("logLevel", level);
+        entry.put("logType", type);
+        entry.put("logMessage", message);
+        entry.put("createdTime", LocalDateTime.now());
+        return clearingLog.append(entry);
+    }
+
+    public Map<String, Object> appendPassthrough(String instructionId, String level, String type, String message) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("instructionId", instructionId);
+        entry.put("logLevel", level);
+        entry.put("logType", type);
+        entry.put("logMessage", message);
+        entry.put("executionPhase", type);
+        entry.put("createdTime", LocalDateTime.now());
+        return passthroughLog.append(entry);
+    }
+
+    /**
+     * 清分指令的执行日志，按时间倒序
+     */
+    public List<Map<String, Object>> findClearingByInstruction(String instructionId) {
+        return merge(clearingLog.byInstruction(instructionId),
+            () -> query(String.format(SELECT_CLEARING_LOGS, "instruction_id"), instructionId, "batch_id", "batchId"));
+    }
+
+    /**
+     * 清分批次的执行日志，按时间倒序
+     */
+    public List<Map<String, Object>> findClearingByBatch(String batchId) {
+        return merge(clearingLog.byBatch(batchId),
+            () -> query(String.format(SELECT_CLEARING_LOGS, "batch_id"), batchId, "batch_id", "batchId"));
+    }
+
+    /**
+     * 过账指令的执行日志，按时间倒序
+     */
+    public List<Map<String, Object>> findPassthroughByInstruction(String instructionId) {
+        return merge(passthroughLog.byInstruction(instructionId),
+            () -> query(SELECT_PASSTHROUGH_LOGS, instructionId, "execution_phase", "executionPhase"));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put(clearingLog.getName(), clearingLog.getStats());
+        stats.put(passthroughLog.getName(), passthroughLog.getStats());
+        return stats;
+    }
+
+    private void flush() {
+        persist(clearingLog, INSERT_CLEARING_LOG, entry -> new Object[] {
+            entry.get("logId"), entry.get("instructionId"), entry.get("batchId"), entry.get("logLevel"),
+            entry.get("logType"), entry.get("logMessage"), Timestamp.valueOf((LocalDateTime) entry.get("createdTime"))});
+        persist(passthroughLog, INSERT_PASSTHROUGH_LOG, entry -> new Object[] {
+            entry.get("logId"), entry.get("instructionId"), entry.get("logLevel"), entry.get("logType"),
+            entry.get("logMessage"), entry.get("executionPhase"), Timestamp.valueOf((LocalDateTime) entry.get("createdTime"))});
+    }
+
+    private void persist(ExecutionLogJournal journal, String sql, Function<Map<String, Object>, Object[]> toArgs) {
+        List<Map<String, Object>> batch;
+        while (!(batch = journal.drain(flushBatchSize)).isEmpty()) {
+            List<Object[]> args = new ArrayList<>(batch.size());
+            batch.forEach(entry -> args.add(toArgs.apply(entry)));
+            try {
+                jdbcTemplate.batchUpdate(sql, args);
+                journal.markPersisted(batch.size());
+            } catch (DataAccessException e) {
+                journal.markPersistFailed(batch.size());
+                log.warn("执行日志写库失败: {}, {}条, {}", journal.getName(), batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 缓冲完整且未开启 merge-stored 时直接返回；否则与库中日志按日志ID去重合并（缓冲中可能有尚未写库的最新日志），按时间倒序取前 queryLimit 条
+     */
+    private List<Map<String, Object>> merge(ExecutionLogJournal.Lookup buffered, Supplier<List<Map<String, Object>>> stored) {
+        if (buffered.isComplete() && !mergeStored) {
+            return buffered.getLogs();
+        }
+        Map<Object, Map<String, Object>> byLogId = new LinkedHashMap<>();
+        buffered.getLogs().forEach(entry -> byLogId.put(entry.get("logId"), entry));
+        stored.get().forEach(entry -> byLogId.putIfAbsent(entry.get("logId"), entry));
+        return byLogId.values().stream()
+            .sorted(NEWEST_FIRST)
+            .limit(queryLimit)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * extraColumn 为各表特有的列（批次ID或执行阶段），映射为 extraKey
+     */
+    private List<Map<String, Object>> query(String sql, String key, String extraColumn, String extraKey) {
+        try {
+            return jdbcTemplate.query(sql, (rs, rowNum) -> {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("logId", rs.getString("log_id"));
+                entry.put("instructionId", rs.getString("instruction_id"));
+                entry.put("logLevel", rs.getString("log_level"));
+                entry.put("logType", rs.getString("log_type"));
+                entry.put("logMessage", rs.getString("log_message"));
+                Timestamp createdTime = rs.getTimestamp("created_time");
+                if (createdTime != null) {
+                    entry.put("createdTime", createdTime.toLocalDateTime());
+                }
+                String extra = rs.getString(extraColumn);
+                if (extra != null) {
+                    entry.put(extraKey, extra);
+                }
+                return entry;
+            }, key, queryLimit);
+        } catch (DataAccessException e) {
+            log.warn("查询执行日志失败: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.oneorder.clearing.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oneorder.clearing.dto.ExpenseEntryRequest;
+import com.oneorder.clearing.entity.ExpenseEntry;
+import com.oneorder.clearing.exception.ClearingException;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 费用明细批量导入服务
+ *
+ * 逐行流式解析 CSV / NDJSON，攒满一块后统一处理：按 DTO 注解校验字段，
+ * 整批复用同一版本的约束矩阵做科目适用性校验，按订单在内存中维护已存在的（服务,科目,收付）组合做去重，
+ * 最后 JdbcTemplate.batchUpdate 写入并累加订单汇总，每块一个事务。单行错误只记入报告，不影响其他行。
+ * CSV 首行为表头，列名使用请求字段名（orderId 或 order_id 均可），字段内不支持换行。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExpenseEntryImportService {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    private static final String INSERT_EXPENSE_ENTRY =
+        "INSERT INTO expense_entries (order_id, service_code, fee_code, entry_type, counterpart_entity, counterpart_department, " +
+        "counterpart_supplier_type, our_entity_id, our_department_id, amount, currency, is_transit_entity, transit_reason, " +
+        "default_entity_id, transit_type, approval_required, approval_status, approval_comment, validation_status, " +
+        "validation_message, entry_status, version_number, remarks, created_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * 导入文件格式
+     */
+    public enum Format {
+        CSV,
+        NDJSON;
+
+        /**
+         * 按文件扩展名推断格式，无法识别时返回 null
+         */
+        public static Format fromFileName(String fileName) {
+            if (fileName == null) {
+                return null;
+            }
+            String lower = fileName.toLowerCase();
+            if (lower.endsWith(".csv")) {
+                return CSV;
+            }
+            if (lower.endsWith(".ndjson") || lower.endsWith(".jsonl")) {
+                return NDJSON;
+            }
+            return null;
+        }
+    }
+
+    private final ExpenseEntryService expenseEntryService;
+    private final FeeValidationService feeValidationService;
+    private final ExpenseEntrySummaryService expenseEntrySummaryService;
+    private final FeeServiceCooccurrenceIndex cooccurrenceIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final Validator validator;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /**
+     * 导入费用明细
+     *
+     * @param createdBy 文件中未填写录入人时使用
+     */
+    public ImportReport importEntries(InputStream input, Format format, String createdBy, int batchSize) {
+        if (format == null) {
+            throw new ClearingException("无法识别的导入格式，仅支持 CSV 与 NDJSON");
+        }
+        int chunkSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        long startNanos = System.nanoTime();
+
+        ImportContext context = new ImportContext(format, createdBy, feeValidationService.getConstraintMatrix());
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String[] header = null;
+            List<ParsedLine> chunk = new ArrayList<>(chunkSize);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (format == Format.CSV && header == null) {
+                    header = normalizeHeader(parseCsvLine(line));
+                    continue;
+                }
+                context.report.totalLines++;
+                chunk.add(parseLine(lineNumber, line, format, header));
+                if (chunk.size() >= chunkSize) {
+                    processChunk(chunk, context, transactionTemplate);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, context, transactionTemplate);
+            }
+        } catch (IOException e) {
+            throw new ClearingException("读取导入文件失败: " + e.getMessage(), e);
+        }
+
+        ImportReport report = context.report;
+        report.elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        report.linesPerSecond = report.elapsedMillis > 0 ? report.totalLines * 1000L / report.elapsedMillis : report.totalLines;
+        log.info("费用明细导入完成: 格式={}, 总行数={}, 导入={}, 重复={}, 无效={}, 写入失败={}, 耗时{}ms",
+            format, report.totalLines, report.imported, report.duplicates, report.invalid, report.failed, report.elapsedMillis);
+        return report;
+    }
+
+    private ParsedLine parseLine(int lineNumber, String line, Format format, String[] header) {
+        try {
+            Map<String, Object> fields;
+            if (format == Format.NDJSON) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> json = objectMapper.readValue(line, Map.class);
+                fields = json;
+            } else {
+                String[] values = parseCsvLine(line);
+                fields = new LinkedHashMap<>();
+                for (int i = 0; i < header.length && i < values.length; i++) {
+                    if (!values[i].isEmpty()) {
+                        fields.put(header[i], values[i]);
+                    }
+                }
+            }
+            return new ParsedLine(lineNumber, objectMapper.convertValue(fields, ExpenseEntryRequest.class), null);
+        } catch (Exception e) {
+            return new ParsedLine(lineNumber, null, "格式错误: " + rootMessage(e));
+        }
+    }
+
+    private void processChunk(List<ParsedLine> chunk, ImportContext context, TransactionTemplate transactionTemplate) {
+        loadExistingKeys(chunk, context);
+
+        List<ExpenseEntry> entries = new ArrayList<>(chunk.size());
+        List<ParsedLine> accepted = new ArrayList<>(chunk.size());
+        for (ParsedLine parsed : chunk) {
+            if (parsed.error != null) {
+                context.reject(parsed, parsed.error, false);
+                continue;
+            }
+            ExpenseEntryRequest request = parsed.request;
+            if (request.getCreatedBy() == null) {
+                request.setCreatedBy(context.createdBy);
+            }
+            Set<ConstraintViolation<ExpenseEntryRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                context.reject(parsed, violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")), false);
+                continue;
+            }
+            String key = uniqueKey(request);
+            if (!context.existingKeys.get(request.getOrderId()).add(key)) {
+                context.reject(parsed, String.format("订单[%s]的服务项目[%s]已存在费用科目[%s]的%s明细",
+                    request.getOrderId(), request.getServiceCode(), request.getFeeCode(),
+                    request.getEntryType().getDescription()), true);
+                continue;
+            }
+            FeeValidationService.ValidationResult validationResult = feeValidationService.validate(
+                context.constraints, request.getFeeCode(), request.getServiceCode(),
+                request.getEntryType(), request.getCounterpartSupplierType());
+            entries.add(expenseEntryService.buildExpenseEntry(request, validationResult));
+            accepted.add(parsed);
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(INSERT_EXPENSE_ENTRY, entries, entries.size(), (ps, entry) -> {
+                    ps.setString(1, entry.getOrderId());
+                    ps.setString(2, entry.getServiceCode());
+                    ps.setString(3, entry.getFeeCode());
+                    ps.setString(4, entry.getEntryType().name());
+                    ps.setString(5, entry.getCounterpartEntity());
+                    ps.setString(6, entry.getCounterpartDepartment());
+                    ps.setString(7, entry.getCounterpartSupplierType());
+                    ps.setString(8, entry.getOurEntityId());
+                    ps.setString(9, entry.getOurDepartmentId());
+                    ps.setBigDecimal(10, entry.getAmount());
+                    ps.setString(11, entry.getCurrency());
+                    ps.setBoolean(12, Boolean.TRUE.equals(entry.getIsTransitEntity()));
+                    ps.setString(13, entry.getTransitReason());
+                    ps.setString(14, entry.getDefaultEntityId());
+                    ps.setString(15, entry.getTransitType() != null ? entry.getTransitType().name() : null);
+                    ps.setBoolean(16, Boolean.TRUE.equals(entry.getApprovalRequired()));
+                    ps.setString(17, entry.getApprovalStatus() != null ? entry.getApprovalStatus().name() : null);
+                    ps.setString(18, entry.getApprovalComment());
+                    ps.setString(19, entry.getValidationStatus().name());
+                    ps.setString(20, entry.getValidationMessage());
+                    ps.setString(21, entry.getEntryStatus().name());
+                    ps.setInt(22, 1);
+                    ps.setString(23, entry.getRemarks());
+                    ps.setTimestamp(24, now);
+                    ps.setString(25, entry.getCreatedBy());
+                    ps.setLong(26, entry.getVersion());
+                });
+                expenseEntrySummaryService.onEntriesAdded(entries, context.createdBy);
+                LocalDateTime createdTime = now.toLocalDateTime();
+                entries.forEach(entry -> cooccurrenceIndex.record(entry.getFeeCode(), entry.getServiceCode(), createdTime));
+            });
+            context.report.imported += entries.size();
+        } catch (Exception e) {
+            log.error("费用明细导入写入失败: 行{}~{}", chunk.get(0).lineNumber, chunk.get(chunk.size() - 1).lineNumber, e);
+            String message = "写入失败: " + rootMessage(e);
+            for (ParsedLine parsed : accepted) {
+                context.existingKeys.get(parsed.request.getOrderId()).remove(uniqueKey(parsed.request));
+                context.report.failed++;
+                context.addError(parsed, message);
+            }
+        }
+    }
+
+    /**
+     * 为本块中首次出现的订单加载库中已有的明细组合，一条 IN 查询
+     */
+    private void loadExistingKeys(List<ParsedLine> chunk, ImportContext context) {
+        Set<String> newOrders = new HashSet<>();
+        for (ParsedLine parsed : chunk) {
+            if (parsed.request != null && parsed.request.getOrderId() != null
+                && !context.existingKeys.containsKey(parsed.request.getOrderId())) {
+                newOrders.add(parsed.request.getOrderId());
+            }
+        }
+        if (newOrders.isEmpty()) {
+            return;
+        }
+        newOrders.forEach(orderId -> context.existingKeys.put(orderId, new HashSet<>()));
+        String placeholders = String.join(",", Collections.nCopies(newOrders.size(), "?"));
+        jdbcTemplate.query("SELECT order_id, service_code, fee_code, entry_type FROM expense_entries WHERE order_id IN (" +
+            placeholders + ")", rs -> {
+            context.existingKeys.get(rs.getString("order_id")).add(
+                rs.getString("service_code") + "|" + rs.getString("fee_code") + "|" + rs.getString("entry_type"));
+        }, newOrders.toArray());
+    }
+
+    private static String uniqueKey(ExpenseEntryRequest request) {
+        return request.getServiceCode() + "|" + request.getFeeCode() + "|" + request.getEntryType().name();
+    }
+
+    /**
+     * 表头转为请求字段名，兼容下划线命名
+     */
+    private static String[] normalizeHeader(String[] header) {
+        String[] normalized = new String[header.length];
+        for (int i = 0; i < header.length; i++) {
+            String column = header[i].trim();
+            if (i == 0 && !column.isEmpty() && column.charAt(0) == '﻿') {
+                column = column.substring(1);
+            }
+            StringBuilder camel = new StringBuilder(column.length());
+            boolean upper = false;
+            for (char c : column.toCharArray()) {
+                if (c == '_') {
+                    upper = true;
+                } else {
+                    camel.append(upper ? Character.toUpperCase(c) : c);
+                    upper = false;
+                }
+            }
+            normalized[i] = camel.toString();
+        }
+        return normalized;
+    }
+
+    /**
+     * 解析单行 CSV，支持双引号包裹与 "" 转义
+     */
+    static String[] parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString().trim());
+        return values.toArray(new String[0]);
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage() != null ? root.getMessage() : root.getClass().getSimpleName();
+    }
+
+    private static final class ParsedLine {
+        private final int lineNumber;
+        private final ExpenseEntryRequest request;
+        private final String error;
+
+        private ParsedLine(int lineNumber, ExpenseEntryRequest request, String error) {
+            this.lineNumber = lineNumber;
+            this.request = request;
+            this.error = error;
+        }
+    }
+
+    private static final class ImportContext {
+        private final String createdBy;
+        private final FeeValidationService.ConstraintMatrix constraints;
+        private final Map<String, Set<String>> existingKeys = new HashMap<>();
+        private final ImportReport report = new ImportReport();
+
+        private ImportContext(Format format, String createdBy, FeeValidationService.ConstraintMatrix constraints) {
+            this.createdBy = createdBy;
+            this.constraints = constraints;
+            report.format = format;
+        }
+
+        private void reject(ParsedLine parsed, String message, boolean duplicate) {
+            if (duplicate) {
+                report.duplicates++;
+            } else {
+                report.invalid++;
+            }
+            addError(parsed, message);
+        }
+
+        private void addError(ParsedLine parsed, String message) {
+            if (report.errors.size() < MAX_REPORTED_ERRORS) {
+                report.errors.add(new LineError(parsed.lineNumber,
+                    parsed.request != null ? parsed.request.getOrderId() : null, message));
+            } else {
+                report.errorsTruncated = true;
+            }
+        }
+    }
+
+    /**
+     * 导入报告
+     */
+    @Data
+    public static class ImportReport {
+        private Format format;
+        private long totalLines;
+        private long imported;
+        private long duplicates;
+        private long invalid;
+        private long failed;
+        private List<LineError> errors = new ArrayList<>();
+        /** 错误行超过上限时只保留前 1000 条明细 */
+        private boolean errorsTruncated;
+        private long elapsedMillis;
+        private long linesPerSecond;
+    }
+
+    /**
+     * 单行错误
+     */
+    @Data
+    public static class LineError {
+        private final int line;
+        private final String orderId;
+        private final String message;
+    }
+}
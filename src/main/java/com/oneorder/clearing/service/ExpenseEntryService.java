@@ -8,13 +8,23 @@ import com.oneorder.clearing.repository.ExpenseEntryRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -33,6 +43,19 @@ public class ExpenseEntryService {
     private final FeeValidationService feeValidationService;
     private final DefaultEntityService defaultEntityService;
     private final SmartServiceSuggestionService smartServiceSuggestionService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ExpenseEntrySummaryService expenseEntrySummaryService;
+    private final FeeServiceCooccurrenceIndex cooccurrenceIndex;
+    
+    /**
+     * 单条 IN 语句的ID数量上限，避免超出数据库绑定参数限制
+     */
+    private static final int TRANSITION_CHUNK_SIZE = 5000;
+    
+    /**
+     * 按订单/账期变更时最多返回的冲突明细数，其余只计数
+     */
+    private static final int CONFLICT_SAMPLE_SIZE = 100;
     
     /**
      * 创建费用明细
@@ -62,8 +85,10 @@ public class ExpenseEntryService {
         // 4. 创建费用明细实体
         ExpenseEntry entity = buildExpenseEntry(request, validationResult);
         
-        // 5. 保存到数据库
-        ExpenseEntry savedEntity = expenseEntryRepository.save(entity);
+        // 5. 保存到数据库，并累加订单汇总
+        ExpenseEntry savedEntity = expenseEntryRepository.saveAndFlush(entity);
+        expenseEntrySummaryService.onEntriesAdded(List.of(savedEntity), request.getCreatedBy());
+        cooccurrenceIndex.record(savedEntity.getFeeCode(), savedEntity.getServiceCode(), savedEntity.getCreatedTime());
         
         log.info("费用明细创建成功: id={}, orderId={}", savedEntity.getId(), savedEntity.getOrderId());
         
@@ -101,10 +126,20 @@ public class ExpenseEntryService {
         }
         
         // 5. 更新实体字段
+        ExpenseEntry.EntryType oldEntryType = existingEntity.getEntryType();
+        String oldCurrency = existingEntity.getCurrency();
+        BigDecimal oldAmount = existingEntity.getAmount();
+        String oldFeeCode = existingEntity.getFeeCode();
+        String oldServiceCode = existingEntity.getServiceCode();
         updateEntityFields(existingEntity, request, validationResult);
         
-        // 6. 保存更新
-        ExpenseEntry savedEntity = expenseEntryRepository.save(existingEntity);
+        // 6. 保存更新，并调整订单汇总
+        ExpenseEntry savedEntity = expenseEntryRepository.saveAndFlush(existingEntity);
+        expenseEntrySummaryService.onEntryChanged(oldEntryType, oldCurrency, oldAmount, savedEntity, request.getCreatedBy());
+        if (!Objects.equals(oldFeeCode, savedEntity.getFeeCode()) || !Objects.equals(oldServiceCode, savedEntity.getServiceCode())) {
+            cooccurrenceIndex.remove(oldFeeCode, oldServiceCode, savedEntity.getCreatedTime());
+            cooccurrenceIndex.record(savedEntity.getFeeCode(), savedEntity.getServiceCode(), savedEntity.getCreatedTime());
+        }
         
         log.info("费用明细更新成功: id={}, orderId={}", savedEntity.getId(), savedEntity.getOrderId());
         
@@ -126,6 +161,9 @@ public class ExpenseEntryService {
         }
         
         expenseEntryRepository.delete(entity);
+        expenseEntryRepository.flush();
+        expenseEntrySummaryService.onEntryRemoved(entity, "SYSTEM");
+        cooccurrenceIndex.remove(entity.getFeeCode(), entity.getServiceCode(), entity.getCreatedTime());
         log.info("费用明细删除成功: id={}", id);
     }
     
@@ -225,57 +263,174 @@ public class ExpenseEntryService {
     public List<ExpenseEntryResponse> batchConfirmExpenseEntries(List<Long> ids, String confirmedBy) {
         log.info("开始批量确认费用明细: ids={}, confirmedBy={}", ids, confirmedBy);
         
-        List<ExpenseEntry> entities = expenseEntryRepository.findAllById(ids);
+        BulkTransitionResult result = transitionByIds(ids, StatusTransition.CONFIRM, confirmedBy);
+        log.info("批量确认费用明细完成: 处理数量={}, 冲突数量={}", result.getAffectedCount(), result.getConflicts().size());
         
-        for (ExpenseEntry entity : entities) {
-            if (!entity.isLocked() && entity.isValidationPassed()) {
-                entity.setEntryStatus(ExpenseEntry.EntryStatus.CONFIRMED);
-                entity.setUpdatedBy(confirmedBy);
-                entity.setUpdatedTime(LocalDateTime.now());
+        return expenseEntryRepository.findAllById(ids).stream()
+            .map(ExpenseEntryResponse::fromEntity)
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * 按ID批量变更状态，每批ID一条 UPDATE，不加载实体
+     */
+    @Transactional
+    public BulkTransitionResult transitionByIds(List<Long> ids, StatusTransition transition, String operator) {
+        LocalDateTime now = LocalDateTime.now();
+        int affected = 0;
+        Map<Long, ExpenseEntry.EntryStatus> currentStatus = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += TRANSITION_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + TRANSITION_CHUNK_SIZE, ids.size()));
+            affected += expenseEntryRepository.transitionStatusByIds(chunk, transition.getFromStatus(),
+                transition.getToStatus(), transition.isRequireValid(), operator, now);
+            for (Object[] row : expenseEntryRepository.findStatusByIds(chunk)) {
+                currentStatus.put((Long) row[0], (ExpenseEntry.EntryStatus) row[1]);
             }
         }
         
-        List<ExpenseEntry> savedEntities = expenseEntryRepository.saveAll(entities);
-        log.info("批量确认费用明细完成: 处理数量={}", savedEntities.size());
+        List<Long> missingIds = new ArrayList<>();
+        Map<Long, ExpenseEntry.EntryStatus> conflicts = new LinkedHashMap<>();
+        for (Long id : ids) {
+            ExpenseEntry.EntryStatus status = currentStatus.get(id);
+            if (status == null) {
+                missingIds.add(id);
+            } else if (status != transition.getToStatus()) {
+                conflicts.put(id, status);
+            }
+        }
+        return logTransition(BulkTransitionResult.builder()
+            .transition(transition)
+            .scope("ids")
+            .affectedCount(affected)
+            .conflictCount(conflicts.size())
+            .conflicts(conflicts)
+            .missingIds(missingIds)
+            .build());
+    }
+    
+    /**
+     * 变更订单下全部明细的状态，一条 UPDATE
+     */
+    @Transactional
+    public BulkTransitionResult transitionByOrder(String orderId, StatusTransition transition, String operator) {
+        int affected = expenseEntryRepository.transitionStatusByOrderId(orderId, transition.getFromStatus(),
+            transition.getToStatus(), transition.isRequireValid(), operator, LocalDateTime.now());
+        return logTransition(BulkTransitionResult.builder()
+            .transition(transition)
+            .scope("order:" + orderId)
+            .affectedCount(affected)
+            .conflictCount(expenseEntryRepository.countByOrderIdAndEntryStatusNot(orderId, transition.getToStatus()))
+            .conflicts(toStatusMap(expenseEntryRepository.findStatusByOrderIdAndEntryStatusNot(
+                orderId, transition.getToStatus(), PageRequest.of(0, CONFLICT_SAMPLE_SIZE))))
+            .missingIds(new ArrayList<>())
+            .build());
+    }
+    
+    /**
+     * 变更录入时间在 [startTime, endTime) 内全部明细的状态，用于账期确认与关账锁定
+     */
+    @Transactional
+    public BulkTransitionResult transitionByPeriod(LocalDateTime startTime, LocalDateTime endTime,
+                                                   StatusTransition transition, String operator) {
+        if (startTime == null || endTime == null || !startTime.isBefore(endTime)) {
+            throw new ClearingException("账期区间无效: " + startTime + " ~ " + endTime);
+        }
+        int affected = expenseEntryRepository.transitionStatusByCreatedTime(startTime, endTime, transition.getFromStatus(),
+            transition.getToStatus(), transition.isRequireValid(), operator, LocalDateTime.now());
+        return logTransition(BulkTransitionResult.builder()
+            .transition(transition)
+            .scope("period:" + startTime + "~" + endTime)
+            .affectedCount(affected)
+            .conflictCount(expenseEntryRepository.countByCreatedTimeAndEntryStatusNot(
+                startTime, endTime, transition.getToStatus()))
+            .conflicts(toStatusMap(expenseEntryRepository.findStatusByCreatedTimeAndEntryStatusNot(
+                startTime, endTime, transition.getToStatus(), PageRequest.of(0, CONFLICT_SAMPLE_SIZE))))
+            .missingIds(new ArrayList<>())
+            .build());
+    }
+    
+    /**
+     * 带版本校验的批量变更：调用方提交读取时的版本号，版本不一致（期间被他人修改）的明细不变更并作为冲突返回。
+     * 逐行条件不同，使用 JDBC 批量语句一次往返提交。
+     */
+    @Transactional
+    public BulkTransitionResult transitionWithVersions(Map<Long, Long> expectedVersions,
+                                                       StatusTransition transition, String operator) {
+        String sql = "UPDATE expense_entries SET entry_status = ?, version = COALESCE(version, 0) + 1, " +
+            "updated_by = ?, updated_time = ? " +
+            "WHERE id = ? AND COALESCE(version, 0) = ? AND entry_status = ?" +
+            (transition.isRequireValid() ? " AND validation_status = 'VALID'" : "");
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(expectedVersions.entrySet());
+        
+        int[][] counts = jdbcTemplate.batchUpdate(sql, entries, TRANSITION_CHUNK_SIZE, (ps, entry) -> {
+            ps.setString(1, transition.getToStatus().name());
+            ps.setString(2, operator);
+            ps.setTimestamp(3, now);
+            ps.setLong(4, entry.getKey());
+            ps.setLong(5, entry.getValue() != null ? entry.getValue() : 0L);
+            ps.setString(6, transition.getFromStatus().name());
+        });
+        
+        List<Long> affectedIds = new ArrayList<>();
+        List<Long> rejectedIds = new ArrayList<>();
+        int index = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                Long id = entries.get(index++).getKey();
+                // SUCCESS_NO_INFO 表示驱动未返回行数但执行成功
+                if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                    affectedIds.add(id);
+                } else {
+                    rejectedIds.add(id);
+                }
+            }
+        }
         
-        return savedEntities.stream()
-            .map(ExpenseEntryResponse::fromEntity)
+        Map<Long, ExpenseEntry.EntryStatus> conflicts = new LinkedHashMap<>();
+        Set<Long> found = new HashSet<>();
+        for (int from = 0; from < rejectedIds.size(); from += TRANSITION_CHUNK_SIZE) {
+            List<Long> chunk = rejectedIds.subList(from, Math.min(from + TRANSITION_CHUNK_SIZE, rejectedIds.size()));
+            for (Object[] row : expenseEntryRepository.findStatusByIds(chunk)) {
+                conflicts.put((Long) row[0], (ExpenseEntry.EntryStatus) row[1]);
+                found.add((Long) row[0]);
+            }
+        }
+        List<Long> missingIds = rejectedIds.stream()
+            .filter(id -> !found.contains(id))
             .collect(Collectors.toList());
+        
+        return logTransition(BulkTransitionResult.builder()
+            .transition(transition)
+            .scope("versioned")
+            .affectedCount(affectedIds.size())
+            .affectedIds(affectedIds)
+            .conflictCount(conflicts.size())
+            .conflicts(conflicts)
+            .missingIds(missingIds)
+            .build());
+    }
+    
+    private Map<Long, ExpenseEntry.EntryStatus> toStatusMap(List<Object[]> rows) {
+        Map<Long, ExpenseEntry.EntryStatus> statuses = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            statuses.put((Long) row[0], (ExpenseEntry.EntryStatus) row[1]);
+        }
+        return statuses;
+    }
+    
+    private BulkTransitionResult logTransition(BulkTransitionResult result) {
+        log.info("批量{}费用明细完成: 范围={}, 变更={}, 冲突={}, 不存在={}",
+            result.getTransition().getDescription(), result.getScope(), result.getAffectedCount(),
+            result.getConflictCount(), result.getMissingIds().size());
+        return result;
     }
     
     /**
      * 获取订单的费用统计
      */
     public ExpenseEntrySummary getExpenseEntrySummary(String orderId) {
-        List<ExpenseEntry> entries = expenseEntryRepository.findByOrderId(orderId);
-        
-        BigDecimal totalReceivable = entries.stream()
-            .filter(e -> e.getEntryType() == ExpenseEntry.EntryType.RECEIVABLE)
-            .map(ExpenseEntry::getAmount)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        BigDecimal totalPayable = entries.stream()
-            .filter(e -> e.getEntryType() == ExpenseEntry.EntryType.PAYABLE)
-            .map(ExpenseEntry::getAmount)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        long receivableCount = entries.stream()
-            .filter(e -> e.getEntryType() == ExpenseEntry.EntryType.RECEIVABLE)
-            .count();
-        
-        long payableCount = entries.stream()
-            .filter(e -> e.getEntryType() == ExpenseEntry.EntryType.PAYABLE)
-            .count();
-        
-        return ExpenseEntrySummary.builder()
-            .orderId(orderId)
-            .totalReceivable(totalReceivable)
-            .totalPayable(totalPayable)
-            .netAmount(totalReceivable.subtract(totalPayable))
-            .receivableCount(receivableCount)
-            .payableCount(payableCount)
-            .totalCount(entries.size())
-            .build();
+        return expenseEntrySummaryService.getSummary(orderId);
     }
     
     /**
@@ -296,8 +451,8 @@ public class ExpenseEntryService {
     /**
      * 构建费用明细实体
      */
-    private ExpenseEntry buildExpenseEntry(ExpenseEntryRequest request, 
-                                         FeeValidationService.ValidationResult validationResult) {
+    ExpenseEntry buildExpenseEntry(ExpenseEntryRequest request, 
+                                   FeeValidationService.ValidationResult validationResult) {
         
         // 1. 自动设置默认法人（如果未提供）
         String defaultEntityId = null;
@@ -386,6 +541,64 @@ public class ExpenseEntryService {
         entity.setVersionNumber(entity.getVersionNumber() + 1);
     }
     
+    /**
+     * 明细状态变更：源状态、目标状态及是否要求校验通过
+     */
+    public enum StatusTransition {
+        CONFIRM(ExpenseEntry.EntryStatus.DRAFT, ExpenseEntry.EntryStatus.CONFIRMED, true, "确认"),
+        LOCK(ExpenseEntry.EntryStatus.CONFIRMED, ExpenseEntry.EntryStatus.LOCKED, false, "锁定"),
+        UNLOCK(ExpenseEntry.EntryStatus.LOCKED, ExpenseEntry.EntryStatus.CONFIRMED, false, "解锁");
+        
+        private final ExpenseEntry.EntryStatus fromStatus;
+        private final ExpenseEntry.EntryStatus toStatus;
+        private final boolean requireValid;
+        private final String description;
+        
+        StatusTransition(ExpenseEntry.EntryStatus fromStatus, ExpenseEntry.EntryStatus toStatus,
+                         boolean requireValid, String description) {
+            this.fromStatus = fromStatus;
+            this.toStatus = toStatus;
+            this.requireValid = requireValid;
+            this.description = description;
+        }
+        
+        public ExpenseEntry.EntryStatus getFromStatus() {
+            return fromStatus;
+        }
+        
+        public ExpenseEntry.EntryStatus getToStatus() {
+            return toStatus;
+        }
+        
+        public boolean isRequireValid() {
+            return requireValid;
+        }
+        
+        public String getDescription() {
+            return description;
+        }
+    }
+    
+    /**
+     * 批量状态变更结果
+     * 已处于目标状态的明细视为成功（幂等），冲突为变更后仍未处于目标状态的明细及其当前状态。
+     * 按订单/账期变更时冲突可能很多，conflicts 只含按ID排序的前 100 条，总数见 conflictCount
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class BulkTransitionResult {
+        private StatusTransition transition;
+        private String scope;
+        private int affectedCount;
+        /**
+         * 本次实际变更的明细，仅带版本校验的变更可精确返回
+         */
+        private List<Long> affectedIds;
+        private long conflictCount;
+        private Map<Long, ExpenseEntry.EntryStatus> conflicts;
+        private List<Long> missingIds;
+    }
+    
     /**
      * 费用明细汇总信息
      */
@@ -399,5 +612,19 @@ public class ExpenseEntryService {
         private long receivableCount;
         private long payableCount;
         private long totalCount;
+        private List<CurrencyTotal> currencyTotals;
+    }
+    
+    /**
+     * 分币种汇总
+     */
+    @lombok.Data
+    @lombok.Builder
+    public static class CurrencyTotal {
+        private String currency;
+        private long receivableCount;
+        private long payableCount;
+        private BigDecimal totalReceivable;
+        private BigDecimal totalPayable;
     }
 }
\ No newline at end of file
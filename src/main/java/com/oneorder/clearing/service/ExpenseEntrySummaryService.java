@@ -0,0 +1,257 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.ExpenseEntry;
+import com.oneorder.clearing.exception.ClearingException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 订单费用汇总维护服务
+ *
+ * 收付款笔数与金额按订单存于 expense_entry_status，按订单 × 币种存于 expense_entry_currency_totals，
+ * 明细增删改时在同一事务内做增量累加，汇总查询只读这两张表，不再加载订单全部明细。
+ * 订单尚无汇总行（新订单、历史数据、压测数据）时，先在独立事务中按已提交的明细聚合建行，
+ * 再在调用方事务中累加本次变更；并发建行时唯一索引冲突的一方放弃，直接累加即可。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ExpenseEntrySummaryService {
+
+    private static final String UPDATE_ORDER_TOTALS =
+        "UPDATE expense_entry_status SET receivable_count = receivable_count + ?, payable_count = payable_count + ?, " +
+        "total_receivable = total_receivable + ?, total_payable = total_payable + ?, " +
+        "last_modified_by = ?, last_modified_time = ? WHERE order_id = ?";
+
+    private static final String UPDATE_CURRENCY_TOTALS =
+        "UPDATE expense_entry_currency_totals SET receivable_count = receivable_count + ?, payable_count = payable_count + ?, " +
+        "total_receivable = total_receivable + ?, total_payable = total_payable + ? WHERE order_id = ? AND currency = ?";
+
+    private static final String INSERT_CURRENCY_TOTALS =
+        "INSERT INTO expense_entry_currency_totals (order_id, currency, receivable_count, payable_count, total_receivable, total_payable) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String AGGREGATE_COLUMNS =
+        "COALESCE(SUM(CASE WHEN entry_type = 'RECEIVABLE' THEN 1 ELSE 0 END), 0), " +
+        "COALESCE(SUM(CASE WHEN entry_type = 'PAYABLE' THEN 1 ELSE 0 END), 0), " +
+        "COALESCE(SUM(CASE WHEN entry_type = 'RECEIVABLE' THEN amount END), 0), " +
+        "COALESCE(SUM(CASE WHEN entry_type = 'PAYABLE' THEN amount END), 0)";
+
+    /**
+     * 不带 GROUP BY，订单没有已提交明细时也插入一行全零汇总
+     */
+    private static final String CREATE_ORDER_TOTALS =
+        "INSERT INTO expense_entry_status (order_id, entry_status, receivable_count, payable_count, total_receivable, total_payable, " +
+        "last_modified_by, last_modified_time) " +
+        "SELECT ?, 'IN_PROGRESS', " + AGGREGATE_COLUMNS + ", ?, ? FROM expense_entries WHERE order_id = ?";
+
+    private static final String CREATE_CURRENCY_TOTALS =
+        "INSERT INTO expense_entry_currency_totals (order_id, currency, receivable_count, payable_count, total_receivable, total_payable) " +
+        "SELECT order_id, currency, " + AGGREGATE_COLUMNS + " FROM expense_entries WHERE order_id = ? GROUP BY order_id, currency";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * 新增明细后累加
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onEntriesAdded(Collection<ExpenseEntry> entries, String operator) {
+        SummaryDelta delta = new SummaryDelta();
+        entries.forEach(entry -> delta.add(entry.getOrderId(), entry.getCurrency(), entry.getEntryType(), 1, entry.getAmount()));
+        apply(delta, operator);
+    }
+
+    /**
+     * 删除明细后扣减
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onEntryRemoved(ExpenseEntry entry, String operator) {
+        SummaryDelta delta = new SummaryDelta();
+        delta.add(entry.getOrderId(), entry.getCurrency(), entry.getEntryType(), -1, entry.getAmount());
+        apply(delta, operator);
+    }
+
+    /**
+     * 修改明细后按修改前后的收付类型、币种、金额调整
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onEntryChanged(ExpenseEntry.EntryType oldType, String oldCurrency, BigDecimal oldAmount,
+                               ExpenseEntry updated, String operator) {
+        if (oldType == updated.getEntryType() && oldCurrency.equals(updated.getCurrency())
+            && oldAmount.compareTo(updated.getAmount()) == 0) {
+            return;
+        }
+        SummaryDelta delta = new SummaryDelta();
+        delta.add(updated.getOrderId(), oldCurrency, oldType, -1, oldAmount);
+        delta.add(updated.getOrderId(), updated.getCurrency(), updated.getEntryType(), 1, updated.getAmount());
+        apply(delta, operator);
+    }
+
+    /**
+     * 读取订单汇总，订单有明细但尚无汇总行时先建行
+     */
+    public ExpenseEntryService.ExpenseEntrySummary getSummary(String orderId) {
+        List<ExpenseEntryService.ExpenseEntrySummary> rows = querySummary(orderId);
+        if (rows.isEmpty() && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) > 0 FROM expense_entries WHERE order_id = ?", Boolean.class, orderId))) {
+            createFromCommitted(orderId, "SYSTEM", Timestamp.valueOf(LocalDateTime.now()));
+            rows = querySummary(orderId);
+        }
+        ExpenseEntryService.ExpenseEntrySummary summary = rows.isEmpty()
+            ? ExpenseEntryService.ExpenseEntrySummary.builder()
+                .orderId(orderId)
+                .totalReceivable(BigDecimal.ZERO)
+                .totalPayable(BigDecimal.ZERO)
+                .netAmount(BigDecimal.ZERO)
+                .build()
+            : rows.get(0);
+        summary.setCurrencyTotals(jdbcTemplate.query(
+            "SELECT currency, receivable_count, payable_count, total_receivable, total_payable " +
+            "FROM expense_entry_currency_totals WHERE order_id = ? AND (receivable_count > 0 OR payable_count > 0) " +
+            "ORDER BY currency",
+            (rs, rowNum) -> ExpenseEntryService.CurrencyTotal.builder()
+                .currency(rs.getString("currency"))
+                .receivableCount(rs.getLong("receivable_count"))
+                .payableCount(rs.getLong("payable_count"))
+                .totalReceivable(rs.getBigDecimal("total_receivable"))
+                .totalPayable(rs.getBigDecimal("total_payable"))
+                .build(),
+            orderId));
+        return summary;
+    }
+
+    /**
+     * 删除订单汇总，明细被绕过本服务批量删除后调用（如清除压测数据），下次访问时重建
+     * orderIdPattern 为 LIKE 模式，字面的 _、% 需由调用方用反斜杠转义
+     */
+    public int evictByOrderIdPattern(String orderIdPattern) {
+        int deleted = jdbcTemplate.update("DELETE FROM expense_entry_currency_totals WHERE order_id LIKE ?", orderIdPattern);
+        deleted += jdbcTemplate.update("DELETE FROM expense_entry_status WHERE order_id LIKE ?", orderIdPattern);
+        return deleted;
+    }
+
+    private List<ExpenseEntryService.ExpenseEntrySummary> querySummary(String orderId) {
+        return jdbcTemplate.query(
+            "SELECT receivable_count, payable_count, total_receivable, total_payable " +
+            "FROM expense_entry_status WHERE order_id = ?",
+            (rs, rowNum) -> {
+                BigDecimal totalReceivable = rs.getBigDecimal("total_receivable");
+                BigDecimal totalPayable = rs.getBigDecimal("total_payable");
+                long receivableCount = rs.getLong("receivable_count");
+                long payableCount = rs.getLong("payable_count");
+                return ExpenseEntryService.ExpenseEntrySummary.builder()
+                    .orderId(orderId)
+                    .totalReceivable(totalReceivable)
+                    .totalPayable(totalPayable)
+                    .netAmount(totalReceivable.subtract(totalPayable))
+                    .receivableCount(receivableCount)
+                    .payableCount(payableCount)
+                    .totalCount(receivableCount + payableCount)
+                    .build();
+            },
+            orderId);
+    }
+
+    /**
+     * 按订单号顺序写入，并发批次对同一组订单加行锁的顺序一致，避免死锁
+     */
+    private void apply(SummaryDelta delta, String operator) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        delta.byOrder.forEach((orderId, byCurrency) -> {
+            long[] counts = new long[2];
+            BigDecimal[] amounts = {BigDecimal.ZERO, BigDecimal.ZERO};
+            byCurrency.values().forEach(totals -> {
+                counts[0] += totals.receivableCount;
+                counts[1] += totals.payableCount;
+                amounts[0] = amounts[0].add(totals.totalReceivable);
+                amounts[1] = amounts[1].add(totals.totalPayable);
+            });
+
+            // 订单汇总行的更新同时锁住该行，本事务提交前同一订单的其他增量在此等待
+            if (updateOrderTotals(orderId, counts, amounts, operator, now) == 0) {
+                createFromCommitted(orderId, operator, now);
+                if (updateOrderTotals(orderId, counts, amounts, operator, now) == 0) {
+                    throw new ClearingException("订单费用汇总建立失败: " + orderId);
+                }
+            }
+
+            byCurrency.forEach((currency, totals) -> {
+                int updated = jdbcTemplate.update(UPDATE_CURRENCY_TOTALS,
+                    totals.receivableCount, totals.payableCount, totals.totalReceivable, totals.totalPayable,
+                    orderId, currency);
+                if (updated == 0) {
+                    jdbcTemplate.update(INSERT_CURRENCY_TOTALS, orderId, currency,
+                        totals.receivableCount, totals.payableCount, totals.totalReceivable, totals.totalPayable);
+                }
+            });
+        });
+    }
+
+    private int updateOrderTotals(String orderId, long[] counts, BigDecimal[] amounts, String operator, Timestamp now) {
+        return jdbcTemplate.update(UPDATE_ORDER_TOTALS, counts[0], counts[1], amounts[0], amounts[1], operator, now, orderId);
+    }
+
+    /**
+     * 在独立事务中按已提交的明细建立订单汇总行，调用方事务内尚未提交的变更随后以增量累加；
+     * 并发建行时后到者因唯一索引冲突回滚，由先到者的结果为准
+     */
+    private void createFromCommitted(String orderId, String operator, Timestamp now) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update(CREATE_ORDER_TOTALS, orderId, operator, now, orderId);
+                // 清理汇总行缺失期间残留的分币种数据
+                jdbcTemplate.update("DELETE FROM expense_entry_currency_totals WHERE order_id = ?", orderId);
+                jdbcTemplate.update(CREATE_CURRENCY_TOTALS, orderId);
+            });
+            log.debug("已从明细建立订单费用汇总: orderId={}", orderId);
+        } catch (DataIntegrityViolationException e) {
+            log.debug("订单费用汇总已由并发事务建立: orderId={}", orderId);
+        }
+    }
+
+    /**
+     * 按订单、币种累积的增量
+     */
+    private static final class SummaryDelta {
+        private final Map<String, Map<String, Totals>> byOrder = new TreeMap<>();
+
+        private void add(String orderId, String currency, ExpenseEntry.EntryType entryType, int sign, BigDecimal amount) {
+            Totals totals = byOrder.computeIfAbsent(orderId, id -> new TreeMap<>())
+                .computeIfAbsent(currency, c -> new Totals());
+            BigDecimal signedAmount = sign > 0 ? amount : amount.negate();
+            if (entryType == ExpenseEntry.EntryType.RECEIVABLE) {
+                totals.receivableCount += sign;
+                totals.totalReceivable = totals.totalReceivable.add(signedAmount);
+            } else {
+                totals.payableCount += sign;
+                totals.totalPayable = totals.totalPayable.add(signedAmount);
+            }
+        }
+    }
+
+    private static final class Totals {
+        private long receivableCount;
+        private long payableCount;
+        private BigDecimal totalReceivable = BigDecimal.ZERO;
+        private BigDecimal totalPayable = BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,268 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 费用科目与服务项目共现索引
+ *
+ * 从历史费用明细统计每个（费用科目, 服务项目）组合的录入次数和按时间衰减的热度，
+ * 同一个计数单元同时挂在"科目→服务"和"服务→科目"两个方向上，推荐时直接在内存中取前 K 个。
+ * 热度按半衰期指数衰减：每条明细的权重记为 e^(λ·(录入时间 - 基准时间))，各单元共用同一基准，
+ * 排序时无需随时间重算；基准在每次全量重建时前移，对外展示时再折算为当前时刻的热度。
+ * 明细新增、删除、改科目或服务时在事务提交后增量更新，定期全量重建以纠正偏差。
+ */
+@Slf4j
+@Service
+public class FeeServiceCooccurrenceIndex {
+
+    private static final String AGGREGATE_BY_DAY =
+        "SELECT fee_code, service_code, CAST(created_time AS DATE) AS entry_date, COUNT(*) AS entry_count " +
+        "FROM expense_entries GROUP BY fee_code, service_code, CAST(created_time AS DATE)";
+
+    private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private static final Comparator<Usage> BY_RELEVANCE = Comparator
+        .comparingDouble((Usage usage) -> usage.weight)
+        .thenComparingLong(usage -> usage.count)
+        .reversed()
+        .thenComparing(usage -> usage.code);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final double decayPerMilli;
+    private final long rebuildHours;
+
+    private volatile Index index = new Index(System.currentTimeMillis());
+    private volatile boolean ready;
+    private ScheduledExecutorService rebuilder;
+
+    public FeeServiceCooccurrenceIndex(JdbcTemplate jdbcTemplate,
+                                       @Value("${clearing.suggestion.half-life-days:90}") double halfLifeDays,
+                                       @Value("${clearing.suggestion.rebuild-hours:24}") long rebuildHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.decayPerMilli = Math.log(2) / (halfLifeDays * MILLIS_PER_DAY);
+        this.rebuildHours = rebuildHours;
+    }
+
+    @PostConstruct
+    public void start() {
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cooccurrence-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 首次构建放到后台，不阻塞启动；构建完成前推荐结果按无历史处理
+        rebuilder.execute(this::rebuild);
+        if (rebuildHours > 0) {
+            rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildHours, rebuildHours, TimeUnit.HOURS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * 从费用明细全量重建，完成后整体替换；重建期间提交的增量可能丢失，下次重建时纠正
+     */
+    public void rebuild() {
+        long startNanos = System.nanoTime();
+        Index rebuilt = new Index(System.currentTimeMillis());
+        try {
+            jdbcTemplate.query(AGGREGATE_BY_DAY, rs -> {
+                LocalDate entryDate = rs.getDate("entry_date").toLocalDate();
+                // 按天聚合，取当天正午作为这一批明细的录入时间
+                long entryMillis = entryDate.atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                rebuilt.add(rs.getString("fee_code"), rs.getString("service_code"),
+                    rs.getLong("entry_count"), weight(rebuilt, entryMillis) * rs.getLong("entry_count"), entryMillis);
+            });
+            index = rebuilt;
+            ready = true;
+            log.info("费用科目服务共现索引已重建: 费用科目{}个, 服务项目{}个, 组合{}个, 耗时{}ms",
+                rebuilt.servicesByFee.size(), rebuilt.feesByService.size(), rebuilt.pairCount(),
+                (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (Exception e) {
+            log.error("重建费用科目服务共现索引失败，继续使用当前索引", e);
+        }
+    }
+
+    /**
+     * 新增一条明细，事务提交后计入
+     */
+    public void record(String feeCode, String serviceCode, LocalDateTime entryTime) {
+        TransactionCallbacks.afterCommit(() -> apply(feeCode, serviceCode, entryTime, 1));
+    }
+
+    /**
+     * 删除一条明细，事务提交后扣除
+     */
+    public void remove(String feeCode, String serviceCode, LocalDateTime entryTime) {
+        TransactionCallbacks.afterCommit(() -> apply(feeCode, serviceCode, entryTime, -1));
+    }
+
+    /**
+     * 与费用科目共现最多的服务项目，按热度降序
+     */
+    public List<Usage> topServicesForFee(String feeCode, int limit) {
+        Index current = index;
+        return top(current, current.servicesByFee.get(feeCode), limit);
+    }
+
+    /**
+     * 与服务项目共现最多的费用科目，按热度降序
+     */
+    public List<Usage> topFeesForService(String serviceCode, int limit) {
+        Index current = index;
+        return top(current, current.feesByService.get(serviceCode), limit);
+    }
+
+    /**
+     * 按共现热度对候选服务项目排序，无历史的候选保持原有顺序排在最后
+     */
+    public List<String> rankServices(String feeCode, List<String> candidateServices) {
+        Map<String, Cell> services = index.servicesByFee.get(feeCode);
+        if (services == null || candidateServices.size() < 2) {
+            return candidateServices;
+        }
+        List<String> ranked = new ArrayList<>(candidateServices);
+        ranked.sort(Comparator.comparingDouble((String service) -> {
+            Cell cell = services.get(service);
+            return cell != null ? cell.currentWeight() : 0;
+        }).reversed());
+        return ranked;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public Map<String, Object> getStats() {
+        Index current = index;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", ready);
+        stats.put("feeCodes", current.servicesByFee.size());
+        stats.put("serviceCodes", current.feesByService.size());
+        stats.put("pairs", current.pairCount());
+        stats.put("baseTime", LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(current.baseMillis), ZoneId.systemDefault()));
+        return stats;
+    }
+
+    private void apply(String feeCode, String serviceCode, LocalDateTime entryTime, int sign) {
+        if (feeCode == null || serviceCode == null) {
+            return;
+        }
+        Index current = index;
+        long entryMillis = (entryTime != null ? entryTime : LocalDateTime.now())
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        current.add(feeCode, serviceCode, sign, sign * weight(current, entryMillis), entryMillis);
+    }
+
+    private double weight(Index target, long entryMillis) {
+        return Math.exp(decayPerMilli * (entryMillis - target.baseMillis));
+    }
+
+    private List<Usage> top(Index current, Map<String, Cell> cells, int limit) {
+        if (cells == null || cells.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        double decay = Math.exp(-decayPerMilli * (System.currentTimeMillis() - current.baseMillis));
+        // 小顶堆只保留前 limit 个
+        PriorityQueue<Usage> heap = new PriorityQueue<>(limit + 1, BY_RELEVANCE.reversed());
+        cells.forEach((code, cell) -> {
+            Usage usage = cell.snapshot(code, decay);
+            if (usage.count <= 0) {
+                return;
+            }
+            heap.add(usage);
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        });
+        List<Usage> result = new ArrayList<>(heap);
+        result.sort(BY_RELEVANCE);
+        return result;
+    }
+
+    /**
+     * 排名结果：编码、录入次数、折算到当前时刻的热度
+     */
+    @Data
+    public static class Usage {
+        private final String code;
+        private final long count;
+        private final double weight;
+        private final LocalDateTime lastUsedTime;
+    }
+
+    private static final class Index {
+        private final long baseMillis;
+        private final Map<String, Map<String, Cell>> servicesByFee = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, Cell>> feesByService = new ConcurrentHashMap<>();
+
+        private Index(long baseMillis) {
+            this.baseMillis = baseMillis;
+        }
+
+        private void add(String feeCode, String serviceCode, long count, double weight, long entryMillis) {
+            Cell cell = servicesByFee.computeIfAbsent(feeCode, code -> new ConcurrentHashMap<>())
+                .computeIfAbsent(serviceCode, code -> new Cell());
+            // 两个方向共用同一个单元，只需更新一次
+            feesByService.computeIfAbsent(serviceCode, code -> new ConcurrentHashMap<>()).putIfAbsent(feeCode, cell);
+            cell.add(count, weight, entryMillis);
+        }
+
+        private int pairCount() {
+            return servicesByFee.values().stream().mapToInt(Map::size).sum();
+        }
+    }
+
+    private static final class Cell {
+        private long count;
+        private double weight;
+        private long lastUsedMillis;
+
+        private synchronized void add(long countDelta, double weightDelta, long entryMillis) {
+            count += countDelta;
+            weight = Math.max(0, weight + weightDelta);
+            if (countDelta > 0 && entryMillis > lastUsedMillis) {
+                lastUsedMillis = entryMillis;
+            }
+        }
+
+        private synchronized double currentWeight() {
+            return weight;
+        }
+
+        private synchronized Usage snapshot(String code, double decay) {
+            return new Usage(code, count, weight * decay, lastUsedMillis > 0
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(lastUsedMillis), ZoneId.systemDefault())
+                : null);
+        }
+    }
+}
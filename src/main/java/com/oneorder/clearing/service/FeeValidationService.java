@@ -4,11 +4,22 @@ import com.oneorder.clearing.entity.ExpenseEntry;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -23,14 +34,57 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class FeeValidationService {
     
+    private static final ValidationResult NO_SUPPLIER_CHECK = ValidationResult.builder()
+        .status(ExpenseEntry.ValidationStatus.VALID)
+        .message("无供应商类型约束检查")
+        .level(ValidationLevel.VALID)
+        .constraintType(ConstraintType.ALLOWED)
+        .build();
+    
     private final JdbcTemplate jdbcTemplate;
     
+    @Value("${clearing.fee-constraint.refresh-seconds:300}")
+    private long refreshSeconds;
+    
+    /**
+     * 当前生效的约束矩阵，重新加载时整体替换引用，读取方无需加锁
+     */
+    private volatile ConstraintMatrix constraintMatrix = ConstraintMatrix.UNAVAILABLE;
+    
+    private ScheduledExecutorService refresher;
+    
+    @PostConstruct
+    public void init() {
+        reloadConstraints();
+        if (refreshSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fee-constraint-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::reloadConstraints, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+    
     /**
      * 校验费用科目和服务项目的约束关系
      */
     public ValidationResult validateFeeServiceConstraint(String feeCode, String serviceCode) {
         log.debug("校验费用科目服务约束: feeCode={}, serviceCode={}", feeCode, serviceCode);
         
+        ConstraintMatrix matrix = constraintMatrix;
+        if (matrix.available) {
+            return matrix.lookupService(feeCode, serviceCode);
+        }
+        
+        // 约束矩阵尚未加载成功时回退到逐条查询
         try {
             String sql = "SELECT constraint_type, constraint_level, description, priority " +
                 "FROM fee_service_constraints " +
@@ -41,12 +95,7 @@ public class FeeValidationService {
             List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, feeCode, serviceCode);
             
             if (results.isEmpty()) {
-                return ValidationResult.builder()
-                    .status(ExpenseEntry.ValidationStatus.WARNING)
-                    .message(String.format("费用科目[%s]与服务项目[%s]无明确约束关系，建议确认适用性", feeCode, serviceCode))
-                    .level(ValidationLevel.WARNING)
-                    .constraintType(ConstraintType.UNKNOWN)
-                    .build();
+                return noConstraintResult(feeCode, "服务项目", serviceCode);
             }
             
             Map<String, Object> constraint = results.get(0);
@@ -58,12 +107,7 @@ public class FeeValidationService {
             
         } catch (Exception e) {
             log.error("校验费用科目服务约束失败: feeCode={}, serviceCode={}", feeCode, serviceCode, e);
-            return ValidationResult.builder()
-                .status(ExpenseEntry.ValidationStatus.WARNING)
-                .message("校验服务失败，建议手动确认适用性")
-                .level(ValidationLevel.WARNING)
-                .constraintType(ConstraintType.UNKNOWN)
-                .build();
+            return failedResult();
         }
     }
     
@@ -74,14 +118,15 @@ public class FeeValidationService {
         log.debug("校验费用科目供应商约束: feeCode={}, supplierType={}", feeCode, supplierType);
         
         if (supplierType == null || supplierType.trim().isEmpty()) {
-            return ValidationResult.builder()
-                .status(ExpenseEntry.ValidationStatus.VALID)
-                .message("无供应商类型约束检查")
-                .level(ValidationLevel.VALID)
-                .constraintType(ConstraintType.ALLOWED)
-                .build();
+            return NO_SUPPLIER_CHECK;
+        }
+        
+        ConstraintMatrix matrix = constraintMatrix;
+        if (matrix.available) {
+            return matrix.lookupSupplier(feeCode, supplierType);
         }
         
+        // 约束矩阵尚未加载成功时回退到逐条查询
         try {
             String sql = "SELECT constraint_type, constraint_level, description, priority " +
                 "FROM fee_supplier_constraints " +
@@ -92,12 +137,7 @@ public class FeeValidationService {
             List<Map<String, Object>> results = jdbcTemplate.queryForList(sql, feeCode, supplierType);
             
             if (results.isEmpty()) {
-                return ValidationResult.builder()
-                    .status(ExpenseEntry.ValidationStatus.WARNING)
-                    .message(String.format("费用科目[%s]与供应商类型[%s]无明确约束关系，建议确认适用性", feeCode, supplierType))
-                    .level(ValidationLevel.WARNING)
-                    .constraintType(ConstraintType.UNKNOWN)
-                    .build();
+                return noConstraintResult(feeCode, "供应商类型", supplierType);
             }
             
             Map<String, Object> constraint = results.get(0);
@@ -109,12 +149,7 @@ public class FeeValidationService {
             
         } catch (Exception e) {
             log.error("校验费用科目供应商约束失败: feeCode={}, supplierType={}", feeCode, supplierType, e);
-            return ValidationResult.builder()
-                .status(ExpenseEntry.ValidationStatus.WARNING)
-                .message("校验服务失败，建议手动确认适用性")
-                .level(ValidationLevel.WARNING)
-                .constraintType(ConstraintType.UNKNOWN)
-                .build();
+            return failedResult();
         }
     }
     
@@ -122,20 +157,163 @@ public class FeeValidationService {
      * 批量校验费用明细
      */
     public List<ValidationResult> batchValidateExpenseEntries(List<Map<String, String>> entries) {
-        return entries.stream()
-            .map(entry -> {
-                String feeCode = entry.get("feeCode");
-                String serviceCode = entry.get("serviceCode");
-                String supplierType = entry.get("supplierType");
-                
-                ValidationResult serviceResult = validateFeeServiceConstraint(feeCode, serviceCode);
-                ValidationResult supplierResult = validateFeeSupplierConstraint(feeCode, supplierType);
-                
-                // 返回更严格的校验结果
-                return serviceResult.getLevel().ordinal() > supplierResult.getLevel().ordinal() 
-                    ? serviceResult : supplierResult;
-            })
-            .collect(Collectors.toList());
+        ConstraintMatrix matrix = constraintMatrix;
+        if (!matrix.available) {
+            return entries.stream()
+                .map(entry -> stricter(
+                    validateFeeServiceConstraint(entry.get("feeCode"), entry.get("serviceCode")),
+                    validateFeeSupplierConstraint(entry.get("feeCode"), entry.get("supplierType"))))
+                .collect(Collectors.toList());
+        }
+        
+        // 整批使用同一版本的矩阵，逐行只做数组查找
+        List<ValidationResult> results = new ArrayList<>(entries.size());
+        for (Map<String, String> entry : entries) {
+            String feeCode = entry.get("feeCode");
+            String supplierType = entry.get("supplierType");
+            ValidationResult serviceResult = matrix.lookupService(feeCode, entry.get("serviceCode"));
+            ValidationResult supplierResult = supplierType == null || supplierType.trim().isEmpty()
+                ? NO_SUPPLIER_CHECK : matrix.lookupSupplier(feeCode, supplierType);
+            results.add(stricter(serviceResult, supplierResult));
+        }
+        return results;
+    }
+    
+    /**
+     * 当前约束矩阵，批量导入等场景取一次后整批复用，保证同一批次看到一致的约束版本
+     */
+    public ConstraintMatrix getConstraintMatrix() {
+        return constraintMatrix;
+    }
+    
+    /**
+     * 基于指定约束矩阵校验一条明细：服务约束，付款明细再叠加供应商约束，取更严格的结果
+     */
+    public ValidationResult validate(ConstraintMatrix matrix, String feeCode, String serviceCode,
+                                     ExpenseEntry.EntryType entryType, String supplierType) {
+        if (!matrix.available) {
+            ValidationResult result = validateFeeServiceConstraint(feeCode, serviceCode);
+            return entryType == ExpenseEntry.EntryType.PAYABLE
+                ? stricter(result, validateFeeSupplierConstraint(feeCode, supplierType)) : result;
+        }
+        ValidationResult result = matrix.lookupService(feeCode, serviceCode);
+        if (entryType == ExpenseEntry.EntryType.PAYABLE) {
+            ValidationResult supplierResult = supplierType == null || supplierType.trim().isEmpty()
+                ? NO_SUPPLIER_CHECK : matrix.lookupSupplier(feeCode, supplierType);
+            result = stricter(result, supplierResult);
+        }
+        return result;
+    }
+    
+    /**
+     * 重新加载约束表并编译为矩阵，成功后原子替换；加载失败时保留原矩阵
+     */
+    public Map<String, Object> reloadConstraints() {
+        ConstraintMatrix compiled = loadConstraintMatrix();
+        ConstraintMatrix previous = constraintMatrix;
+        if (!compiled.available) {
+            log.warn("费用约束矩阵未更新，{}", previous.available ? "继续使用上一版本" : "校验回退为逐条查询");
+            return previous.getStats();
+        }
+        constraintMatrix = compiled;
+        if (!compiled.sameContent(previous)) {
+            log.info("费用约束矩阵已加载: 费用科目{}个, 服务项目{}个, 供应商类型{}个, 服务约束{}条, 供应商约束{}条",
+                compiled.feeIndex.size(), compiled.serviceIndex.size(), compiled.supplierIndex.size(),
+                compiled.serviceConstraintCount, compiled.supplierConstraintCount);
+        }
+        return compiled.getStats();
+    }
+    
+    /**
+     * 从约束表加载全部启用的约束并编译为矩阵；加载失败时返回不可用的矩阵，校验回退为逐条查询
+     */
+    public ConstraintMatrix loadConstraintMatrix() {
+        try {
+            List<ConstraintRow> serviceRows = jdbcTemplate.query(
+                "SELECT fee_code, service_code AS target, constraint_type, constraint_level, description " +
+                "FROM fee_service_constraints WHERE is_active = true ORDER BY priority DESC",
+                (rs, rowNum) -> new ConstraintRow(rs.getString("fee_code"), rs.getString("target"),
+                    rs.getString("constraint_type"), rs.getString("constraint_level"), rs.getString("description")));
+            List<ConstraintRow> supplierRows = jdbcTemplate.query(
+                "SELECT fee_code, supplier_type AS target, constraint_type, constraint_level, description " +
+                "FROM fee_supplier_constraints WHERE is_active = true ORDER BY priority DESC",
+                (rs, rowNum) -> new ConstraintRow(rs.getString("fee_code"), rs.getString("target"),
+                    rs.getString("constraint_type"), rs.getString("constraint_level"), rs.getString("description")));
+            return compile(serviceRows, supplierRows);
+        } catch (Exception e) {
+            log.error("加载费用约束矩阵失败", e);
+            return ConstraintMatrix.UNAVAILABLE;
+        }
+    }
+    
+    /**
+     * 编译约束矩阵：为费用科目、服务项目、供应商类型分配连续下标，
+     * 每个单元格预先生成校验结果，同一组合取优先级最高的一条（输入已按优先级降序）
+     */
+    private ConstraintMatrix compile(List<ConstraintRow> serviceRows, List<ConstraintRow> supplierRows) {
+        Map<String, Integer> feeIndex = new HashMap<>();
+        Map<String, Integer> serviceIndex = new HashMap<>();
+        Map<String, Integer> supplierIndex = new HashMap<>();
+        for (ConstraintRow row : serviceRows) {
+            feeIndex.putIfAbsent(row.feeCode, feeIndex.size());
+            serviceIndex.putIfAbsent(row.target, serviceIndex.size());
+        }
+        for (ConstraintRow row : supplierRows) {
+            feeIndex.putIfAbsent(row.feeCode, feeIndex.size());
+            supplierIndex.putIfAbsent(row.target, supplierIndex.size());
+        }
+        ValidationResult[] serviceCells = new ValidationResult[feeIndex.size() * serviceIndex.size()];
+        ValidationResult[] supplierCells = new ValidationResult[feeIndex.size() * supplierIndex.size()];
+        int serviceCount = fillCells(serviceRows, feeIndex, serviceIndex, serviceCells);
+        int supplierCount = fillCells(supplierRows, feeIndex, supplierIndex, supplierCells);
+        return new ConstraintMatrix(true, feeIndex, serviceIndex, supplierIndex,
+            serviceCells, supplierCells, serviceCount, supplierCount);
+    }
+    
+    private int fillCells(List<ConstraintRow> rows, Map<String, Integer> feeIndex,
+                          Map<String, Integer> targetIndex, ValidationResult[] cells) {
+        int width = targetIndex.size();
+        int count = 0;
+        for (ConstraintRow row : rows) {
+            int cell = feeIndex.get(row.feeCode) * width + targetIndex.get(row.target);
+            if (cells[cell] != null) {
+                continue;
+            }
+            try {
+                cells[cell] = buildValidationResult(row.constraintType, row.constraintLevel, row.description,
+                    row.feeCode, row.target);
+            } catch (Exception e) {
+                log.warn("费用约束配置无效: feeCode={}, target={}, type={}, level={}",
+                    row.feeCode, row.target, row.constraintType, row.constraintLevel);
+                cells[cell] = failedResult();
+            }
+            count++;
+        }
+        return count;
+    }
+    
+    private static ValidationResult stricter(ValidationResult serviceResult, ValidationResult supplierResult) {
+        // 返回更严格的校验结果
+        return serviceResult.getLevel().ordinal() > supplierResult.getLevel().ordinal()
+            ? serviceResult : supplierResult;
+    }
+    
+    private static ValidationResult noConstraintResult(String feeCode, String targetName, String target) {
+        return ValidationResult.builder()
+            .status(ExpenseEntry.ValidationStatus.WARNING)
+            .message(String.format("费用科目[%s]与%s[%s]无明确约束关系，建议确认适用性", feeCode, targetName, target))
+            .level(ValidationLevel.WARNING)
+            .constraintType(ConstraintType.UNKNOWN)
+            .build();
+    }
+    
+    private static ValidationResult failedResult() {
+        return ValidationResult.builder()
+            .status(ExpenseEntry.ValidationStatus.WARNING)
+            .message("校验服务失败，建议手动确认适用性")
+            .level(ValidationLevel.WARNING)
+            .constraintType(ConstraintType.UNKNOWN)
+            .build();
     }
     
     /**
@@ -230,6 +408,163 @@ public class FeeValidationService {
         private ConstraintType constraintType;
     }
     
+    /**
+     * 编译后的约束矩阵（费用科目 × 服务项目、费用科目 × 供应商类型）
+     * 
+     * 编码先映射为连续下标，单元格存放预先生成的校验结果，查找只需两次哈希取下标和一次数组访问。
+     * 构建完成后不再修改，可被多个线程并发读取；单元格中的结果实例是共享的，调用方不要修改。
+     */
+    public static final class ConstraintMatrix {
+        
+        static final ConstraintMatrix UNAVAILABLE = new ConstraintMatrix(false, Map.of(), Map.of(), Map.of(),
+            new ValidationResult[0], new ValidationResult[0], 0, 0);
+        
+        private final boolean available;
+        private final Map<String, Integer> feeIndex;
+        private final Map<String, Integer> serviceIndex;
+        private final Map<String, Integer> supplierIndex;
+        private final ValidationResult[] serviceCells;
+        private final ValidationResult[] supplierCells;
+        private final int serviceConstraintCount;
+        private final int supplierConstraintCount;
+        private final String[] feeCodes;
+        private final String[] serviceCodes;
+        private final LocalDateTime loadedTime = LocalDateTime.now();
+        
+        private ConstraintMatrix(boolean available, Map<String, Integer> feeIndex,
+                                 Map<String, Integer> serviceIndex, Map<String, Integer> supplierIndex,
+                                 ValidationResult[] serviceCells, ValidationResult[] supplierCells,
+                                 int serviceConstraintCount, int supplierConstraintCount) {
+            this.available = available;
+            this.feeIndex = feeIndex;
+            this.serviceIndex = serviceIndex;
+            this.supplierIndex = supplierIndex;
+            this.serviceCells = serviceCells;
+            this.supplierCells = supplierCells;
+            this.serviceConstraintCount = serviceConstraintCount;
+            this.supplierConstraintCount = supplierConstraintCount;
+            this.feeCodes = codesByIndex(feeIndex);
+            this.serviceCodes = codesByIndex(serviceIndex);
+        }
+        
+        private static String[] codesByIndex(Map<String, Integer> index) {
+            String[] codes = new String[index.size()];
+            index.forEach((code, i) -> codes[i] = code);
+            return codes;
+        }
+        
+        public boolean isAvailable() {
+            return available;
+        }
+        
+        ValidationResult lookupService(String feeCode, String serviceCode) {
+            ValidationResult result = lookup(serviceCells, serviceIndex, feeCode, serviceCode);
+            return result != null ? result : noConstraintResult(feeCode, "服务项目", serviceCode);
+        }
+        
+        ValidationResult lookupSupplier(String feeCode, String supplierType) {
+            ValidationResult result = lookup(supplierCells, supplierIndex, feeCode, supplierType);
+            return result != null ? result : noConstraintResult(feeCode, "供应商类型", supplierType);
+        }
+        
+        private ValidationResult lookup(ValidationResult[] cells, Map<String, Integer> targetIndex,
+                                        String feeCode, String target) {
+            Integer fee = feeCode != null ? feeIndex.get(feeCode) : null;
+            Integer column = target != null ? targetIndex.get(target) : null;
+            if (fee == null || column == null) {
+                return null;
+            }
+            return cells[fee * targetIndex.size() + column];
+        }
+        
+        /**
+         * 费用科目明确允许的服务项目（矩阵的一行）
+         */
+        public List<String> allowedServices(String feeCode) {
+            Integer fee = feeCode != null ? feeIndex.get(feeCode) : null;
+            if (fee == null) {
+                return List.of();
+            }
+            List<String> services = new ArrayList<>();
+            int width = serviceCodes.length;
+            for (int column = 0; column < width; column++) {
+                ValidationResult cell = serviceCells[fee * width + column];
+                if (cell != null && cell.getConstraintType() == ConstraintType.ALLOWED) {
+                    services.add(serviceCodes[column]);
+                }
+            }
+            return services;
+        }
+        
+        /**
+         * 服务项目明确允许的费用科目（矩阵的一列）
+         */
+        public List<String> allowedFees(String serviceCode) {
+            Integer column = serviceCode != null ? serviceIndex.get(serviceCode) : null;
+            if (column == null) {
+                return List.of();
+            }
+            List<String> fees = new ArrayList<>();
+            int width = serviceCodes.length;
+            for (int fee = 0; fee < feeCodes.length; fee++) {
+                ValidationResult cell = serviceCells[fee * width + column];
+                if (cell != null && cell.getConstraintType() == ConstraintType.ALLOWED) {
+                    fees.add(feeCodes[fee]);
+                }
+            }
+            return fees;
+        }
+        
+        /**
+         * 费用科目是否被禁止用于该服务项目
+         */
+        public boolean isForbidden(String feeCode, String serviceCode) {
+            ValidationResult cell = lookup(serviceCells, serviceIndex, feeCode, serviceCode);
+            return cell != null && cell.getConstraintType() == ConstraintType.FORBIDDEN;
+        }
+        
+        /**
+         * 判断两个矩阵的约束内容是否一致，用于定时刷新时只在变化后记录日志
+         */
+        boolean sameContent(ConstraintMatrix other) {
+            return available == other.available
+                && feeIndex.equals(other.feeIndex)
+                && serviceIndex.equals(other.serviceIndex)
+                && supplierIndex.equals(other.supplierIndex)
+                && Arrays.equals(serviceCells, other.serviceCells)
+                && Arrays.equals(supplierCells, other.supplierCells);
+        }
+        
+        public Map<String, Object> getStats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("available", available);
+            stats.put("feeCodes", feeIndex.size());
+            stats.put("serviceCodes", serviceIndex.size());
+            stats.put("supplierTypes", supplierIndex.size());
+            stats.put("serviceConstraints", serviceConstraintCount);
+            stats.put("supplierConstraints", supplierConstraintCount);
+            stats.put("loadedTime", loadedTime);
+            return stats;
+        }
+    }
+    
+    private static final class ConstraintRow {
+        private final String feeCode;
+        private final String target;
+        private final String constraintType;
+        private final String constraintLevel;
+        private final String description;
+        
+        private ConstraintRow(String feeCode, String target, String constraintType,
+                              String constraintLevel, String description) {
+            this.feeCode = feeCode;
+            this.target = target;
+            this.constraintType = constraintType;
+            this.constraintLevel = constraintLevel;
+            this.description = description;
+        }
+    }
+    
     /**
      * 校验级别枚举
      */
@@ -0,0 +1,317 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.InternalProtocol;
+import com.oneorder.clearing.repository.InternalProtocolRepository;
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 内部协议匹配索引
+ *
+ * 启动时把激活的协议整表加载到内存，按（销售部门, 操作部门, 服务编码, 业务类型）分桶，服务编码或业务类型为空的协议
+ * 放在通配桶中。每个桶把生效/失效日期切成互不重叠的日期段，预先算好每段内生效的协议（按基础佣金率降序），
+ * 匹配时二分定位日期段，再按"具体服务→通配服务、具体业务类型→通配业务类型"的顺序拼接四个桶，
+ * 与 findAvailableProtocols / findBestMatchProtocolList 的排序一致。
+ * 索引整体替换、读取无锁；协议保存后在事务提交时重建，另按固定间隔重建以收录直接写库的变更。
+ * 加载只读取协议表本身的列，不经过实体关联；加载失败时回退到数据库查询。
+ * 返回的协议实体为各请求共享的只读快照，不得修改或保存。
+ */
+@Slf4j
+@Service
+public class InternalProtocolIndex {
+
+    private static final String WILDCARD = "*";
+
+    private static final String SELECT_ACTIVE_PROTOCOLS =
+        "SELECT protocol_id, protocol_name, sales_department_id, operation_department_id, service_code, business_type, " +
+        "base_commission_rate, performance_bonus_rate, effective_date, expiry_date, " +
+        "created_time, updated_time, created_by " +
+        "FROM internal_protocol WHERE active = true";
+
+    /** 与数据库 ORDER BY base_commission_rate DESC 一致，佣金率为空的排在最前 */
+    private static final Comparator<InternalProtocol> BY_COMMISSION_RATE = Comparator
+        .comparing(InternalProtocol::getBaseCommissionRate, Comparator.nullsFirst(Comparator.reverseOrder()))
+        .thenComparing(InternalProtocol::getProtocolId);
+
+    private final InternalProtocolRepository protocolRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final long refreshSeconds;
+
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService refresher;
+
+    public InternalProtocolIndex(InternalProtocolRepository protocolRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 @Value("${clearing.protocol-index.refresh-seconds:300}") long refreshSeconds) {
+        this.protocolRepository = protocolRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        if (refreshSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "protocol-index-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::reload, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * 从数据库重建索引，失败时保留当前索引
+     *
+     * @return 索引统计
+     */
+    public synchronized Map<String, Object> reload() {
+        long startNanos = System.nanoTime();
+        try {
+            List<InternalProtocol> protocols = loadActiveProtocols();
+            snapshot = new Snapshot(protocols);
+            log.info("内部协议索引已加载: 协议{}个, 部门组合{}个, 耗时{}ms",
+                protocols.size(), snapshot.buckets.size(), (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (Exception e) {
+            log.error("加载内部协议索引失败，{}", snapshot != null ? "继续使用当前索引" : "匹配回退到数据库查询", e);
+        }
+        return getStats();
+    }
+
+    /**
+     * 直接从协议表读取当前激活的协议（不经过索引，也不经过实体关联）
+     */
+    public List<InternalProtocol> loadActiveProtocols() {
+        return jdbcTemplate.query(SELECT_ACTIVE_PROTOCOLS, (rs, rowNum) -> {
+            InternalProtocol protocol = new InternalProtocol();
+            protocol.setProtocolId(rs.getString("protocol_id"));
+            protocol.setProtocolName(rs.getString("protocol_name"));
+            protocol.setSalesDepartmentId(rs.getString("sales_department_id"));
+            protocol.setOperationDepartmentId(rs.getString("operation_department_id"));
+            protocol.setServiceCode(rs.getString("service_code"));
+            protocol.setBusinessType(rs.getString("business_type"));
+            protocol.setBaseCommissionRate(rs.getBigDecimal("base_commission_rate"));
+            protocol.setPerformanceBonusRate(rs.getBigDecimal("performance_bonus_rate"));
+            protocol.setActive(true);
+            protocol.setEffectiveDate(rs.getObject("effective_date", LocalDate.class));
+            protocol.setExpiryDate(rs.getObject("expiry_date", LocalDate.class));
+            protocol.setCreatedTime(rs.getObject("created_time", LocalDateTime.class));
+            protocol.setUpdatedTime(rs.getObject("updated_time", LocalDateTime.class));
+            protocol.setCreatedBy(rs.getString("created_by"));
+            return protocol;
+        }).stream()
+            .filter(protocol -> protocol.getEffectiveDate() != null)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * 协议新增或修改后调用：有事务时在提交后重建，否则立即重建
+     */
+    public void onProtocolChanged() {
+        TransactionCallbacks.afterCommit(this::reload);
+    }
+
+    /**
+     * 查找指定日期可用的协议，排序同 {@link InternalProtocolRepository#findAvailableProtocols}
+     */
+    public List<InternalProtocol> findAvailableProtocols(String salesDepartmentId, String operationDepartmentId,
+                                                         String serviceCode, String businessType, LocalDate date) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return protocolRepository.findAvailableProtocols(
+                salesDepartmentId, operationDepartmentId, serviceCode, businessType, date);
+        }
+        long day = date.toEpochDay();
+        List<InternalProtocol> result = new ArrayList<>();
+        // 服务编码为空时只有通配协议可用，与 JPQL 中 "= NULL" 不成立的语义一致
+        if (serviceCode != null) {
+            if (businessType != null) {
+                current.collect(salesDepartmentId, operationDepartmentId, serviceCode, businessType, day, result);
+            }
+            current.collect(salesDepartmentId, operationDepartmentId, serviceCode, WILDCARD, day, result);
+        }
+        if (businessType != null) {
+            current.collect(salesDepartmentId, operationDepartmentId, WILDCARD, businessType, day, result);
+        }
+        current.collect(salesDepartmentId, operationDepartmentId, WILDCARD, WILDCARD, day, result);
+        return result;
+    }
+
+    /**
+     * 查找当天可用的协议
+     */
+    public List<InternalProtocol> findApplicableProtocols(String salesDepartmentId, String operationDepartmentId,
+                                                          String serviceCode, String businessType) {
+        return findAvailableProtocols(salesDepartmentId, operationDepartmentId, serviceCode, businessType, LocalDate.now());
+    }
+
+    /**
+     * 最佳匹配协议：具体服务、具体业务类型优先，其次佣金率高者
+     */
+    public Optional<InternalProtocol> findBestMatchProtocol(String salesDepartmentId, String operationDepartmentId,
+                                                            String serviceCode, String businessType, LocalDate date) {
+        List<InternalProtocol> protocols = findAvailableProtocols(
+            salesDepartmentId, operationDepartmentId, serviceCode, businessType, date);
+        return protocols.isEmpty() ? Optional.empty() : Optional.of(protocols.get(0));
+    }
+
+    /**
+     * 按ID查找激活的协议（不检查有效期）
+     */
+    public Optional<InternalProtocol> findById(String protocolId) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return protocolRepository.findById(protocolId).filter(protocol -> Boolean.TRUE.equals(protocol.getActive()));
+        }
+        return Optional.ofNullable(current.byId.get(protocolId));
+    }
+
+    /**
+     * 当天生效的全部协议，按协议名称排序
+     */
+    public List<InternalProtocol> findAllEffectiveProtocols() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return protocolRepository.findAllEffectiveProtocols();
+        }
+        LocalDate today = LocalDate.now();
+        return current.protocols.stream()
+            .filter(protocol -> !protocol.getEffectiveDate().isAfter(today))
+            .filter(protocol -> protocol.getExpiryDate() == null || !protocol.getExpiryDate().isBefore(today))
+            .collect(Collectors.toList());
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("available", current != null);
+        if (current != null) {
+            stats.put("protocols", current.protocols.size());
+            stats.put("departmentPairs", current.buckets.size());
+            stats.put("buckets", current.buckets.values().stream().mapToInt(Map::size).sum());
+            stats.put("loadedTime", current.loadedTime);
+        }
+        return stats;
+    }
+
+    private static String departmentKey(String salesDepartmentId, String operationDepartmentId) {
+        return salesDepartmentId + "|" + operationDepartmentId;
+    }
+
+    private static String bucketKey(String serviceCode, String businessType) {
+        return serviceCode + "|" + businessType;
+    }
+
+    /**
+     * 某次加载的不可变索引
+     */
+    private static final class Snapshot {
+        /** 全部激活协议，按协议名称排序 */
+        private final List<InternalProtocol> protocols;
+        private final Map<String, InternalProtocol> byId = new HashMap<>();
+        /** 部门组合 → 服务/业务类型桶 */
+        private final Map<String, Map<String, EffectiveTimeline>> buckets = new HashMap<>();
+        private final LocalDateTime loadedTime = LocalDateTime.now();
+
+        private Snapshot(List<InternalProtocol> activeProtocols) {
+            List<InternalProtocol> sorted = new ArrayList<>(activeProtocols);
+            sorted.sort(Comparator.comparing(InternalProtocol::getProtocolName, Comparator.nullsLast(Comparator.naturalOrder())));
+            this.protocols = Collections.unmodifiableList(sorted);
+            sorted.forEach(protocol -> byId.put(protocol.getProtocolId(), protocol));
+
+            Map<String, Map<String, List<InternalProtocol>>> grouped = new HashMap<>();
+            for (InternalProtocol protocol : activeProtocols) {
+                grouped.computeIfAbsent(departmentKey(protocol.getSalesDepartmentId(), protocol.getOperationDepartmentId()),
+                        key -> new HashMap<>())
+                    .computeIfAbsent(bucketKey(
+                            protocol.getServiceCode() != null ? protocol.getServiceCode() : WILDCARD,
+                            protocol.getBusinessType() != null ? protocol.getBusinessType() : WILDCARD),
+                        key -> new ArrayList<>())
+                    .add(protocol);
+            }
+            grouped.forEach((departments, byBucket) -> {
+                Map<String, EffectiveTimeline> timelines = new HashMap<>();
+                byBucket.forEach((bucket, members) -> timelines.put(bucket, new EffectiveTimeline(members)));
+                buckets.put(departments, timelines);
+            });
+        }
+
+        private void collect(String salesDepartmentId, String operationDepartmentId,
+                             String serviceCode, String businessType, long day, List<InternalProtocol> result) {
+            Map<String, EffectiveTimeline> byBucket = buckets.get(departmentKey(salesDepartmentId, operationDepartmentId));
+            if (byBucket == null) {
+                return;
+            }
+            EffectiveTimeline timeline = byBucket.get(bucketKey(serviceCode, businessType));
+            if (timeline != null) {
+                result.addAll(timeline.at(day));
+            }
+        }
+    }
+
+    /**
+     * 按生效/失效日期切分的日期段：第 i 段覆盖 [starts[i], starts[i+1])，段内生效协议已按佣金率排好
+     */
+    private static final class EffectiveTimeline {
+        private final long[] starts;
+        private final List<List<InternalProtocol>> effective;
+
+        private EffectiveTimeline(List<InternalProtocol> members) {
+            TreeSet<Long> boundaries = new TreeSet<>();
+            for (InternalProtocol protocol : members) {
+                boundaries.add(protocol.getEffectiveDate().toEpochDay());
+                if (protocol.getExpiryDate() != null) {
+                    // 失效日期当天仍有效，次日起失效
+                    boundaries.add(protocol.getExpiryDate().toEpochDay() + 1);
+                }
+            }
+            this.starts = boundaries.stream().mapToLong(Long::longValue).toArray();
+            this.effective = new ArrayList<>(starts.length);
+            for (long segmentStart : starts) {
+                List<InternalProtocol> inSegment = members.stream()
+                    .filter(protocol -> protocol.getEffectiveDate().toEpochDay() <= segmentStart)
+                    .filter(protocol -> protocol.getExpiryDate() == null
+                        || protocol.getExpiryDate().toEpochDay() >= segmentStart)
+                    .sorted(BY_COMMISSION_RATE)
+                    .collect(Collectors.toList());
+                effective.add(Collections.unmodifiableList(inSegment));
+            }
+        }
+
+        private List<InternalProtocol> at(long day) {
+            int position = Arrays.binarySearch(starts, day);
+            int segment = position >= 0 ? position : -position - 2;
+            return segment < 0 ? Collections.emptyList() : effective.get(segment);
+        }
+    }
+}
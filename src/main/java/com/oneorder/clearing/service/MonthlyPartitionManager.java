@@ -0,0 +1,343 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 月分区维护与归档
+ *
+ * 派单历史和派单通知按月 RANGE 分区（见 sql/07_assignment_history_partitioning.sql），本服务在启动时和定期执行：
+ * 1. 为当月及之后若干个月预建分区，避免新数据落入默认分区；
+ * 2. 把早于保留期的月份分区先从分区表上摘除，再导出为压缩归档文件，核对行数落盘后删除；
+ * 3. 有月份分区被归档时校准 {@link AssignmentHistoryStatistics} 的计数。
+ * 摘除时先锁父表再锁分区，与业务写入的加锁顺序一致，不会死锁；只在摘除这一步短暂持有父表的排他锁，
+ * 等锁超时则放弃，下次重试。摘除之后迟到写入该月份的记录落入默认分区，留在热数据中，不随本次归档。
+ * 摘除后导出失败的分区保持摘除状态（此时不在热表中），下次维护时继续导出。
+ * 表尚未改造为分区表（或数据库不是 PostgreSQL）时跳过，不影响业务。
+ */
+@Slf4j
+@Service
+public class MonthlyPartitionManager {
+
+    public static final String ASSIGNMENT_HISTORY = "assignment_history";
+    public static final String ASSIGNMENT_NOTIFICATION = "service_assignment_notification";
+
+    private static final List<PartitionedTable> TABLES = Arrays.asList(
+        new PartitionedTable(ASSIGNMENT_HISTORY, "assignment_time"),
+        new PartitionedTable(ASSIGNMENT_NOTIFICATION, "sent_time"));
+
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String IS_PARTITIONED =
+        "SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?";
+
+    // 摘除后尚未导出删除的月份分区
+    private static final String SELECT_DETACHED =
+        "SELECT c.relname FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+        "WHERE c.relkind = 'r' AND NOT c.relispartition AND n.nspname = current_schema() AND c.relname LIKE ?";
+
+    // 摘除分区等待父表排他锁的上限，避免排队中的锁请求长时间挡住业务读写
+    private static final String DETACH_LOCK_TIMEOUT = "5s";
+
+    private static final String SELECT_PARTITIONS =
+        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+        "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final PartitionArchiveStore archiveStore;
+    private final AssignmentHistoryStatistics historyStatistics;
+    private final int retainMonths;
+    private final int monthsAhead;
+    private final int recentMonths;
+    private final long intervalHours;
+    private final int fetchSize;
+
+    private volatile Map<String, Map<String, Object>> lastResults = new TreeMap<>();
+    private volatile LocalDateTime lastRunTime;
+    private ScheduledExecutorService maintainer;
+
+    public MonthlyPartitionManager(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   PartitionArchiveStore archiveStore,
+                                   AssignmentHistoryStatistics historyStatistics,
+                                   @Value("${clearing.archive.retain-months:12}") int retainMonths,
+                                   @Value("${clearing.archive.months-ahead:2}") int monthsAhead,
+                                   @Value("${clearing.archive.recent-months:3}") int recentMonths,
+                                   @Value("${clearing.archive.interval-hours:24}") long intervalHours,
+                                   @Value("${clearing.archive.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.archiveStore = archiveStore;
+        this.historyStatistics = historyStatistics;
+        this.retainMonths = Math.max(1, retainMonths);
+        this.monthsAhead = Math.max(0, monthsAhead);
+        this.recentMonths = Math.max(1, recentMonths);
+        this.intervalHours = intervalHours;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        maintainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "partition-maintainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainer.execute(this::maintain);
+        if (intervalHours > 0) {
+            maintainer.scheduleWithFixedDelay(this::maintain, intervalHours, intervalHours, TimeUnit.HOURS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (maintainer != null) {
+            maintainer.shutdownNow();
+        }
+    }
+
+    /**
+     * 预建分区并归档过期分区，返回每张表的处理结果
+     */
+    public synchronized Map<String, Map<String, Object>> maintain() {
+        YearMonth cutoff = getArchiveCutoff();
+        Map<String, Map<String, Object>> results = new TreeMap<>();
+        boolean historyArchived = false;
+        for (PartitionedTable table : TABLES) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            try {
+                if (!isPartitioned(table.name)) {
+                    result.put("partitioned", false);
+                    results.put(table.name, result);
+                    continue;
+                }
+                result.put("partitioned", true);
+                Map<YearMonth, String> partitions = listPartitions(table.name);
+                result.put("created", ensurePartitions(table, partitions));
+
+                // 上次摘除后未导出完成的分区一并处理
+                Map<YearMonth, String> detached = listDetached(table.name);
+                for (Map.Entry<YearMonth, String> partition : partitions.entrySet()) {
+                    if (partition.getKey().isBefore(cutoff)) {
+                        detach(table, partition.getValue());
+                        detached.put(partition.getKey(), partition.getValue());
+                    }
+                }
+                List<String> archived = new ArrayList<>();
+                for (Map.Entry<YearMonth, String> partition : detached.entrySet()) {
+                    if (partition.getKey().isBefore(cutoff)) {
+                        Map<String, Object> manifest = archivePartition(table, partition.getValue(), partition.getKey());
+                        archived.add(partition.getKey() + " (" + manifest.get("rows") + "条)");
+                    }
+                }
+                historyArchived |= ASSIGNMENT_HISTORY.equals(table.name) && !archived.isEmpty();
+                result.put("archived", archived);
+                result.put("hotPartitions", listPartitions(table.name).size());
+            } catch (Exception e) {
+                log.error("维护分区失败: {}", table.name, e);
+                result.put("error", e.getMessage());
+            }
+            results.put(table.name, result);
+        }
+        if (historyArchived) {
+            // 归档的记录已不在库中，按库中现有数据重建派单历史统计
+            historyStatistics.reconcile();
+        }
+        lastResults = results;
+        lastRunTime = LocalDateTime.now();
+        log.info("分区维护完成: 归档截止月份{}, 结果{}", cutoff, results);
+        return results;
+    }
+
+    /**
+     * 早于该月份的分区会被归档
+     */
+    public YearMonth getArchiveCutoff() {
+        return YearMonth.now().minusMonths(retainMonths - 1);
+    }
+
+    /**
+     * 热数据起点：保留期内的记录都在数据库中，更早的需要走归档审计查询
+     */
+    public LocalDateTime getHotSince() {
+        return getArchiveCutoff().atDay(1).atStartOfDay();
+    }
+
+    /**
+     * "最近记录"类查询的时间下界，只扫描最近几个月的分区
+     */
+    public LocalDateTime getRecentSince() {
+        return YearMonth.now().minusMonths(recentMonths - 1).atDay(1).atStartOfDay();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("archiveDir", archiveStore.getBaseDir().toString());
+        stats.put("retainMonths", retainMonths);
+        stats.put("archiveCutoff", getArchiveCutoff().toString());
+        stats.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        stats.put("lastResults", lastResults);
+        Map<String, Object> archives = new LinkedHashMap<>();
+        TABLES.forEach(table -> archives.put(table.name, archiveStore.manifests(table.name)));
+        stats.put("archives", archives);
+        return stats;
+    }
+
+    private boolean isPartitioned(String table) {
+        try {
+            Long count = jdbcTemplate.queryForObject(IS_PARTITIONED, Long.class, table);
+            return count != null && count > 0;
+        } catch (DataAccessException e) {
+            log.debug("无法查询分区元数据，按未分区处理: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private Map<YearMonth, String> listPartitions(String table) {
+        Pattern monthly = Pattern.compile("^" + table + "_p(\\d{6})$");
+        Map<YearMonth, String> partitions = new TreeMap<>();
+        jdbcTemplate.query(SELECT_PARTITIONS, rs -> {
+            String name = rs.getString(1);
+            Matcher matcher = monthly.matcher(name);
+            if (matcher.matches()) {
+                partitions.put(YearMonth.parse(matcher.group(1), MONTH_SUFFIX), name);
+            }
+        }, table);
+        return partitions;
+    }
+
+    private Map<YearMonth, String> listDetached(String table) {
+        Pattern monthly = Pattern.compile("^" + table + "_p(\\d{6})$");
+        Map<YearMonth, String> detached = new TreeMap<>();
+        jdbcTemplate.query(SELECT_DETACHED, rs -> {
+            Matcher matcher = monthly.matcher(rs.getString(1));
+            if (matcher.matches()) {
+                detached.put(YearMonth.parse(matcher.group(1), MONTH_SUFFIX), rs.getString(1));
+            }
+        }, table.replace("_", "\\_") + "\\_p%");
+        return detached;
+    }
+
+    private List<String> ensurePartitions(PartitionedTable table, Map<YearMonth, String> existing) {
+        List<String> created = new ArrayList<>();
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            if (existing.containsKey(month)) {
+                continue;
+            }
+            String partition = table.name + "_p" + month.format(MONTH_SUFFIX);
+            try {
+                jdbcTemplate.execute(String.format(
+                    "CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES FROM ('%s') TO ('%s')",
+                    partition, table.name, month.atDay(1), month.plusMonths(1).atDay(1)));
+                created.add(partition);
+            } catch (DataAccessException e) {
+                // 默认分区里已有该月份的数据时无法建分区，需人工迁出后重建
+                log.warn("创建分区失败: {}, {}", partition, e.getMessage());
+            }
+        }
+        if (!created.isEmpty()) {
+            log.info("已预建分区: {}", created);
+        }
+        return created;
+    }
+
+    /**
+     * 从分区表上摘除分区：先取父表的排他锁再摘除，与写入方先父表后分区的加锁顺序一致
+     */
+    private void detach(PartitionedTable table, String partition) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '" + DETACH_LOCK_TIMEOUT + "'");
+            jdbcTemplate.execute("LOCK TABLE " + table.name + " IN ACCESS EXCLUSIVE MODE");
+            jdbcTemplate.execute("ALTER TABLE " + table.name + " DETACH PARTITION " + partition);
+        });
+    }
+
+    /**
+     * 在一个事务内导出已摘除的分区、核对行数、落盘后删除；任一步失败整体回滚，分区保持摘除状态，下次重试
+     */
+    private Map<String, Object> archivePartition(PartitionedTable table, String partition, YearMonth month) {
+        long startNanos = System.nanoTime();
+        Map<String, Object> manifest = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + partition + " IN SHARE MODE");
+            Long expected = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partition, Long.class);
+            try (PartitionArchiveStore.ArchiveWriter writer = archiveStore.open(table.name, month)) {
+                jdbcTemplate.query(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                        "SELECT * FROM " + partition + " ORDER BY " + table.timeColumn,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    statement.setFetchSize(fetchSize);
+                    return statement;
+                }, rs -> {
+                    try {
+                        writer.write(toRow(rs));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                Map<String, Object> written = writer.commit(expected != null ? expected : 0);
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                return written;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        log.info("已归档分区: {}, {}条, 耗时{}ms", partition, manifest != null ? manifest.get("rows") : 0,
+            (System.nanoTime() - startNanos) / 1_000_000);
+        return manifest;
+    }
+
+    private static Map<String, Object> toRow(ResultSet rs) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            Object value = rs.getObject(i);
+            if (value instanceof Timestamp) {
+                value = ((Timestamp) value).toLocalDateTime().toString();
+            }
+            row.put(meta.getColumnLabel(i), value);
+        }
+        return row;
+    }
+
+    private static final class PartitionedTable {
+        private final String name;
+        private final String timeColumn;
+
+        private PartitionedTable(String name, String timeColumn) {
+            this.name = name;
+            this.timeColumn = timeColumn;
+        }
+    }
+}
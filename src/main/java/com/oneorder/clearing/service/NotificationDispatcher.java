@@ -0,0 +1,331 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.ServiceAssignmentNotification;
+import com.oneorder.clearing.entity.Staff;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步通知分发器
+ *
+ * 每个渠道（邮件/站内信/短信）一条有界队列和独立的工作线程池，调用方只做入队，不等待发送。
+ * 工作线程在时间窗口内攒批后整批交给渠道发送器；失败的投递按指数退避重新入队，
+ * 超过最大次数后记为失败。队列满时直接拒绝并计数，不阻塞派单请求。
+ */
+@Slf4j
+@Service
+public class NotificationDispatcher {
+
+    /**
+     * 通知渠道
+     */
+    public enum Channel {
+        EMAIL("邮件"),
+        INTERNAL_MESSAGE("站内信"),
+        SMS("短信");
+
+        private final String description;
+
+        Channel(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    /**
+     * 渠道批量发送器，返回发送失败的投递（整批失败可直接抛出异常）
+     */
+    @FunctionalInterface
+    public interface BatchSender {
+        List<Delivery> send(List<Delivery> batch) throws Exception;
+    }
+
+    /**
+     * 单次投递
+     */
+    @Getter
+    public static class Delivery {
+        private final Channel channel;
+        private final Staff recipient;
+        private final ServiceAssignmentNotification notification;
+        private final long enqueuedNanos = System.nanoTime();
+        private int attempts;
+
+        public Delivery(Channel channel, Staff recipient, ServiceAssignmentNotification notification) {
+            this.channel = channel;
+            this.recipient = recipient;
+            this.notification = notification;
+        }
+    }
+
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final long batchWindowMillis;
+    private final int maxAttempts;
+    private final long retryBaseDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final Map<Channel, Integer> workerCounts = new EnumMap<>(Channel.class);
+
+    private final Map<Channel, ChannelWorkers> channels = new EnumMap<>(Channel.class);
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+        namedThreadFactory("notify-retry"));
+    private volatile boolean running = true;
+
+    public NotificationDispatcher(@Value("${clearing.notification.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${clearing.notification.max-batch-size:100}") int maxBatchSize,
+                                  @Value("${clearing.notification.batch-window-ms:50}") long batchWindowMillis,
+                                  @Value("${clearing.notification.max-attempts:4}") int maxAttempts,
+                                  @Value("${clearing.notification.retry-base-delay-ms:500}") long retryBaseDelayMillis,
+                                  @Value("${clearing.notification.retry-max-delay-ms:30000}") long retryMaxDelayMillis,
+                                  @Value("${clearing.notification.workers.email:2}") int emailWorkers,
+                                  @Value("${clearing.notification.workers.internal-message:2}") int internalMessageWorkers,
+                                  @Value("${clearing.notification.workers.sms:1}") int smsWorkers) {
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBaseDelayMillis = retryBaseDelayMillis;
+        this.retryMaxDelayMillis = retryMaxDelayMillis;
+        workerCounts.put(Channel.EMAIL, emailWorkers);
+        workerCounts.put(Channel.INTERNAL_MESSAGE, internalMessageWorkers);
+        workerCounts.put(Channel.SMS, smsWorkers);
+    }
+
+    /**
+     * 注册渠道发送器并启动该渠道的工作线程
+     */
+    public synchronized void registerChannel(Channel channel, BatchSender sender) {
+        if (channels.containsKey(channel)) {
+            throw new IllegalStateException("通知渠道已注册: " + channel);
+        }
+        ChannelWorkers workers = new ChannelWorkers(channel, sender, workerCounts.getOrDefault(channel, 1));
+        channels.put(channel, workers);
+        workers.start();
+        log.info("通知渠道已启动: {}, 工作线程{}个, 队列容量{}", channel, workers.workerCount, queueCapacity);
+    }
+
+    /**
+     * 投递入队，队列已满或渠道未注册时返回false
+     */
+    public boolean dispatch(Channel channel, Staff recipient, ServiceAssignmentNotification notification) {
+        ChannelWorkers workers = channels.get(channel);
+        if (workers == null || !running) {
+            log.warn("通知渠道不可用，丢弃投递: {}, 接收人: {}", channel, recipient.getStaffId());
+            return false;
+        }
+        return workers.offer(new Delivery(channel, recipient, notification));
+    }
+
+    /**
+     * 分发统计：各渠道队列深度、入队/成功/重试/失败/拒绝数、批次数与平均投递延迟
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        channels.forEach((channel, workers) -> metrics.put(channel.name(), workers.snapshot()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        retryScheduler.shutdownNow();
+        channels.values().forEach(ChannelWorkers::shutdown);
+    }
+
+    private long retryDelayMillis(int attempts) {
+        long delay = retryBaseDelayMillis << Math.min(attempts - 1, 20);
+        delay = Math.min(delay, retryMaxDelayMillis);
+        // 加入抖动，避免同批失败的投递同时重试
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 单个渠道的队列、工作线程与统计
+     */
+    private final class ChannelWorkers {
+        private final Channel channel;
+        private final BatchSender sender;
+        private final int workerCount;
+        private final BlockingQueue<Delivery> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final ExecutorService executor;
+
+        private final LongAdder enqueued = new LongAdder();
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder latencyNanos = new LongAdder();
+        private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        private ChannelWorkers(Channel channel, BatchSender sender, int workerCount) {
+            this.channel = channel;
+            this.sender = sender;
+            this.workerCount = Math.max(1, workerCount);
+            this.executor = Executors.newFixedThreadPool(this.workerCount,
+                namedThreadFactory("notify-" + channel.name().toLowerCase()));
+        }
+
+        private void start() {
+            for (int i = 0; i < workerCount; i++) {
+                executor.execute(this::runLoop);
+            }
+        }
+
+        private boolean offer(Delivery delivery) {
+            if (queue.offer(delivery)) {
+                enqueued.increment();
+                return true;
+            }
+            rejected.increment();
+            log.warn("通知队列已满，拒绝投递: {}, 接收人: {}", channel, delivery.getRecipient().getStaffId());
+            return false;
+        }
+
+        private void runLoop() {
+            List<Delivery> batch = new ArrayList<>(maxBatchSize);
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    Delivery first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    collectBatch(batch);
+                    deliver(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    log.error("通知工作线程异常: {}", channel, e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        /**
+         * 在批次窗口内继续收集，直到达到批次上限或窗口结束
+         */
+        private void collectBatch(List<Delivery> batch) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+            while (batch.size() < maxBatchSize) {
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                long remaining = deadline - System.nanoTime();
+                if (batch.size() >= maxBatchSize || remaining <= 0) {
+                    return;
+                }
+                Delivery next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        }
+
+        private void deliver(List<Delivery> batch) {
+            batches.increment();
+            List<Delivery> failures;
+            try {
+                failures = sender.send(Collections.unmodifiableList(batch));
+            } catch (Exception e) {
+                log.warn("{}渠道批量发送失败，{}条待重试: {}", channel.getDescription(), batch.size(), e.getMessage());
+                failures = batch;
+            }
+
+            long now = System.nanoTime();
+            Set<Delivery> failureSet = failures == null || failures.isEmpty()
+                ? Collections.emptySet() : new HashSet<>(failures);
+            for (Delivery delivery : batch) {
+                if (failureSet.contains(delivery)) {
+                    scheduleRetry(delivery);
+                } else {
+                    long latency = now - delivery.getEnqueuedNanos();
+                    delivered.increment();
+                    latencyNanos.add(latency);
+                    maxLatencyNanos.accumulateAndGet(latency, Math::max);
+                }
+            }
+        }
+
+        private void scheduleRetry(Delivery delivery) {
+            delivery.attempts++;
+            if (delivery.attempts >= maxAttempts || !running) {
+                failed.increment();
+                log.error("{}通知最终发送失败 - 通知ID: {}, 接收人: {}, 已尝试{}次", channel.getDescription(),
+                    delivery.getNotification().getNotificationId(), delivery.getRecipient().getStaffId(), delivery.attempts);
+                return;
+            }
+            retried.increment();
+            retryScheduler.schedule(() -> {
+                if (!queue.offer(delivery)) {
+                    failed.increment();
+                    log.error("{}通知重试入队失败，队列已满 - 接收人: {}", channel.getDescription(),
+                        delivery.getRecipient().getStaffId());
+                }
+            }, retryDelayMillis(delivery.attempts), TimeUnit.MILLISECONDS);
+        }
+
+        private Map<String, Object> snapshot() {
+            long deliveredCount = delivered.sum();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("workers", workerCount);
+            snapshot.put("queueDepth", queue.size());
+            snapshot.put("queueCapacity", queueCapacity);
+            snapshot.put("enqueued", enqueued.sum());
+            snapshot.put("delivered", deliveredCount);
+            snapshot.put("retried", retried.sum());
+            snapshot.put("failed", failed.sum());
+            snapshot.put("rejected", rejected.sum());
+            snapshot.put("batches", batches.sum());
+            snapshot.put("avgLatencyMillis", deliveredCount == 0 ? 0 : latencyNanos.sum() / deliveredCount / 1_000_000.0);
+            snapshot.put("maxLatencyMillis", maxLatencyNanos.get() / 1_000_000.0);
+            return snapshot;
+        }
+
+        private void shutdown() {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("{}渠道工作线程未能按时退出，剩余{}条未发送", channel.getDescription(), queue.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
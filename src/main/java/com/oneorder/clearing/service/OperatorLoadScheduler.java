@@ -0,0 +1,408 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.OrderService;
+import com.oneorder.clearing.entity.Staff;
+import com.oneorder.clearing.repository.StaffRepository;
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 操作员负载调度
+ *
+ * 为每个操作员维护未完成任务数、可承接的服务项目和在线状态，
+ * 每个服务项目一棵按（在线优先, 未完成任务数, 员工ID）排序的跳表，取负载最低的合格操作员为 O(log n)。
+ * 可承接的服务项目取自操作员历史承接过的服务；没有任何人承接过的服务项目对全部操作员开放。
+ * 派单和状态变更在事务提交后增量调整，在线状态随 WebSocket 会话建立和关闭更新，
+ * 定期从订单服务表全量重建以纠正偏差。
+ */
+@Slf4j
+@Service
+public class OperatorLoadScheduler {
+
+    /**
+     * 占用操作员的服务状态：已派单到完成之前都计入负载
+     */
+    public static final Set<OrderService.ServiceStatus> OPEN_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+        OrderService.ServiceStatus.ASSIGNED,
+        OrderService.ServiceStatus.PROTOCOL_CONFIRMED,
+        OrderService.ServiceStatus.IN_PROGRESS,
+        OrderService.ServiceStatus.BLOCKED));
+
+    private static final String SELECT_OPEN_TASKS =
+        "SELECT operation_staff_id, COUNT(*) AS open_tasks FROM order_service " +
+        "WHERE operation_staff_id IS NOT NULL AND status IN ('ASSIGNED', 'PROTOCOL_CONFIRMED', 'IN_PROGRESS', 'BLOCKED') " +
+        "GROUP BY operation_staff_id";
+
+    private static final String SELECT_SKILLS =
+        "SELECT DISTINCT operation_staff_id, service_code FROM order_service " +
+        "WHERE operation_staff_id IS NOT NULL AND service_code IS NOT NULL";
+
+    private static final Comparator<Slot> BY_LOAD = Comparator
+        .comparing((Slot slot) -> !slot.online)
+        .thenComparingInt(slot -> slot.openTasks)
+        .thenComparing(slot -> slot.staffId);
+
+    // 离线段的下界：排在所有在线操作员之后、所有离线操作员之前
+    private static final Slot OFFLINE_FIRST = new Slot("", false, Integer.MIN_VALUE);
+
+    private final StaffRepository staffRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxOpenTasks;
+    private final long rebuildMinutes;
+
+    // 在线状态独立于快照保存，重建时沿用
+    private final Set<String> onlineStaff = ConcurrentHashMap.newKeySet();
+
+    private volatile Snapshot snapshot = new Snapshot();
+    private ScheduledExecutorService rebuilder;
+
+    public OperatorLoadScheduler(StaffRepository staffRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 @Value("${clearing.dispatch.max-open-tasks:15}") int maxOpenTasks,
+                                 @Value("${clearing.dispatch.rebuild-minutes:10}") long rebuildMinutes) {
+        this.staffRepository = staffRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxOpenTasks = maxOpenTasks;
+        this.rebuildMinutes = rebuildMinutes;
+    }
+
+    @PostConstruct
+    public void start() {
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "operator-load-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.execute(this::rebuild);
+        if (rebuildMinutes > 0) {
+            rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * 从员工表和订单服务表全量重建，完成后整体替换；重建期间提交的增量可能丢失，下次重建时纠正
+     */
+    public synchronized void rebuild() {
+        long startNanos = System.nanoTime();
+        try {
+            Map<String, Integer> openTasks = new HashMap<>();
+            jdbcTemplate.query(SELECT_OPEN_TASKS,
+                rs -> { openTasks.put(rs.getString("operation_staff_id"), rs.getInt("open_tasks")); });
+            Map<String, Set<String>> skills = new HashMap<>();
+            jdbcTemplate.query(SELECT_SKILLS, rs -> {
+                skills.computeIfAbsent(rs.getString("operation_staff_id"), id -> new HashSet<>())
+                    .add(rs.getString("service_code"));
+            });
+
+            Snapshot rebuilt = new Snapshot();
+            for (Staff staff : staffRepository.findAllOperationStaff()) {
+                OperatorState state = new OperatorState(staff.getStaffId(), staff.getStaffName(), staff.getDepartmentId(),
+                    skills.getOrDefault(staff.getStaffId(), Collections.emptySet()));
+                state.slot = new Slot(staff.getStaffId(), onlineStaff.contains(staff.getStaffId()),
+                    openTasks.getOrDefault(staff.getStaffId(), 0));
+                rebuilt.add(state);
+            }
+            snapshot = rebuilt;
+            log.info("操作员负载索引已重建: 操作员{}人, 服务项目{}个, 在线{}人, 耗时{}ms", rebuilt.operators.size(),
+                rebuilt.byService.size(), onlineStaff.size(), (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (Exception e) {
+            log.error("重建操作员负载索引失败，继续使用当前索引", e);
+        }
+    }
+
+    /**
+     * 负载最低的合格操作员，不占用名额
+     */
+    public List<OperatorLoad> suggest(String serviceCode, int limit) {
+        Snapshot current = snapshot;
+        List<OperatorLoad> result = new ArrayList<>();
+        for (Slot slot : current.candidates(serviceCode)) {
+            if (result.size() >= limit) {
+                break;
+            }
+            OperatorState state = current.operators.get(slot.staffId);
+            if (state != null && state.slot == slot) {
+                result.add(state.toLoad(maxOpenTasks));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 选出负载最低、未满额且满足条件的合格操作员并立即占用一个名额，调用方用完后须 {@link #release} 归还。
+     * 在线操作员优先，没有可用的在线操作员时退回离线操作员。
+     */
+    public Optional<OperatorLoad> reserveLeastLoaded(String serviceCode, Predicate<OperatorLoad> eligible) {
+        Snapshot current = snapshot;
+        NavigableSet<Slot> candidates = current.candidates(serviceCode);
+        Optional<OperatorLoad> reserved = reserveFirst(current, candidates.headSet(OFFLINE_FIRST, false), eligible);
+        return reserved.isPresent() ? reserved : reserveFirst(current, candidates.tailSet(OFFLINE_FIRST, true), eligible);
+    }
+
+    /**
+     * 归还 {@link #reserveLeastLoaded} 占用的名额
+     */
+    public void release(String staffId) {
+        adjust(snapshot, staffId, -1);
+    }
+
+    /**
+     * 服务状态或承接人变化，事务提交后调整负载；新承接的服务项目计入操作员的可承接范围
+     */
+    public void onTaskChanged(String serviceCode,
+                              String fromStaffId, OrderService.ServiceStatus fromStatus,
+                              String toStaffId, OrderService.ServiceStatus toStatus) {
+        TransactionCallbacks.afterCommit(() -> {
+            Snapshot current = snapshot;
+            if (fromStaffId != null && fromStatus != null && OPEN_STATUSES.contains(fromStatus)) {
+                adjust(current, fromStaffId, -1);
+            }
+            if (toStaffId != null && toStatus != null && OPEN_STATUSES.contains(toStatus)) {
+                adjust(current, toStaffId, 1);
+                current.learn(toStaffId, serviceCode);
+            }
+        });
+    }
+
+    /**
+     * WebSocket 会话建立或关闭后更新在线状态
+     */
+    public void updatePresence(String staffId, boolean online) {
+        if (staffId == null) {
+            return;
+        }
+        boolean changed = online ? onlineStaff.add(staffId) : onlineStaff.remove(staffId);
+        if (!changed) {
+            return;
+        }
+        Snapshot current = snapshot;
+        OperatorState state = current.operators.get(staffId);
+        if (state != null) {
+            synchronized (state) {
+                current.move(state, new Slot(staffId, online, state.slot.openTasks));
+            }
+        }
+    }
+
+    public Optional<OperatorLoad> find(String staffId) {
+        OperatorState state = staffId != null ? snapshot.operators.get(staffId) : null;
+        return Optional.ofNullable(state).map(s -> s.toLoad(maxOpenTasks));
+    }
+
+    public int getMaxOpenTasks() {
+        return maxOpenTasks;
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("operators", current.operators.size());
+        stats.put("serviceCodes", current.byService.size());
+        stats.put("online", onlineStaff.size());
+        stats.put("openTasks", current.operators.values().stream().mapToInt(state -> state.slot.openTasks).sum());
+        stats.put("saturated", current.operators.values().stream()
+            .filter(state -> state.slot.openTasks >= maxOpenTasks).count());
+        stats.put("maxOpenTasks", maxOpenTasks);
+        stats.put("builtTime", current.builtTime);
+        return stats;
+    }
+
+    private Optional<OperatorLoad> reserveFirst(Snapshot current, NavigableSet<Slot> segment, Predicate<OperatorLoad> eligible) {
+        for (Slot slot : segment) {
+            // 同一在线状态内按负载升序，遇到满额的后面只会更满
+            if (slot.openTasks >= maxOpenTasks) {
+                break;
+            }
+            OperatorState state = current.operators.get(slot.staffId);
+            if (state == null || state.slot != slot || !eligible.test(state.toLoad(maxOpenTasks))) {
+                continue;
+            }
+            synchronized (state) {
+                if (state.slot == slot) {
+                    current.move(state, new Slot(slot.staffId, slot.online, slot.openTasks + 1));
+                    return Optional.of(state.toLoad(maxOpenTasks));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void adjust(Snapshot current, String staffId, int delta) {
+        OperatorState state = current.operators.get(staffId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            Slot slot = state.slot;
+            current.move(state, new Slot(staffId, slot.online, Math.max(0, slot.openTasks + delta)));
+        }
+    }
+
+    /**
+     * 对外展示的操作员负载
+     */
+    @Data
+    public static class OperatorLoad {
+        private String staffId;
+        private String staffName;
+        private String departmentId;
+        private int openTasks;
+        private int maxOpenTasks;
+        private boolean online;
+        private Set<String> serviceCodes;
+
+        /**
+         * AVAILABLE 在线且未满额 | BUSY 已满额 | OFFLINE 未连接
+         */
+        public String getStatus() {
+            if (openTasks >= maxOpenTasks) {
+                return "BUSY";
+            }
+            return online ? "AVAILABLE" : "OFFLINE";
+        }
+
+        public long getWorkloadPercentage() {
+            return maxOpenTasks > 0 ? Math.round(openTasks * 100.0 / maxOpenTasks) : 0;
+        }
+    }
+
+    /**
+     * 排序键，不可变；负载或在线状态变化时换一个新键重新插入
+     */
+    private static final class Slot {
+        private final String staffId;
+        private final boolean online;
+        private final int openTasks;
+
+        private Slot(String staffId, boolean online, int openTasks) {
+            this.staffId = staffId;
+            this.online = online;
+            this.openTasks = openTasks;
+        }
+    }
+
+    private static final class OperatorState {
+        private final String staffId;
+        private final String staffName;
+        private final String departmentId;
+        private final Set<String> serviceCodes;
+        private volatile Slot slot;
+
+        private OperatorState(String staffId, String staffName, String departmentId, Set<String> serviceCodes) {
+            this.staffId = staffId;
+            this.staffName = staffName;
+            this.departmentId = departmentId;
+            this.serviceCodes = ConcurrentHashMap.newKeySet();
+            this.serviceCodes.addAll(serviceCodes);
+        }
+
+        private OperatorLoad toLoad(int maxOpenTasks) {
+            Slot current = slot;
+            OperatorLoad load = new OperatorLoad();
+            load.setStaffId(staffId);
+            load.setStaffName(staffName);
+            load.setDepartmentId(departmentId);
+            load.setOpenTasks(current.openTasks);
+            load.setMaxOpenTasks(maxOpenTasks);
+            load.setOnline(current.online);
+            load.setServiceCodes(new TreeSet<>(serviceCodes));
+            return load;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, OperatorState> operators = new ConcurrentHashMap<>();
+        private final Map<String, NavigableSet<Slot>> byService = new ConcurrentHashMap<>();
+        private final NavigableSet<Slot> all = new ConcurrentSkipListSet<>(BY_LOAD);
+        private final LocalDateTime builtTime = LocalDateTime.now();
+
+        private void add(OperatorState state) {
+            operators.put(state.staffId, state);
+            all.add(state.slot);
+            for (String serviceCode : state.serviceCodes) {
+                byService.computeIfAbsent(serviceCode, code -> new ConcurrentSkipListSet<>(BY_LOAD)).add(state.slot);
+            }
+        }
+
+        /**
+         * 没有人承接过的服务项目，全部操作员都是候选
+         */
+        private NavigableSet<Slot> candidates(String serviceCode) {
+            NavigableSet<Slot> slots = serviceCode != null ? byService.get(serviceCode) : null;
+            return slots != null ? slots : all;
+        }
+
+        /**
+         * 换键：先插入新键再删除旧键，并发读取最多看到同一操作员两次（按 state.slot 过滤），不会漏掉
+         * 调用方须持有 state 的锁
+         */
+        private void move(OperatorState state, Slot next) {
+            Slot previous = state.slot;
+            if (previous.online == next.online && previous.openTasks == next.openTasks) {
+                // 排序键相同，集合视为同一元素，保留原键
+                return;
+            }
+            all.add(next);
+            for (String serviceCode : state.serviceCodes) {
+                NavigableSet<Slot> slots = byService.get(serviceCode);
+                if (slots != null) {
+                    slots.add(next);
+                }
+            }
+            state.slot = next;
+            all.remove(previous);
+            for (String serviceCode : state.serviceCodes) {
+                NavigableSet<Slot> slots = byService.get(serviceCode);
+                if (slots != null) {
+                    slots.remove(previous);
+                }
+            }
+        }
+
+        private void learn(String staffId, String serviceCode) {
+            OperatorState state = operators.get(staffId);
+            if (state == null || serviceCode == null) {
+                return;
+            }
+            synchronized (state) {
+                if (state.serviceCodes.add(serviceCode)) {
+                    byService.computeIfAbsent(serviceCode, code -> new ConcurrentSkipListSet<>(BY_LOAD)).add(state.slot);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,468 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.OrderService;
+import com.oneorder.clearing.repository.OrderServiceRepository;
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 操作员任务收件箱
+ *
+ * 按操作员物化“我的任务”列表，首次访问时查询一次，之后由派单、确认协议、接单等事件在事务提交后增量更新，
+ * 变化以 task_inbox 增量消息推送到操作员的 user 主题，前端不再轮询 my-tasks 接口。
+ * 每条增量带递增的版本号，客户端丢弃不晚于快照版本的增量即可与快照对齐；
+ * 版本号以毫秒时钟为下限，多节点间大致可比，节点时钟偏差内的增量可能被客户端当作过期丢弃，由下次快照纠正。
+ * 增量按任务本身构造，不论本节点是否加载了该操作员的收件箱都会推送，由背板送达会话所在节点；
+ * 同时经背板通知其他节点释放该服务新旧操作员的收件箱缓存，下次访问时从数据库重新加载。
+ * 定期为仍在线的操作员从订单服务表重建并推送快照，离线操作员的收件箱被释放。
+ */
+@Slf4j
+@Service
+public class OperatorTaskInbox {
+
+    public static final String MESSAGE_TYPE = "task_inbox";
+
+    public static final String OP_SNAPSHOT = "snapshot";
+    public static final String OP_UPSERT = "upsert";
+    public static final String OP_REMOVE = "remove";
+
+    // 节点间的收件箱失效通知，不是会话可订阅的主题
+    public static final String INVALIDATION_TOPIC = "system:task_inbox";
+
+    // 与 findMyTasks 的排序一致：待确认、已确认、执行中在前，同状态按派单时间倒序
+    private static final Comparator<OrderService> INBOX_ORDER = Comparator
+        .comparingInt(OperatorTaskInbox::statusRank)
+        .thenComparing(OrderService::getAssignedTime, Comparator.nullsLast(Comparator.reverseOrder()))
+        .thenComparing(OrderService::getServiceId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final OrderServiceRepository orderServiceRepository;
+    private final WebSocketSubscriptionIndex subscriptionIndex;
+    private final long rebuildMinutes;
+
+    private final Map<String, Inbox> inboxes = new ConcurrentHashMap<>();
+    // 已加载收件箱中每个服务的归属操作员，改派时据此从原操作员的收件箱移除
+    private final Map<Long, String> ownerByService = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong deltas = new AtomicLong();
+
+    // 推送通道由 WebSocket 控制器启动时绑定，未绑定时只维护收件箱
+    private volatile BiConsumer<String, Object> publisher;
+    // 失效通知通道，配置了背板时由 WebSocket 控制器绑定
+    private volatile Consumer<Map<String, Object>> invalidator;
+    private ScheduledExecutorService rebuilder;
+
+    public OperatorTaskInbox(OrderServiceRepository orderServiceRepository,
+                             WebSocketSubscriptionIndex subscriptionIndex,
+                             @Value("${clearing.inbox.rebuild-minutes:30}") long rebuildMinutes) {
+        this.orderServiceRepository = orderServiceRepository;
+        this.subscriptionIndex = subscriptionIndex;
+        this.rebuildMinutes = rebuildMinutes;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (rebuildMinutes <= 0) {
+            return;
+        }
+        rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "task-inbox-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebuilder.scheduleWithFixedDelay(this::rebuild, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * 绑定增量推送通道：参数为主题和消息体
+     */
+    public void bindPublisher(BiConsumer<String, Object> publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * 绑定失效通知通道：消息发给其他节点，由其调用 {@link #onRemoteChange}
+     */
+    public void bindInvalidator(Consumer<Map<String, Object>> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    /**
+     * 操作员的任务列表，按 findMyTasks 的顺序排列；status 为空时返回全部状态
+     */
+    public List<OrderService> tasks(String staffId, OrderService.ServiceStatus status) {
+        reads.incrementAndGet();
+        Inbox inbox = inboxes.computeIfAbsent(staffId, this::load);
+        synchronized (inbox) {
+            return inbox.tasks.values().stream()
+                .filter(task -> status == null || task.getStatus() == status)
+                .sorted(INBOX_ORDER)
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 完整快照消息，客户端连接或重连后据此重置本地列表
+     */
+    public Map<String, Object> snapshot(String staffId) {
+        reads.incrementAndGet();
+        Inbox inbox = inboxes.computeIfAbsent(staffId, this::load);
+        synchronized (inbox) {
+            return snapshotMessage(staffId, inbox);
+        }
+    }
+
+    /**
+     * 服务派单或状态变化，事务提交后更新所在收件箱并推送增量；未加载收件箱的操作员在首次访问时从数据库读取
+     */
+    public void onTaskChanged(OrderService service) {
+        if (service == null || service.getServiceId() == null) {
+            return;
+        }
+        OrderService copy = copyOf(service);
+        TransactionCallbacks.afterCommit(() -> apply(copy));
+    }
+
+    /**
+     * JDBC 批量写入的服务没有实体可用，事务提交后按ID重新读取
+     */
+    public void onTasksChanged(Collection<Long> serviceIds) {
+        if (serviceIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(serviceIds);
+        TransactionCallbacks.afterCommit(() -> {
+            try {
+                orderServiceRepository.findAllById(ids).forEach(service -> apply(copyOf(service)));
+            } catch (Exception e) {
+                log.error("刷新任务收件箱失败，等待下次重建: {}", ids, e);
+            }
+        });
+    }
+
+    /**
+     * 其他节点提交了服务变化：释放本节点缓存的新旧操作员收件箱，下次访问时从数据库重新加载；
+     * 原操作员的收件箱中有该服务时推送移除增量，改派前的归属只有加载过该收件箱的节点知道
+     */
+    public void onRemoteChange(Long serviceId, String owner) {
+        String previousOwner = serviceId != null ? ownerByService.get(serviceId) : null;
+        if (previousOwner != null && !previousOwner.equals(owner)) {
+            Inbox previous = evict(previousOwner);
+            boolean held = false;
+            if (previous != null) {
+                synchronized (previous) {
+                    held = previous.tasks.containsKey(serviceId);
+                }
+            }
+            if (held) {
+                publish(previousOwner, deltaMessage(OP_REMOVE, nextVersion(), serviceId, null));
+            }
+        }
+        if (owner != null) {
+            evict(owner);
+        }
+    }
+
+    /**
+     * 在线操作员从数据库重建并推送快照，没有本节点会话的操作员释放收件箱
+     */
+    public void rebuild() {
+        long startNanos = System.nanoTime();
+        int reloaded = 0;
+        int evicted = 0;
+        for (String staffId : new ArrayList<>(inboxes.keySet())) {
+            try {
+                if (!subscriptionIndex.hasSubscribers(WebSocketSubscriptionIndex.userTopic(staffId))) {
+                    if (evict(staffId) != null) {
+                        evicted++;
+                    }
+                    continue;
+                }
+                Inbox fresh = inboxes.compute(staffId, (id, previous) -> {
+                    Inbox next = load(id);
+                    if (previous != null) {
+                        synchronized (previous) {
+                            previous.tasks.keySet().stream()
+                                .filter(serviceId -> !next.tasks.containsKey(serviceId))
+                                .forEach(serviceId -> ownerByService.remove(serviceId, id));
+                        }
+                    }
+                    return next;
+                });
+                Map<String, Object> message;
+                synchronized (fresh) {
+                    message = snapshotMessage(staffId, fresh);
+                }
+                publish(staffId, message);
+                reloaded++;
+            } catch (Exception e) {
+                log.error("重建操作员 {} 的任务收件箱失败，继续使用当前数据", staffId, e);
+            }
+        }
+        log.info("任务收件箱已重建: 重新加载{}人, 释放{}人, 耗时{}ms", reloaded, evicted,
+            (System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inboxes", inboxes.size());
+        stats.put("tasks", ownerByService.size());
+        stats.put("loads", loads.get());
+        stats.put("reads", reads.get());
+        stats.put("deltas", deltas.get());
+        stats.put("version", versions.get());
+        return stats;
+    }
+
+    private void apply(OrderService task) {
+        Long serviceId = task.getServiceId();
+        String owner = task.getOperationStaffId();
+        String previousOwner = ownerByService.get(serviceId);
+
+        if (previousOwner != null && !previousOwner.equals(owner)) {
+            Inbox previous = inboxes.get(previousOwner);
+            if (previous != null) {
+                Map<String, Object> delta = null;
+                synchronized (previous) {
+                    if (previous.tasks.remove(serviceId) != null) {
+                        previous.version = nextVersion();
+                        delta = deltaMessage(OP_REMOVE, previous.version, serviceId, null);
+                    }
+                }
+                ownerByService.remove(serviceId, previousOwner);
+                if (delta != null) {
+                    publish(previousOwner, delta);
+                }
+            }
+        }
+
+        if (owner != null) {
+            // 收件箱正在加载时等待加载完成再应用，加载读到的旧状态会被这里覆盖
+            List<Map<String, Object>> upserts = new ArrayList<>(1);
+            Inbox cached = inboxes.computeIfPresent(owner, (id, inbox) -> {
+                synchronized (inbox) {
+                    OrderService current = inbox.tasks.get(serviceId);
+                    if (current != null && isOlder(task, current)) {
+                        return inbox;
+                    }
+                    inbox.tasks.put(serviceId, task);
+                    inbox.version = nextVersion();
+                    upserts.add(deltaMessage(OP_UPSERT, inbox.version, serviceId, toPayload(task)));
+                }
+                ownerByService.put(serviceId, id);
+                return inbox;
+            });
+            if (cached == null) {
+                // 本节点未加载该操作员的收件箱，会话可能连在其他节点上
+                upserts.add(deltaMessage(OP_UPSERT, nextVersion(), serviceId, toPayload(task)));
+            }
+            upserts.forEach(delta -> publish(owner, delta));
+        }
+        invalidateRemote(serviceId, owner);
+    }
+
+    private void invalidateRemote(Long serviceId, String owner) {
+        Consumer<Map<String, Object>> target = invalidator;
+        if (target == null) {
+            return;
+        }
+        Map<String, Object> message = new HashMap<>();
+        message.put("serviceId", serviceId);
+        message.put("operationStaffId", owner);
+        try {
+            target.accept(message);
+        } catch (Exception e) {
+            log.warn("发送任务收件箱失效通知失败: {}", serviceId, e);
+        }
+    }
+
+    private Inbox evict(String staffId) {
+        Inbox removed = inboxes.remove(staffId);
+        if (removed != null) {
+            synchronized (removed) {
+                removed.tasks.keySet().forEach(serviceId -> ownerByService.remove(serviceId, staffId));
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 单调递增，且不小于当前毫秒数乘以 1000，使各节点的版本号大致可比
+     */
+    private long nextVersion() {
+        long floor = System.currentTimeMillis() * 1000;
+        return versions.updateAndGet(last -> Math.max(last + 1, floor));
+    }
+
+    private Inbox load(String staffId) {
+        loads.incrementAndGet();
+        Inbox inbox = new Inbox();
+        for (OrderService service : orderServiceRepository.findMyTasks(staffId, null)) {
+            inbox.tasks.put(service.getServiceId(), copyOf(service));
+            ownerByService.put(service.getServiceId(), staffId);
+        }
+        inbox.version = nextVersion();
+        log.debug("加载操作员 {} 的任务收件箱: {}条", staffId, inbox.tasks.size());
+        return inbox;
+    }
+
+    private void publish(String staffId, Map<String, Object> message) {
+        BiConsumer<String, Object> target = publisher;
+        if (target == null) {
+            return;
+        }
+        deltas.incrementAndGet();
+        try {
+            target.accept(WebSocketSubscriptionIndex.userTopic(staffId), message);
+        } catch (Exception e) {
+            log.warn("推送任务收件箱消息失败: {}", staffId, e);
+        }
+    }
+
+    private Map<String, Object> snapshotMessage(String staffId, Inbox inbox) {
+        List<OrderService> ordered = inbox.tasks.values().stream().sorted(INBOX_ORDER).collect(Collectors.toList());
+        Map<String, Long> statusStats = ordered.stream()
+            .collect(Collectors.groupingBy(task -> task.getStatus().name(), LinkedHashMap::new, Collectors.counting()));
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", MESSAGE_TYPE);
+        message.put("op", OP_SNAPSHOT);
+        message.put("operationStaffId", staffId);
+        message.put("version", inbox.version);
+        message.put("tasks", ordered.stream().map(OperatorTaskInbox::toPayload).collect(Collectors.toList()));
+        message.put("total", ordered.size());
+        message.put("statusStats", statusStats);
+        message.put("timestamp", java.time.Instant.now().toString());
+        return message;
+    }
+
+    private static Map<String, Object> deltaMessage(String op, long version, Long serviceId, Map<String, Object> task) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("type", MESSAGE_TYPE);
+        message.put("op", op);
+        message.put("version", version);
+        message.put("serviceId", serviceId);
+        if (task != null) {
+            message.put("task", task);
+        }
+        message.put("timestamp", java.time.Instant.now().toString());
+        return message;
+    }
+
+    /**
+     * 推送用的任务内容，时间转为字符串，避免依赖 WebSocket 侧的时间序列化配置
+     */
+    private static Map<String, Object> toPayload(OrderService task) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("serviceId", task.getServiceId());
+        payload.put("orderId", task.getOrderId());
+        payload.put("serviceCode", task.getServiceCode());
+        payload.put("operationStaffId", task.getOperationStaffId());
+        payload.put("operationDepartmentId", task.getOperationDepartmentId());
+        payload.put("internalProtocolId", task.getInternalProtocolId());
+        payload.put("serviceAmount", task.getServiceAmount());
+        payload.put("currency", task.getCurrency());
+        payload.put("priority", task.getPriority() != null ? task.getPriority().name() : null);
+        payload.put("status", task.getStatus() != null ? task.getStatus().name() : null);
+        payload.put("statusDescription", task.getStatus() != null ? task.getStatus().getDescription() : null);
+        payload.put("assignedBy", task.getAssignedBy());
+        payload.put("assignedTime", format(task.getAssignedTime()));
+        payload.put("protocolConfirmedTime", format(task.getProtocolConfirmedTime()));
+        payload.put("startedTime", format(task.getStartedTime()));
+        payload.put("completedTime", format(task.getCompletedTime()));
+        payload.put("blockReason", task.getBlockReason());
+        payload.put("remarks", task.getRemarks());
+        return payload;
+    }
+
+    private static String format(LocalDateTime time) {
+        return time != null ? time.toString() : null;
+    }
+
+    /**
+     * 只复制标量字段，收件箱不持有托管实体和懒加载关联
+     */
+    private static OrderService copyOf(OrderService service) {
+        OrderService copy = new OrderService();
+        copy.setServiceId(service.getServiceId());
+        copy.setOrderId(service.getOrderId());
+        copy.setServiceConfigId(service.getServiceConfigId());
+        copy.setServiceCode(service.getServiceCode());
+        copy.setOperationStaffId(service.getOperationStaffId());
+        copy.setOperationDepartmentId(service.getOperationDepartmentId());
+        copy.setInternalProtocolId(service.getInternalProtocolId());
+        copy.setServiceAmount(service.getServiceAmount());
+        copy.setCurrency(service.getCurrency());
+        copy.setPriority(service.getPriority());
+        copy.setAssignedBy(service.getAssignedBy());
+        copy.setBlockReason(service.getBlockReason());
+        copy.setRemarks(service.getRemarks());
+        copy.setStatus(service.getStatus());
+        copy.setAssignedTime(service.getAssignedTime());
+        copy.setProtocolConfirmedTime(service.getProtocolConfirmedTime());
+        copy.setStartedTime(service.getStartedTime());
+        copy.setCompletedTime(service.getCompletedTime());
+        copy.setNotes(service.getNotes());
+        copy.setCreatedTime(service.getCreatedTime());
+        copy.setUpdatedTime(service.getUpdatedTime());
+        copy.setVersion(service.getVersion());
+        return copy;
+    }
+
+    /**
+     * 两个事务先后改同一服务而提交回调乱序时，丢弃乐观锁版本更早的那次
+     */
+    private static boolean isOlder(OrderService incoming, OrderService current) {
+        return incoming.getVersion() != null && current.getVersion() != null
+            && incoming.getVersion() < current.getVersion();
+    }
+
+    private static int statusRank(OrderService task) {
+        if (task.getStatus() == null) {
+            return 4;
+        }
+        switch (task.getStatus()) {
+            case ASSIGNED:
+                return 1;
+            case PROTOCOL_CONFIRMED:
+                return 2;
+            case IN_PROGRESS:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private static final class Inbox {
+        private final Map<Long, OrderService> tasks = new HashMap<>();
+        private long version;
+    }
+}
@@ -0,0 +1,225 @@
+package com.oneorder.clearing.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 分区归档文件存储
+ *
+ * 每个归档的月份分区落成一个 gzip 压缩的 NDJSON 文件（每行一条记录，键为列名），旁边一个清单文件记录所属月份、行数和文件大小。
+ * 目录结构：{dir}/{表名}/{表名}_pYYYYMM.ndjson.gz 与 {表名}_pYYYYMM.manifest.json。
+ * 数据先写临时文件，行数核对无误后才改名为正式文件，半截文件不会被审计查询读到。
+ * 审计查询按月份范围顺序解压扫描，比查热表慢，只用于追溯已归档的数据。
+ */
+@Slf4j
+@Service
+public class PartitionArchiveStore {
+
+    private static final DateTimeFormatter MONTH_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String DATA_SUFFIX = ".ndjson.gz";
+    private static final String MANIFEST_SUFFIX = ".manifest.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path baseDir;
+
+    public PartitionArchiveStore(@Value("${clearing.archive.dir:./data/archive}") String dir) {
+        this.baseDir = Paths.get(dir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 开始写一个月份分区的归档，写完调用 {@link ArchiveWriter#commit}，未提交直接关闭则丢弃临时文件
+     */
+    public ArchiveWriter open(String table, YearMonth month) throws IOException {
+        Path tableDir = baseDir.resolve(table);
+        Files.createDirectories(tableDir);
+        return new ArchiveWriter(table, month, tableDir);
+    }
+
+    public boolean exists(String table, YearMonth month) {
+        return Files.exists(manifestPath(table, month));
+    }
+
+    /**
+     * 某张表已归档的月份清单，按月份升序
+     */
+    public List<Map<String, Object>> manifests(String table) {
+        List<Map<String, Object>> manifests = new ArrayList<>();
+        Path tableDir = baseDir.resolve(table);
+        if (!Files.isDirectory(tableDir)) {
+            return manifests;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(tableDir, "*" + MANIFEST_SUFFIX)) {
+            for (Path file : files) {
+                manifests.add(objectMapper.readValue(file.toFile(), new TypeReference<Map<String, Object>>() {}));
+            }
+        } catch (IOException e) {
+            log.error("读取归档清单失败: {}", tableDir, e);
+        }
+        manifests.sort((a, b) -> String.valueOf(a.get("month")).compareTo(String.valueOf(b.get("month"))));
+        return manifests;
+    }
+
+    /**
+     * 审计查询：扫描月份范围内的归档文件，返回指定列等于给定值的记录
+     */
+    public List<Map<String, Object>> scan(String table, YearMonth from, YearMonth to, String column, String value) {
+        return scan(table, from, to, row -> Objects.equals(value, row.get(column) != null ? String.valueOf(row.get(column)) : null));
+    }
+
+    public List<Map<String, Object>> scan(String table, YearMonth from, YearMonth to, Predicate<Map<String, Object>> filter) {
+        List<Map<String, Object>> matched = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            Path data = dataPath(table, month);
+            if (!Files.exists(data)) {
+                continue;
+            }
+            try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(data)));
+                 MappingIterator<Map<String, Object>> rows = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {})
+                     .readValues(in)) {
+                while (rows.hasNext()) {
+                    Map<String, Object> row = rows.next();
+                    if (filter.test(row)) {
+                        matched.add(row);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("读取归档文件失败: " + data, e);
+            }
+        }
+        return matched;
+    }
+
+    public Path getBaseDir() {
+        return baseDir;
+    }
+
+    private Path dataPath(String table, YearMonth month) {
+        return baseDir.resolve(table).resolve(fileName(table, month) + DATA_SUFFIX);
+    }
+
+    private Path manifestPath(String table, YearMonth month) {
+        return baseDir.resolve(table).resolve(fileName(table, month) + MANIFEST_SUFFIX);
+    }
+
+    private static String fileName(String table, YearMonth month) {
+        return table + "_p" + month.format(MONTH_SUFFIX);
+    }
+
+    /**
+     * 单个月份分区的归档写入器
+     */
+    public final class ArchiveWriter implements Closeable {
+
+        private final String table;
+        private final YearMonth month;
+        private final Path temp;
+        private final SequenceWriter writer;
+        private long rows;
+        private boolean committed;
+
+        private ArchiveWriter(String table, YearMonth month, Path tableDir) throws IOException {
+            this.table = table;
+            this.month = month;
+            this.temp = Files.createTempFile(tableDir, fileName(table, month), ".tmp");
+            OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), 64 * 1024);
+            this.writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out);
+        }
+
+        public void write(Map<String, Object> row) throws IOException {
+            writer.write(row);
+            rows++;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * 核对行数后落盘并写清单，行数不符时抛出异常并丢弃临时文件
+         */
+        public Map<String, Object> commit(long expectedRows) throws IOException {
+            if (rows != expectedRows) {
+                throw new IllegalStateException(String.format("归档行数不符: %s %s 写入%d行, 分区内%d行",
+                    table, month, rows, expectedRows));
+            }
+            writer.close();
+            // 落盘后才会删除分区，改名前后都要刷到磁盘
+            force(temp);
+            Files.move(temp, dataPath(table, month), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Map<String, Object> manifest = new LinkedHashMap<>();
+            manifest.put("table", table);
+            manifest.put("month", month.toString());
+            manifest.put("rows", rows);
+            manifest.put("bytes", Files.size(dataPath(table, month)));
+            manifest.put("file", dataPath(table, month).getFileName().toString());
+            manifest.put("archivedTime", LocalDateTime.now().toString());
+            Path manifestTemp = Files.createTempFile(temp.getParent(), fileName(table, month), ".tmp");
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(manifestTemp.toFile(), manifest);
+            force(manifestTemp);
+            Files.move(manifestTemp, manifestPath(table, month), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(temp.getParent());
+            committed = true;
+            return manifest;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    writer.close();
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+    }
+
+    private static void force(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * 刷新目录项使改名持久化；不支持打开目录的平台上跳过
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("无法刷新归档目录: {}, {}", dir, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过账路由表
+ *
+ * 启动时把过账路由规则（passthrough_routing_rules，见 sql/11_passthrough_routing_rules.sql）加载到内存，
+ * 按（付款法人, 收款法人, 币种）分桶，桶内按优先级升序（数字越小越优先）。规则的三个匹配字段都可以填 "*" 表示任意。
+ * 匹配时依次查"精确 → 通配币种 → 通配收款方 → 通配付款方 → ……→ 全通配"共八个键，取第一个有当天生效规则的桶中优先级最高者，
+ * 每条明细只做固定次数的哈希查找。
+ * 路由表整体替换、读取无锁；定期检查规则表的版本指纹，有变化才重建，也可手动触发。
+ * 规则表不存在或加载失败时：已有路由表则继续使用，否则使用内置的默认规则。
+ * 返回的规则为只读快照，不得修改。
+ */
+@Slf4j
+@Service
+public class PassthroughRoutingTable {
+
+    public static final String WILDCARD = "*";
+
+    private static final String SELECT_RULES =
+        "SELECT * FROM passthrough_routing_rules WHERE rule_status = 'ACTIVE'";
+
+    // 规则表的版本指纹：任一行增删或更新（由触发器维护 updated_time 和 version）都会改变
+    private static final String SELECT_FINGERPRINT =
+        "SELECT COALESCE(md5(string_agg(rule_id || ':' || COALESCE(version, 0) || ':' || COALESCE(updated_time::text, ''), " +
+        "',' ORDER BY rule_id)), 'EMPTY') FROM passthrough_routing_rules";
+
+    private static final Comparator<Map<String, Object>> BY_PRIORITY = Comparator
+        .comparingInt((Map<String, Object> rule) -> (Integer) rule.get("rulePriority"))
+        .thenComparing(rule -> (String) rule.get("ruleId"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long refreshSeconds;
+
+    private volatile Snapshot snapshot;
+    private volatile String fingerprint;
+    private ScheduledExecutorService refresher;
+
+    public PassthroughRoutingTable(JdbcTemplate jdbcTemplate,
+                                   @Value("${clearing.passthrough-routing.refresh-seconds:30}") long refreshSeconds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    @PostConstruct
+    public void init() {
+        reload();
+        if (refreshSeconds > 0) {
+            refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "passthrough-routing-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::refreshIfChanged, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * 从数据库重建路由表
+     *
+     * @return 路由表统计
+     */
+    public synchronized Map<String, Object> reload() {
+        long startNanos = System.nanoTime();
+        try {
+            String current = jdbcTemplate.queryForObject(SELECT_FINGERPRINT, String.class);
+            List<Map<String, Object>> rules = jdbcTemplate.query(SELECT_RULES, (rs, rowNum) -> toRule(rs));
+            snapshot = new Snapshot(rules, "DATABASE");
+            fingerprint = current;
+            log.info("过账路由表已加载: 规则{}条, 匹配键{}个, 耗时{}ms",
+                rules.size(), snapshot.buckets.size(), (System.nanoTime() - startNanos) / 1_000_000);
+        } catch (Exception e) {
+            if (snapshot == null) {
+                snapshot = new Snapshot(defaultRules(), "DEFAULT");
+                log.warn("加载过账路由规则失败，使用内置默认规则，请确认已执行 sql/11_passthrough_routing_rules.sql: {}",
+                    e.getMessage());
+            } else {
+                log.error("加载过账路由规则失败，继续使用当前路由表", e);
+            }
+        }
+        return getStats();
+    }
+
+    /**
+     * 查找付款方→收款方、币种当天适用的路由规则，没有时返回 null
+     */
+    public Map<String, Object> findMatchingRule(String payerId, String payeeId, String currency) {
+        Snapshot current = snapshot;
+        long today = LocalDate.now().toEpochDay();
+        for (String payer : Arrays.asList(payerId, WILDCARD)) {
+            for (String payee : Arrays.asList(payeeId, WILDCARD)) {
+                for (String currencyCode : Arrays.asList(currency, WILDCARD)) {
+                    Map<String, Object> rule = current.first(key(payer, payee, currencyCode), today);
+                    if (rule != null) {
+                        return rule;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 当前生效的全部规则，按优先级升序
+     */
+    public List<Map<String, Object>> getRules() {
+        return snapshot.rules;
+    }
+
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("source", current != null ? current.source : null);
+        stats.put("rules", current != null ? current.rules.size() : 0);
+        stats.put("keys", current != null ? current.buckets.size() : 0);
+        stats.put("loadedTime", current != null ? current.loadedTime.toString() : null);
+        stats.put("refreshSeconds", refreshSeconds);
+        return stats;
+    }
+
+    private void refreshIfChanged() {
+        try {
+            String current = jdbcTemplate.queryForObject(SELECT_FINGERPRINT, String.class);
+            if (current != null && !current.equals(fingerprint)) {
+                reload();
+            }
+        } catch (Exception e) {
+            log.debug("检查过账路由规则变更失败: {}", e.getMessage());
+        }
+    }
+
+    private static String key(String payerId, String payeeId, String currency) {
+        return payerId + "|" + payeeId + "|" + currency;
+    }
+
+    private static Map<String, Object> toRule(ResultSet rs) throws SQLException {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("ruleId", rs.getString("rule_id"));
+        rule.put("ruleName", rs.getString("rule_name"));
+        rule.put("ruleDescription", rs.getString("rule_description"));
+        rule.put("payerLegalEntityId", rs.getString("payer_legal_entity_id"));
+        rule.put("payerLegalEntityName", rs.getString("payer_legal_entity_name"));
+        rule.put("payeeLegalEntityId", rs.getString("payee_legal_entity_id"));
+        rule.put("payeeLegalEntityName", rs.getString("payee_legal_entity_name"));
+        rule.put("currencyCode", rs.getString("currency_code"));
+        rule.put("routingEntity1Id", rs.getString("routing_entity_1_id"));
+        rule.put("routingEntity1Name", rs.getString("routing_entity_1_name"));
+        rule.put("routingEntity2Id", rs.getString("routing_entity_2_id"));
+        rule.put("routingEntity2Name", rs.getString("routing_entity_2_name"));
+        rule.put("retentionMode", rs.getString("retention_mode"));
+        rule.put("routing1RetentionRate", zeroIfNull(rs.getBigDecimal("routing_1_retention_rate")));
+        rule.put("routing1RetentionAmount", zeroIfNull(rs.getBigDecimal("routing_1_retention_amount")));
+        rule.put("routing2RetentionRate", zeroIfNull(rs.getBigDecimal("routing_2_retention_rate")));
+        rule.put("routing2RetentionAmount", zeroIfNull(rs.getBigDecimal("routing_2_retention_amount")));
+        rule.put("rulePriority", rs.getInt("rule_priority"));
+        rule.put("ruleStatus", rs.getString("rule_status"));
+        LocalDate effectiveDate = rs.getObject("effective_date", LocalDate.class);
+        LocalDate expiryDate = rs.getObject("expiry_date", LocalDate.class);
+        rule.put("effectiveDate", effectiveDate != null ? effectiveDate.toString() : null);
+        rule.put("expiryDate", expiryDate != null ? expiryDate.toString() : null);
+        rule.put("createdBy", rs.getString("created_by"));
+        Timestamp createdTime = rs.getTimestamp("created_time");
+        rule.put("createdTime", createdTime != null ? createdTime.toLocalDateTime() : null);
+        return rule;
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    /**
+     * 内置默认规则，与 sql/11 中的初始数据一致
+     */
+    private static List<Map<String, Object>> defaultRules() {
+        List<Map<String, Object>> rules = new ArrayList<>();
+        // A公司到B公司USD通过C公司过账，1%留存
+        rules.add(defaultRule("ROUTE_001", "A公司到B公司USD过账规则", "A公司付B公司USD时通过C公司过账，C公司留存1%",
+            "ENTITY_A", "A公司", "ENTITY_B", "B公司", "USD", "ENTITY_C", "C公司", null, null,
+            "PERCENTAGE", "0.010000", "0.00", "0.000000", 100));
+        // A公司到B公司CNY双路由过账
+        rules.add(defaultRule("ROUTE_002", "A公司到B公司CNY双路由规则", "A公司付B公司CNY时通过C公司和D公司过账",
+            "ENTITY_A", "A公司", "ENTITY_B", "B公司", "CNY", "ENTITY_C", "C公司", "ENTITY_D", "D公司",
+            "PERCENTAGE", "0.010000", "0.00", "0.005000", 200));
+        // E公司到F公司EUR固定金额规则
+        rules.add(defaultRule("ROUTE_003", "E公司到F公司EUR固定金额规则", "E公司付F公司EUR时通过G公司过账，固定留存50EUR",
+            "ENTITY_E", "E公司", "ENTITY_F", "F公司", "EUR", "ENTITY_G", "G公司", null, null,
+            "FIXED_AMOUNT", "0.000000", "50.00", "0.000000", 150));
+        return rules;
+    }
+
+    private static Map<String, Object> defaultRule(String ruleId, String ruleName, String ruleDescription,
+                                                   String payerId, String payerName, String payeeId, String payeeName,
+                                                   String currency, String routing1Id, String routing1Name,
+                                                   String routing2Id, String routing2Name, String retentionMode,
+                                                   String routing1Rate, String routing1Amount, String routing2Rate,
+                                                   int priority) {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("ruleId", ruleId);
+        rule.put("ruleName", ruleName);
+        rule.put("ruleDescription", ruleDescription);
+        rule.put("payerLegalEntityId", payerId);
+        rule.put("payerLegalEntityName", payerName);
+        rule.put("payeeLegalEntityId", payeeId);
+        rule.put("payeeLegalEntityName", payeeName);
+        rule.put("currencyCode", currency);
+        rule.put("routingEntity1Id", routing1Id);
+        rule.put("routingEntity1Name", routing1Name);
+        rule.put("routingEntity2Id", routing2Id);
+        rule.put("routingEntity2Name", routing2Name);
+        rule.put("retentionMode", retentionMode);
+        rule.put("routing1RetentionRate", new BigDecimal(routing1Rate));
+        rule.put("routing1RetentionAmount", new BigDecimal(routing1Amount));
+        rule.put("routing2RetentionRate", new BigDecimal(routing2Rate));
+        rule.put("routing2RetentionAmount", BigDecimal.ZERO);
+        rule.put("rulePriority", priority);
+        rule.put("ruleStatus", "ACTIVE");
+        rule.put("effectiveDate", "2025-01-01");
+        rule.put("createdBy", "system");
+        rule.put("createdTime", LocalDateTime.now());
+        return rule;
+    }
+
+    /**
+     * 某一时刻的路由表，构建后只读
+     */
+    private static final class Snapshot {
+        private final List<Map<String, Object>> rules;
+        private final Map<String, List<CompiledRule>> buckets = new HashMap<>();
+        private final String source;
+        private final LocalDateTime loadedTime = LocalDateTime.now();
+
+        private Snapshot(List<Map<String, Object>> loaded, String source) {
+            List<Map<String, Object>> sorted = new ArrayList<>(loaded);
+            sorted.sort(BY_PRIORITY);
+            List<Map<String, Object>> readOnly = new ArrayList<>(sorted.size());
+            for (Map<String, Object> rule : sorted) {
+                Map<String, Object> frozen = Collections.unmodifiableMap(rule);
+                readOnly.add(frozen);
+                buckets.computeIfAbsent(key((String) rule.get("payerLegalEntityId"), (String) rule.get("payeeLegalEntityId"),
+                    (String) rule.get("currencyCode")), k -> new ArrayList<>()).add(new CompiledRule(frozen));
+            }
+            this.rules = Collections.unmodifiableList(readOnly);
+            this.source = source;
+        }
+
+        /**
+         * 桶内当天生效的第一条规则（桶已按优先级排序）
+         */
+        private Map<String, Object> first(String key, long day) {
+            List<CompiledRule> bucket = buckets.get(key);
+            if (bucket == null) {
+                return null;
+            }
+            for (CompiledRule rule : bucket) {
+                if (rule.effectiveFrom <= day && day <= rule.effectiveTo) {
+                    return rule.rule;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class CompiledRule {
+        private final Map<String, Object> rule;
+        private final long effectiveFrom;
+        private final long effectiveTo;
+
+        private CompiledRule(Map<String, Object> rule) {
+            this.rule = rule;
+            Object effectiveDate = rule.get("effectiveDate");
+            Object expiryDate = rule.get("expiryDate");
+            this.effectiveFrom = effectiveDate != null ? LocalDate.parse(effectiveDate.toString()).toEpochDay() : Long.MIN_VALUE;
+            this.effectiveTo = expiryDate != null ? LocalDate.parse(expiryDate.toString()).toEpochDay() : Long.MAX_VALUE;
+        }
+    }
+}
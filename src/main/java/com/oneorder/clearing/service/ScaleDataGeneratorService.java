@@ -0,0 +1,466 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.Department;
+import com.oneorder.clearing.entity.LegalEntity;
+import com.oneorder.clearing.entity.Staff;
+import com.oneorder.clearing.exception.ClearingException;
+import com.oneorder.clearing.repository.DepartmentRepository;
+import com.oneorder.clearing.repository.LegalEntityRepository;
+import com.oneorder.clearing.repository.ServiceConfigRepository;
+import com.oneorder.clearing.repository.StaffRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 大规模压测数据生成服务
+ *
+ * 按订单维度生成订单、服务派单、费用明细、清分结果、会计分录和派单历史，
+ * 六张表的数据在同一订单内保持勾稽一致（应收合计=订单金额，应付合计=订单成本，分录借贷平衡）。
+ * 每个订单使用 seed 与订单序号派生的独立随机数，生成结果与批次大小无关，可重复生成。
+ * 写入采用 JdbcTemplate.batchUpdate 分块提交，每块一个事务；
+ * PostgreSQL 建议在连接串上开启 reWriteBatchedInserts=true。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ScaleDataGeneratorService {
+
+    private static final String GENERATOR_USER = "SCALE_GEN";
+
+    private static final String[] CURRENCIES = {"CNY", "CNY", "CNY", "USD", "USD", "EUR", "HKD"};
+    private static final String[] BUSINESS_TYPES = {"OCEAN", "OCEAN", "AIR", "TRUCK", "RAIL", "CUSTOMS"};
+    private static final String[] SALES_ENTITIES = {"ENTITY_CN_SALES", "ENTITY_HK_001", "ENTITY_SG_001"};
+    private static final String[] DELIVERY_ENTITIES = {"ENTITY_CN_OPERATION", "ENTITY_CN_NINGBO", "ENTITY_CN_SHENZHEN", "ENTITY_US_001"};
+    private static final String[] SUPPLIER_TYPES = {"SHIPPING_COMPANY", "AIRLINE", "TRUCKING_COMPANY", "CUSTOMS_BROKER", "WAREHOUSE"};
+    private static final String[] PORTS = {"CNSHA", "CNNGB", "CNSZX", "HKHKG", "SGSIN", "USLAX", "DEHAM", "NLRTM"};
+
+    /** 服务项目及其可用费用科目，与 fee_service_constraints 初始化数据保持一致 */
+    private static final String[][] SERVICE_FEES = {
+        {"MBL_PROCESSING", "FCL001"},
+        {"BOOKING", "FCL001"},
+        {"VESSEL_MANIFEST", "FCL001"},
+        {"TERMINAL_HANDLING", "THC001"},
+        {"CONTAINER_HANDLING", "THC001"},
+        {"CUSTOMS_DECLARATION", "CUSTOMS001"},
+        {"CUSTOMS_CLEARANCE", "CUSTOMS001"},
+        {"INLAND_TRANSPORT", "TRUCKING001"}
+    };
+
+    private static final String[] SERVICE_STATUSES = {"PENDING", "ASSIGNED", "PROTOCOL_CONFIRMED", "IN_PROGRESS", "COMPLETED", "COMPLETED"};
+    private static final String[] PRIORITIES = {"LOW", "NORMAL", "NORMAL", "NORMAL", "HIGH", "URGENT"};
+
+    private static final String INSERT_ORDER =
+        "INSERT INTO orders (order_id, order_no, customer_id, sales_entity_id, delivery_entity_id, payment_entity_id, " +
+        "total_amount, total_cost, currency, order_status, clearing_status, clearing_mode, order_date, business_type, " +
+        "port_of_loading, port_of_discharge, remarks, created_time, updated_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_ORDER_SERVICE =
+        "INSERT INTO order_service (order_id, service_code, operation_staff_id, operation_department_id, service_amount, " +
+        "currency, priority, assigned_by, status, assigned_time, started_time, completed_time, created_time, updated_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_EXPENSE_ENTRY =
+        "INSERT INTO expense_entries (order_id, service_code, fee_code, entry_type, counterpart_entity, counterpart_supplier_type, " +
+        "our_entity_id, our_department_id, amount, currency, is_transit_entity, approval_required, validation_status, entry_status, " +
+        "version_number, created_time, updated_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE, FALSE, 'VALID', ?, 1, ?, ?, ?, 0)";
+
+    private static final String INSERT_CLEARING_RESULT =
+        "INSERT INTO clearing_results (result_id, order_id, entity_id, amount, currency, transaction_type, account_type, " +
+        "clearing_mode, is_transit_retention, management_amount, legal_amount, created_time, updated_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, FALSE, ?, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_ACCOUNTING_ENTRY =
+        "INSERT INTO accounting_entries (entry_id, voucher_id, clearing_result_id, order_id, entity_id, account_code, account_name, " +
+        "debit_amount, credit_amount, currency, entry_type, business_type, summary, is_posted, report_type, created_time, updated_time, created_by, version) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE, ?, ?, ?, ?, 0)";
+
+    private static final String INSERT_ASSIGNMENT_HISTORY =
+        "INSERT INTO assignment_history (assignment_time, order_id, order_no, assignment_type, operator_name, service_code, " +
+        "service_name, assigned_operator_id, assigned_operator_name, status, reason, created_time, updated_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 'SUCCESS', ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StaffRepository staffRepository;
+    private final DepartmentRepository departmentRepository;
+    private final LegalEntityRepository legalEntityRepository;
+    private final ServiceConfigRepository serviceConfigRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ExpenseEntrySummaryService expenseEntrySummaryService;
+    private final AssignmentHistoryStatistics assignmentHistoryStatistics;
+    private final StaffDirectoryCache staffDirectoryCache;
+
+    /**
+     * 按参数生成压测数据
+     */
+    public GenerationReport generate(GenerationSpec spec) {
+        validateSpec(spec);
+        List<Staff> operators = loadOperators();
+        List<String[]> serviceFees = loadServiceFees();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        GenerationReport report = new GenerationReport();
+        report.setRunTag(spec.getRunTag());
+        report.setSeed(spec.getSeed());
+        long startNanos = System.nanoTime();
+
+        log.info("开始生成压测数据: runTag={}, orders={}, seed={}, batchSize={}",
+            spec.getRunTag(), spec.getOrderCount(), spec.getSeed(), spec.getBatchSize());
+
+        for (long from = 0; from < spec.getOrderCount(); from += spec.getBatchSize()) {
+            long to = Math.min(spec.getOrderCount(), from + spec.getBatchSize());
+            Chunk chunk = buildChunk(spec, operators, serviceFees, from, to);
+            transactionTemplate.executeWithoutResult(status -> writeChunk(chunk));
+            report.accumulate(chunk);
+
+            if ((to / spec.getBatchSize()) % 100 == 0 || to == spec.getOrderCount()) {
+                log.info("压测数据生成进度: {}/{} 订单, 累计 {} 行", to, spec.getOrderCount(), report.getTotalRows());
+            }
+        }
+
+        // 压测数据直接写表，绕过了派单历史计数
+        assignmentHistoryStatistics.reconcile();
+        report.setElapsedMillis((System.nanoTime() - startNanos) / 1_000_000);
+        log.info("压测数据生成完成: {}", report);
+        return report;
+    }
+
+    /**
+     * 清除指定批次标识生成的压测数据
+     */
+    public int purge(String runTag) {
+        if (runTag == null || runTag.isBlank()) {
+            throw new ClearingException("runTag不能为空");
+        }
+        String pattern = escapeLike(runTag) + "-%";
+        int deleted = 0;
+        deleted += jdbcTemplate.update("DELETE FROM accounting_entries WHERE order_id LIKE ?", pattern);
+        deleted += jdbcTemplate.update("DELETE FROM clearing_results WHERE order_id LIKE ?", pattern);
+        deleted += jdbcTemplate.update("DELETE FROM expense_entries WHERE order_id LIKE ?", pattern);
+        deleted += expenseEntrySummaryService.evictByOrderIdPattern(pattern);
+        deleted += jdbcTemplate.update("DELETE FROM assignment_history WHERE order_id LIKE ?", pattern);
+        deleted += jdbcTemplate.update("DELETE FROM order_service WHERE order_id LIKE ?", pattern);
+        deleted += jdbcTemplate.update("DELETE FROM orders WHERE order_id LIKE ?", pattern);
+        assignmentHistoryStatistics.reconcile();
+        log.info("已清除压测数据: runTag={}, 删除 {} 行", runTag, deleted);
+        return deleted;
+    }
+
+    private void validateSpec(GenerationSpec spec) {
+        if (spec.getOrderCount() <= 0) {
+            throw new ClearingException("orderCount必须大于0");
+        }
+        if (spec.getBatchSize() <= 0) {
+            throw new ClearingException("batchSize必须大于0");
+        }
+        if (spec.getMaxServicesPerOrder() <= 0 || spec.getMaxEntriesPerService() <= 0) {
+            throw new ClearingException("每单服务数和每服务费用明细数必须大于0");
+        }
+        if (spec.getRunTag() == null || spec.getRunTag().isBlank() || spec.getRunTag().length() > 16) {
+            throw new ClearingException("runTag不能为空且长度不超过16");
+        }
+    }
+
+    /**
+     * 优先使用库中的操作人员；空库时补齐压测所需的法人、操作部门和操作员，满足外键约束
+     */
+    private List<Staff> loadOperators() {
+        List<Staff> operators = staffRepository.findAllOperationStaff();
+        if (!operators.isEmpty()) {
+            return operators;
+        }
+        log.info("库中没有操作人员，初始化压测用参考数据");
+        operators = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        String entityId = "ENTITY_CN_OPERATION";
+        if (!legalEntityRepository.existsById(entityId)) {
+            LegalEntity entity = new LegalEntity();
+            entity.setEntityId(entityId);
+            entity.setEntityName("压测操作法人");
+            entity.setEntityType(LegalEntity.EntityType.DELIVERY);
+            entity.setCreatedTime(now);
+            entity.setCreatedBy(GENERATOR_USER);
+            legalEntityRepository.save(entity);
+        }
+
+        Department.DepartmentType[] departmentTypes = {
+            Department.DepartmentType.OCEAN_OP, Department.DepartmentType.AIR_OP,
+            Department.DepartmentType.TRUCK_OP, Department.DepartmentType.CUSTOMS_OP
+        };
+        for (int i = 0; i < departmentTypes.length; i++) {
+            String departmentId = "DEPT_PERF_" + (i + 1);
+            if (!departmentRepository.existsById(departmentId)) {
+                Department department = new Department();
+                department.setDepartmentId(departmentId);
+                department.setDepartmentName("压测" + departmentTypes[i].getDescription());
+                department.setDepartmentType(departmentTypes[i]);
+                department.setLegalEntityId(entityId);
+                department.setCreatedTime(now);
+                departmentRepository.save(department);
+            }
+        }
+
+        for (int i = 1; i <= 20; i++) {
+            Staff staff = new Staff();
+            staff.setStaffId(String.format("PERF_OP%03d", i));
+            staff.setStaffName("压测操作员" + i);
+            staff.setLegalEntityId(entityId);
+            staff.setDepartmentId("DEPT_PERF_" + (i % departmentTypes.length + 1));
+            staff.setRoleType(Staff.RoleType.OPERATION);
+            staff.setActive(true);
+            staff.setCreatedTime(now);
+            staff.setCreatedBy(GENERATOR_USER);
+            operators.add(staffRepository.save(staff));
+            // 此前按ID查询过的会缓存为"不存在"
+            staffDirectoryCache.invalidate(staff.getStaffId());
+        }
+        return operators;
+    }
+
+    /**
+     * order_service.service_code 外键关联 service_config.fee_code，优先取库中已启用的服务配置；
+     * 每项为 {服务代码, 费用科目}，费用科目由同一条配置得出：在 {@link #SERVICE_FEES} 中有对应关系的取对应科目，否则取配置自身的费用代码。
+     * 订单服务与其费用明细因此引用同一服务代码。
+     */
+    private List<String[]> loadServiceFees() {
+        Map<String, String> feeByService = new HashMap<>();
+        for (String[] serviceFee : SERVICE_FEES) {
+            feeByService.put(serviceFee[0], serviceFee[1]);
+        }
+        List<String[]> serviceFees = new ArrayList<>();
+        serviceConfigRepository.findByEnabledTrueOrderByFeeCodeAsc().forEach(config -> serviceFees.add(
+            new String[]{config.getFeeCode(), feeByService.getOrDefault(config.getFeeCode(), config.getFeeCode())}));
+        if (serviceFees.isEmpty()) {
+            serviceFees.addAll(Arrays.asList(SERVICE_FEES));
+        }
+        return serviceFees;
+    }
+
+    /**
+     * 转义 LIKE 通配符（默认转义符为反斜杠），runTag 中的 _、% 按字面匹配
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private Chunk buildChunk(GenerationSpec spec, List<Staff> operators, List<String[]> serviceFees, long from, long to) {
+        Chunk chunk = new Chunk();
+        LocalDateTime baseDate = spec.getStartDate() != null ? spec.getStartDate() : LocalDateTime.of(2025, 1, 1, 0, 0);
+        for (long index = from; index < to; index++) {
+            buildOrder(spec, operators, serviceFees, baseDate, index, chunk);
+        }
+        return chunk;
+    }
+
+    private void buildOrder(GenerationSpec spec, List<Staff> operators, List<String[]> serviceFees,
+                            LocalDateTime baseDate, long index, Chunk chunk) {
+        Random random = new Random(spec.getSeed() ^ (index * 0x9E3779B97F4A7C15L));
+        String orderId = String.format("%s-%010d", spec.getRunTag(), index);
+        String orderNo = String.format("%s-NO-%010d", spec.getRunTag(), index);
+        String currency = pick(random, CURRENCIES);
+        String businessType = pick(random, BUSINESS_TYPES);
+        String salesEntity = pick(random, SALES_ENTITIES);
+        String deliveryEntity = pick(random, DELIVERY_ENTITIES);
+        String clearingMode = random.nextInt(4) == 0 ? "CHAIN" : "STAR";
+        Timestamp orderDate = Timestamp.valueOf(baseDate
+            .plusDays(random.nextInt(Math.max(1, spec.getSpanDays())))
+            .plusSeconds(random.nextInt(86_400)));
+
+        // 先生成服务与费用明细，订单金额由明细汇总得出，保证勾稽一致
+        int serviceCount = 1 + random.nextInt(spec.getMaxServicesPerOrder());
+        int firstService = random.nextInt(serviceFees.size());
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal totalCost = BigDecimal.ZERO;
+
+        for (int s = 0; s < serviceCount; s++) {
+            String[] serviceFee = serviceFees.get((firstService + s) % serviceFees.size());
+            String serviceCode = serviceFee[0];
+            Staff operator = operators.get(random.nextInt(operators.size()));
+            String status = pick(random, SERVICE_STATUSES);
+            boolean assigned = !"PENDING".equals(status);
+            Timestamp assignedTime = assigned ? new Timestamp(orderDate.getTime() + random.nextInt(7_200_000)) : null;
+            Timestamp startedTime = assigned && ("IN_PROGRESS".equals(status) || "COMPLETED".equals(status))
+                ? new Timestamp(assignedTime.getTime() + random.nextInt(86_400_000)) : null;
+            Timestamp completedTime = "COMPLETED".equals(status)
+                ? new Timestamp(startedTime.getTime() + random.nextInt(172_800_000)) : null;
+
+            BigDecimal serviceAmount = BigDecimal.ZERO;
+            int entryCount = 1 + random.nextInt(spec.getMaxEntriesPerService());
+            for (int e = 0; e < entryCount; e++) {
+                BigDecimal receivable = money(random, 200, 20_000);
+                BigDecimal payable = receivable.multiply(BigDecimal.valueOf(0.55 + random.nextDouble() * 0.4))
+                    .setScale(2, RoundingMode.HALF_UP);
+                String entryStatus = completedTime != null ? "CONFIRMED" : "DRAFT";
+
+                chunk.expenseEntries.add(new Object[]{orderId, serviceCode, serviceFee[1], "RECEIVABLE",
+                    "CUSTOMER_" + (random.nextInt(spec.getCustomerCount()) + 1), null,
+                    salesEntity, nullToDefault(operator.getDepartmentId()), receivable, currency, entryStatus,
+                    orderDate, orderDate, GENERATOR_USER});
+                chunk.expenseEntries.add(new Object[]{orderId, serviceCode, serviceFee[1], "PAYABLE",
+                    "SUPPLIER_" + (random.nextInt(500) + 1), pick(random, SUPPLIER_TYPES),
+                    deliveryEntity, nullToDefault(operator.getDepartmentId()), payable, currency, entryStatus,
+                    orderDate, orderDate, GENERATOR_USER});
+
+                serviceAmount = serviceAmount.add(receivable);
+                totalCost = totalCost.add(payable);
+            }
+            totalAmount = totalAmount.add(serviceAmount);
+
+            chunk.orderServices.add(new Object[]{orderId, serviceCode,
+                assigned ? operator.getStaffId() : null, assigned ? operator.getDepartmentId() : null,
+                serviceAmount, currency, pick(random, PRIORITIES), assigned ? GENERATOR_USER : null, status,
+                assignedTime, startedTime, completedTime, orderDate, orderDate, GENERATOR_USER});
+
+            if (assigned) {
+                chunk.assignmentHistory.add(new Object[]{assignedTime, orderId, orderNo,
+                    random.nextInt(3) == 0 ? "BATCH" : "MANUAL", GENERATOR_USER, serviceCode, serviceCode,
+                    operator.getStaffId(), operator.getStaffName(), "压测数据生成", assignedTime, assignedTime});
+            }
+        }
+
+        boolean cleared = random.nextInt(10) < 7;
+        String orderStatus = cleared ? "COMPLETED" : pick(random, new String[]{"CONFIRMED", "IN_PROGRESS"});
+        chunk.orders.add(new Object[]{orderId, orderNo, "CUSTOMER_" + (random.nextInt(spec.getCustomerCount()) + 1),
+            salesEntity, deliveryEntity, salesEntity, totalAmount, totalCost, currency, orderStatus,
+            cleared ? "CLEARED" : "PENDING", clearingMode, orderDate, businessType,
+            pick(random, PORTS), pick(random, PORTS), null, orderDate, orderDate, GENERATOR_USER});
+
+        if (cleared) {
+            Timestamp clearedTime = new Timestamp(orderDate.getTime() + 3 * 86_400_000L);
+            BigDecimal profit = totalAmount.subtract(totalCost);
+            addClearingResult(chunk, orderId, 1, salesEntity, totalAmount, currency, "RECEIVABLE", "EXTERNAL_RECEIVABLE",
+                clearingMode, businessType, "1122", "应收账款", "6001", "主营业务收入", "REVENUE", clearedTime);
+            addClearingResult(chunk, orderId, 2, deliveryEntity, totalCost, currency, "PAYABLE", "EXTERNAL_PAYABLE",
+                clearingMode, businessType, "6401", "主营业务成本", "2202", "应付账款", "COST", clearedTime);
+            addClearingResult(chunk, orderId, 3, deliveryEntity, profit, currency, "PROFIT_SHARING", "INTERNAL_RECEIVABLE",
+                clearingMode, businessType, "1221", "其他应收款", "6051", "其他业务收入", "PROFIT", clearedTime);
+        }
+    }
+
+    /**
+     * 每条清分结果对应管理口径和法定口径各一组借贷平衡的分录
+     */
+    private void addClearingResult(Chunk chunk, String orderId, int seq, String entityId, BigDecimal amount, String currency,
+                                   String transactionType, String accountType, String clearingMode, String businessType,
+                                   String debitCode, String debitName, String creditCode, String creditName,
+                                   String entryType, Timestamp time) {
+        String resultId = orderId + "-CR" + seq;
+        chunk.clearingResults.add(new Object[]{resultId, orderId, entityId, amount, currency, transactionType, accountType,
+            clearingMode, amount, amount, time, time, GENERATOR_USER});
+
+        String voucherId = orderId + "-V" + seq;
+        String summary = "订单" + orderId + "清分";
+        int line = 0;
+        for (String reportType : new String[]{"MANAGEMENT", "LEGAL"}) {
+            chunk.accountingEntries.add(new Object[]{resultId + "-E" + (++line), voucherId, resultId, orderId, entityId,
+                debitCode, debitName, amount, BigDecimal.ZERO, currency, entryType, businessType, summary, reportType,
+                time, time, GENERATOR_USER});
+            chunk.accountingEntries.add(new Object[]{resultId + "-E" + (++line), voucherId, resultId, orderId, entityId,
+                creditCode, creditName, BigDecimal.ZERO, amount, currency, entryType, businessType, summary, reportType,
+                time, time, GENERATOR_USER});
+        }
+    }
+
+    private void writeChunk(Chunk chunk) {
+        jdbcTemplate.batchUpdate(INSERT_ORDER, chunk.orders);
+        jdbcTemplate.batchUpdate(INSERT_ORDER_SERVICE, chunk.orderServices);
+        jdbcTemplate.batchUpdate(INSERT_EXPENSE_ENTRY, chunk.expenseEntries);
+        if (!chunk.clearingResults.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_CLEARING_RESULT, chunk.clearingResults);
+            jdbcTemplate.batchUpdate(INSERT_ACCOUNTING_ENTRY, chunk.accountingEntries);
+        }
+        if (!chunk.assignmentHistory.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ASSIGNMENT_HISTORY, chunk.assignmentHistory);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static BigDecimal money(Random random, int min, int max) {
+        return BigDecimal.valueOf(min + random.nextInt(max - min) + random.nextInt(100) / 100.0)
+            .setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private static String nullToDefault(String departmentId) {
+        return departmentId != null ? departmentId : "DEPT_DEFAULT";
+    }
+
+    /**
+     * 单个分块内各表待写入的行
+     */
+    private static class Chunk {
+        private final List<Object[]> orders = new ArrayList<>();
+        private final List<Object[]> orderServices = new ArrayList<>();
+        private final List<Object[]> expenseEntries = new ArrayList<>();
+        private final List<Object[]> clearingResults = new ArrayList<>();
+        private final List<Object[]> accountingEntries = new ArrayList<>();
+        private final List<Object[]> assignmentHistory = new ArrayList<>();
+    }
+
+    /**
+     * 生成参数
+     */
+    @Data
+    public static class GenerationSpec {
+        private String runTag = "PERF";            // 批次标识，作为订单ID前缀，便于清除
+        private long orderCount = 10_000;          // 订单数量
+        private int maxServicesPerOrder = 4;       // 每单最多服务项数
+        private int maxEntriesPerService = 3;      // 每个服务最多费用明细组数(一收一付为一组)
+        private int customerCount = 5_000;         // 客户池大小
+        private long seed = 20250101L;             // 随机种子
+        private int batchSize = 1_000;             // 每个事务写入的订单数
+        private LocalDateTime startDate;           // 订单起始日期
+        private int spanDays = 365;                // 订单日期跨度(天)
+    }
+
+    /**
+     * 生成结果统计
+     */
+    @Data
+    public static class GenerationReport {
+        private String runTag;
+        private long seed;
+        private long orders;
+        private long orderServices;
+        private long expenseEntries;
+        private long clearingResults;
+        private long accountingEntries;
+        private long assignmentHistory;
+        private long elapsedMillis;
+
+        public long getTotalRows() {
+            return orders + orderServices + expenseEntries + clearingResults + accountingEntries + assignmentHistory;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedMillis > 0 ? getTotalRows() * 1000 / elapsedMillis : getTotalRows();
+        }
+
+        private void accumulate(Chunk chunk) {
+            orders += chunk.orders.size();
+            orderServices += chunk.orderServices.size();
+            expenseEntries += chunk.expenseEntries.size();
+            clearingResults += chunk.clearingResults.size();
+            accountingEntries += chunk.accountingEntries.size();
+            assignmentHistory += chunk.assignmentHistory.size();
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.AssignmentHistory;
+import com.oneorder.clearing.entity.InternalProtocol;
+import com.oneorder.clearing.entity.OrderService;
+import com.oneorder.clearing.entity.ServiceAssignmentNotification;
+import com.oneorder.clearing.entity.Staff;
+import com.oneorder.clearing.exception.ClearingException;
+import com.oneorder.clearing.repository.ServiceAssignmentNotificationRepository;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 批量服务派单
+ *
+ * 一次请求派出整个项目的服务：订单服务、订单、服务名称各一次 IN 查询，操作员通过通讯录缓存一次预热，
+ * 协议从内存协议索引解析；订单服务更新与派单历史在同一事务内用 JDBC 批量写入，
+ * 每个操作员只生成一条汇总通知，事务提交后统一入队发送。
+ * 未指定操作员的条目由 {@link OperatorLoadScheduler} 选出负载最低的合格操作员。
+ * 提交后派出的服务推送到各操作员的 {@link OperatorTaskInbox}，并在 {@link SlaTimerWheel} 中开始计接单时限。
+ * 单条派单的校验失败不影响其他条目，数据库写入失败则整批回滚。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ServiceAssignmentBatchService {
+
+    public static final String STATUS_SUCCESS = "SUCCESS";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private static final String SELECT_SERVICES =
+        "SELECT s.service_id, s.order_id, s.service_code, s.status, s.version, o.order_no, o.sales_department_id, " +
+        "o.business_type FROM order_service s LEFT JOIN orders o ON o.order_id = s.order_id WHERE %s";
+
+    private static final String SELECT_SERVICE_NAMES =
+        "SELECT fee_code, chinese_name FROM service_config WHERE fee_code IN (%s)";
+
+    private static final String UPDATE_ASSIGNED =
+        "UPDATE order_service SET operation_staff_id = ?, operation_department_id = ?, internal_protocol_id = ?, " +
+        "priority = COALESCE(?, priority), notes = COALESCE(?, notes), assigned_by = ?, status = 'ASSIGNED', " +
+        "assigned_time = ?, updated_time = ?, updated_by = ?, version = COALESCE(version, 0) + 1 " +
+        "WHERE service_id = ? AND status = 'PENDING' AND version IS NOT DISTINCT FROM ?";
+
+    private static final String INSERT_ASSIGNMENT_HISTORY =
+        "INSERT INTO assignment_history (assignment_time, order_id, order_no, assignment_type, operator_name, service_code, " +
+        "service_name, assigned_operator_id, assigned_operator_name, protocol_id, protocol_name, protocol_commission, " +
+        "status, reason, assignment_notes, success_count, failed_count, created_time, updated_time) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final StaffDirectoryCache staffDirectory;
+    private final InternalProtocolIndex protocolIndex;
+    private final ServiceAssignmentNotificationRepository notificationRepository;
+    private final NotificationService notificationService;
+    private final OperatorLoadScheduler loadScheduler;
+    private final OperatorTaskInbox taskInbox;
+    private final SlaTimerWheel slaTimerWheel;
+    private final AssignmentHistoryStatistics historyStatistics;
+
+    /**
+     * 批量派单
+     */
+    public BatchAssignResult assign(BatchAssignRequest request) {
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new ClearingException("派单列表不能为空");
+        }
+        long startNanos = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        String assignedBy = request.getAssignedBy() != null ? request.getAssignedBy() : "SYSTEM";
+
+        // 1. 一次性加载涉及的订单服务、操作员和服务名称
+        Set<String> orderIds = new HashSet<>();
+        Set<Long> serviceIds = new HashSet<>();
+        Set<String> operatorIds = new HashSet<>();
+        for (AssignItem item : request.getItems()) {
+            if (item.getOrderId() == null) {
+                item.setOrderId(request.getOrderId());
+            }
+            if (item.getOrderId() != null) {
+                orderIds.add(item.getOrderId());
+            } else if (item.getServiceId() != null) {
+                serviceIds.add(item.getServiceId());
+            }
+            if (item.getOperatorId() != null) {
+                operatorIds.add(item.getOperatorId());
+            }
+        }
+        ServiceLookup services = loadServices(orderIds, serviceIds);
+        staffDirectory.preload(operatorIds);
+
+        // 2. 逐条校验并解析协议（纯内存），未指定操作员的条目由负载调度选人并占用名额
+        List<ItemResult> results = new ArrayList<>(request.getItems().size());
+        Set<Long> claimedServices = new HashSet<>();
+        List<String> reservations = new ArrayList<>();
+        try {
+            for (AssignItem item : request.getItems()) {
+                results.add(resolve(item, services, claimedServices, reservations, now.toLocalDate()));
+            }
+            return persist(request, results, services, assignedBy, now, startNanos);
+        } finally {
+            // 派单成功的负载已在提交后计入，这里归还选人时的临时占用
+            reservations.forEach(loadScheduler::release);
+        }
+    }
+
+    private BatchAssignResult persist(BatchAssignRequest request, List<ItemResult> results, ServiceLookup services,
+                                      String assignedBy, LocalDateTime now, long startNanos) {
+        Map<String, String> serviceNames = loadServiceNames(results.stream()
+            .map(ItemResult::getServiceCode)
+            .collect(Collectors.toSet()));
+        results.forEach(result -> result.setServiceName(serviceNames.getOrDefault(result.getServiceCode(), result.getServiceCode())));
+
+        // 3. 同一事务内批量更新订单服务、写入派单历史和通知
+        List<ServiceAssignmentNotification> notifications = new TransactionTemplate(transactionManager).execute(status -> {
+            applyAssignments(results, services, assignedBy, now);
+            results.stream()
+                .filter(ItemResult::isSuccess)
+                .forEach(item -> loadScheduler.onTaskChanged(item.getServiceCode(), null, null,
+                    item.getOperatorId(), OrderService.ServiceStatus.ASSIGNED));
+            results.stream()
+                .filter(ItemResult::isSuccess)
+                .forEach(item -> slaTimerWheel.onAssigned(item.getServiceId(), item.getOrderId(), item.getServiceCode(),
+                    item.getOperatorId(), now));
+            taskInbox.onTasksChanged(results.stream()
+                .filter(ItemResult::isSuccess)
+                .map(ItemResult::getServiceId)
+                .collect(Collectors.toList()));
+            insertHistory(results, request, now);
+            List<ServiceAssignmentNotification> saved = notificationRepository.saveAll(
+                buildNotifications(results, assignedBy, now));
+            if (!saved.isEmpty()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        notificationService.sendBatchNotifications(saved);
+                    }
+                });
+            }
+            return saved;
+        });
+
+        BatchAssignResult result = new BatchAssignResult();
+        result.setResults(results);
+        result.setTotal(results.size());
+        result.setSuccess((int) results.stream().filter(ItemResult::isSuccess).count());
+        result.setFailed(result.getTotal() - result.getSuccess());
+        result.setNotifiedOperators(notifications != null ? notifications.size() : 0);
+        result.setElapsedMillis((System.nanoTime() - startNanos) / 1_000_000);
+        log.info("批量派单完成: 共{}条, 成功{}条, 失败{}条, 通知操作员{}人, 耗时{}ms", result.getTotal(),
+            result.getSuccess(), result.getFailed(), result.getNotifiedOperators(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * 批量写入派单历史（JDBC 批量插入）
+     *
+     * @return 写入条数
+     */
+    public int saveHistories(List<AssignmentHistory> histories) {
+        if (histories.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+            jdbcTemplate.batchUpdate(INSERT_ASSIGNMENT_HISTORY, histories, histories.size(), (ps, history) -> {
+                LocalDateTime assignmentTime = history.getAssignmentTime() != null ? history.getAssignmentTime() : now;
+                ps.setTimestamp(1, Timestamp.valueOf(assignmentTime));
+                ps.setString(2, history.getOrderId());
+                ps.setString(3, history.getOrderNo());
+                ps.setString(4, history.getAssignmentType());
+                ps.setString(5, history.getOperatorName());
+                ps.setString(6, history.getServiceCode());
+                ps.setString(7, history.getServiceName());
+                ps.setString(8, history.getAssignedOperatorId());
+                ps.setString(9, history.getAssignedOperatorName());
+                ps.setString(10, history.getProtocolId());
+                ps.setString(11, history.getProtocolName());
+                ps.setBigDecimal(12, history.getProtocolCommission());
+                ps.setString(13, history.getStatus());
+                ps.setString(14, history.getReason());
+                ps.setString(15, history.getAssignmentNotes());
+                ps.setObject(16, history.getSuccessCount());
+                ps.setObject(17, history.getFailedCount());
+                ps.setTimestamp(18, Timestamp.valueOf(now));
+                ps.setTimestamp(19, Timestamp.valueOf(now));
+            }));
+        historyStatistics.record(histories);
+        return histories.size();
+    }
+
+    private ItemResult resolve(AssignItem item, ServiceLookup services, Set<Long> claimedServices,
+                               List<String> reservations, LocalDate today) {
+        ItemResult result = new ItemResult();
+        result.setOrderId(item.getOrderId());
+        result.setServiceId(item.getServiceId());
+        result.setServiceCode(item.getServiceCode());
+        result.setOperatorId(item.getOperatorId());
+        result.setNotes(item.getNotes());
+        result.setPriority(item.getPriority());
+
+        ServiceRow service = item.getServiceId() != null
+            ? services.byId.get(item.getServiceId())
+            : services.byCode.get(item.getOrderId() + "|" + item.getServiceCode());
+        if (service == null || (item.getServiceId() != null && item.getOrderId() != null
+                && !item.getOrderId().equals(service.orderId))) {
+            return result.fail("服务不存在");
+        }
+        result.setServiceId(service.serviceId);
+        result.setOrderId(service.orderId);
+        result.setOrderNo(service.orderNo);
+        result.setServiceCode(service.serviceCode);
+        if (!service.isPending()) {
+            return result.fail("服务状态不允许派单，当前状态：" + service.status);
+        }
+        if (claimedServices.contains(service.serviceId)) {
+            return result.fail("同一服务在本批次中重复派单");
+        }
+
+        if (item.getOperatorId() == null) {
+            // 自动选人：负载最低且能匹配到内部协议的合格操作员
+            Optional<OperatorLoadScheduler.OperatorLoad> picked = loadScheduler.reserveLeastLoaded(service.serviceCode,
+                candidate -> item.getProtocolId() != null || protocolIndex.findBestMatchProtocol(service.salesDepartmentId,
+                    candidate.getDepartmentId(), service.serviceCode, service.businessType, today).isPresent());
+            if (picked.isEmpty()) {
+                return result.fail("没有可承接该服务的空闲操作员");
+            }
+            reservations.add(picked.get().getStaffId());
+            result.setOperatorId(picked.get().getStaffId());
+            result.setOperatorName(picked.get().getStaffName());
+            result.setOperationDepartmentId(picked.get().getDepartmentId());
+        } else {
+            Staff operator = staffDirectory.find(item.getOperatorId()).orElse(null);
+            if (operator == null || !Boolean.TRUE.equals(operator.getActive())) {
+                return result.fail("操作员不存在或已停用: " + item.getOperatorId());
+            }
+            result.setOperatorName(operator.getStaffName());
+            result.setOperationDepartmentId(operator.getDepartmentId());
+        }
+
+        Optional<InternalProtocol> protocol;
+        if (item.getProtocolId() != null) {
+            protocol = protocolIndex.findById(item.getProtocolId())
+                .filter(candidate -> !candidate.getEffectiveDate().isAfter(today))
+                .filter(candidate -> candidate.getExpiryDate() == null || !candidate.getExpiryDate().isBefore(today));
+            if (protocol.isEmpty()) {
+                return result.fail("内部协议不存在或不在有效期内: " + item.getProtocolId());
+            }
+        } else {
+            protocol = protocolIndex.findBestMatchProtocol(service.salesDepartmentId, result.getOperationDepartmentId(),
+                service.serviceCode, service.businessType, today);
+            if (protocol.isEmpty()) {
+                return result.fail("没有匹配的内部协议");
+            }
+        }
+        result.setProtocolId(protocol.get().getProtocolId());
+        result.setProtocolName(protocol.get().getProtocolName());
+        result.setProtocolCommission(protocol.get().getBaseCommissionRate());
+        // 只有通过校验的条目占用服务，失败条目不影响同批后续条目
+        claimedServices.add(service.serviceId);
+        result.setSuccess(true);
+        result.setStatus(STATUS_SUCCESS);
+        return result;
+    }
+
+    /**
+     * 按读取时的乐观锁版本更新并递增版本，与 JPA 更新同一服务时互相感知
+     */
+    private void applyAssignments(List<ItemResult> results, ServiceLookup services, String assignedBy, LocalDateTime now) {
+        List<ItemResult> accepted = results.stream().filter(ItemResult::isSuccess).collect(Collectors.toList());
+        if (accepted.isEmpty()) {
+            return;
+        }
+        Timestamp timestamp = Timestamp.valueOf(now);
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_ASSIGNED, accepted, accepted.size(), (ps, item) -> {
+            ps.setString(1, item.getOperatorId());
+            ps.setString(2, item.getOperationDepartmentId());
+            ps.setString(3, item.getProtocolId());
+            ps.setString(4, item.getPriority() != null ? item.getPriority().name() : null);
+            ps.setString(5, item.getNotes());
+            ps.setString(6, assignedBy);
+            ps.setTimestamp(7, timestamp);
+            ps.setTimestamp(8, timestamp);
+            ps.setString(9, assignedBy);
+            ps.setLong(10, item.getServiceId());
+            ps.setObject(11, services.byId.get(item.getServiceId()).version, Types.BIGINT);
+        });
+        // 读取后被其他请求抢先派单或修改过的服务更新行数为0，记为失败
+        int[] updated = counts.length > 0 ? counts[0] : new int[0];
+        for (int i = 0; i < accepted.size() && i < updated.length; i++) {
+            if (updated[i] == 0) {
+                accepted.get(i).fail("服务状态已变更，请刷新后重试");
+            } else if (updated[i] != Statement.SUCCESS_NO_INFO && updated[i] != 1) {
+                throw new ClearingException("订单服务更新行数异常: serviceId=" + accepted.get(i).getServiceId());
+            }
+        }
+    }
+
+    private void insertHistory(List<ItemResult> results, BatchAssignRequest request, LocalDateTime now) {
+        int success = (int) results.stream().filter(ItemResult::isSuccess).count();
+        int failed = results.size() - success;
+        List<AssignmentHistory> histories = new ArrayList<>(results.size());
+        for (ItemResult result : results) {
+            if (result.getOrderId() == null) {
+                // 派单历史要求订单号，无法定位订单的条目只在响应中返回
+                continue;
+            }
+            AssignmentHistory history = new AssignmentHistory();
+            history.setAssignmentTime(now);
+            history.setOrderId(result.getOrderId());
+            history.setOrderNo(result.getOrderNo());
+            history.setAssignmentType(request.getAssignmentType() != null ? request.getAssignmentType() : "BATCH");
+            history.setOperatorName(request.getOperatorName());
+            history.setServiceCode(result.getServiceCode());
+            history.setServiceName(result.getServiceName());
+            history.setAssignedOperatorId(result.getOperatorId());
+            history.setAssignedOperatorName(result.getOperatorName());
+            history.setProtocolId(result.getProtocolId());
+            history.setProtocolName(result.getProtocolName());
+            history.setProtocolCommission(result.getProtocolCommission());
+            history.setStatus(result.getStatus());
+            history.setReason(result.getError());
+            history.setAssignmentNotes(result.getNotes());
+            history.setSuccessCount(success);
+            history.setFailedCount(failed);
+            histories.add(history);
+        }
+        saveHistories(histories);
+    }
+
+    /**
+     * 每个操作员一条汇总通知
+     */
+    private List<ServiceAssignmentNotification> buildNotifications(List<ItemResult> results, String assignedBy, LocalDateTime now) {
+        Map<String, List<ItemResult>> byOperator = new LinkedHashMap<>();
+        results.stream()
+            .filter(ItemResult::isSuccess)
+            .forEach(result -> byOperator.computeIfAbsent(result.getOperatorId(), id -> new ArrayList<>()).add(result));
+
+        List<ServiceAssignmentNotification> notifications = new ArrayList<>(byOperator.size());
+        byOperator.forEach((operatorId, items) -> {
+            ItemResult first = items.get(0);
+            String services = items.stream()
+                .map(item -> (item.getOrderNo() != null ? item.getOrderNo() : item.getOrderId()) + " " + item.getServiceName())
+                .limit(20)
+                .collect(Collectors.joining("、"));
+            String message = items.size() == 1
+                ? String.format("您有新的服务任务：%s", services)
+                : String.format("您有%d个新的服务任务：%s%s", items.size(), services, items.size() > 20 ? " 等" : "");
+
+            ServiceAssignmentNotification notification = new ServiceAssignmentNotification();
+            notification.setOrderId(first.getOrderId());
+            notification.setServiceId(first.getServiceId());
+            notification.setFromStaffId(assignedBy);
+            notification.setToStaffId(operatorId);
+            notification.setProtocolId(first.getProtocolId());
+            notification.setMessage(message.length() > 1000 ? message.substring(0, 1000) : message);
+            notification.setStatus(ServiceAssignmentNotification.NotificationStatus.SENT);
+            notification.setSentTime(now);
+            notification.setNotificationType(ServiceAssignmentNotification.NotificationType.SERVICE_ASSIGNMENT);
+            notification.setPriority(items.stream().anyMatch(item -> item.getPriority() == OrderService.Priority.URGENT
+                    || item.getPriority() == OrderService.Priority.HIGH)
+                ? ServiceAssignmentNotification.Priority.HIGH
+                : ServiceAssignmentNotification.Priority.NORMAL);
+            notification.setCreatedTime(now);
+            notification.setUpdatedTime(now);
+            notification.setCreatedBy(assignedBy);
+            notifications.add(notification);
+        });
+        return notifications;
+    }
+
+    private ServiceLookup loadServices(Collection<String> orderIds, Collection<Long> serviceIds) {
+        ServiceLookup lookup = new ServiceLookup();
+        List<String> conditions = new ArrayList<>(2);
+        List<Object> params = new ArrayList<>(orderIds.size() + serviceIds.size());
+        if (!orderIds.isEmpty()) {
+            conditions.add("s.order_id IN (" + String.join(",", Collections.nCopies(orderIds.size(), "?")) + ")");
+            params.addAll(orderIds);
+        }
+        // 只给了服务ID的条目按服务ID加载
+        if (!serviceIds.isEmpty()) {
+            conditions.add("s.service_id IN (" + String.join(",", Collections.nCopies(serviceIds.size(), "?")) + ")");
+            params.addAll(serviceIds);
+        }
+        if (conditions.isEmpty()) {
+            return lookup;
+        }
+        jdbcTemplate.query(String.format(SELECT_SERVICES, String.join(" OR ", conditions)), rs -> {
+            ServiceRow row = new ServiceRow();
+            row.serviceId = rs.getLong("service_id");
+            row.orderId = rs.getString("order_id");
+            row.serviceCode = rs.getString("service_code");
+            row.status = rs.getString("status");
+            row.version = rs.getObject("version") != null ? rs.getLong("version") : null;
+            row.orderNo = rs.getString("order_no");
+            row.salesDepartmentId = rs.getString("sales_department_id");
+            row.businessType = rs.getString("business_type");
+            lookup.byId.put(row.serviceId, row);
+            // 按服务编码派单时优先取待派单的那一条，没有时保留任意一条以返回准确的状态提示
+            lookup.byCode.merge(row.orderId + "|" + row.serviceCode, row,
+                (existing, candidate) -> !existing.isPending() && candidate.isPending() ? candidate : existing);
+        }, params.toArray());
+        return lookup;
+    }
+
+    private Map<String, String> loadServiceNames(Set<String> serviceCodes) {
+        serviceCodes.remove(null);
+        if (serviceCodes.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> names = new HashMap<>();
+        try {
+            String placeholders = String.join(",", Collections.nCopies(serviceCodes.size(), "?"));
+            jdbcTemplate.query(String.format(SELECT_SERVICE_NAMES, placeholders),
+                rs -> { names.put(rs.getString("fee_code"), rs.getString("chinese_name")); },
+                serviceCodes.toArray());
+        } catch (Exception e) {
+            log.warn("加载服务名称失败: {}", e.getMessage());
+        }
+        return names;
+    }
+
+    private static final class ServiceLookup {
+        private final Map<Long, ServiceRow> byId = new HashMap<>();
+        private final Map<String, ServiceRow> byCode = new HashMap<>();
+    }
+
+    private static final class ServiceRow {
+        private long serviceId;
+        private String orderId;
+        private String serviceCode;
+        private String status;
+        private Long version;
+        private String orderNo;
+        private String salesDepartmentId;
+        private String businessType;
+
+        private boolean isPending() {
+            return OrderService.ServiceStatus.PENDING.name().equals(status);
+        }
+    }
+
+    /**
+     * 批量派单请求
+     */
+    @Data
+    public static class BatchAssignRequest {
+        private String orderId;             // 默认订单，条目未指定订单时使用
+        private String assignedBy;          // 派单人员ID
+        private String operatorName;        // 派单人员姓名（写入派单历史）
+        private String assignmentType;      // 派单类型，默认 BATCH
+        private List<AssignItem> items;
+    }
+
+    /**
+     * 单条派单：按服务ID定位，或按订单+服务编码定位待派单的服务
+     */
+    @Data
+    public static class AssignItem {
+        private String orderId;
+        private Long serviceId;
+        private String serviceCode;
+        private String operatorId;          // 为空时按负载自动选择操作员
+        private String protocolId;          // 为空时按部门、服务、业务类型自动匹配
+        private OrderService.Priority priority;
+        private String notes;
+    }
+
+    @Data
+    public static class ItemResult {
+        private String orderId;
+        private String orderNo;
+        private Long serviceId;
+        private String serviceCode;
+        private String serviceName;
+        private String operatorId;
+        private String operatorName;
+        private String operationDepartmentId;
+        private String protocolId;
+        private String protocolName;
+        private BigDecimal protocolCommission;
+        private OrderService.Priority priority;
+        private String notes;
+        private boolean success;
+        private String status = STATUS_FAILED;
+        private String error;
+
+        ItemResult fail(String reason) {
+            this.success = false;
+            this.status = STATUS_FAILED;
+            this.error = reason;
+            return this;
+        }
+    }
+
+    @Data
+    public static class BatchAssignResult {
+        private int total;
+        private int success;
+        private int failed;
+        private int notifiedOperators;
+        private long elapsedMillis;
+        private List<ItemResult> results;
+    }
+}
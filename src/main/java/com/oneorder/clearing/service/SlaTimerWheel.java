@@ -0,0 +1,634 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.OrderService;
+import com.oneorder.clearing.util.TransactionCallbacks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * 服务时限（SLA）计时轮
+ *
+ * 已派单的服务须在接单时限内确认协议，执行中的服务须在完成时限内完成。
+ * 全部时限保存在分层计时轮中：第0层256格，每格一个tick；其上三层各64格，每格是下一层一整圈，
+ * 共覆盖 2^26 个tick，更远的时限先放在最高层，转到时再重新计算落点。
+ * 每格是带哨兵的双向链表，按服务ID另建索引，插入和取消都是 O(1)；推进时只处理当前格和需要下沉的高层格。
+ * 启动时从订单服务表重建，服务状态变化在事务提交后增量调整，时限到期立即向操作员推送紧急通知，
+ * 不再需要轮询 findOverdueAssignedServices。重建与推进都在计时轮线程上执行。
+ * 状态变化事件只在提交事务的节点上触发，因此定期重建以补上其他节点的变化，推送前再按服务ID批量复核当前状态和承接人。
+ * 多节点部署时开启 single-notifier，只有持有会话级 advisory 锁的节点推送，各节点照常计时以便随时接替。
+ * 推送通道由 WebSocket 控制器启动时绑定，未绑定时只计时不推送。
+ */
+@Slf4j
+@Service
+public class SlaTimerWheel {
+
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVELS = 4;
+    private static final int LEVEL0_SIZE = 1 << LEVEL0_BITS;
+    private static final int LEVEL_SIZE = 1 << LEVEL_BITS;
+    private static final long MAX_SPAN = 1L << (LEVEL0_BITS + LEVEL_BITS * (LEVELS - 1));
+
+    private static final String SELECT_PENDING =
+        "SELECT service_id, order_id, service_code, operation_staff_id, status, assigned_time, started_time " +
+        "FROM order_service WHERE operation_staff_id IS NOT NULL AND status IN ('ASSIGNED', 'IN_PROGRESS')";
+
+    private static final String SELECT_CURRENT =
+        "SELECT s.service_id, s.operation_staff_id, s.status, s.assigned_time, s.started_time, o.order_no " +
+        "FROM order_service s LEFT JOIN orders o ON o.order_id = s.order_id WHERE s.service_id IN (%s)";
+
+    /** 锁键为（命名空间, 名称）两个 hash，避免与其他 advisory 锁冲突 */
+    private static final String TRY_NOTIFIER_LOCK =
+        "SELECT pg_try_advisory_lock(hashtext('sla_timer_wheel'), hashtext('notifier'))";
+
+    private static final String RELEASE_NOTIFIER_LOCK =
+        "SELECT pg_advisory_unlock(hashtext('sla_timer_wheel'), hashtext('notifier'))";
+
+    private static final int LOOKUP_CHUNK = 500;
+
+    /**
+     * 时限类型：ACCEPT 接单时限（已派单）| COMPLETE 完成时限（执行中）
+     */
+    public enum DeadlineType {
+        ACCEPT, COMPLETE
+    }
+
+    /**
+     * 超时通知通道：参数为操作员、消息和订单号
+     */
+    @FunctionalInterface
+    public interface UrgentNotifier {
+        void notify(String staffId, String message, String orderNo);
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long tickMillis;
+    private final long acceptMillis;
+    private final long completeMillis;
+    private final long rebuildMinutes;
+    private final boolean singleNotifier;
+
+    private final LongSupplier clock;
+    private final long originMillis;
+    private final Bucket[][] wheel = new Bucket[LEVELS][];
+    private final Map<Long, Timer> timers = new HashMap<>();
+    // 重建期间发生变化的服务，重建结果中以增量为准
+    private Set<Long> touchedDuringRebuild;
+    // 已推送过超时通知的服务及其时限，重建时不再重复推送
+    private final Map<Long, Long> notified = new HashMap<>();
+    private long currentTick;
+
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong fired = new AtomicLong();
+    private volatile int overdueAtRebuild;
+    private volatile LocalDateTime rebuiltTime;
+
+    private volatile UrgentNotifier notifier;
+    private ScheduledExecutorService ticker;
+    // 持有推送锁的连接，只在计时轮线程上访问
+    private Connection notifierConnection;
+
+    @Autowired
+    public SlaTimerWheel(JdbcTemplate jdbcTemplate,
+                         @Value("${clearing.sla.tick-millis:1000}") long tickMillis,
+                         @Value("${clearing.sla.accept-minutes:120}") long acceptMinutes,
+                         @Value("${clearing.sla.complete-hours:48}") long completeHours,
+                         @Value("${clearing.sla.rebuild-minutes:10}") long rebuildMinutes,
+                         @Value("${clearing.sla.single-notifier:false}") boolean singleNotifier) {
+        this(jdbcTemplate, tickMillis, acceptMinutes, completeHours, rebuildMinutes, singleNotifier, System::currentTimeMillis);
+    }
+
+    /**
+     * clock 为毫秒时钟，测试中替换为可手动推进的时钟
+     */
+    SlaTimerWheel(JdbcTemplate jdbcTemplate, long tickMillis, long acceptMinutes, long completeHours,
+                  long rebuildMinutes, boolean singleNotifier, LongSupplier clock) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.clock = clock;
+        this.originMillis = clock.getAsLong();
+        this.tickMillis = tickMillis;
+        this.acceptMillis = TimeUnit.MINUTES.toMillis(acceptMinutes);
+        this.completeMillis = TimeUnit.HOURS.toMillis(completeHours);
+        this.rebuildMinutes = rebuildMinutes;
+        this.singleNotifier = singleNotifier;
+        for (int level = 0; level < LEVELS; level++) {
+            int size = level == 0 ? LEVEL0_SIZE : LEVEL_SIZE;
+            wheel[level] = new Bucket[size];
+            for (int slot = 0; slot < size; slot++) {
+                wheel[level][slot] = new Bucket();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sla-timer-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.execute(this::load);
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        if (rebuildMinutes > 0) {
+            ticker.scheduleWithFixedDelay(this::load, rebuildMinutes, rebuildMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker == null) {
+            return;
+        }
+        ticker.shutdownNow();
+        try {
+            ticker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseNotifierLock();
+    }
+
+    /**
+     * 绑定超时通知通道
+     */
+    public void bindNotifier(UrgentNotifier notifier) {
+        this.notifier = notifier;
+    }
+
+    /**
+     * 服务状态或承接人变化，事务提交后重新安排时限：已派单按派单时间计接单时限，执行中按开始时间计完成时限，其他状态取消
+     */
+    public void onTaskChanged(OrderService service) {
+        if (service == null || service.getServiceId() == null) {
+            return;
+        }
+        Long serviceId = service.getServiceId();
+        String orderId = service.getOrderId();
+        String serviceCode = service.getServiceCode();
+        String staffId = service.getOperationStaffId();
+        OrderService.ServiceStatus status = service.getStatus();
+        LocalDateTime assignedTime = service.getAssignedTime();
+        LocalDateTime startedTime = service.getStartedTime();
+        TransactionCallbacks.afterCommit(() -> update(serviceId, orderId, serviceCode, staffId, status, assignedTime, startedTime));
+    }
+
+    /**
+     * 批量派单（JDBC 写入）的服务，事务提交后开始计接单时限
+     */
+    public void onAssigned(Long serviceId, String orderId, String serviceCode, String staffId, LocalDateTime assignedTime) {
+        TransactionCallbacks.afterCommit(() -> update(serviceId, orderId, serviceCode, staffId, OrderService.ServiceStatus.ASSIGNED,
+            assignedTime, null));
+    }
+
+    /**
+     * 从订单服务表重建全部时限，在计时轮线程上执行并等待完成
+     */
+    public void rebuild() {
+        try {
+            ticker.submit(this::load).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            log.error("重建SLA计时轮失败", e);
+        }
+    }
+
+    /**
+     * 重建时已超时的时限立即推送，已推送过的同一时限不再重复推送
+     */
+    private void load() {
+        long startNanos = System.nanoTime();
+        synchronized (this) {
+            touchedDuringRebuild = new HashSet<>();
+        }
+        try {
+            List<Timer> loaded = new ArrayList<>();
+            jdbcTemplate.query(SELECT_PENDING, rs -> {
+                OrderService.ServiceStatus status = OrderService.ServiceStatus.valueOf(rs.getString("status"));
+                Timestamp since = rs.getTimestamp(status == OrderService.ServiceStatus.ASSIGNED ? "assigned_time" : "started_time");
+                if (since != null) {
+                    DeadlineType type = status == OrderService.ServiceStatus.ASSIGNED ? DeadlineType.ACCEPT : DeadlineType.COMPLETE;
+                    loaded.add(new Timer(rs.getLong("service_id"), rs.getString("order_id"), rs.getString("service_code"),
+                        rs.getString("operation_staff_id"), type, since.getTime() + limitMillis(type)));
+                }
+            });
+
+            long nowMillis = clock.getAsLong();
+            int overdue = 0;
+            List<Timer> expired = new ArrayList<>();
+            Set<Long> overdueIds = new HashSet<>();
+            synchronized (this) {
+                for (Timer timer : new ArrayList<>(timers.values())) {
+                    if (!touchedDuringRebuild.contains(timer.serviceId)) {
+                        unlink(timer);
+                        timers.remove(timer.serviceId);
+                    }
+                }
+                for (Timer timer : loaded) {
+                    if (touchedDuringRebuild.contains(timer.serviceId)) {
+                        continue;
+                    }
+                    if (timer.deadlineMillis <= nowMillis) {
+                        overdue++;
+                        overdueIds.add(timer.serviceId);
+                        if (!Long.valueOf(timer.deadlineMillis).equals(notified.get(timer.serviceId))) {
+                            notified.put(timer.serviceId, timer.deadlineMillis);
+                            expired.add(timer);
+                        }
+                        continue;
+                    }
+                    timer.deadlineTick = toTick(timer.deadlineMillis);
+                    timers.put(timer.serviceId, timer);
+                    place(timer, currentTick + 1);
+                }
+                notified.keySet().removeIf(serviceId ->
+                    !overdueIds.contains(serviceId) && !touchedDuringRebuild.contains(serviceId));
+                touchedDuringRebuild = null;
+            }
+            overdueAtRebuild = overdue;
+            rebuiltTime = LocalDateTime.now();
+            log.info("SLA计时轮已重建: 待到期{}个, 重建时已超时{}个（新推送{}个）, 耗时{}ms", loaded.size() - overdue, overdue,
+                expired.size(), (System.nanoTime() - startNanos) / 1_000_000);
+            if (!expired.isEmpty()) {
+                fire(expired);
+            }
+        } catch (Exception e) {
+            synchronized (this) {
+                touchedDuringRebuild = null;
+            }
+            log.error("重建SLA计时轮失败，继续使用当前时限", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("pending", timers.size());
+            stats.put("pendingAccept", timers.values().stream().filter(t -> t.type == DeadlineType.ACCEPT).count());
+            stats.put("pendingComplete", timers.values().stream().filter(t -> t.type == DeadlineType.COMPLETE).count());
+            stats.put("currentTick", currentTick);
+        }
+        stats.put("scheduled", scheduled.get());
+        stats.put("cancelled", cancelled.get());
+        stats.put("fired", fired.get());
+        stats.put("overdueAtRebuild", overdueAtRebuild);
+        stats.put("tickMillis", tickMillis);
+        stats.put("acceptMinutes", TimeUnit.MILLISECONDS.toMinutes(acceptMillis));
+        stats.put("completeHours", TimeUnit.MILLISECONDS.toHours(completeMillis));
+        stats.put("rebuiltTime", rebuiltTime);
+        return stats;
+    }
+
+    private void update(Long serviceId, String orderId, String serviceCode, String staffId,
+                        OrderService.ServiceStatus status, LocalDateTime assignedTime, LocalDateTime startedTime) {
+        DeadlineType type = null;
+        LocalDateTime since = null;
+        if (status == OrderService.ServiceStatus.ASSIGNED) {
+            type = DeadlineType.ACCEPT;
+            since = assignedTime;
+        } else if (status == OrderService.ServiceStatus.IN_PROGRESS) {
+            type = DeadlineType.COMPLETE;
+            since = startedTime;
+        }
+        synchronized (this) {
+            if (touchedDuringRebuild != null) {
+                touchedDuringRebuild.add(serviceId);
+            }
+            Timer previous = timers.remove(serviceId);
+            if (previous != null) {
+                unlink(previous);
+                cancelled.incrementAndGet();
+            }
+            if (type == null || staffId == null || since == null) {
+                notified.remove(serviceId);
+                return;
+            }
+            long deadlineMillis = since.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() + limitMillis(type);
+            if (!Long.valueOf(deadlineMillis).equals(notified.get(serviceId))) {
+                notified.remove(serviceId);
+            }
+            Timer timer = new Timer(serviceId, orderId, serviceCode, staffId, type, deadlineMillis);
+            timer.deadlineTick = toTick(deadlineMillis);
+            timers.put(serviceId, timer);
+            place(timer, currentTick + 1);
+            scheduled.incrementAndGet();
+        }
+    }
+
+    /**
+     * 推进到当前时间对应的tick，逐tick下沉高层格并收集到期时限，通知在锁外发送
+     */
+    void advance() {
+        try {
+            long targetTick = (clock.getAsLong() - originMillis) / tickMillis;
+            List<Timer> expired = new ArrayList<>();
+            synchronized (this) {
+                while (currentTick < targetTick) {
+                    currentTick++;
+                    cascade();
+                    Bucket bucket = wheel[0][(int) (currentTick & (LEVEL0_SIZE - 1))];
+                    for (Timer timer = bucket.head.next; timer != bucket.head; ) {
+                        Timer next = timer.next;
+                        unlink(timer);
+                        if (timer.deadlineTick <= currentTick) {
+                            timers.remove(timer.serviceId);
+                            notified.put(timer.serviceId, timer.deadlineMillis);
+                            expired.add(timer);
+                        } else {
+                            // 超出计时轮跨度而暂放的时限，重新计算落点
+                            place(timer, currentTick + 1);
+                        }
+                        timer = next;
+                    }
+                }
+            }
+            if (!expired.isEmpty()) {
+                fire(expired);
+            }
+        } catch (Exception e) {
+            log.error("SLA计时轮推进失败", e);
+        }
+    }
+
+    /**
+     * 低层转完一圈时，把高层对应格中的时限重新放入低层；在处理当前格之前调用，当前tick到期的落入当前格
+     */
+    private void cascade() {
+        int shift = LEVEL0_BITS;
+        for (int level = 1; level < LEVELS; level++) {
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            Bucket bucket = wheel[level][(int) ((currentTick >>> shift) & (LEVEL_SIZE - 1))];
+            for (Timer timer = bucket.head.next; timer != bucket.head; ) {
+                Timer next = timer.next;
+                unlink(timer);
+                place(timer, currentTick);
+                timer = next;
+            }
+            shift += LEVEL_BITS;
+        }
+    }
+
+    /**
+     * 按距到期的tick数选层放入，不早于 earliestTick：当前格已处理过时为下一格，下一次推进即触发
+     */
+    private void place(Timer timer, long earliestTick) {
+        long tick = Math.min(Math.max(timer.deadlineTick, earliestTick), currentTick + MAX_SPAN - 1);
+        long delta = tick - currentTick;
+        Bucket bucket;
+        if (delta < LEVEL0_SIZE) {
+            bucket = wheel[0][(int) (tick & (LEVEL0_SIZE - 1))];
+        } else {
+            int level = 1;
+            int shift = LEVEL0_BITS;
+            while (level < LEVELS - 1 && delta >= 1L << (shift + LEVEL_BITS)) {
+                level++;
+                shift += LEVEL_BITS;
+            }
+            bucket = wheel[level][(int) ((tick >>> shift) & (LEVEL_SIZE - 1))];
+        }
+        timer.prev = bucket.head.prev;
+        timer.next = bucket.head;
+        bucket.head.prev.next = timer;
+        bucket.head.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+            timer.next.prev = timer.prev;
+            timer.prev = null;
+            timer.next = null;
+        }
+    }
+
+    /**
+     * 推送前复核：库中已不在对应状态的时限丢弃，承接人或起算时间已变的按库中数据重新安排；复核查询失败时按计时轮结果推送
+     */
+    private void fire(List<Timer> expired) {
+        UrgentNotifier target = notifier;
+        if (target == null) {
+            log.info("SLA时限到期 {} 个，未绑定推送通道", expired.size());
+            return;
+        }
+        if (!holdsNotifierLock()) {
+            log.debug("SLA时限到期 {} 个，由持有推送锁的节点推送", expired.size());
+            return;
+        }
+        Map<Long, Map<String, Object>> current = lookupCurrent(expired);
+        long nowMillis = clock.getAsLong();
+        int stale = 0;
+        for (Timer timer : expired) {
+            String orderNo = timer.orderId;
+            if (current != null) {
+                Map<String, Object> row = current.get(timer.serviceId);
+                if (!stillOverdue(timer, row, nowMillis)) {
+                    stale++;
+                    reschedule(timer, row);
+                    continue;
+                }
+                if (row.get("order_no") != null) {
+                    orderNo = (String) row.get("order_no");
+                }
+            }
+            String message = timer.type == DeadlineType.ACCEPT
+                ? String.format("订单 %s 的服务 %s 已超过接单时限，请尽快确认协议", orderNo, timer.serviceCode)
+                : String.format("订单 %s 的服务 %s 已超过完成时限，请尽快处理", orderNo, timer.serviceCode);
+            try {
+                target.notify(timer.staffId, message, orderNo);
+                fired.incrementAndGet();
+            } catch (Exception e) {
+                log.warn("发送SLA超时通知失败: 服务 {}", timer.serviceId, e);
+            }
+        }
+        log.info("SLA时限到期 {} 个，已推送紧急通知，复核后丢弃{}个", expired.size() - stale, stale);
+    }
+
+    private Map<Long, Map<String, Object>> lookupCurrent(List<Timer> expired) {
+        List<Long> ids = expired.stream().map(timer -> timer.serviceId).distinct().collect(Collectors.toList());
+        Map<Long, Map<String, Object>> current = new HashMap<>();
+        try {
+            for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK) {
+                List<Long> chunk = ids.subList(from, Math.min(from + LOOKUP_CHUNK, ids.size()));
+                String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                for (Map<String, Object> row : jdbcTemplate.queryForList(String.format(SELECT_CURRENT, placeholders),
+                        chunk.toArray())) {
+                    current.put(((Number) row.get("service_id")).longValue(), row);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("复核服务状态失败，按计时轮结果推送", e);
+            return null;
+        }
+        return current;
+    }
+
+    private boolean stillOverdue(Timer timer, Map<String, Object> row, long nowMillis) {
+        if (row == null || !timer.staffId.equals(row.get("operation_staff_id"))) {
+            return false;
+        }
+        OrderService.ServiceStatus expected = timer.type == DeadlineType.ACCEPT
+            ? OrderService.ServiceStatus.ASSIGNED : OrderService.ServiceStatus.IN_PROGRESS;
+        if (!expected.name().equals(row.get("status"))) {
+            return false;
+        }
+        Object since = row.get(timer.type == DeadlineType.ACCEPT ? "assigned_time" : "started_time");
+        return since instanceof Timestamp && ((Timestamp) since).getTime() + limitMillis(timer.type) <= nowMillis;
+    }
+
+    /**
+     * 按库中当前数据重新安排，服务已删除或不再计时的取消
+     */
+    private void reschedule(Timer timer, Map<String, Object> row) {
+        if (row == null) {
+            update(timer.serviceId, timer.orderId, timer.serviceCode, null, null, null, null);
+            return;
+        }
+        String status = (String) row.get("status");
+        update(timer.serviceId, timer.orderId, timer.serviceCode, (String) row.get("operation_staff_id"),
+            status != null ? OrderService.ServiceStatus.valueOf(status) : null,
+            toLocalDateTime(row.get("assigned_time")), toLocalDateTime(row.get("started_time")));
+    }
+
+    /**
+     * 未开启 single-notifier 时每个节点都推送；开启时持有锁的连接一直保留，连接失效时锁随会话释放，下次到期时重新争抢
+     */
+    private boolean holdsNotifierLock() {
+        if (!singleNotifier) {
+            return true;
+        }
+        try {
+            if (notifierConnection != null) {
+                if (notifierConnection.isValid(2)) {
+                    return true;
+                }
+                log.warn("SLA推送锁所在连接已失效，重新争抢");
+                closeQuietly(notifierConnection);
+                notifierConnection = null;
+            }
+            Connection connection = jdbcTemplate.getDataSource().getConnection();
+            boolean locked = false;
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(TRY_NOTIFIER_LOCK)) {
+                locked = rs.next() && rs.getBoolean(1);
+            } finally {
+                if (locked) {
+                    notifierConnection = connection;
+                } else {
+                    closeQuietly(connection);
+                }
+            }
+            if (locked) {
+                log.info("本节点获得SLA超时通知推送锁");
+            }
+            return locked;
+        } catch (SQLException e) {
+            log.warn("获取SLA推送锁失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 连接归还连接池前释放会话级锁，否则锁随空闲连接一直被占用
+     */
+    private void releaseNotifierLock() {
+        Connection connection = notifierConnection;
+        if (connection == null) {
+            return;
+        }
+        notifierConnection = null;
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(RELEASE_NOTIFIER_LOCK);
+        } catch (SQLException e) {
+            log.warn("释放SLA推送锁失败: {}", e.getMessage());
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.debug("关闭连接失败", e);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof Timestamp ? ((Timestamp) value).toLocalDateTime() : null;
+    }
+
+    private long limitMillis(DeadlineType type) {
+        return type == DeadlineType.ACCEPT ? acceptMillis : completeMillis;
+    }
+
+    private long toTick(long epochMillis) {
+        // 向上取整，保证不早于时限触发
+        return Math.floorDiv(epochMillis - originMillis + tickMillis - 1, tickMillis);
+    }
+
+    /**
+     * 计时轮中的一格，哨兵节点首尾相连
+     */
+    private static final class Bucket {
+        private final Timer head = new Timer(null, null, null, null, null, 0);
+
+        private Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+    }
+
+    private static final class Timer {
+        private final Long serviceId;
+        private final String orderId;
+        private final String serviceCode;
+        private final String staffId;
+        private final DeadlineType type;
+        private final long deadlineMillis;
+        private long deadlineTick;
+        private Timer prev;
+        private Timer next;
+
+        private Timer(Long serviceId, String orderId, String serviceCode, String staffId,
+                      DeadlineType type, long deadlineMillis) {
+            this.serviceId = serviceId;
+            this.orderId = orderId;
+            this.serviceCode = serviceCode;
+            this.staffId = staffId;
+            this.type = type;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -3,16 +3,23 @@ package com.oneorder.clearing.service;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
  * 智能服务建议服务
  * 
+ * 适用关系取自费用约束矩阵，排序依据费用科目与服务项目的历史共现热度，均在内存中完成；
+ * 费用科目与服务项目名称定时整表加载，不再逐次查询。
+ * 
  * @author Claude Code Assistant
  * @version 1.0
  * @since 2025-09-20
@@ -22,8 +29,18 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class SmartServiceSuggestionService {
     
+    private static final long CATALOG_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    
+    private static final long CATALOG_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    
     private final JdbcTemplate jdbcTemplate;
     private final FeeValidationService feeValidationService;
+    private final FeeServiceCooccurrenceIndex cooccurrenceIndex;
+    
+    @Value("${clearing.suggestion.max-suggestions:20}")
+    private int maxSuggestions;
+    
+    private volatile Catalog catalog;
     
     /**
      * 根据费用科目智能推荐服务项目
@@ -33,7 +50,7 @@ public class SmartServiceSuggestionService {
         
         try {
             // 1. 获取费用科目适用的服务列表
-            List<String> applicableServices = feeValidationService.getApplicableServices(feeCode);
+            List<String> applicableServices = getApplicableServices(feeCode);
             
             if (applicableServices.isEmpty()) {
                 return ServiceSuggestionResult.builder()
@@ -60,10 +77,10 @@ public class SmartServiceSuggestionService {
                     .build();
             }
             
-            // 3. 计算交集（费用科目适用的服务 ∩ 订单服务）
-            List<String> intersection = applicableServices.stream()
+            // 3. 计算交集（费用科目适用的服务 ∩ 订单服务），按历史共现热度排序
+            List<String> intersection = cooccurrenceIndex.rankServices(feeCode, applicableServices.stream()
                 .filter(orderServices::contains)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
             
             // 4. 根据交集情况生成建议
             if (intersection.size() == 1) {
@@ -83,7 +100,7 @@ public class SmartServiceSuggestionService {
                 return ServiceSuggestionResult.builder()
                     .canAutoSelect(false)
                     .suggestedService(null)
-                    .reason(String.format("费用科目[%s]适用于订单中的多个服务项目，需要手动选择", feeCode))
+                    .reason(String.format("费用科目[%s]适用于订单中的多个服务项目，需要手动选择（已按历史使用频次排序）", feeCode))
                     .conflictServices(intersection)
                     .allApplicableServices(applicableServices)
                     .orderServices(orderServices)
@@ -116,10 +133,47 @@ public class SmartServiceSuggestionService {
     
     /**
      * 根据服务项目推荐适用的费用科目
+     * 
+     * 先取历史上与该服务共现最多的费用科目（排除被禁止的），再用约束允许但尚无历史的科目补足
      */
     public FeeSuggestionResult suggestFeesForService(String serviceCode) {
         log.debug("推荐服务适用费用科目: serviceCode={}", serviceCode);
         
+        FeeValidationService.ConstraintMatrix matrix = feeValidationService.getConstraintMatrix();
+        if (!matrix.isAvailable()) {
+            return queryFeesForService(serviceCode);
+        }
+        
+        Catalog names = catalog();
+        Map<String, FeeInfo> recommended = new LinkedHashMap<>();
+        for (FeeServiceCooccurrenceIndex.Usage usage : cooccurrenceIndex.topFeesForService(serviceCode, maxSuggestions)) {
+            if (!matrix.isForbidden(usage.getCode(), serviceCode)) {
+                recommended.put(usage.getCode(), names.feeInfo(usage.getCode())
+                    .usageCount(usage.getCount())
+                    .recencyScore(usage.getWeight())
+                    .build());
+            }
+        }
+        for (String feeCode : matrix.allowedFees(serviceCode)) {
+            if (recommended.size() >= maxSuggestions) {
+                break;
+            }
+            recommended.computeIfAbsent(feeCode, code -> names.feeInfo(code).usageCount(0L).build());
+        }
+        
+        List<FeeInfo> recommendedFees = List.copyOf(recommended.values());
+        return FeeSuggestionResult.builder()
+            .serviceCode(serviceCode)
+            .serviceName(getServiceName(serviceCode))
+            .recommendedFees(recommendedFees)
+            .totalCount(recommendedFees.size())
+            .build();
+    }
+    
+    /**
+     * 约束矩阵不可用时按约束表直接查询
+     */
+    private FeeSuggestionResult queryFeesForService(String serviceCode) {
         try {
             String sql = "SELECT fsc.fee_code, fce.fee_name, fce.fee_category, fsc.constraint_type, fsc.priority " +
                 "FROM fee_service_constraints fsc " +
@@ -198,16 +252,75 @@ public class SmartServiceSuggestionService {
         }
     }
     
+    /**
+     * 获取费用科目适用的服务项目，优先读约束矩阵
+     */
+    private List<String> getApplicableServices(String feeCode) {
+        FeeValidationService.ConstraintMatrix matrix = feeValidationService.getConstraintMatrix();
+        return matrix.isAvailable() ? matrix.allowedServices(feeCode) : feeValidationService.getApplicableServices(feeCode);
+    }
+    
     /**
      * 获取服务项目名称
      */
     private String getServiceName(String serviceCode) {
+        return catalog().serviceNames.getOrDefault(serviceCode, serviceCode);
+    }
+    
+    /**
+     * 费用科目与服务项目名称目录，过期后由触发的请求线程重新加载；
+     * 加载失败时继续使用上一份目录（没有则使用本次加载到的部分），30秒后重试
+     */
+    private Catalog catalog() {
+        Catalog current = catalog;
+        if (current != null && System.currentTimeMillis() - current.loadedAt
+            < (current.complete ? CATALOG_TTL_MILLIS : CATALOG_RETRY_MILLIS)) {
+            return current;
+        }
+        Map<String, String[]> fees = new HashMap<>();
+        Map<String, String> serviceNames = new HashMap<>();
+        boolean complete = true;
         try {
-            String sql = "SELECT service_name FROM service_config WHERE service_code = ?";
-            List<String> names = jdbcTemplate.queryForList(sql, String.class, serviceCode);
-            return names.isEmpty() ? serviceCode : names.get(0);
+            jdbcTemplate.query("SELECT fee_code, fee_name, fee_category FROM fee_codes_extended", rs -> {
+                fees.put(rs.getString("fee_code"), new String[]{rs.getString("fee_name"), rs.getString("fee_category")});
+            });
         } catch (Exception e) {
-            return serviceCode;
+            complete = false;
+            log.warn("加载费用科目名称失败: {}", e.getMessage());
+        }
+        try {
+            jdbcTemplate.query("SELECT fee_code, chinese_name FROM service_config", rs -> {
+                serviceNames.put(rs.getString("fee_code"), rs.getString("chinese_name"));
+            });
+        } catch (Exception e) {
+            complete = false;
+            log.warn("加载服务项目名称失败: {}", e.getMessage());
+        }
+        Catalog loaded = complete || current == null
+            ? new Catalog(fees, serviceNames, complete)
+            : new Catalog(current.fees, current.serviceNames, false);
+        catalog = loaded;
+        return loaded;
+    }
+    
+    private static final class Catalog {
+        private final Map<String, String[]> fees;
+        private final Map<String, String> serviceNames;
+        private final boolean complete;
+        private final long loadedAt = System.currentTimeMillis();
+        
+        private Catalog(Map<String, String[]> fees, Map<String, String> serviceNames, boolean complete) {
+            this.fees = fees;
+            this.serviceNames = serviceNames;
+            this.complete = complete;
+        }
+        
+        private FeeInfo.FeeInfoBuilder feeInfo(String feeCode) {
+            String[] fee = fees.get(feeCode);
+            return FeeInfo.builder()
+                .feeCode(feeCode)
+                .feeName(fee != null ? fee[0] : null)
+                .feeCategory(fee != null ? fee[1] : null);
         }
     }
     
@@ -246,6 +359,8 @@ public class SmartServiceSuggestionService {
         private String feeCode;     // 费用科目编码
         private String feeName;     // 费用科目名称
         private String feeCategory; // 费用类别
-        private Integer priority;   // 优先级
+        private Integer priority;   // 优先级（仅约束表直查时提供）
+        private Long usageCount;    // 历史录入次数
+        private Double recencyScore; // 按时间衰减后的使用热度
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.Staff;
+import com.oneorder.clearing.repository.StaffRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 员工通讯录缓存
+ *
+ * 通知发送按员工ID查收件人，批量派单时同一批通知往往指向少数几个操作员，
+ * 进程内缓存员工信息（含不存在的ID），过期后按需回源，批量场景用一次 findAllById 预热。
+ * 员工由人事系统直接维护在员工表中，本应用内只有压测数据生成会新增员工并主动失效；
+ * 其他变更（新增、调岗、停用）最迟在 clearing.notification.staff-cache-ttl 秒后生效。
+ */
+@Slf4j
+@Service
+public class StaffDirectoryCache {
+
+    private final StaffRepository staffRepository;
+    private final long ttlMillis;
+    private final Map<String, CachedStaff> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public StaffDirectoryCache(StaffRepository staffRepository,
+                               @Value("${clearing.notification.staff-cache-ttl:300}") long ttlSeconds) {
+        this.staffRepository = staffRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * 查询员工，命中缓存时不访问数据库
+     */
+    public Optional<Staff> find(String staffId) {
+        if (staffId == null) {
+            return Optional.empty();
+        }
+        CachedStaff cached = cache.get(staffId);
+        if (cached != null && !cached.isExpired()) {
+            hits.increment();
+            return Optional.ofNullable(cached.staff);
+        }
+        misses.increment();
+        Staff staff = staffRepository.findById(staffId).orElse(null);
+        cache.put(staffId, new CachedStaff(staff, System.currentTimeMillis() + ttlMillis));
+        return Optional.ofNullable(staff);
+    }
+
+    /**
+     * 批量预热：只对缓存中缺失或过期的ID发起一次查询
+     */
+    public void preload(Collection<String> staffIds) {
+        Set<String> missing = new HashSet<>();
+        for (String staffId : staffIds) {
+            if (staffId == null) {
+                continue;
+            }
+            CachedStaff cached = cache.get(staffId);
+            if (cached == null || cached.isExpired()) {
+                missing.add(staffId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        Map<String, Staff> loaded = new HashMap<>();
+        staffRepository.findAllById(missing).forEach(staff -> loaded.put(staff.getStaffId(), staff));
+        for (String staffId : missing) {
+            cache.put(staffId, new CachedStaff(loaded.get(staffId), expiresAt));
+        }
+        log.debug("员工通讯录预热: 请求{}个, 加载{}个", missing.size(), loaded.size());
+    }
+
+    /**
+     * 员工信息变更后失效缓存
+     */
+    public void invalidate(String staffId) {
+        cache.remove(staffId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("size", cache.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    private static final class CachedStaff {
+        private final Staff staff;
+        private final long expiresAt;
+
+        private CachedStaff(Staff staff, long expiresAt) {
+            this.staff = staff;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+    }
+}
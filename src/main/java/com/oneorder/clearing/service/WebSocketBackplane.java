@@ -0,0 +1,47 @@
+package com.oneorder.clearing.service;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * WebSocket 多节点消息背板
+ *
+ * 多实例部署时，用户的会话可能连在任意节点上。各节点登记本地有订阅者的主题，
+ * 推送时只把消息路由给登记了该主题的其他节点，并按目标节点攒批发送；
+ * 本节点的会话由调用方直接投递，不经过背板。
+ */
+public interface WebSocketBackplane {
+
+    /**
+     * 本地投递回调，收到其他节点转发的消息时调用
+     */
+    @FunctionalInterface
+    interface LocalDelivery {
+        void deliver(String topic, String payload, String coalesceKey);
+    }
+
+    /**
+     * 当前节点标识
+     */
+    String getNodeId();
+
+    /**
+     * 设置本地投递回调与本地订阅判断
+     */
+    void bind(LocalDelivery localDelivery, Predicate<String> hasLocalSubscribers);
+
+    /**
+     * 本地主题订阅发生变化后调用，背板按当前本地订阅状态登记或注销路由
+     */
+    void refreshPresence(String topic);
+
+    /**
+     * 将消息路由到其他持有该主题订阅的节点，不包括本节点
+     */
+    void publish(String topic, String payload, String coalesceKey);
+
+    /**
+     * 路由与发送统计
+     */
+    Map<String, Object> getStats();
+}
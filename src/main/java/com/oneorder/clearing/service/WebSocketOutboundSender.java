@@ -0,0 +1,332 @@
+package com.oneorder.clearing.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket 出站发送器
+ *
+ * 每个会话一条有界出站队列，调用方只做入队；共享的发送线程池按会话逐个排空队列，
+ * 同一会话任一时刻只有一个线程在写，慢客户端只占住自己的队列，不拖慢广播。
+ * 带合并键的消息（如订单状态）在队列中只保留最新一条；队列满时按策略丢弃最旧消息或关闭会话，
+ * 单次发送卡住超过时限的会话视为慢消费者，由巡检线程定期发现并关闭，不依赖该会话再有新消息入队；
+ * 关闭在独立的小线程池上执行，不占用可能正被慢连接阻塞的发送线程。
+ */
+@Slf4j
+@Service
+public class WebSocketOutboundSender {
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        CLOSE
+    }
+
+    // 关闭可能阻塞在慢连接上，少量线程即可，与发送线程隔离
+    private static final int CLOSER_THREADS = 2;
+
+    private final int queueCapacity;
+    private final int drainBatchSize;
+    private final long sendTimeLimitMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final ExecutorService senderPool;
+    private final ExecutorService closerPool;
+    private final ScheduledExecutorService watchdog;
+    private final Map<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sendFailures = new LongAdder();
+    private final LongAdder slowConsumersClosed = new LongAdder();
+
+    public WebSocketOutboundSender(@Value("${clearing.websocket.sender-threads:4}") int senderThreads,
+                                   @Value("${clearing.websocket.queue-capacity:256}") int queueCapacity,
+                                   @Value("${clearing.websocket.drain-batch-size:32}") int drainBatchSize,
+                                   @Value("${clearing.websocket.send-time-limit-ms:10000}") long sendTimeLimitMillis,
+                                   @Value("${clearing.websocket.overflow-policy:DROP_OLDEST}") OverflowPolicy overflowPolicy) {
+        this.queueCapacity = queueCapacity;
+        this.drainBatchSize = drainBatchSize;
+        this.sendTimeLimitMillis = sendTimeLimitMillis;
+        this.overflowPolicy = overflowPolicy;
+        AtomicInteger sequence = new AtomicInteger();
+        // 每个会话同时最多只有一个排空任务在队列中，任务数受会话数约束
+        this.senderPool = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ws-sender-" + sequence.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        AtomicInteger closerSequence = new AtomicInteger();
+        this.closerPool = Executors.newFixedThreadPool(CLOSER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "ws-closer-" + closerSequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-send-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = Math.max(100, Math.min(1000, sendTimeLimitMillis / 2));
+        watchdog.scheduleWithFixedDelay(this::checkSendTimes, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 会话建立后登记出站队列
+     */
+    public void register(WebSocketSession session) {
+        outboxes.put(session.getId(), new SessionOutbox(session));
+    }
+
+    /**
+     * 会话关闭后释放出站队列，未发送的消息直接丢弃
+     */
+    public void unregister(WebSocketSession session) {
+        SessionOutbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            synchronized (outbox) {
+                outbox.closed = true;
+                dropped.add(outbox.queue.size());
+                outbox.queue.clear();
+                outbox.pendingByKey.clear();
+            }
+        }
+    }
+
+    /**
+     * 入队一条消息，不等待发送
+     *
+     * @param coalesceKey 合并键，为空表示不合并；同键消息未发出前只保留最新内容
+     * @return 会话未登记、已关闭或因溢出被关闭时返回 false
+     */
+    public boolean enqueue(WebSocketSession session, String payload, String coalesceKey) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox == null || !session.isOpen()) {
+            return false;
+        }
+
+        long sendingSince = outbox.sendingSince;
+        if (sendingSince > 0 && System.currentTimeMillis() - sendingSince > sendTimeLimitMillis) {
+            closeSlowConsumer(outbox, "单次发送超过" + sendTimeLimitMillis + "ms");
+            return false;
+        }
+
+        synchronized (outbox) {
+            if (outbox.closed) {
+                return false;
+            }
+            if (coalesceKey != null) {
+                Outbound pending = outbox.pendingByKey.get(coalesceKey);
+                if (pending != null) {
+                    pending.payload = payload;
+                    coalesced.increment();
+                    return true;
+                }
+            }
+            if (outbox.queue.size() >= queueCapacity) {
+                if (overflowPolicy == OverflowPolicy.CLOSE) {
+                    outbox.closed = true;
+                } else {
+                    Outbound oldest = outbox.queue.pollFirst();
+                    if (oldest.coalesceKey != null) {
+                        outbox.pendingByKey.remove(oldest.coalesceKey);
+                    }
+                    dropped.increment();
+                }
+            }
+            if (!outbox.closed) {
+                Outbound outbound = new Outbound(payload, coalesceKey);
+                outbox.queue.addLast(outbound);
+                if (coalesceKey != null) {
+                    outbox.pendingByKey.put(coalesceKey, outbound);
+                }
+                enqueued.increment();
+            }
+        }
+
+        if (outbox.closed) {
+            closeSlowConsumer(outbox, "出站队列已满(" + queueCapacity + ")");
+            return false;
+        }
+        schedule(outbox);
+        return true;
+    }
+
+    /**
+     * 出站统计，含各会话当前队列深度
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        Map<String, Integer> depths = new HashMap<>();
+        int totalDepth = 0;
+        int maxDepth = 0;
+        for (SessionOutbox outbox : outboxes.values()) {
+            int depth;
+            synchronized (outbox) {
+                depth = outbox.queue.size();
+            }
+            depths.put(outbox.session.getId(), depth);
+            totalDepth += depth;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        metrics.put("sessions", outboxes.size());
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("overflowPolicy", overflowPolicy.name());
+        metrics.put("totalQueueDepth", totalDepth);
+        metrics.put("maxQueueDepth", maxDepth);
+        metrics.put("queueDepthBySession", depths);
+        metrics.put("enqueued", enqueued.sum());
+        metrics.put("sent", sent.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("sendFailures", sendFailures.sum());
+        metrics.put("slowConsumersClosed", slowConsumersClosed.sum());
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        senderPool.shutdownNow();
+        closerPool.shutdownNow();
+    }
+
+    private void schedule(SessionOutbox outbox) {
+        if (outbox.scheduled.compareAndSet(false, true)) {
+            senderPool.execute(() -> drain(outbox));
+        }
+    }
+
+    /**
+     * 每轮最多发送 drainBatchSize 条，剩余消息重新排队，避免一个积压会话独占发送线程
+     */
+    private void drain(SessionOutbox outbox) {
+        List<String> batch = new ArrayList<>(drainBatchSize);
+        synchronized (outbox) {
+            while (batch.size() < drainBatchSize && !outbox.queue.isEmpty()) {
+                Outbound outbound = outbox.queue.pollFirst();
+                if (outbound.coalesceKey != null) {
+                    outbox.pendingByKey.remove(outbound.coalesceKey);
+                }
+                batch.add(outbound.payload);
+            }
+        }
+
+        try {
+            for (String payload : batch) {
+                if (!outbox.session.isOpen()) {
+                    break;
+                }
+                outbox.sendingSince = System.currentTimeMillis();
+                outbox.session.sendMessage(new TextMessage(payload));
+                sent.increment();
+            }
+        } catch (IOException | RuntimeException e) {
+            sendFailures.increment();
+            log.warn("WebSocket发送失败，关闭会话: {}", outbox.session.getId(), e);
+            close(outbox, CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            outbox.sendingSince = 0;
+        }
+
+        boolean more;
+        synchronized (outbox) {
+            more = !outbox.closed && !outbox.queue.isEmpty();
+            if (!more) {
+                outbox.scheduled.set(false);
+            }
+        }
+        if (more) {
+            senderPool.execute(() -> drain(outbox));
+        }
+    }
+
+    /**
+     * 巡检正在发送的会话，单次发送超过时限的关闭
+     */
+    private void checkSendTimes() {
+        long now = System.currentTimeMillis();
+        for (SessionOutbox outbox : outboxes.values()) {
+            long sendingSince = outbox.sendingSince;
+            if (sendingSince > 0 && now - sendingSince > sendTimeLimitMillis) {
+                closeSlowConsumer(outbox, "单次发送超过" + sendTimeLimitMillis + "ms");
+            }
+        }
+    }
+
+    private void closeSlowConsumer(SessionOutbox outbox, String reason) {
+        if (!outbox.closeRequested.compareAndSet(false, true)) {
+            return;
+        }
+        log.warn("WebSocket慢消费者，关闭会话 {}: {}", outbox.session.getId(), reason);
+        slowConsumersClosed.increment();
+        // 发送线程可能正阻塞在该会话上，关闭放到独立的关闭线程执行
+        try {
+            closerPool.execute(() -> close(outbox, CloseStatus.SESSION_NOT_RELIABLE));
+        } catch (RejectedExecutionException e) {
+            log.debug("关闭线程池已停止，跳过关闭会话: {}", outbox.session.getId());
+        }
+    }
+
+    private void close(SessionOutbox outbox, CloseStatus status) {
+        unregister(outbox.session);
+        try {
+            outbox.session.close(status);
+        } catch (IOException e) {
+            log.debug("关闭WebSocket会话失败: {}", outbox.session.getId(), e);
+        }
+    }
+
+    private static final class SessionOutbox {
+        private final WebSocketSession session;
+        private final Deque<Outbound> queue = new ArrayDeque<>();
+        private final Map<String, Outbound> pendingByKey = new HashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closeRequested = new AtomicBoolean();
+        private volatile long sendingSince;
+        private volatile boolean closed;
+
+        private SessionOutbox(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+
+    private static final class Outbound {
+        private final String coalesceKey;
+        private String payload;
+
+        private Outbound(String payload, String coalesceKey) {
+            this.payload = payload;
+            this.coalesceKey = coalesceKey;
+        }
+    }
+}
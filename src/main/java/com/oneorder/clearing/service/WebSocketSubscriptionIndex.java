@@ -0,0 +1,130 @@
+package com.oneorder.clearing.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket 主题订阅索引
+ *
+ * 主题到会话集合的并发扇出索引，一个用户可以有多个会话（多标签页、多终端），
+ * 定向推送只遍历订阅了该主题的会话。另维护会话到主题的反向索引，断开时按会话一次性清理。
+ * 主题格式：user:{员工ID}、department:{部门ID}、order:{订单号}、dashboard
+ */
+@Service
+public class WebSocketSubscriptionIndex {
+
+    public static final String DASHBOARD = "dashboard";
+
+    private static final Set<String> TOPIC_KINDS = Set.of("user", "department", "order", DASHBOARD);
+
+    private final Map<String, Set<WebSocketSession>> sessionsByTopic = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> topicsBySession = new ConcurrentHashMap<>();
+
+    public static String userTopic(String userId) {
+        return "user:" + userId;
+    }
+
+    public static String departmentTopic(String departmentId) {
+        return "department:" + departmentId;
+    }
+
+    public static String orderTopic(String orderNo) {
+        return "order:" + orderNo;
+    }
+
+    /**
+     * 校验主题格式，只接受约定的几类主题
+     */
+    public static boolean isValidTopic(String topic) {
+        if (topic == null || topic.isEmpty()) {
+            return false;
+        }
+        int separator = topic.indexOf(':');
+        if (separator < 0) {
+            return DASHBOARD.equals(topic);
+        }
+        return separator < topic.length() - 1 && TOPIC_KINDS.contains(topic.substring(0, separator));
+    }
+
+    public void subscribe(WebSocketSession session, String topic) {
+        // 先登记反向索引，保证 removeSession 能看到所有已加入的主题
+        topicsBySession.computeIfAbsent(session.getId(), id -> ConcurrentHashMap.newKeySet()).add(topic);
+        // 在 compute 内加入，避免与 removeFromTopic 并发时加到已被移除的集合上
+        sessionsByTopic.compute(topic, (t, sessions) -> {
+            Set<WebSocketSession> target = sessions != null ? sessions : ConcurrentHashMap.newKeySet();
+            target.add(session);
+            return target;
+        });
+    }
+
+    public void unsubscribe(WebSocketSession session, String topic) {
+        Set<String> topics = topicsBySession.get(session.getId());
+        if (topics != null) {
+            topics.remove(topic);
+        }
+        removeFromTopic(topic, session);
+    }
+
+    /**
+     * 会话断开时移除其全部订阅
+     *
+     * @return 该会话原先订阅的主题
+     */
+    public Set<String> removeSession(WebSocketSession session) {
+        Set<String> topics = topicsBySession.remove(session.getId());
+        if (topics == null) {
+            return Collections.emptySet();
+        }
+        topics.forEach(topic -> removeFromTopic(topic, session));
+        return topics;
+    }
+
+    /**
+     * 订阅了主题的会话（并发集合的实时视图），无订阅时返回空集合
+     */
+    public Set<WebSocketSession> sessions(String topic) {
+        Set<WebSocketSession> sessions = sessionsByTopic.get(topic);
+        return sessions != null ? sessions : Collections.emptySet();
+    }
+
+    public boolean hasSubscribers(String topic) {
+        return !sessions(topic).isEmpty();
+    }
+
+    public Set<String> topics(WebSocketSession session) {
+        Set<String> topics = topicsBySession.get(session.getId());
+        return topics != null ? Collections.unmodifiableSet(topics) : Collections.emptySet();
+    }
+
+    /**
+     * 按主题类型统计主题数与订阅数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, int[]> counts = new LinkedHashMap<>();
+        sessionsByTopic.forEach((topic, sessions) -> {
+            int separator = topic.indexOf(':');
+            String kind = separator < 0 ? topic : topic.substring(0, separator);
+            int[] count = counts.computeIfAbsent(kind, k -> new int[2]);
+            count[0]++;
+            count[1] += sessions.size();
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        counts.forEach((kind, count) -> stats.put(kind, Map.of("topics", count[0], "subscriptions", count[1])));
+        stats.put("sessions", topicsBySession.size());
+        return stats;
+    }
+
+    private void removeFromTopic(String topic, WebSocketSession session) {
+        // 集合为空时原子地移除主题，避免空主题无限累积（如已结单的订单主题）
+        sessionsByTopic.computeIfPresent(topic, (t, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+}
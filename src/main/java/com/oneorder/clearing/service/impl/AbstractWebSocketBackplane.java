@@ -0,0 +1,264 @@
+package com.oneorder.clearing.service.impl;
+
+import com.oneorder.clearing.service.WebSocketBackplane;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * 背板公共实现：路由登记、按目标节点攒批与本地投递
+ *
+ * 登记/注销与攒批发送都在同一个单线程调度器上执行，登记时读取当前本地订阅状态，
+ * 并发的订阅与退订无论以什么顺序到达，最终登记结果都与本地状态一致。
+ * 子类只负责具体的传输：登记存储、路由查询和向指定节点发送一批消息。
+ */
+@Slf4j
+public abstract class AbstractWebSocketBackplane implements WebSocketBackplane {
+
+    /**
+     * 节点间转发的单条消息
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Envelope {
+        private String topic;
+        private String payload;
+        private String coalesceKey;
+    }
+
+    private static final long PRESENCE_REASSERT_SECONDS = 30;
+
+    protected final String nodeId;
+    private final int maxBatchSize;
+    private final int maxPendingPerNode;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, NodeOutbox> outboxes = new ConcurrentHashMap<>();
+    private final Set<String> registeredTopics = ConcurrentHashMap.newKeySet();
+
+    private volatile LocalDelivery localDelivery = (topic, payload, coalesceKey) -> { };
+    private volatile Predicate<String> hasLocalSubscribers = topic -> false;
+
+    private final LongAdder routed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder batchesSent = new LongAdder();
+    private final LongAdder transmitFailures = new LongAdder();
+    private final LongAdder received = new LongAdder();
+
+    protected AbstractWebSocketBackplane(String nodeId, long batchWindowMillis, int maxBatchSize, int maxPendingPerNode) {
+        this.nodeId = resolveNodeId(nodeId);
+        this.maxBatchSize = maxBatchSize;
+        this.maxPendingPerNode = maxPendingPerNode;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-backplane");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, batchWindowMillis, batchWindowMillis, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::reassertPresence,
+            PRESENCE_REASSERT_SECONDS, PRESENCE_REASSERT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void bind(LocalDelivery localDelivery, Predicate<String> hasLocalSubscribers) {
+        this.localDelivery = localDelivery;
+        this.hasLocalSubscribers = hasLocalSubscribers;
+    }
+
+    @Override
+    public void refreshPresence(String topic) {
+        try {
+            scheduler.execute(() -> syncPresence(topic));
+        } catch (RejectedExecutionException e) {
+            // 停机过程中会话陆续关闭，路由已在 shutdown 中统一注销
+            log.debug("背板已停止，忽略主题路由变更: {}", topic);
+        }
+    }
+
+    @Override
+    public void publish(String topic, String payload, String coalesceKey) {
+        Collection<String> nodes;
+        try {
+            nodes = routeNodes(topic);
+        } catch (Exception e) {
+            log.warn("查询主题路由失败: {}", topic, e);
+            return;
+        }
+        for (String node : nodes) {
+            if (nodeId.equals(node)) {
+                continue;
+            }
+            NodeOutbox outbox = outboxes.computeIfAbsent(node, n -> new NodeOutbox());
+            if (outbox.size.incrementAndGet() > maxPendingPerNode) {
+                outbox.size.decrementAndGet();
+                dropped.increment();
+                continue;
+            }
+            outbox.queue.add(new Envelope(topic, payload, coalesceKey));
+            routed.increment();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Integer> pending = new LinkedHashMap<>();
+        outboxes.forEach((node, outbox) -> pending.put(node, outbox.size.get()));
+        stats.put("nodeId", nodeId);
+        stats.put("transport", getClass().getSimpleName());
+        stats.put("registeredTopics", registeredTopics.size());
+        stats.put("pendingByNode", pending);
+        stats.put("routed", routed.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("batchesSent", batchesSent.sum());
+        stats.put("transmitFailures", transmitFailures.sum());
+        stats.put("received", received.sum());
+        return stats;
+    }
+
+    /**
+     * 收到其他节点转发的一批消息，逐条投递给本地订阅者
+     */
+    protected void receive(List<Envelope> batch) {
+        received.add(batch.size());
+        for (Envelope envelope : batch) {
+            localDelivery.deliver(envelope.getTopic(), envelope.getPayload(), envelope.getCoalesceKey());
+        }
+    }
+
+    /**
+     * 停止调度，发出剩余消息并注销本节点的全部路由
+     */
+    protected void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        for (String topic : registeredTopics) {
+            try {
+                unregister(topic);
+            } catch (Exception e) {
+                log.debug("注销主题路由失败: {}", topic, e);
+            }
+        }
+        registeredTopics.clear();
+    }
+
+    /**
+     * 登记本节点持有该主题的订阅者
+     */
+    protected abstract void register(String topic) throws Exception;
+
+    /**
+     * 注销本节点在该主题上的登记
+     */
+    protected abstract void unregister(String topic) throws Exception;
+
+    /**
+     * 查询登记了该主题的节点，可以包含本节点
+     */
+    protected abstract Collection<String> routeNodes(String topic) throws Exception;
+
+    /**
+     * 向目标节点发送一批消息
+     */
+    protected abstract void transmit(String targetNodeId, List<Envelope> batch) throws Exception;
+
+    private void syncPresence(String topic) {
+        try {
+            // 先写外部存储再改本地记录，写入失败时下次变更还会重试
+            if (hasLocalSubscribers.test(topic)) {
+                if (!registeredTopics.contains(topic)) {
+                    register(topic);
+                    registeredTopics.add(topic);
+                }
+            } else if (registeredTopics.contains(topic)) {
+                unregister(topic);
+                registeredTopics.remove(topic);
+            }
+        } catch (Exception e) {
+            log.warn("同步主题路由失败: {}", topic, e);
+        }
+    }
+
+    /**
+     * 定期重新登记本节点的全部主题，覆盖登记存储重启或被误清理的情况
+     */
+    private void reassertPresence() {
+        for (String topic : registeredTopics) {
+            try {
+                register(topic);
+            } catch (Exception e) {
+                log.warn("重新登记主题路由失败: {}", topic, e);
+                return;
+            }
+        }
+    }
+
+    private void flush() {
+        outboxes.forEach((node, outbox) -> {
+            while (!outbox.queue.isEmpty()) {
+                List<Envelope> batch = new ArrayList<>(Math.min(maxBatchSize, outbox.size.get()));
+                Envelope envelope;
+                while (batch.size() < maxBatchSize && (envelope = outbox.queue.poll()) != null) {
+                    batch.add(envelope);
+                }
+                outbox.size.addAndGet(-batch.size());
+                try {
+                    transmit(node, batch);
+                    batchesSent.increment();
+                } catch (Exception e) {
+                    transmitFailures.increment();
+                    dropped.add(batch.size());
+                    log.warn("向节点 {} 转发 {} 条消息失败", node, batch.size(), e);
+                }
+            }
+        });
+    }
+
+    private static String resolveNodeId(String configured) {
+        if (configured != null && !configured.trim().isEmpty()) {
+            return configured.trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    private static final class NodeOutbox {
+        private final Queue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
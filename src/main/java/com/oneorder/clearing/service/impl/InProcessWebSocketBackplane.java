@@ -0,0 +1,73 @@
+package com.oneorder.clearing.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内背板
+ *
+ * 同一 JVM 内的多个实例共享静态的路由表和节点表，转发直接调用目标实例，
+ * 用于单机联调和测试中模拟多节点部署，不依赖 Redis。
+ */
+@Service
+@ConditionalOnProperty(name = "clearing.websocket.backplane.type", havingValue = "in-process")
+public class InProcessWebSocketBackplane extends AbstractWebSocketBackplane {
+
+    private static final Map<String, InProcessWebSocketBackplane> NODES = new ConcurrentHashMap<>();
+    private static final Map<String, Set<String>> ROUTES = new ConcurrentHashMap<>();
+
+    public InProcessWebSocketBackplane(@Value("${clearing.websocket.backplane.node-id:}") String nodeId,
+                                       @Value("${clearing.websocket.backplane.batch-window-ms:20}") long batchWindowMillis,
+                                       @Value("${clearing.websocket.backplane.max-batch-size:200}") int maxBatchSize,
+                                       @Value("${clearing.websocket.backplane.max-pending-per-node:10000}") int maxPendingPerNode) {
+        super(nodeId, batchWindowMillis, maxBatchSize, maxPendingPerNode);
+        NODES.put(this.nodeId, this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        shutdown();
+        NODES.remove(nodeId);
+    }
+
+    @Override
+    protected void register(String topic) {
+        ROUTES.compute(topic, (t, nodes) -> {
+            Set<String> target = nodes != null ? nodes : ConcurrentHashMap.newKeySet();
+            target.add(nodeId);
+            return target;
+        });
+    }
+
+    @Override
+    protected void unregister(String topic) {
+        ROUTES.computeIfPresent(topic, (t, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    protected Collection<String> routeNodes(String topic) {
+        Set<String> nodes = ROUTES.get(topic);
+        return nodes != null ? nodes : Collections.emptySet();
+    }
+
+    @Override
+    protected void transmit(String targetNodeId, List<Envelope> batch) {
+        InProcessWebSocketBackplane target = NODES.get(targetNodeId);
+        if (target != null) {
+            target.receive(new ArrayList<>(batch));
+        }
+    }
+}
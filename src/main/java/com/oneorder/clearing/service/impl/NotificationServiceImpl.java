@@ -3,16 +3,25 @@ package com.oneorder.clearing.service.impl;
 import com.oneorder.clearing.entity.ServiceAssignmentNotification;
 import com.oneorder.clearing.entity.Staff;
 import com.oneorder.clearing.repository.ServiceAssignmentNotificationRepository;
-import com.oneorder.clearing.repository.StaffRepository;
+import com.oneorder.clearing.service.NotificationDispatcher;
+import com.oneorder.clearing.service.NotificationDispatcher.Channel;
+import com.oneorder.clearing.service.NotificationDispatcher.Delivery;
 import com.oneorder.clearing.service.NotificationService;
+import com.oneorder.clearing.service.StaffDirectoryCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 /**
  * 通知服务实现类
+ *
+ * 派单通知只在调用线程上解析收件人并入队，邮件/站内信/短信由 {@link NotificationDispatcher} 异步批量发送
  */
 @Service
 @RequiredArgsConstructor
@@ -20,38 +29,39 @@ import java.util.List;
 public class NotificationServiceImpl implements NotificationService {
     
     private final ServiceAssignmentNotificationRepository notificationRepository;
-    private final StaffRepository staffRepository;
+    private final StaffDirectoryCache staffDirectory;
+    private final NotificationDispatcher dispatcher;
+    
+    /**
+     * 注册各渠道的批量发送器
+     */
+    @PostConstruct
+    public void registerChannels() {
+        dispatcher.registerChannel(Channel.EMAIL, batch -> sendEach(batch, this::sendEmailNotification));
+        dispatcher.registerChannel(Channel.INTERNAL_MESSAGE, batch -> sendEach(batch, this::sendInternalMessage));
+        dispatcher.registerChannel(Channel.SMS, batch -> sendEach(batch, this::sendSmsNotification));
+    }
     
     @Override
     public void sendAssignmentNotification(ServiceAssignmentNotification notification) {
         log.info("发送派单通知 - 通知ID: {}, 接收人: {}", 
                 notification.getNotificationId(), notification.getToStaffId());
         
-        try {
-            // 获取接收人信息
-            Staff recipient = staffRepository.findById(notification.getToStaffId()).orElse(null);
-            if (recipient == null) {
-                log.warn("接收人不存在: {}", notification.getToStaffId());
-                return;
-            }
-            
-            // 发送邮件通知
-            sendEmailNotification(recipient, notification);
-            
-            // 发送站内消息
-            sendInternalMessage(recipient, notification);
-            
-            // 如果是紧急通知，还可以发送短信
-            if (ServiceAssignmentNotification.Priority.HIGH.equals(notification.getPriority()) ||
-                ServiceAssignmentNotification.Priority.URGENT.equals(notification.getPriority())) {
-                sendSmsNotification(recipient, notification);
-            }
-            
-            log.info("派单通知发送成功 - 接收人: {}", recipient.getStaffName());
-            
-        } catch (Exception e) {
-            log.error("发送派单通知失败", e);
-            throw new RuntimeException("发送通知失败: " + e.getMessage());
+        // 获取接收人信息
+        Staff recipient = staffDirectory.find(notification.getToStaffId()).orElse(null);
+        if (recipient == null) {
+            log.warn("接收人不存在: {}", notification.getToStaffId());
+            return;
+        }
+        
+        // 邮件和站内消息
+        dispatcher.dispatch(Channel.EMAIL, recipient, notification);
+        dispatcher.dispatch(Channel.INTERNAL_MESSAGE, recipient, notification);
+        
+        // 如果是紧急通知，还可以发送短信
+        if (ServiceAssignmentNotification.Priority.HIGH.equals(notification.getPriority()) ||
+            ServiceAssignmentNotification.Priority.URGENT.equals(notification.getPriority())) {
+            dispatcher.dispatch(Channel.SMS, recipient, notification);
         }
     }
     
@@ -60,7 +70,7 @@ public class NotificationServiceImpl implements NotificationService {
         log.info("发送接单确认通知 - 订单: {}, 操作员: {}", orderId, operationStaffId);
         
         try {
-            Staff operationStaff = staffRepository.findById(operationStaffId).orElse(null);
+            Staff operationStaff = staffDirectory.find(operationStaffId).orElse(null);
             if (operationStaff == null) {
                 log.warn("操作员不存在: {}", operationStaffId);
                 return;
@@ -94,6 +104,11 @@ public class NotificationServiceImpl implements NotificationService {
     public void sendBatchNotifications(List<ServiceAssignmentNotification> notifications) {
         log.info("批量发送通知 - 数量: {}", notifications.size());
         
+        // 一次查询预热本批所有接收人
+        staffDirectory.preload(notifications.stream()
+            .map(ServiceAssignmentNotification::getToStaffId)
+            .collect(Collectors.toSet()));
+        
         for (ServiceAssignmentNotification notification : notifications) {
             try {
                 sendAssignmentNotification(notification);
@@ -105,6 +120,23 @@ public class NotificationServiceImpl implements NotificationService {
     
     // ==================== 私有方法 ====================
     
+    /**
+     * 逐条发送一个批次，收集发送失败的投递交由分发器重试
+     */
+    private List<Delivery> sendEach(List<Delivery> batch, BiConsumer<Staff, ServiceAssignmentNotification> sender) {
+        List<Delivery> failures = new ArrayList<>();
+        for (Delivery delivery : batch) {
+            try {
+                sender.accept(delivery.getRecipient(), delivery.getNotification());
+            } catch (Exception e) {
+                log.warn("{}发送失败 - 接收人: {}, 原因: {}", delivery.getChannel().getDescription(),
+                        delivery.getRecipient().getStaffId(), e.getMessage());
+                failures.add(delivery);
+            }
+        }
+        return failures;
+    }
+    
     /**
      * 发送邮件通知
      */
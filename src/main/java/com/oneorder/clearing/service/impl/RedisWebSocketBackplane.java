@@ -0,0 +1,142 @@
+package com.oneorder.clearing.service.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 Redis 发布订阅的背板
+ *
+ * 路由登记：每个主题一个 Redis Set，成员为持有订阅者的节点ID；
+ * 转发：每个节点订阅自己的频道，消息按目标节点攒批后以 JSON 数组发布到目标频道。
+ * 路由查询结果在本地缓存 route-cache-ms，发布返回 0 个接收者说明目标节点已下线，
+ * 随即清除其在相关主题上的登记。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "clearing.websocket.backplane.type", havingValue = "redis")
+public class RedisWebSocketBackplane extends AbstractWebSocketBackplane {
+
+    private static final String TOPIC_KEY_PREFIX = "oneorder:ws:topic:";
+    private static final String NODE_CHANNEL_PREFIX = "oneorder:ws:node:";
+    private static final TypeReference<List<Envelope>> BATCH_TYPE = new TypeReference<List<Envelope>>() {
+    };
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisConnectionFactory connectionFactory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final long routeCacheMillis;
+    private final Map<String, CachedRoute> routeCache = new ConcurrentHashMap<>();
+    private RedisMessageListenerContainer listenerContainer;
+
+    public RedisWebSocketBackplane(StringRedisTemplate redisTemplate,
+                                   RedisConnectionFactory connectionFactory,
+                                   @Value("${clearing.websocket.backplane.node-id:}") String nodeId,
+                                   @Value("${clearing.websocket.backplane.batch-window-ms:20}") long batchWindowMillis,
+                                   @Value("${clearing.websocket.backplane.max-batch-size:200}") int maxBatchSize,
+                                   @Value("${clearing.websocket.backplane.max-pending-per-node:10000}") int maxPendingPerNode,
+                                   @Value("${clearing.websocket.backplane.route-cache-ms:1000}") long routeCacheMillis) {
+        super(nodeId, batchWindowMillis, maxBatchSize, maxPendingPerNode);
+        this.redisTemplate = redisTemplate;
+        this.connectionFactory = connectionFactory;
+        this.routeCacheMillis = routeCacheMillis;
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(connectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> onMessage(message.getBody()),
+            new ChannelTopic(NODE_CHANNEL_PREFIX + nodeId));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        log.info("WebSocket Redis背板已启动，节点: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        shutdown();
+        listenerContainer.stop();
+        listenerContainer.destroy();
+    }
+
+    @Override
+    protected void register(String topic) {
+        redisTemplate.opsForSet().add(TOPIC_KEY_PREFIX + topic, nodeId);
+    }
+
+    @Override
+    protected void unregister(String topic) {
+        redisTemplate.opsForSet().remove(TOPIC_KEY_PREFIX + topic, nodeId);
+    }
+
+    @Override
+    protected Collection<String> routeNodes(String topic) {
+        long now = System.currentTimeMillis();
+        CachedRoute cached = routeCache.get(topic);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.nodes;
+        }
+        Set<String> members = redisTemplate.opsForSet().members(TOPIC_KEY_PREFIX + topic);
+        Set<String> nodes = members != null ? members : Collections.emptySet();
+        routeCache.put(topic, new CachedRoute(nodes, now + routeCacheMillis));
+        return nodes;
+    }
+
+    @Override
+    protected void transmit(String targetNodeId, List<Envelope> batch) throws Exception {
+        byte[] channel = (NODE_CHANNEL_PREFIX + targetNodeId).getBytes(StandardCharsets.UTF_8);
+        byte[] body = objectMapper.writeValueAsBytes(batch);
+        Long receivers = redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(channel, body));
+        if (receivers != null && receivers == 0) {
+            removeStaleNode(targetNodeId, batch);
+        }
+    }
+
+    private void removeStaleNode(String staleNodeId, List<Envelope> batch) {
+        Set<String> topics = new LinkedHashSet<>();
+        batch.forEach(envelope -> topics.add(envelope.getTopic()));
+        log.warn("节点 {} 已无订阅，清除其 {} 个主题登记", staleNodeId, topics.size());
+        for (String topic : topics) {
+            redisTemplate.opsForSet().remove(TOPIC_KEY_PREFIX + topic, staleNodeId);
+            routeCache.remove(topic);
+        }
+    }
+
+    private void onMessage(byte[] body) {
+        try {
+            receive(objectMapper.readValue(body, BATCH_TYPE));
+        } catch (Exception e) {
+            log.warn("解析背板消息失败", e);
+        }
+    }
+
+    private static final class CachedRoute {
+        private final Set<String> nodes;
+        private final long expiresAt;
+
+        private CachedRoute(Set<String> nodes, long expiresAt) {
+            this.nodes = nodes;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
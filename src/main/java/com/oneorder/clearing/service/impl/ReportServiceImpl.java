@@ -237,9 +237,9 @@ public class ReportServiceImpl implements ReportService {
     }
     
     /**
-     * 生成管理报表汇总数据
+     * 生成管理报表汇总数据（包级可见，供基准测试直接调用）
      */
-    private void generateManagementSummary(ManagementReportDTO report, List<AccountingEntry> entries) {
+    void generateManagementSummary(ManagementReportDTO report, List<AccountingEntry> entries) {
         ManagementReportDTO.SummaryData summary = report.getSummary();
         
         for (AccountingEntry entry : entries) {
@@ -359,9 +359,9 @@ public class ReportServiceImpl implements ReportService {
     }
     
     /**
-     * 生成管理报表统计数据
+     * 生成管理报表统计数据（包级可见，供基准测试直接调用）
      */
-    private void generateManagementStatistics(ManagementReportDTO report, List<AccountingEntry> entries) {
+    void generateManagementStatistics(ManagementReportDTO report, List<AccountingEntry> entries) {
         ManagementReportDTO.StatisticsData statistics = report.getStatistics();
         
         // 统计基本数据
@@ -4020,6 +4020,34 @@ function loadMyTasks(staffId) {
     });
 }
 
+// 任务收件箱：WebSocket 推送的快照和增量，按服务ID保存
+const taskInbox = { staffId: null, version: 0, tasks: new Map() };
+
+window.addEventListener('taskinbox', event => {
+    const message = event.detail;
+    if (message.op === 'snapshot') {
+        taskInbox.staffId = message.operationStaffId;
+        taskInbox.version = message.version;
+        taskInbox.tasks = new Map(message.tasks.map(task => [task.serviceId, task]));
+    } else {
+        // 早于快照的增量已包含在快照中
+        if (message.version <= taskInbox.version) {
+            return;
+        }
+        taskInbox.version = message.version;
+        if (message.op === 'remove') {
+            taskInbox.tasks.delete(message.serviceId);
+        } else {
+            taskInbox.tasks.set(message.serviceId, message.task);
+        }
+    }
+    
+    const selectedStaffId = document.getElementById('selectedOperationStaff')?.value;
+    if (selectedStaffId && selectedStaffId === taskInbox.staffId) {
+        displayMyTasks(Array.from(taskInbox.tasks.values()));
+    }
+});
+
 // 显示我的任务
 function displayMyTasks(tasks) {
     const tbody = document.getElementById('myTasksTable');
@@ -112,6 +112,8 @@ class NotificationSystem {
                 this.isConnected = true;
                 this.retryCount = 0;
                 console.log('WebSocket连接成功');
+                // 连接或重连后先取任务列表快照，之后的变化以增量推送
+                this.syncTaskInbox();
                 // 技术性连接通知改为仅控制台记录，不显示用户通知
                 // this.showSystemNotification('实时通知已连接', 'success', '连接状态');
             };
@@ -119,6 +121,11 @@ class NotificationSystem {
             this.websocket.onmessage = (event) => {
                 try {
                     const notification = JSON.parse(event.data);
+                    if (notification.type === 'task_inbox') {
+                        // 任务列表快照/增量不是用户通知，转交给任务页面处理
+                        window.dispatchEvent(new CustomEvent('taskinbox', { detail: notification }));
+                        return;
+                    }
                     this.handleIncomingNotification(notification);
                 } catch (error) {
                     console.error('解析通知消息失败:', error);
@@ -142,6 +149,13 @@ class NotificationSystem {
         }
     }
 
+    // 请求任务列表快照
+    syncTaskInbox() {
+        if (this.websocket && this.websocket.readyState === WebSocket.OPEN) {
+            this.websocket.send(JSON.stringify({ type: 'task_inbox_sync' }));
+        }
+    }
+
     // 重试连接
     retryConnection() {
         if (this.retryCount < this.maxRetries) {
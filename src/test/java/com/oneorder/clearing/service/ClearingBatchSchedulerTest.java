@@ -0,0 +1,143 @@
+package com.oneorder.clearing.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ClearingBatchSchedulerTest {
+
+    private static final int MAX_SIZE = 3;
+
+    private ClearingInstructionStore instructionStore;
+    private ClearingExecutionService executionService;
+    private ClearingBatchScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        instructionStore = mock(ClearingInstructionStore.class);
+        executionService = mock(ClearingExecutionService.class);
+        when(instructionStore.findBatch(anyString())).thenAnswer(invocation -> {
+            Map<String, Object> batch = new HashMap<>();
+            batch.put("batchId", invocation.getArgument(0));
+            return Optional.of(batch);
+        });
+        when(executionService.performBatchExecution(any(), eq(false))).thenReturn(new HashMap<>());
+        // 窗口 1 秒、检查间隔 100 毫秒
+        scheduler = new ClearingBatchScheduler(instructionStore, executionService, true, MAX_SIZE, 1, 1, 4, 100);
+        scheduler.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.stop();
+    }
+
+    @Test
+    void batchClosesBySizeAndExecutesAfterLastWriterReleases() {
+        String first = scheduler.acquire("tester");
+        assertEquals(first, scheduler.acquire("tester"));
+        assertEquals(first, scheduler.acquire("tester"));
+        String second = scheduler.acquire("tester");
+        assertNotEquals(first, second);
+        scheduler.release(second);
+        verify(instructionStore, times(2)).createBatch(anyString(), anyString(), eq(ClearingBatchScheduler.BATCH_TYPE),
+            any(), eq("tester"));
+        assertEquals(1L, scheduler.getStats().get("closedBySize"));
+        assertEquals(1, scheduler.getStats().get("closingBatches"));
+
+        scheduler.release(first);
+        scheduler.release(first);
+        verify(instructionStore, never()).updateBatchStatus(first, "READY");
+
+        scheduler.release(first);
+        verify(instructionStore, timeout(2000)).updateBatchStatus(first, "READY");
+        verify(executionService, timeout(2000)).performBatchExecution(batchWithId(first), eq(false));
+        assertEquals(0, scheduler.getStats().get("closingBatches"));
+    }
+
+    @Test
+    void idleBatchClosesByWindow() {
+        String batchId = scheduler.acquire("tester");
+        scheduler.release(batchId);
+
+        verify(instructionStore, timeout(3000)).updateBatchStatus(batchId, "READY");
+        verify(executionService, timeout(2000)).performBatchExecution(batchWithId(batchId), eq(false));
+        assertEquals(1L, scheduler.getStats().get("closedByWindow"));
+        assertNull(scheduler.getStats().get("openBatch"));
+    }
+
+    @Test
+    void batchClosedByWindowWaitsForActiveWriter() throws Exception {
+        String batchId = scheduler.acquire("tester");
+        waitUntil(() -> (Long) scheduler.getStats().get("closedByWindow") == 1L);
+        assertEquals(1, scheduler.getStats().get("closingBatches"));
+        verify(instructionStore, never()).updateBatchStatus(batchId, "READY");
+
+        // 已关闭的批次不再接收新的写入
+        String next = scheduler.acquire("tester");
+        assertNotEquals(batchId, next);
+
+        scheduler.release(batchId);
+        verify(instructionStore, timeout(2000)).updateBatchStatus(batchId, "READY");
+        scheduler.release(next);
+    }
+
+    @Test
+    void failedBatchCreationIsAbandonedAndNextAcquireOpensNewBatch() {
+        doThrow(new DataAccessResourceFailureException("connection refused"))
+            .doReturn(new HashMap<>())
+            .when(instructionStore).createBatch(anyString(), anyString(), anyString(), any(), anyString());
+
+        assertThrows(DataAccessResourceFailureException.class, () -> scheduler.acquire("tester"));
+        assertNull(scheduler.getStats().get("openBatch"));
+
+        String batchId = scheduler.acquire("tester");
+        assertEquals(batchId, scheduler.getStats().get("openBatch"));
+        assertEquals(1, scheduler.getStats().get("openBatchSize"));
+        scheduler.release(batchId);
+    }
+
+    @Test
+    void releaseOfUnknownBatchIsIgnored() {
+        scheduler.release("BATCH_UNKNOWN");
+
+        assertEquals(0, scheduler.getStats().get("closingBatches"));
+        verify(instructionStore, never()).updateBatchStatus(anyString(), anyString());
+    }
+
+    private static Map<String, Object> batchWithId(String batchId) {
+        return argThat(batch -> batch != null && batchId.equals(batch.get("batchId")));
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待条件超时");
+            Thread.sleep(20);
+        }
+    }
+}
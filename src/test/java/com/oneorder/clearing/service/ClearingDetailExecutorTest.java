@@ -0,0 +1,112 @@
+package com.oneorder.clearing.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClearingDetailExecutorTest {
+
+    private final ClearingDetailExecutor executor = new ClearingDetailExecutor(4, 8);
+
+    @AfterEach
+    void tearDown() {
+        executor.stop();
+    }
+
+    @Test
+    void resultsAlignWithInputOrder() throws Exception {
+        // 执行顺序与传入顺序交错，且各项耗时随机
+        List<int[]> items = IntStream.range(0, 40)
+            .mapToObj(index -> new int[]{index, (index * 7) % 5})
+            .collect(Collectors.toList());
+
+        List<Integer> results = executor.submit(items, item -> item[1], item -> {
+            pause();
+            return item[0];
+        }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(IntStream.range(0, 40).boxed().collect(Collectors.toList()), results);
+    }
+
+    @Test
+    void laterLevelStartsOnlyAfterEarlierLevelCompletes() throws Exception {
+        List<Integer> orders = new ArrayList<>();
+        for (int level = 0; level < 5; level++) {
+            orders.addAll(Collections.nCopies(6, level * 10));
+        }
+        Collections.shuffle(orders);
+        Map<Integer, AtomicInteger> completed = new ConcurrentHashMap<>();
+        AtomicInteger violations = new AtomicInteger();
+
+        executor.submit(orders, Integer::intValue, order -> {
+            for (int earlier = 0; earlier < order; earlier += 10) {
+                if (completed.computeIfAbsent(earlier, k -> new AtomicInteger()).get() < 6) {
+                    violations.incrementAndGet();
+                }
+            }
+            pause();
+            completed.computeIfAbsent(order, k -> new AtomicInteger()).incrementAndGet();
+            return order;
+        }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, violations.get());
+        completed.values().forEach(count -> assertEquals(6, count.get()));
+    }
+
+    @Test
+    void smallSubmissionRunsSequentiallyByOrder() throws Exception {
+        List<Integer> orders = List.of(3, 1, 2, 1);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+
+        List<String> results = executor.submit(orders, Integer::intValue, order -> {
+            executed.add(order);
+            return "r" + order;
+        }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1, 1, 2, 3), executed);
+        assertEquals(List.of("r3", "r1", "r2", "r1"), results);
+        assertEquals(0L, executor.getStats().get("parallelRuns"));
+    }
+
+    @Test
+    void failureStopsLaterLevels() {
+        List<Integer> orders = new ArrayList<>();
+        orders.addAll(Collections.nCopies(8, 1));
+        orders.addAll(Collections.nCopies(8, 2));
+        AtomicInteger secondLevelRuns = new AtomicInteger();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () ->
+            executor.submit(orders, Integer::intValue, order -> {
+                if (order == 1) {
+                    throw new IllegalStateException("明细执行失败");
+                }
+                secondLevelRuns.incrementAndGet();
+                return order;
+            }).get(10, TimeUnit.SECONDS));
+
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(0, secondLevelRuns.get());
+        assertTrue((Long) executor.getStats().get("parallelRuns") >= 1);
+    }
+
+    private static void pause() {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ThreadLocalRandom.current().nextInt(50, 500)));
+    }
+}
@@ -0,0 +1,118 @@
+package com.oneorder.clearing.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionLogJournalTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 5, 100);
+
+        assertEquals(8, journal.getStats().get("capacity"));
+    }
+
+    @Test
+    void lookupReturnsNewestFirstAndIsCompleteBeforeEviction() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 8, 100);
+        journal.append(entry("INS_1", "BATCH_1", "first"));
+        journal.append(entry("INS_2", "BATCH_1", "other"));
+        journal.append(entry("INS_1", "BATCH_1", "second"));
+
+        ExecutionLogJournal.Lookup byInstruction = journal.byInstruction("INS_1");
+        assertTrue(byInstruction.isComplete());
+        assertEquals(List.of("second", "first"), messages(byInstruction));
+
+        ExecutionLogJournal.Lookup byBatch = journal.byBatch("BATCH_1");
+        assertTrue(byBatch.isComplete());
+        assertEquals(List.of("second", "other", "first"), messages(byBatch));
+    }
+
+    @Test
+    void unknownKeyIsIncomplete() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 8, 100);
+
+        ExecutionLogJournal.Lookup lookup = journal.byInstruction("MISSING");
+        assertFalse(lookup.isComplete());
+        assertTrue(lookup.getLogs().isEmpty());
+    }
+
+    @Test
+    void evictedEntriesLeaveIndexAndMarkKeyIncomplete() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 4, 100);
+        for (int i = 0; i < 6; i++) {
+            journal.append(entry("INS_1", null, "m" + i));
+        }
+
+        ExecutionLogJournal.Lookup lookup = journal.byInstruction("INS_1");
+        assertFalse(lookup.isComplete());
+        assertEquals(List.of("m5", "m4", "m3", "m2"), messages(lookup));
+        assertEquals(1, journal.getStats().get("indexedInstructions"));
+        assertEquals(0, journal.getStats().get("indexedBatches"));
+    }
+
+    @Test
+    void fullyEvictedKeyIsRemovedAndStaysIncompleteWhenWrittenAgain() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 4, 100);
+        journal.append(entry("INS_OLD", null, "old"));
+        for (int i = 0; i < 4; i++) {
+            journal.append(entry("INS_NEW", null, "n" + i));
+        }
+
+        assertEquals(1, journal.getStats().get("indexedInstructions"));
+        assertTrue(journal.byInstruction("INS_OLD").getLogs().isEmpty());
+
+        journal.append(entry("INS_OLD", null, "again"));
+        ExecutionLogJournal.Lookup lookup = journal.byInstruction("INS_OLD");
+        assertFalse(lookup.isComplete());
+        assertEquals(List.of("again"), messages(lookup));
+    }
+
+    @Test
+    void pendingQueueIsBoundedAndDrainedInOrder() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 8, 3);
+        for (int i = 0; i < 5; i++) {
+            journal.append(entry("INS_1", null, "m" + i));
+        }
+
+        assertEquals(3, journal.getStats().get("pending"));
+        assertEquals(2L, journal.getStats().get("dropped"));
+        assertEquals(List.of("m0", "m1"), journal.drain(2).stream()
+            .map(log -> (String) log.get("logMessage")).collect(Collectors.toList()));
+        assertEquals(1, journal.drain(10).size());
+        assertTrue(journal.drain(10).isEmpty());
+        assertEquals(0, journal.getStats().get("pending"));
+    }
+
+    @Test
+    void appendAssignsLogIdAndReturnsReadOnlyEntry() {
+        ExecutionLogJournal journal = new ExecutionLogJournal("test", 8, 100);
+
+        Map<String, Object> log = journal.append(entry("INS_1", null, "m"));
+        assertTrue(((String) log.get("logId")).startsWith("LOG_"));
+        assertThrows(UnsupportedOperationException.class, () -> log.put("logMessage", "changed"));
+    }
+
+    private static Map<String, Object> entry(String instructionId, String batchId, String message) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("instructionId", instructionId);
+        if (batchId != null) {
+            entry.put("batchId", batchId);
+        }
+        entry.put("logMessage", message);
+        return entry;
+    }
+
+    private static List<String> messages(ExecutionLogJournal.Lookup lookup) {
+        return lookup.getLogs().stream().map(log -> (String) log.get("logMessage")).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,128 @@
+package com.oneorder.clearing.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PassthroughRoutingTableTest {
+
+    private static final String W = PassthroughRoutingTable.WILDCARD;
+
+    @Test
+    void exactKeyWinsOverWildcardEvenWithLowerPriority() {
+        PassthroughRoutingTable table = load(
+            rule("WILD", W, W, W, 1, null, null),
+            rule("EXACT", "A", "B", "USD", 500, null, null));
+
+        assertEquals("EXACT", ruleId(table.findMatchingRule("A", "B", "USD")));
+        assertEquals("WILD", ruleId(table.findMatchingRule("A", "B", "EUR")));
+    }
+
+    @Test
+    void smallestPriorityWinsWithinBucket() {
+        PassthroughRoutingTable table = load(
+            rule("LOW", "A", "B", "USD", 200, null, null),
+            rule("HIGH", "A", "B", "USD", 100, null, null));
+
+        assertEquals("HIGH", ruleId(table.findMatchingRule("A", "B", "USD")));
+        assertEquals("HIGH", ruleId(table.getRules().get(0)));
+    }
+
+    @Test
+    void wildcardKeysAreTriedCurrencyThenPayeeThenPayer() {
+        PassthroughRoutingTable table = load(
+            rule("ANY_CURRENCY", "A", "B", W, 100, null, null),
+            rule("ANY_PAYEE", "A", W, "USD", 100, null, null),
+            rule("ANY_PAYER", W, "B", "USD", 100, null, null));
+
+        assertEquals("ANY_CURRENCY", ruleId(table.findMatchingRule("A", "B", "USD")));
+        assertEquals("ANY_PAYEE", ruleId(table.findMatchingRule("A", "C", "USD")));
+        assertEquals("ANY_PAYER", ruleId(table.findMatchingRule("X", "B", "USD")));
+        assertNull(table.findMatchingRule("X", "C", "USD"));
+    }
+
+    @Test
+    void ruleOutsideEffectivePeriodFallsThroughToNextKey() {
+        LocalDate today = LocalDate.now();
+        PassthroughRoutingTable table = load(
+            rule("EXPIRED", "A", "B", "USD", 100, today.minusDays(30), today.minusDays(1)),
+            rule("FUTURE", "A", "B", "USD", 50, today.plusDays(1), null),
+            rule("FALLBACK", "A", "B", W, 300, today, today));
+
+        assertEquals("FALLBACK", ruleId(table.findMatchingRule("A", "B", "USD")));
+    }
+
+    @Test
+    void usesDefaultRulesWhenTableCannotBeLoaded() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class)))
+            .thenThrow(new DataAccessResourceFailureException("relation does not exist"));
+        PassthroughRoutingTable table = new PassthroughRoutingTable(jdbcTemplate, 0);
+
+        table.reload();
+
+        assertEquals("DEFAULT", table.getStats().get("source"));
+        assertEquals("ROUTE_001", ruleId(table.findMatchingRule("ENTITY_A", "ENTITY_B", "USD")));
+    }
+
+    @Test
+    void keepsCurrentTableWhenReloadFails() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        PassthroughRoutingTable table = load(jdbcTemplate, rule("EXACT", "A", "B", "USD", 100, null, null));
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class)))
+            .thenThrow(new DataAccessResourceFailureException("connection refused"));
+
+        table.reload();
+
+        assertEquals("DATABASE", table.getStats().get("source"));
+        assertEquals("EXACT", ruleId(table.findMatchingRule("A", "B", "USD")));
+    }
+
+    @SafeVarargs
+    private static PassthroughRoutingTable load(Map<String, Object>... rules) {
+        return load(mock(JdbcTemplate.class), rules);
+    }
+
+    @SafeVarargs
+    @SuppressWarnings("unchecked")
+    private static PassthroughRoutingTable load(JdbcTemplate jdbcTemplate, Map<String, Object>... rules) {
+        List<Map<String, Object>> loaded = Arrays.asList(rules);
+        when(jdbcTemplate.queryForObject(anyString(), eq(String.class))).thenReturn("FINGERPRINT");
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class))).thenReturn(loaded);
+        PassthroughRoutingTable table = new PassthroughRoutingTable(jdbcTemplate, 0);
+        table.reload();
+        return table;
+    }
+
+    private static Map<String, Object> rule(String ruleId, String payer, String payee, String currency, int priority,
+                                            LocalDate effectiveDate, LocalDate expiryDate) {
+        Map<String, Object> rule = new HashMap<>();
+        rule.put("ruleId", ruleId);
+        rule.put("payerLegalEntityId", payer);
+        rule.put("payeeLegalEntityId", payee);
+        rule.put("currencyCode", currency);
+        rule.put("rulePriority", priority);
+        rule.put("effectiveDate", effectiveDate != null ? effectiveDate.toString() : null);
+        rule.put("expiryDate", expiryDate != null ? expiryDate.toString() : null);
+        return rule;
+    }
+
+    private static String ruleId(Map<String, Object> rule) {
+        return rule != null ? (String) rule.get("ruleId") : null;
+    }
+}
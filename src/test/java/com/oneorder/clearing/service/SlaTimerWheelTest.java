@@ -0,0 +1,179 @@
+package com.oneorder.clearing.service;
+
+import com.oneorder.clearing.entity.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlaTimerWheelTest {
+
+    private static final long TICK_MILLIS = 1000;
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final List<String> notified = Collections.synchronizedList(new ArrayList<>());
+    // 推送前复核读取的 order_service 当前数据
+    private final Map<Long, Map<String, Object>> database = new HashMap<>();
+    private SlaTimerWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForList(anyString(), (Object[]) any())).thenAnswer(invocation ->
+            Stream.of(invocation.getArguments()).skip(1)
+                .map(database::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+        // 接单时限 120 分钟 = 7200 tick，落在第1层；完成时限 48 小时 = 172800 tick，落在第2层
+        wheel = new SlaTimerWheel(jdbcTemplate, TICK_MILLIS, 120, 48, 0, false, now::get);
+        wheel.bindNotifier((staffId, message, orderNo) -> notified.add(staffId + "|" + orderNo));
+    }
+
+    @Test
+    void firesExactlyAtDeadlineAfterCascadingFromLevelOne() {
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(now.get()));
+
+        advanceTo(TimeUnit.MINUTES.toMillis(120) - TICK_MILLIS);
+        assertTrue(notified.isEmpty());
+
+        advanceTo(TimeUnit.MINUTES.toMillis(120));
+        assertEquals(List.of("OP_1|ORDER_1"), notified);
+        assertEquals(0, wheel.getStats().get("pending"));
+    }
+
+    @Test
+    void firesExactlyAtDeadlineAfterCascadingFromLevelTwo() {
+        wheel.onTaskChanged(service(2L, "ORDER_2", "OP_2", OrderService.ServiceStatus.IN_PROGRESS));
+
+        advanceTo(TimeUnit.HOURS.toMillis(48) - TICK_MILLIS);
+        assertTrue(notified.isEmpty());
+
+        advanceTo(TimeUnit.HOURS.toMillis(48));
+        assertEquals(List.of("OP_2|ORDER_2"), notified);
+    }
+
+    @Test
+    void deadlinesFireInOrderAcrossLevels() {
+        long start = now.get();
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(start));
+        assign(2L, "ORDER_2", "BOOKING", "OP_2", at(start - TimeUnit.MINUTES.toMillis(119)));
+        assign(3L, "ORDER_3", "BOOKING", "OP_3", at(start - TimeUnit.MINUTES.toMillis(60)));
+
+        advanceTo(TimeUnit.MINUTES.toMillis(1));
+        assertEquals(List.of("OP_2|ORDER_2"), notified);
+
+        advanceTo(TimeUnit.MINUTES.toMillis(60));
+        assertEquals(List.of("OP_2|ORDER_2", "OP_3|ORDER_3"), notified);
+
+        advanceTo(TimeUnit.MINUTES.toMillis(120));
+        assertEquals(List.of("OP_2|ORDER_2", "OP_3|ORDER_3", "OP_1|ORDER_1"), notified);
+    }
+
+    @Test
+    void overdueDeadlineFiresOnNextTick() {
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(now.get() - TimeUnit.MINUTES.toMillis(180)));
+
+        advanceTo(TICK_MILLIS);
+        assertEquals(List.of("OP_1|ORDER_1"), notified);
+    }
+
+    @Test
+    void statusChangeCancelsOrReschedules() {
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(now.get()));
+        assign(2L, "ORDER_2", "BOOKING", "OP_2", at(now.get()));
+
+        wheel.onTaskChanged(service(1L, "ORDER_1", "OP_1", OrderService.ServiceStatus.PROTOCOL_CONFIRMED));
+        wheel.onTaskChanged(service(2L, "ORDER_2", "OP_2", OrderService.ServiceStatus.IN_PROGRESS));
+        assertEquals(2L, wheel.getStats().get("cancelled"));
+        assertEquals(1L, wheel.getStats().get("pendingComplete"));
+
+        advanceTo(TimeUnit.MINUTES.toMillis(121));
+        assertTrue(notified.isEmpty());
+        assertEquals(1, wheel.getStats().get("pending"));
+    }
+
+    @Test
+    void timerIsDroppedWhenServiceWasAcceptedOnAnotherNode() {
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(now.get()));
+        // 其他节点确认了协议，本节点没有收到状态变化事件
+        database.get(1L).put("status", OrderService.ServiceStatus.PROTOCOL_CONFIRMED.name());
+
+        advanceTo(TimeUnit.MINUTES.toMillis(120));
+        assertTrue(notified.isEmpty());
+        assertEquals(0, wheel.getStats().get("pending"));
+    }
+
+    @Test
+    void timerFollowsReassignmentMadeOnAnotherNode() {
+        assign(1L, "ORDER_1", "BOOKING", "OP_1", at(now.get()));
+        database.put(1L, row(1L, "OP_9", OrderService.ServiceStatus.ASSIGNED,
+            now.get() + TimeUnit.MINUTES.toMillis(30), null));
+
+        advanceTo(TimeUnit.MINUTES.toMillis(120));
+        assertTrue(notified.isEmpty());
+        assertEquals(1, wheel.getStats().get("pending"));
+
+        advanceTo(TimeUnit.MINUTES.toMillis(150));
+        assertEquals(List.of("OP_9|ORDER_1"), notified);
+    }
+
+    private void assign(Long serviceId, String orderId, String serviceCode, String staffId, LocalDateTime assignedTime) {
+        database.put(serviceId, row(serviceId, staffId, OrderService.ServiceStatus.ASSIGNED,
+            assignedTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), null));
+        wheel.onAssigned(serviceId, orderId, serviceCode, staffId, assignedTime);
+    }
+
+    private static Map<String, Object> row(Long serviceId, String staffId, OrderService.ServiceStatus status,
+                                           Long assignedMillis, Long startedMillis) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("service_id", serviceId);
+        row.put("operation_staff_id", staffId);
+        row.put("status", status.name());
+        row.put("assigned_time", assignedMillis != null ? new Timestamp(assignedMillis) : null);
+        row.put("started_time", startedMillis != null ? new Timestamp(startedMillis) : null);
+        return row;
+    }
+
+    private void advanceTo(long elapsedMillis) {
+        now.set(1_700_000_000_000L + elapsedMillis);
+        wheel.advance();
+    }
+
+    private OrderService service(Long serviceId, String orderId, String staffId, OrderService.ServiceStatus status) {
+        OrderService service = new OrderService();
+        service.setServiceId(serviceId);
+        service.setOrderId(orderId);
+        service.setServiceCode("BOOKING");
+        service.setOperationStaffId(staffId);
+        service.setStatus(status);
+        service.setAssignedTime(at(now.get()));
+        service.setStartedTime(at(now.get()));
+        database.put(serviceId, row(serviceId, staffId, status, now.get(), now.get()));
+        return service;
+    }
+
+    private static LocalDateTime at(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}